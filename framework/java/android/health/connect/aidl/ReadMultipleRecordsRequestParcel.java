@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.health.connect.aidl;
+
+import android.annotation.NonNull;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A parcel to carry several read requests, which are executed together by {@link
+ * IHealthConnectService#readMultipleRecords}.
+ *
+ * @hide
+ */
+public final class ReadMultipleRecordsRequestParcel implements Parcelable {
+    @NonNull
+    public static final Creator<ReadMultipleRecordsRequestParcel> CREATOR =
+            new Creator<ReadMultipleRecordsRequestParcel>() {
+                @Override
+                public ReadMultipleRecordsRequestParcel createFromParcel(Parcel in) {
+                    return new ReadMultipleRecordsRequestParcel(in);
+                }
+
+                @Override
+                public ReadMultipleRecordsRequestParcel[] newArray(int size) {
+                    return new ReadMultipleRecordsRequestParcel[size];
+                }
+            };
+
+    private final List<ReadRecordsRequestParcel> mRequests;
+
+    public ReadMultipleRecordsRequestParcel(@NonNull List<ReadRecordsRequestParcel> requests) {
+        Objects.requireNonNull(requests);
+        mRequests = requests;
+    }
+
+    private ReadMultipleRecordsRequestParcel(Parcel in) {
+        mRequests = in.createTypedArrayList(ReadRecordsRequestParcel.CREATOR);
+    }
+
+    /** Returns the read requests, in the order their results are returned. */
+    @NonNull
+    public List<ReadRecordsRequestParcel> getRequests() {
+        return mRequests;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        dest.writeTypedList(mRequests, flags);
+    }
+}
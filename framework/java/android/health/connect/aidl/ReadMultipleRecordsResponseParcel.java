@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.health.connect.aidl;
+
+import android.annotation.NonNull;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * A parcel to carry response to {@link IHealthConnectService#readMultipleRecords}.
+ *
+ * <p>The records of all the requests are carried in a single {@link RecordsParcel}, in the order
+ * of the requests. The number of records and the page token of the i-th request are at index i of
+ * {@link #getRecordCounts()} and {@link #getPageTokens()}.
+ *
+ * @hide
+ */
+public final class ReadMultipleRecordsResponseParcel implements Parcelable {
+    @NonNull
+    public static final Creator<ReadMultipleRecordsResponseParcel> CREATOR =
+            new Creator<ReadMultipleRecordsResponseParcel>() {
+                @Override
+                public ReadMultipleRecordsResponseParcel createFromParcel(Parcel in) {
+                    return new ReadMultipleRecordsResponseParcel(in);
+                }
+
+                @Override
+                public ReadMultipleRecordsResponseParcel[] newArray(int size) {
+                    return new ReadMultipleRecordsResponseParcel[size];
+                }
+            };
+
+    private final RecordsParcel mRecordsParcel;
+    private final int[] mRecordCounts;
+    private final long[] mPageTokens;
+
+    public ReadMultipleRecordsResponseParcel(
+            @NonNull RecordsParcel recordsParcel,
+            @NonNull int[] recordCounts,
+            @NonNull long[] pageTokens) {
+        if (recordCounts.length != pageTokens.length) {
+            throw new IllegalArgumentException(
+                    "Expected one page token per request, got "
+                            + pageTokens.length
+                            + " for "
+                            + recordCounts.length
+                            + " requests");
+        }
+        mRecordsParcel = recordsParcel;
+        mRecordCounts = recordCounts;
+        mPageTokens = pageTokens;
+    }
+
+    private ReadMultipleRecordsResponseParcel(Parcel in) {
+        mRecordsParcel =
+                in.readParcelable(RecordsParcel.class.getClassLoader(), RecordsParcel.class);
+        mRecordCounts = in.createIntArray();
+        mPageTokens = in.createLongArray();
+    }
+
+    /** Returns the records read for all the requests. */
+    @NonNull
+    public RecordsParcel getRecordsParcel() {
+        return mRecordsParcel;
+    }
+
+    /** Returns the number of records read for each request. */
+    @NonNull
+    public int[] getRecordCounts() {
+        return mRecordCounts;
+    }
+
+    /** Returns the token to read the next page for each request. */
+    @NonNull
+    public long[] getPageTokens() {
+        return mPageTokens;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        dest.writeParcelable(mRecordsParcel, 0);
+        dest.writeIntArray(mRecordCounts);
+        dest.writeLongArray(mPageTokens);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect;
+
+import static android.health.connect.HealthConnectException.ERROR_INTERNAL;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.health.connect.HealthConnectException;
+import android.os.CancellationSignal;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.util.Slog;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Cancels the database queries of an API call once it has run for longer than its deadline, or
+ * once its caller has died, so that the call stops holding a thread of the scheduler.
+ *
+ * <p>Queries given {@link #getCancellationSignal()} then throw {@link
+ * android.os.OperationCanceledException}.
+ *
+ * @hide
+ */
+final class ApiCallCancellation implements IBinder.DeathRecipient, AutoCloseable {
+    private static final String TAG = "HealthConnectApiCancel";
+
+    private final CancellationSignal mCancellationSignal = new CancellationSignal();
+    private final IBinder mCallback;
+    private final long mDeadlineMillis;
+    private final boolean mLinkedToDeath;
+    @Nullable private final ScheduledFuture<?> mDeadline;
+    private volatile boolean mDeadlineExceeded;
+
+    /**
+     * @param callback binder of the callback of the call, cancels the call when it dies.
+     * @param deadlineMillis time after which the call is cancelled, or 0 for no deadline.
+     */
+    ApiCallCancellation(@NonNull IBinder callback, long deadlineMillis) {
+        mCallback = callback;
+        mDeadlineMillis = deadlineMillis;
+        mLinkedToDeath = linkToDeath(callback);
+        mDeadline = deadlineMillis > 0 ? scheduleDeadline(deadlineMillis) : null;
+    }
+
+    @NonNull
+    CancellationSignal getCancellationSignal() {
+        return mCancellationSignal;
+    }
+
+    /** Returns the exception to report to the caller once its call was cancelled. */
+    @NonNull
+    HealthConnectException getCancellationException() {
+        if (mDeadlineExceeded) {
+            return new HealthConnectException(
+                    ERROR_INTERNAL, "Request exceeded its deadline of " + mDeadlineMillis + " ms");
+        }
+        return new HealthConnectException(ERROR_INTERNAL, "Request was cancelled");
+    }
+
+    @Override
+    public void binderDied() {
+        Slog.w(TAG, "Caller died, cancelling its request");
+        mCancellationSignal.cancel();
+    }
+
+    @Override
+    public void close() {
+        if (mLinkedToDeath) {
+            mCallback.unlinkToDeath(this, 0);
+        }
+        if (mDeadline != null) {
+            mDeadline.cancel(/* mayInterruptIfRunning= */ false);
+        }
+    }
+
+    private boolean linkToDeath(IBinder callback) {
+        try {
+            callback.linkToDeath(this, 0);
+            return true;
+        } catch (RemoteException e) {
+            // The caller is already dead, there is no one to compute the results for.
+            mCancellationSignal.cancel();
+            return false;
+        }
+    }
+
+    @Nullable
+    private ScheduledFuture<?> scheduleDeadline(long deadlineMillis) {
+        try {
+            return HealthConnectThreadScheduler.scheduleTimeout(
+                    this::onDeadlineExceeded, deadlineMillis);
+        } catch (RejectedExecutionException e) {
+            // The thread pools are being reset, on user switch, and so is the call.
+            return null;
+        }
+    }
+
+    private void onDeadlineExceeded() {
+        Slog.w(TAG, "Cancelling request after its deadline of " + mDeadlineMillis + " ms");
+        mDeadlineExceeded = true;
+        mCancellationSignal.cancel();
+    }
+}
@@ -33,6 +33,7 @@ import android.os.UserHandle;
 
 import com.android.server.healthconnect.logging.DailyLoggingService;
 import com.android.server.healthconnect.storage.AutoDeleteService;
+import com.android.server.healthconnect.storage.DatabaseMaintenanceService;
 
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
@@ -40,17 +41,32 @@ import java.util.concurrent.TimeUnit;
 /** @hide */
 public class HealthConnectDailyJobs {
     public static final String HC_DAILY_JOB = "hc_daily_job";
+    public static final String HC_DATABASE_MAINTENANCE_JOB = "hc_database_maintenance_job";
     private static final int MIN_JOB_ID = HealthConnectDailyJobs.class.hashCode();
+    private static final int MIN_DATABASE_MAINTENANCE_JOB_ID =
+            DatabaseMaintenanceService.class.hashCode();
     private static final long JOB_RUN_INTERVAL = TimeUnit.DAYS.toMillis(1);
     private static final String HEALTH_CONNECT_NAMESPACE = "HEALTH_CONNECT_DAILY_JOB";
 
     public static void schedule(@NonNull Context context, @UserIdInt int userId) {
+        schedule(context, userId, HC_DAILY_JOB, MIN_JOB_ID + userId);
+        // Separate from the daily job, so that a long vacuum doesn't delay or get cancelled with
+        // the other daily tasks.
+        schedule(
+                context,
+                userId,
+                HC_DATABASE_MAINTENANCE_JOB,
+                MIN_DATABASE_MAINTENANCE_JOB_ID + userId);
+    }
+
+    private static void schedule(
+            @NonNull Context context, @UserIdInt int userId, String jobName, int jobId) {
         ComponentName componentName = new ComponentName(context, HealthConnectDailyService.class);
         final PersistableBundle extras = new PersistableBundle();
         extras.putInt(EXTRA_USER_ID, userId);
-        extras.putString(EXTRA_JOB_NAME_KEY, HC_DAILY_JOB);
+        extras.putString(EXTRA_JOB_NAME_KEY, jobName);
         JobInfo.Builder builder =
-                new JobInfo.Builder(MIN_JOB_ID + userId, componentName)
+                new JobInfo.Builder(jobId, componentName)
                         .setExtras(extras)
                         .setRequiresCharging(true)
                         .setRequiresDeviceIdle(true)
@@ -74,4 +90,12 @@ public class HealthConnectDailyJobs {
         AutoDeleteService.startAutoDelete(context);
         DailyLoggingService.logDailyMetrics(context, UserHandle.getUserHandleForUid(userId));
     }
+
+    /**
+     * Runs the maintenance of the database. It isn't ordered with the daily job, pages freed by
+     * the deletions of a day may only be reclaimed by the next run.
+     */
+    public static void executeDatabaseMaintenance(@NonNull Context context) {
+        DatabaseMaintenanceService.startMaintenance(context);
+    }
 }
@@ -19,6 +19,7 @@ package com.android.server.healthconnect;
 import static android.health.connect.Constants.DEFAULT_INT;
 
 import static com.android.server.healthconnect.HealthConnectDailyJobs.HC_DAILY_JOB;
+import static com.android.server.healthconnect.HealthConnectDailyJobs.HC_DATABASE_MAINTENANCE_JOB;
 import static com.android.server.healthconnect.migration.MigrationConstants.MIGRATION_COMPLETE_JOB_NAME;
 import static com.android.server.healthconnect.migration.MigrationConstants.MIGRATION_PAUSE_JOB_NAME;
 
@@ -77,6 +78,15 @@ public class HealthConnectDailyService extends JobService {
                         });
                 return true;
             }
+            case HC_DATABASE_MAINTENANCE_JOB -> {
+                HealthConnectThreadScheduler.scheduleInternalTask(
+                        () -> {
+                            HealthConnectDailyJobs.executeDatabaseMaintenance(
+                                    getApplicationContext());
+                            jobFinished(params, false);
+                        });
+                return true;
+            }
             case MIGRATION_COMPLETE_JOB_NAME -> {
                 HealthConnectThreadScheduler.scheduleInternalTask(
                         () -> {
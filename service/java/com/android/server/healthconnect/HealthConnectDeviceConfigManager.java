@@ -26,6 +26,7 @@ import android.util.ArraySet;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.healthconnect.storage.DatabaseConnectionProfile;
 
 import java.time.Duration;
 import java.util.HashMap;
@@ -122,6 +123,41 @@ public class HealthConnectDeviceConfigManager implements DeviceConfig.OnProperti
     public static final String ENABLE_AGGREGATION_SOURCE_CONTROLS_FLAG =
             "aggregation_source_controls_enable";
 
+    @VisibleForTesting
+    public static final String ENABLE_BACKUP_COMPRESSION_FLAG = "backup_compression_enable";
+
+    @VisibleForTesting
+    public static final String ENABLE_DATABASE_WAL_FLAG = "database_wal_enable";
+
+    @VisibleForTesting
+    public static final String ENABLE_DATABASE_SYNCHRONOUS_NORMAL_FLAG =
+            "database_synchronous_normal_enable";
+
+    @VisibleForTesting
+    public static final String DATABASE_CACHE_SIZE_KIB_FLAG = "database_cache_size_kib";
+
+    @VisibleForTesting
+    public static final String DATABASE_MMAP_SIZE_BYTES_FLAG = "database_mmap_size_bytes";
+
+    @VisibleForTesting
+    public static final String INSERT_GROUP_COMMIT_WINDOW_MILLIS_FLAG =
+            "insert_group_commit_window_millis";
+
+    @VisibleForTesting
+    public static final String INSERT_GROUP_COMMIT_MAX_RECORDS_FLAG =
+            "insert_group_commit_max_records";
+
+    @VisibleForTesting
+    public static final String AGGREGATE_RECORDS_DEADLINE_MILLIS_FLAG =
+            "aggregate_records_deadline_millis";
+
+    @VisibleForTesting
+    public static final String READ_RECORDS_DEADLINE_MILLIS_FLAG = "read_records_deadline_millis";
+
+    @VisibleForTesting
+    public static final String ENABLE_SERIES_TABLE_PARTITIONS_FLAG =
+            "series_table_partitions_enable";
+
     private static final boolean SESSION_DATATYPE_DEFAULT_FLAG_VALUE = true;
     private static final boolean EXERCISE_ROUTE_DEFAULT_FLAG_VALUE = true;
     public static final boolean ENABLE_RATE_LIMITER_DEFAULT_FLAG_VALUE = true;
@@ -172,6 +208,29 @@ public class HealthConnectDeviceConfigManager implements DeviceConfig.OnProperti
     @VisibleForTesting
     public static final boolean ENABLE_AGGREGATION_SOURCE_CONTROLS_DEFAULT_FLAG_VALUE = true;
 
+    @VisibleForTesting
+    public static final boolean ENABLE_BACKUP_COMPRESSION_DEFAULT_FLAG_VALUE = false;
+
+    public static final boolean ENABLE_DATABASE_WAL_DEFAULT_FLAG_VALUE = true;
+    public static final boolean ENABLE_DATABASE_SYNCHRONOUS_NORMAL_DEFAULT_FLAG_VALUE = true;
+    public static final int DATABASE_CACHE_SIZE_KIB_DEFAULT_FLAG_VALUE = 4096;
+    public static final long DATABASE_MMAP_SIZE_BYTES_DEFAULT_FLAG_VALUE = 0;
+
+    @VisibleForTesting
+    public static final int INSERT_GROUP_COMMIT_WINDOW_MILLIS_DEFAULT_FLAG_VALUE = 5;
+
+    @VisibleForTesting
+    public static final int INSERT_GROUP_COMMIT_MAX_RECORDS_DEFAULT_FLAG_VALUE = 1000;
+
+    @VisibleForTesting
+    public static final int AGGREGATE_RECORDS_DEADLINE_MILLIS_DEFAULT_FLAG_VALUE = 30_000;
+
+    @VisibleForTesting
+    public static final int READ_RECORDS_DEADLINE_MILLIS_DEFAULT_FLAG_VALUE = 30_000;
+
+    @VisibleForTesting
+    public static final boolean ENABLE_SERIES_TABLE_PARTITIONS_DEFAULT_FLAG_VALUE = false;
+
     @SuppressWarnings("NullAway.Init")
     private static HealthConnectDeviceConfigManager sDeviceConfigManager;
 
@@ -286,6 +345,76 @@ public class HealthConnectDeviceConfigManager implements DeviceConfig.OnProperti
     @GuardedBy("mLock")
     private boolean mAggregationSourceControlsEnabled = true;
 
+    @GuardedBy("mLock")
+    private boolean mBackupCompressionEnabled =
+            DeviceConfig.getBoolean(
+                    HEALTH_FITNESS_NAMESPACE,
+                    ENABLE_BACKUP_COMPRESSION_FLAG,
+                    ENABLE_BACKUP_COMPRESSION_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private boolean mDatabaseWalEnabled =
+            DeviceConfig.getBoolean(
+                    HEALTH_FITNESS_NAMESPACE,
+                    ENABLE_DATABASE_WAL_FLAG,
+                    ENABLE_DATABASE_WAL_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private boolean mDatabaseSynchronousNormalEnabled =
+            DeviceConfig.getBoolean(
+                    HEALTH_FITNESS_NAMESPACE,
+                    ENABLE_DATABASE_SYNCHRONOUS_NORMAL_FLAG,
+                    ENABLE_DATABASE_SYNCHRONOUS_NORMAL_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private int mDatabaseCacheSizeKib =
+            DeviceConfig.getInt(
+                    HEALTH_FITNESS_NAMESPACE,
+                    DATABASE_CACHE_SIZE_KIB_FLAG,
+                    DATABASE_CACHE_SIZE_KIB_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private long mDatabaseMmapSizeBytes =
+            DeviceConfig.getLong(
+                    HEALTH_FITNESS_NAMESPACE,
+                    DATABASE_MMAP_SIZE_BYTES_FLAG,
+                    DATABASE_MMAP_SIZE_BYTES_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private int mInsertGroupCommitWindowMillis =
+            DeviceConfig.getInt(
+                    HEALTH_FITNESS_NAMESPACE,
+                    INSERT_GROUP_COMMIT_WINDOW_MILLIS_FLAG,
+                    INSERT_GROUP_COMMIT_WINDOW_MILLIS_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private int mInsertGroupCommitMaxRecords =
+            DeviceConfig.getInt(
+                    HEALTH_FITNESS_NAMESPACE,
+                    INSERT_GROUP_COMMIT_MAX_RECORDS_FLAG,
+                    INSERT_GROUP_COMMIT_MAX_RECORDS_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private int mAggregateRecordsDeadlineMillis =
+            DeviceConfig.getInt(
+                    HEALTH_FITNESS_NAMESPACE,
+                    AGGREGATE_RECORDS_DEADLINE_MILLIS_FLAG,
+                    AGGREGATE_RECORDS_DEADLINE_MILLIS_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private int mReadRecordsDeadlineMillis =
+            DeviceConfig.getInt(
+                    HEALTH_FITNESS_NAMESPACE,
+                    READ_RECORDS_DEADLINE_MILLIS_FLAG,
+                    READ_RECORDS_DEADLINE_MILLIS_DEFAULT_FLAG_VALUE);
+
+    @GuardedBy("mLock")
+    private boolean mSeriesTablePartitionsEnabled =
+            DeviceConfig.getBoolean(
+                    HEALTH_FITNESS_NAMESPACE,
+                    ENABLE_SERIES_TABLE_PARTITIONS_FLAG,
+                    ENABLE_SERIES_TABLE_PARTITIONS_DEFAULT_FLAG_VALUE);
+
     @NonNull
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public static void initializeInstance(Context context) {
@@ -324,6 +453,16 @@ public class HealthConnectDeviceConfigManager implements DeviceConfig.OnProperti
         sFlagsToTrack.add(ENABLE_MIGRATION_NOTIFICATIONS_FLAG);
         sFlagsToTrack.add(BACKGROUND_READ_FEATURE_FLAG);
         sFlagsToTrack.add(ENABLE_AGGREGATION_SOURCE_CONTROLS_FLAG);
+        sFlagsToTrack.add(ENABLE_BACKUP_COMPRESSION_FLAG);
+        sFlagsToTrack.add(ENABLE_DATABASE_WAL_FLAG);
+        sFlagsToTrack.add(ENABLE_DATABASE_SYNCHRONOUS_NORMAL_FLAG);
+        sFlagsToTrack.add(DATABASE_CACHE_SIZE_KIB_FLAG);
+        sFlagsToTrack.add(DATABASE_MMAP_SIZE_BYTES_FLAG);
+        sFlagsToTrack.add(INSERT_GROUP_COMMIT_WINDOW_MILLIS_FLAG);
+        sFlagsToTrack.add(INSERT_GROUP_COMMIT_MAX_RECORDS_FLAG);
+        sFlagsToTrack.add(AGGREGATE_RECORDS_DEADLINE_MILLIS_FLAG);
+        sFlagsToTrack.add(READ_RECORDS_DEADLINE_MILLIS_FLAG);
+        sFlagsToTrack.add(ENABLE_SERIES_TABLE_PARTITIONS_FLAG);
     }
 
     /** Returns if operations with exercise route are enabled. */
@@ -505,6 +644,93 @@ public class HealthConnectDeviceConfigManager implements DeviceConfig.OnProperti
         }
     }
 
+    /** Returns whether the data sent for backup is compressed. */
+    public boolean isBackupCompressionEnabled() {
+        mLock.readLock().lock();
+        try {
+            return mBackupCompressionEnabled;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the settings of the connections to the database. Changes apply the next time the
+     * database is opened.
+     */
+    @NonNull
+    public DatabaseConnectionProfile getDatabaseConnectionProfile() {
+        mLock.readLock().lock();
+        try {
+            return new DatabaseConnectionProfile(
+                    mDatabaseWalEnabled,
+                    mDatabaseSynchronousNormalEnabled,
+                    mDatabaseCacheSizeKib,
+                    mDatabaseMmapSizeBytes);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the time for which an insert waits for an insert in flight to end, to commit with the
+     * inserts queued meanwhile, or 0 if inserts are committed on their own.
+     */
+    public int getInsertGroupCommitWindowMillis() {
+        mLock.readLock().lock();
+        try {
+            return mInsertGroupCommitWindowMillis;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /** Returns the number of records for which inserts waiting to commit together are committed. */
+    public int getInsertGroupCommitMaxRecords() {
+        mLock.readLock().lock();
+        try {
+            return mInsertGroupCommitMaxRecords;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the time after which an aggregateRecords call is cancelled, or 0 if it has no
+     * deadline.
+     */
+    public int getAggregateRecordsDeadlineMillis() {
+        mLock.readLock().lock();
+        try {
+            return mAggregateRecordsDeadlineMillis;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /** Returns the time after which a readRecords call is cancelled, or 0 if it has no deadline. */
+    public int getReadRecordsDeadlineMillis() {
+        mLock.readLock().lock();
+        try {
+            return mReadRecordsDeadlineMillis;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns whether the samples of new series records are written to monthly partitions of their
+     * series table. Partitions written while enabled are still read once disabled.
+     */
+    public boolean isSeriesTablePartitionsEnabled() {
+        mLock.readLock().lock();
+        try {
+            return mSeriesTablePartitionsEnabled;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
     /** Updates rate limiting quota values. */
     public void updateRateLimiterValues() {
         Map<Integer, Integer> quotaBucketToMaxRollingQuotaMap = new HashMap<>();
@@ -703,6 +929,67 @@ public class HealthConnectDeviceConfigManager implements DeviceConfig.OnProperti
                         break;
                     case ENABLE_AGGREGATION_SOURCE_CONTROLS_FLAG:
                         mAggregationSourceControlsEnabled = true;
+                        break;
+                    case ENABLE_BACKUP_COMPRESSION_FLAG:
+                        mBackupCompressionEnabled =
+                                properties.getBoolean(
+                                        ENABLE_BACKUP_COMPRESSION_FLAG,
+                                        ENABLE_BACKUP_COMPRESSION_DEFAULT_FLAG_VALUE);
+                        break;
+                    case ENABLE_DATABASE_WAL_FLAG:
+                        mDatabaseWalEnabled =
+                                properties.getBoolean(
+                                        ENABLE_DATABASE_WAL_FLAG,
+                                        ENABLE_DATABASE_WAL_DEFAULT_FLAG_VALUE);
+                        break;
+                    case ENABLE_DATABASE_SYNCHRONOUS_NORMAL_FLAG:
+                        mDatabaseSynchronousNormalEnabled =
+                                properties.getBoolean(
+                                        ENABLE_DATABASE_SYNCHRONOUS_NORMAL_FLAG,
+                                        ENABLE_DATABASE_SYNCHRONOUS_NORMAL_DEFAULT_FLAG_VALUE);
+                        break;
+                    case DATABASE_CACHE_SIZE_KIB_FLAG:
+                        mDatabaseCacheSizeKib =
+                                properties.getInt(
+                                        DATABASE_CACHE_SIZE_KIB_FLAG,
+                                        DATABASE_CACHE_SIZE_KIB_DEFAULT_FLAG_VALUE);
+                        break;
+                    case DATABASE_MMAP_SIZE_BYTES_FLAG:
+                        mDatabaseMmapSizeBytes =
+                                properties.getLong(
+                                        DATABASE_MMAP_SIZE_BYTES_FLAG,
+                                        DATABASE_MMAP_SIZE_BYTES_DEFAULT_FLAG_VALUE);
+                        break;
+                    case INSERT_GROUP_COMMIT_WINDOW_MILLIS_FLAG:
+                        mInsertGroupCommitWindowMillis =
+                                properties.getInt(
+                                        INSERT_GROUP_COMMIT_WINDOW_MILLIS_FLAG,
+                                        INSERT_GROUP_COMMIT_WINDOW_MILLIS_DEFAULT_FLAG_VALUE);
+                        break;
+                    case INSERT_GROUP_COMMIT_MAX_RECORDS_FLAG:
+                        mInsertGroupCommitMaxRecords =
+                                properties.getInt(
+                                        INSERT_GROUP_COMMIT_MAX_RECORDS_FLAG,
+                                        INSERT_GROUP_COMMIT_MAX_RECORDS_DEFAULT_FLAG_VALUE);
+                        break;
+                    case AGGREGATE_RECORDS_DEADLINE_MILLIS_FLAG:
+                        mAggregateRecordsDeadlineMillis =
+                                properties.getInt(
+                                        AGGREGATE_RECORDS_DEADLINE_MILLIS_FLAG,
+                                        AGGREGATE_RECORDS_DEADLINE_MILLIS_DEFAULT_FLAG_VALUE);
+                        break;
+                    case READ_RECORDS_DEADLINE_MILLIS_FLAG:
+                        mReadRecordsDeadlineMillis =
+                                properties.getInt(
+                                        READ_RECORDS_DEADLINE_MILLIS_FLAG,
+                                        READ_RECORDS_DEADLINE_MILLIS_DEFAULT_FLAG_VALUE);
+                        break;
+                    case ENABLE_SERIES_TABLE_PARTITIONS_FLAG:
+                        mSeriesTablePartitionsEnabled =
+                                properties.getBoolean(
+                                        ENABLE_SERIES_TABLE_PARTITIONS_FLAG,
+                                        ENABLE_SERIES_TABLE_PARTITIONS_DEFAULT_FLAG_VALUE);
+                        break;
                 }
             } finally {
                 mLock.writeLock().unlock();
@@ -40,10 +40,15 @@ import com.android.server.healthconnect.permission.HealthConnectPermissionHelper
 import com.android.server.healthconnect.permission.HealthPermissionIntentAppsTracker;
 import com.android.server.healthconnect.permission.PermissionPackageChangesOrchestrator;
 import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.datatypehelpers.AccessLogsHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.AppInfoHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.DatabaseHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.DeviceInfoHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.HealthDataCategoryPriorityHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.MigrationEntityHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.PreferenceHelper;
 
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -86,10 +91,12 @@ public class HealthConnectManagerService extends SystemService {
                         permissionHelper,
                         mCurrentForegroundUser);
         mUserManager = context.getSystemService(UserManager.class);
+        HealthConnectDeviceConfigManager.initializeInstance(context);
         mTransactionManager =
                 TransactionManager.getInstance(
-                        new HealthConnectUserContext(mContext, mCurrentForegroundUser));
-        HealthConnectDeviceConfigManager.initializeInstance(context);
+                        new HealthConnectUserContext(mContext, mCurrentForegroundUser),
+                        HealthConnectDeviceConfigManager.getInitialisedInstance()
+                                .getDatabaseConnectionProfile());
         mMigrationBroadcastScheduler =
                 new MigrationBroadcastScheduler(mCurrentForegroundUser.getIdentifier());
         final MigrationStateManager migrationStateManager =
@@ -141,6 +148,13 @@ public class HealthConnectManagerService extends SystemService {
         }
 
         HealthConnectThreadScheduler.shutdownThreadPools();
+        // Access logs are buffered in memory, write them to the DB of the previous user before it
+        // gets closed. Pending access logs only exist if that DB was in use.
+        try {
+            AccessLogsHelper.getInstance().flushAccessLogs();
+        } catch (Exception e) {
+            Slog.e(TAG, "Failed to flush access logs", e);
+        }
         DatabaseHelper.clearAllCache();
         mTransactionManager.onUserSwitching();
         RateLimiter.clearCache();
@@ -221,14 +235,35 @@ public class HealthConnectManagerService extends SystemService {
                         Slog.e(TAG, "Failed to start user unlocked state changes actions", e);
                     }
                 });
-        HealthConnectThreadScheduler.scheduleInternalTask(
-                () -> {
-                    try {
-                        PreferenceHelper.getInstance().initializePreferences();
-                    } catch (Exception e) {
-                        Slog.e(TAG, "Failed to initialize preferences cache", e);
-                    }
-                });
+        scheduleCacheWarmUp();
+    }
+
+    /**
+     * Populates the helper caches as soon as the user DB is usable, instead of on the first client
+     * request. Each cache is warmed up by its own task so that a failure in one of them doesn't
+     * prevent the others from being populated.
+     */
+    private void scheduleCacheWarmUp() {
+        List<DatabaseHelper> helpersToWarmUp =
+                List.of(
+                        PreferenceHelper.getInstance(),
+                        AppInfoHelper.getInstance(),
+                        DeviceInfoHelper.getInstance(),
+                        HealthDataCategoryPriorityHelper.getInstance());
+        for (DatabaseHelper helper : helpersToWarmUp) {
+            HealthConnectThreadScheduler.scheduleInternalTask(
+                    () -> {
+                        try {
+                            helper.warmUpCache();
+                        } catch (Exception e) {
+                            Slog.e(
+                                    TAG,
+                                    "Failed to warm up cache for "
+                                            + helper.getClass().getSimpleName(),
+                                    e);
+                        }
+                    });
+        }
     }
 
     @NonNull
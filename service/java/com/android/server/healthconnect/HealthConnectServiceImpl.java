@@ -74,9 +74,12 @@ import android.health.connect.aidl.IGetPriorityResponseCallback;
 import android.health.connect.aidl.IHealthConnectService;
 import android.health.connect.aidl.IInsertRecordsResponseCallback;
 import android.health.connect.aidl.IMigrationCallback;
+import android.health.connect.aidl.IReadMultipleRecordsResponseCallback;
 import android.health.connect.aidl.IReadRecordsResponseCallback;
 import android.health.connect.aidl.IRecordTypeInfoResponseCallback;
 import android.health.connect.aidl.InsertRecordsResponseParcel;
+import android.health.connect.aidl.ReadMultipleRecordsRequestParcel;
+import android.health.connect.aidl.ReadMultipleRecordsResponseParcel;
 import android.health.connect.aidl.ReadRecordsRequestParcel;
 import android.health.connect.aidl.ReadRecordsResponseParcel;
 import android.health.connect.aidl.RecordIdFiltersParcel;
@@ -104,6 +107,7 @@ import android.health.connect.restore.BackupFileNamesSet;
 import android.health.connect.restore.StageRemoteDataException;
 import android.health.connect.restore.StageRemoteDataRequest;
 import android.os.Binder;
+import android.os.OperationCanceledException;
 import android.os.ParcelFileDescriptor;
 import android.os.Process;
 import android.os.RemoteException;
@@ -111,6 +115,7 @@ import android.os.Trace;
 import android.os.UserHandle;
 import android.permission.PermissionManager;
 import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Log;
 import android.util.Pair;
 import android.util.Slog;
@@ -119,6 +124,7 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.LocalManagerRegistry;
 import com.android.server.appop.AppOpsManagerLocal;
 import com.android.server.healthconnect.backuprestore.BackupRestore;
+import com.android.server.healthconnect.logging.ApiLatencyStats;
 import com.android.server.healthconnect.logging.HealthConnectServiceLogger;
 import com.android.server.healthconnect.migration.DataMigrationManager;
 import com.android.server.healthconnect.migration.MigrationCleaner;
@@ -146,7 +152,9 @@ import com.android.server.healthconnect.storage.request.ReadTransactionRequest;
 import com.android.server.healthconnect.storage.request.UpsertTransactionRequest;
 import com.android.server.healthconnect.storage.utils.RecordHelperProvider;
 
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -398,7 +406,13 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                                         mDataPermissionEnforcer
                                                 .collectExtraWritePermissionStateMapping(
                                                         recordInternals, attributionSource));
-                        List<String> uuids = mTransactionManager.insertAll(insertRequest);
+                        // Commits together with concurrent inserts of other apps, and returns once
+                        // the records are committed.
+                        List<String> uuids =
+                                mTransactionManager.insertAllWithGroupCommit(
+                                        insertRequest,
+                                        mDeviceConfigManager.getInsertGroupCommitWindowMillis(),
+                                        mDeviceConfigManager.getInsertGroupCommitMaxRecords());
                         tryAndReturnResult(callback, uuids, logger);
 
                         HealthConnectThreadScheduler.scheduleInternalTask(
@@ -434,7 +448,8 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                     }
                 },
                 uid,
-                false);
+                false,
+                INSERT_DATA);
     }
 
     private void postInsertTasks(
@@ -479,6 +494,10 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
         HealthConnectThreadScheduler.schedule(
                 mContext,
                 () -> {
+                    final ApiCallCancellation cancellation =
+                            new ApiCallCancellation(
+                                    callback.asBinder(),
+                                    mDeviceConfigManager.getAggregateRecordsDeadlineMillis());
                     try {
                         enforceIsForegroundUser(userHandle);
                         verifyPackageNameFromUid(uid, attributionSource);
@@ -537,9 +556,16 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                                                 attributionSource.getPackageName(),
                                                 request,
                                                 startDateAccess)
-                                        .getAggregateDataResponseParcel());
+                                        .getAggregateDataResponseParcel(
+                                                cancellation.getCancellationSignal()));
                         logger.setDataTypesFromRecordTypes(recordTypesToTest)
                                 .setHealthDataServiceApiStatusSuccess();
+                    } catch (OperationCanceledException operationCanceledException) {
+                        HealthConnectException exception =
+                                cancellation.getCancellationException();
+                        logger.setHealthDataServiceApiStatusError(exception.getErrorCode());
+                        Slog.e(TAG, "OperationCanceledException: ", operationCanceledException);
+                        tryAndThrowException(callback, exception, exception.getErrorCode());
                     } catch (SQLiteException sqLiteException) {
                         logger.setHealthDataServiceApiStatusError(HealthConnectException.ERROR_IO);
                         Slog.e(TAG, "SQLiteException: ", sqLiteException);
@@ -562,11 +588,13 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                         Slog.e(TAG, "Exception: ", e);
                         tryAndThrowException(callback, e, ERROR_INTERNAL);
                     } finally {
+                        cancellation.close();
                         logger.build().log();
                     }
                 },
                 uid,
-                holdsDataManagementPermission);
+                holdsDataManagementPermission,
+                READ_AGGREGATED_DATA);
     }
 
     /**
@@ -599,6 +627,10 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
         HealthConnectThreadScheduler.schedule(
                 mContext,
                 () -> {
+                    final ApiCallCancellation cancellation =
+                            new ApiCallCancellation(
+                                    callback.asBinder(),
+                                    mDeviceConfigManager.getReadRecordsDeadlineMillis());
                     try {
                         enforceIsForegroundUser(userHandle);
                         verifyPackageNameFromUid(uid, attributionSource);
@@ -615,31 +647,14 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                             tryAcquireApiCallQuota(
                                     uid, QuotaCategory.QUOTA_CATEGORY_READ, isInForeground, logger);
 
-                            if (mDataPermissionEnforcer.enforceReadAccessAndGetEnforceSelfRead(
-                                    request.getRecordType(), attributionSource)) {
-                                // If read permission is missing but write permission is granted,
-                                // then enforce self read
-                                enforceSelfRead = true;
-                            } else if (!isInForeground) {
-                                // If Background Read feature is disabled
-                                // or READ_HEALTH_DATA_IN_BACKGROUND permission is not granted,
-                                // then enforce self read
-                                enforceSelfRead = isOnlySelfReadInBackgroundAllowed(uid, pid);
-                            }
-                            if (request.getRecordIdFiltersParcel() == null) {
-                                // Only enforce requested packages if this is a
-                                // ReadRecordsByRequest using filters. Reading by IDs does not have
-                                // data origins specified.
-                                // TODO(b/309778116): Consider throwing an error when reading by Id
-                                maybeEnforceOnlyCallingPackageDataRequested(
-                                        request.getPackageFilters(),
-                                        callingPackageName,
-                                        enforceSelfRead,
-                                        "recordType: "
-                                                + RecordMapper.getInstance()
-                                                        .getRecordIdToExternalRecordClassMap()
-                                                        .get(request.getRecordType()));
-                            }
+                            enforceSelfRead =
+                                    enforceReadAccessAndGetEnforceSelfRead(
+                                            request,
+                                            attributionSource,
+                                            callingPackageName,
+                                            uid,
+                                            pid,
+                                            isInForeground);
 
                             if (Constants.DEBUG) {
                                 Slog.d(
@@ -661,19 +676,12 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                         try {
                             long startDateAccessEpochMilli = request.getStartTime();
                             if (!holdsDataManagementPermission) {
-                                Instant startDateAccessInstant =
-                                        mPermissionHelper.getHealthDataStartDateAccessOrThrow(
-                                                callingPackageName, userHandle);
-
-                                // Always set the startDateAccess for local time filter, as for
-                                // local date time we use it in conjunction with the time filter
-                                // start-time
-                                if (request.usesLocalTimeFilter()
-                                        || startDateAccessInstant.toEpochMilli()
-                                                > startDateAccessEpochMilli) {
-                                    startDateAccessEpochMilli =
-                                            startDateAccessInstant.toEpochMilli();
-                                }
+                                startDateAccessEpochMilli =
+                                        getStartDateAccessEpochMilli(
+                                                request,
+                                                mPermissionHelper
+                                                        .getHealthDataStartDateAccessOrThrow(
+                                                                callingPackageName, userHandle));
                             }
 
                             ReadTransactionRequest readTransactionRequest =
@@ -695,12 +703,14 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                             if (request.getRecordIdFiltersParcel() != null) {
                                 records =
                                         mTransactionManager.readRecordsByIds(
-                                                readTransactionRequest);
+                                                readTransactionRequest,
+                                                cancellation.getCancellationSignal());
                                 pageToken = DEFAULT_LONG;
                             } else {
                                 Pair<List<RecordInternal<?>>, Long> readRecordsResponse =
                                         mTransactionManager.readRecordsAndPageToken(
-                                                readTransactionRequest);
+                                                readTransactionRequest,
+                                                cancellation.getCancellationSignal());
                                 records = readRecordsResponse.first;
                                 pageToken = readRecordsResponse.second;
                             }
@@ -751,6 +761,12 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                                 throw exception;
                             }
                         }
+                    } catch (OperationCanceledException operationCanceledException) {
+                        HealthConnectException exception =
+                                cancellation.getCancellationException();
+                        logger.setHealthDataServiceApiStatusError(exception.getErrorCode());
+                        Slog.e(TAG, "OperationCanceledException: ", operationCanceledException);
+                        tryAndThrowException(callback, exception, exception.getErrorCode());
                     } catch (SQLiteException sqLiteException) {
                         logger.setHealthDataServiceApiStatusError(HealthConnectException.ERROR_IO);
                         Slog.e(TAG, "SQLiteException: ", sqLiteException);
@@ -777,12 +793,281 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                         Slog.e(TAG, "Exception: ", e);
                         tryAndThrowException(callback, e, ERROR_INTERNAL);
                     } finally {
+                        cancellation.close();
                         Trace.traceEnd(TRACE_TAG_READ);
                         logger.build().log();
                     }
                 },
                 uid,
-                holdsDataManagementPermission);
+                holdsDataManagementPermission,
+                READ_DATA);
+    }
+
+    /**
+     * Read records for several {@link ReadRecordsRequestParcel}s from HealthConnect database, in a
+     * single call.
+     *
+     * <p>Read permissions are enforced for every request, while the API call quota is acquired and
+     * the access log is written once for the whole call.
+     *
+     * @param request ReadMultipleRecordsRequestParcel is parcel for the read requests.
+     * @param callback Callback to receive result of performing this operation. The records of all
+     *     the requests are returned in a single {@link RecordsParcel}, with the number of records
+     *     and the page token of each request. In case of an error or a permission failure the
+     *     HealthConnect service, {@link IReadMultipleRecordsResponseCallback#onError} will be
+     *     invoked with a {@link HealthConnectExceptionParcel}.
+     */
+    @Override
+    public void readMultipleRecords(
+            @NonNull AttributionSource attributionSource,
+            @NonNull ReadMultipleRecordsRequestParcel request,
+            @NonNull IReadMultipleRecordsResponseCallback callback) {
+        checkParamsNonNull(attributionSource, request, callback);
+
+        final int uid = Binder.getCallingUid();
+        final int pid = Binder.getCallingPid();
+        final UserHandle userHandle = Binder.getCallingUserHandle();
+        final boolean holdsDataManagementPermission = hasDataManagementPermission(uid, pid);
+        final String callingPackageName =
+                Objects.requireNonNull(attributionSource.getPackageName());
+        final HealthConnectServiceLogger.Builder logger =
+                new HealthConnectServiceLogger.Builder(holdsDataManagementPermission, READ_DATA)
+                        .setPackageName(callingPackageName);
+
+        HealthConnectThreadScheduler.schedule(
+                mContext,
+                () -> {
+                    final ApiCallCancellation cancellation =
+                            new ApiCallCancellation(
+                                    callback.asBinder(),
+                                    mDeviceConfigManager.getReadRecordsDeadlineMillis());
+                    try {
+                        enforceIsForegroundUser(userHandle);
+                        verifyPackageNameFromUid(uid, attributionSource);
+                        throwExceptionIfDataSyncInProgress();
+
+                        final List<ReadRecordsRequestParcel> requests = request.getRequests();
+                        if (requests.isEmpty()) {
+                            throw new IllegalArgumentException("No read requests");
+                        }
+
+                        boolean isInForeground = true;
+                        Instant startDateAccessInstant = null;
+                        if (!holdsDataManagementPermission) {
+                            isInForeground = mAppOpsManagerLocal.isUidInForeground(uid);
+                            logger.setCallerForegroundState(isInForeground);
+                            tryAcquireApiCallQuota(
+                                    uid, QuotaCategory.QUOTA_CATEGORY_READ, isInForeground, logger);
+                            startDateAccessInstant =
+                                    mPermissionHelper.getHealthDataStartDateAccessOrThrow(
+                                            callingPackageName, userHandle);
+                        }
+
+                        Set<Integer> recordTypes = new ArraySet<>();
+                        for (ReadRecordsRequestParcel readRequest : requests) {
+                            recordTypes.add(readRequest.getRecordType());
+                        }
+                        final Map<String, Boolean> extraReadPermsToGrantState =
+                                Collections.unmodifiableMap(
+                                        mDataPermissionEnforcer
+                                                .collectExtraReadPermissionToStateMapping(
+                                                        recordTypes, attributionSource));
+
+                        // Requests for which the app has no data to read are not executed, and
+                        // return no records.
+                        List<ReadTransactionRequest> readTransactionRequests = new ArrayList<>();
+                        List<Integer> executedRequestIndices = new ArrayList<>();
+                        boolean[] requiresLogging = new boolean[requests.size()];
+                        for (int i = 0; i < requests.size(); i++) {
+                            ReadRecordsRequestParcel readRequest = requests.get(i);
+                            boolean enforceSelfRead = false;
+                            long startDateAccessEpochMilli = readRequest.getStartTime();
+                            if (!holdsDataManagementPermission) {
+                                enforceSelfRead =
+                                        enforceReadAccessAndGetEnforceSelfRead(
+                                                readRequest,
+                                                attributionSource,
+                                                callingPackageName,
+                                                uid,
+                                                pid,
+                                                isInForeground);
+                                startDateAccessEpochMilli =
+                                        getStartDateAccessEpochMilli(
+                                                readRequest,
+                                                Objects.requireNonNull(startDateAccessInstant));
+                            }
+                            // Calls from controller APK should not be recorded in access logs
+                            // If an app is reading only its own data then it is not recorded in
+                            // access logs.
+                            requiresLogging[i] = !holdsDataManagementPermission && !enforceSelfRead;
+
+                            ReadTransactionRequest readTransactionRequest;
+                            try {
+                                readTransactionRequest =
+                                        new ReadTransactionRequest(
+                                                callingPackageName,
+                                                readRequest,
+                                                startDateAccessEpochMilli,
+                                                enforceSelfRead,
+                                                extraReadPermsToGrantState);
+                            } catch (TypeNotPresentException exception) {
+                                if (ReadTransactionRequest.TYPE_NOT_PRESENT_PACKAGE_NAME.equals(
+                                        exception.typeName())) {
+                                    continue;
+                                }
+                                throw exception;
+                            }
+                            if (readTransactionRequest.getReadRequests().size() != 1) {
+                                throw new IllegalArgumentException(
+                                        "Read requested is not for a single record type");
+                            }
+                            readTransactionRequests.add(readTransactionRequest);
+                            executedRequestIndices.add(i);
+                        }
+
+                        Trace.traceBegin(TRACE_TAG_READ, TAG_READ);
+                        List<Pair<List<RecordInternal<?>>, Long>> results;
+                        try {
+                            results =
+                                    mTransactionManager.readRecordsAndPageTokens(
+                                            readTransactionRequests,
+                                            cancellation.getCancellationSignal());
+                        } finally {
+                            Trace.traceEnd(TRACE_TAG_READ);
+                        }
+
+                        List<RecordInternal<?>> records = new ArrayList<>();
+                        List<RecordInternal<?>> loggedRecords = new ArrayList<>();
+                        Set<Integer> loggedRecordTypes = new ArraySet<>();
+                        int[] recordCounts = new int[requests.size()];
+                        long[] pageTokens = new long[requests.size()];
+                        Arrays.fill(pageTokens, DEFAULT_LONG);
+                        for (int i = 0; i < results.size(); i++) {
+                            int requestIndex = executedRequestIndices.get(i);
+                            List<RecordInternal<?>> requestRecords = results.get(i).first;
+                            records.addAll(requestRecords);
+                            recordCounts[requestIndex] = requestRecords.size();
+                            pageTokens[requestIndex] = results.get(i).second;
+                            if (requiresLogging[requestIndex]) {
+                                loggedRecords.addAll(requestRecords);
+                                loggedRecordTypes.add(requests.get(requestIndex).getRecordType());
+                            }
+                        }
+                        logger.setNumberOfRecords(records.size());
+
+                        if (!loggedRecordTypes.isEmpty()) {
+                            AccessLogsHelper.getInstance()
+                                    .addAccessLog(
+                                            callingPackageName,
+                                            new ArrayList<>(loggedRecordTypes),
+                                            READ);
+                        }
+                        callback.onResult(
+                                new ReadMultipleRecordsResponseParcel(
+                                        new RecordsParcel(records), recordCounts, pageTokens));
+                        if (!loggedRecords.isEmpty()) {
+                            logRecordTypeSpecificReadMetrics(loggedRecords, callingPackageName);
+                        }
+                        logger.setDataTypesFromRecordInternals(records)
+                                .setHealthDataServiceApiStatusSuccess();
+                    } catch (OperationCanceledException operationCanceledException) {
+                        HealthConnectException exception =
+                                cancellation.getCancellationException();
+                        logger.setHealthDataServiceApiStatusError(exception.getErrorCode());
+                        Slog.e(TAG, "OperationCanceledException: ", operationCanceledException);
+                        tryAndThrowException(callback, exception, exception.getErrorCode());
+                    } catch (SQLiteException sqLiteException) {
+                        logger.setHealthDataServiceApiStatusError(HealthConnectException.ERROR_IO);
+                        Slog.e(TAG, "SQLiteException: ", sqLiteException);
+                        tryAndThrowException(
+                                callback, sqLiteException, HealthConnectException.ERROR_IO);
+                    } catch (SecurityException securityException) {
+                        logger.setHealthDataServiceApiStatusError(ERROR_SECURITY);
+                        Slog.e(TAG, "SecurityException: ", securityException);
+                        tryAndThrowException(callback, securityException, ERROR_SECURITY);
+                    } catch (IllegalArgumentException illegalArgumentException) {
+                        logger.setHealthDataServiceApiStatusError(
+                                HealthConnectException.ERROR_INVALID_ARGUMENT);
+                        Slog.e(TAG, "IllegalArgumentException: ", illegalArgumentException);
+                        tryAndThrowException(
+                                callback,
+                                illegalArgumentException,
+                                HealthConnectException.ERROR_INVALID_ARGUMENT);
+                    } catch (IllegalStateException illegalStateException) {
+                        logger.setHealthDataServiceApiStatusError(ERROR_INTERNAL);
+                        Slog.e(TAG, "IllegalStateException: ", illegalStateException);
+                        tryAndThrowException(callback, illegalStateException, ERROR_INTERNAL);
+                    } catch (HealthConnectException healthConnectException) {
+                        logger.setHealthDataServiceApiStatusError(
+                                healthConnectException.getErrorCode());
+                        Slog.e(TAG, "HealthConnectException: ", healthConnectException);
+                        tryAndThrowException(
+                                callback,
+                                healthConnectException,
+                                healthConnectException.getErrorCode());
+                    } catch (Exception e) {
+                        logger.setHealthDataServiceApiStatusError(ERROR_INTERNAL);
+                        Slog.e(TAG, "Exception: ", e);
+                        tryAndThrowException(callback, e, ERROR_INTERNAL);
+                    } finally {
+                        cancellation.close();
+                        logger.build().log();
+                    }
+                },
+                uid,
+                holdsDataManagementPermission,
+                READ_DATA);
+    }
+
+    /**
+     * Enforces that the caller can read the record type of {@code request}, and returns true if it
+     * may only read its own data.
+     */
+    private boolean enforceReadAccessAndGetEnforceSelfRead(
+            ReadRecordsRequestParcel request,
+            AttributionSource attributionSource,
+            String callingPackageName,
+            int uid,
+            int pid,
+            boolean isInForeground) {
+        boolean enforceSelfRead = false;
+        if (mDataPermissionEnforcer.enforceReadAccessAndGetEnforceSelfRead(
+                request.getRecordType(), attributionSource)) {
+            // If read permission is missing but write permission is granted,
+            // then enforce self read
+            enforceSelfRead = true;
+        } else if (!isInForeground) {
+            // If Background Read feature is disabled
+            // or READ_HEALTH_DATA_IN_BACKGROUND permission is not granted,
+            // then enforce self read
+            enforceSelfRead = isOnlySelfReadInBackgroundAllowed(uid, pid);
+        }
+        if (request.getRecordIdFiltersParcel() == null) {
+            // Only enforce requested packages if this is a
+            // ReadRecordsByRequest using filters. Reading by IDs does not have
+            // data origins specified.
+            // TODO(b/309778116): Consider throwing an error when reading by Id
+            maybeEnforceOnlyCallingPackageDataRequested(
+                    request.getPackageFilters(),
+                    callingPackageName,
+                    enforceSelfRead,
+                    "recordType: "
+                            + RecordMapper.getInstance()
+                                    .getRecordIdToExternalRecordClassMap()
+                                    .get(request.getRecordType()));
+        }
+        return enforceSelfRead;
+    }
+
+    private static long getStartDateAccessEpochMilli(
+            ReadRecordsRequestParcel request, Instant startDateAccessInstant) {
+        // Always set the startDateAccess for local time filter, as for local date time we use it
+        // in conjunction with the time filter start-time
+        if (request.usesLocalTimeFilter()
+                || startDateAccessInstant.toEpochMilli() > request.getStartTime()) {
+            return startDateAccessInstant.toEpochMilli();
+        }
+        return request.getStartTime();
     }
 
     private void maybeEnforceOnlyCallingPackageDataRequested(
@@ -904,7 +1189,8 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                     }
                 },
                 uid,
-                false);
+                false,
+                UPDATE_DATA);
     }
 
     /**
@@ -980,7 +1266,8 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                     }
                 },
                 uid,
-                false);
+                false,
+                GET_CHANGES_TOKEN);
     }
 
     /**
@@ -1107,7 +1394,8 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                     }
                 },
                 uid,
-                false);
+                false,
+                GET_CHANGES);
     }
 
     /**
@@ -1203,7 +1491,8 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                     }
                 },
                 uid,
-                holdsDataManagementPermission);
+                holdsDataManagementPermission,
+                DELETE_DATA);
     }
 
     /**
@@ -1285,7 +1574,8 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                     }
                 },
                 uid,
-                holdsDataManagementPermission);
+                holdsDataManagementPermission,
+                DELETE_DATA);
     }
 
     private void deleteUsingFiltersInternal(
@@ -2046,6 +2336,20 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
                 });
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (mContext.checkCallingOrSelfPermission(Manifest.permission.DUMP)
+                != PERMISSION_GRANTED) {
+            writer.println(
+                    "Permission Denial: can't dump HealthConnectService from pid="
+                            + Binder.getCallingPid()
+                            + ", uid="
+                            + Binder.getCallingUid());
+            return;
+        }
+        ApiLatencyStats.getInstance().dump(writer);
+    }
+
     // Cancel BR timeouts - this might be needed when a user is going into background.
     void cancelBackupRestoreTimeouts() {
         mBackupRestore.cancelAllJobs();
@@ -2395,6 +2699,19 @@ final class HealthConnectServiceImpl extends IHealthConnectService.Stub {
         }
     }
 
+    private static void tryAndThrowException(
+            @NonNull IReadMultipleRecordsResponseCallback callback,
+            @NonNull Exception exception,
+            @HealthConnectException.ErrorCode int errorCode) {
+        try {
+            callback.onError(
+                    new HealthConnectExceptionParcel(
+                            new HealthConnectException(errorCode, exception.toString())));
+        } catch (RemoteException e) {
+            Log.e(TAG, "Unable to send result to the callback", e);
+        }
+    }
+
     private static void tryAndThrowException(
             @NonNull IActivityDatesResponseCallback callback,
             @NonNull Exception exception,
@@ -22,10 +22,14 @@ import android.content.Context;
 import android.util.Slog;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.healthconnect.logging.ApiLatencyStats;
+import com.android.server.healthconnect.logging.HealthConnectServiceLogger.ApiMethods;
 
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -37,6 +41,8 @@ import java.util.concurrent.TimeUnit;
 public final class HealthConnectThreadScheduler {
     private static final int NUM_EXECUTOR_THREADS_INTERNAL_BACKGROUND = 1;
     private static final long KEEP_ALIVE_TIME_INTERNAL_BACKGROUND = 60L;
+    private static final int NUM_EXECUTOR_THREADS_INTERNAL_DELAY = 1;
+    private static final long KEEP_ALIVE_TIME_INTERNAL_DELAY = 60L;
     private static final int NUM_EXECUTOR_THREADS_BACKGROUND = 1;
     private static final long KEEP_ALIVE_TIME_BACKGROUND = 60L;
     private static final int NUM_EXECUTOR_THREADS_FOREGROUND = 1;
@@ -68,6 +74,10 @@ public final class HealthConnectThreadScheduler {
                     KEEP_ALIVE_TIME_INTERNAL_BACKGROUND,
                     TimeUnit.SECONDS,
                     new LinkedBlockingQueue<>());
+    // Executor to delay HC internal tasks, the tasks themselves run on the internal executor
+    @VisibleForTesting
+    static volatile ScheduledThreadPoolExecutor sInternalDelayExecutor =
+            createInternalDelayExecutor();
     // Executor to run HC tasks for clients
     @VisibleForTesting
     static volatile ThreadPoolExecutor sForegroundExecutor =
@@ -96,6 +106,8 @@ public final class HealthConnectThreadScheduler {
                         TimeUnit.SECONDS,
                         new LinkedBlockingQueue<>());
 
+        sInternalDelayExecutor = createInternalDelayExecutor();
+
         sBackgroundThreadExecutor =
                 new ThreadPoolExecutor(
                         NUM_EXECUTOR_THREADS_BACKGROUND,
@@ -126,6 +138,7 @@ public final class HealthConnectThreadScheduler {
         HEALTH_CONNECT_BACKGROUND_ROUND_ROBIN_SCHEDULER.killTasksAndPauseScheduler();
 
         sInternalBackgroundExecutor.shutdownNow();
+        sInternalDelayExecutor.shutdownNow();
         sBackgroundThreadExecutor.shutdownNow();
         sForegroundExecutor.shutdownNow();
         sControllerExecutor.shutdownNow();
@@ -136,6 +149,24 @@ public final class HealthConnectThreadScheduler {
         sInternalBackgroundExecutor.execute(getSafeRunnable(task));
     }
 
+    /**
+     * Schedules the task on the executor dedicated for performing internal tasks, once {@code
+     * delayMillis} have passed.
+     */
+    public static void scheduleInternalTask(Runnable task, long delayMillis) {
+        sInternalDelayExecutor.schedule(
+                () -> scheduleInternalTask(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the short and non-blocking {@code task} once {@code delayMillis} have passed, on the
+     * executor used to delay internal tasks. The returned future can cancel it.
+     */
+    static ScheduledFuture<?> scheduleTimeout(Runnable task, long delayMillis) {
+        return sInternalDelayExecutor.schedule(
+                getSafeRunnable(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
     /** Schedules the task on the executor dedicated for performing controller tasks */
     static void scheduleControllerTask(Runnable task) {
         sControllerExecutor.execute(getSafeRunnable(task));
@@ -143,8 +174,29 @@ public final class HealthConnectThreadScheduler {
 
     /** Schedules the task on the best possible executor based on the parameters */
     static void schedule(Context context, @NonNull Runnable task, int uid, boolean isController) {
+        schedule(context, task, uid, isController, ApiMethods.API_METHOD_UNKNOWN);
+    }
+
+    /**
+     * Schedules the task on the best possible executor based on the parameters, and records its
+     * latencies as the ones of a call of {@code apiMethod}.
+     */
+    static void schedule(
+            Context context,
+            @NonNull Runnable task,
+            int uid,
+            boolean isController,
+            @ApiMethods.ApiMethod int apiMethod) {
+        final long scheduledTimeNanos = System.nanoTime();
         if (isController) {
-            sControllerExecutor.execute(getSafeRunnable(task));
+            sControllerExecutor.execute(
+                    getSafeRunnable(
+                            withLatencyStats(
+                                    task,
+                                    apiMethod,
+                                    ApiLatencyStats.CALLER_FOREGROUND_STATE_UNSPECIFIED,
+                                    ApiLatencyStats.POOL_CONTROLLER,
+                                    scheduledTimeNanos)));
             return;
         }
 
@@ -159,7 +211,14 @@ public final class HealthConnectThreadScheduler {
                                     // this task is no longer in foreground we don't want it to
                                     // consume foreground resource anymore.
                                     HEALTH_CONNECT_BACKGROUND_ROUND_ROBIN_SCHEDULER.addTask(
-                                            uid, task);
+                                            uid,
+                                            withLatencyStats(
+                                                    task,
+                                                    apiMethod,
+                                                    ApiLatencyStats
+                                                            .CALLER_FOREGROUND_STATE_FOREGROUND,
+                                                    ApiLatencyStats.POOL_BACKGROUND,
+                                                    scheduledTimeNanos));
                                     sBackgroundThreadExecutor.execute(
                                             () ->
                                                     HEALTH_CONNECT_BACKGROUND_ROUND_ROBIN_SCHEDULER
@@ -168,10 +227,23 @@ public final class HealthConnectThreadScheduler {
                                     return;
                                 }
 
-                                task.run();
+                                withLatencyStats(
+                                                task,
+                                                apiMethod,
+                                                ApiLatencyStats.CALLER_FOREGROUND_STATE_FOREGROUND,
+                                                ApiLatencyStats.POOL_FOREGROUND,
+                                                scheduledTimeNanos)
+                                        .run();
                             }));
         } else {
-            HEALTH_CONNECT_BACKGROUND_ROUND_ROBIN_SCHEDULER.addTask(uid, task);
+            HEALTH_CONNECT_BACKGROUND_ROUND_ROBIN_SCHEDULER.addTask(
+                    uid,
+                    withLatencyStats(
+                            task,
+                            apiMethod,
+                            ApiLatencyStats.CALLER_FOREGROUND_STATE_BACKGROUND,
+                            ApiLatencyStats.POOL_BACKGROUND,
+                            scheduledTimeNanos));
             sBackgroundThreadExecutor.execute(
                     getSafeRunnable(
                             () ->
@@ -181,6 +253,37 @@ public final class HealthConnectThreadScheduler {
         }
     }
 
+    // Wraps the task to record the time it waited since being scheduled and the time it ran.
+    private static Runnable withLatencyStats(
+            Runnable task,
+            @ApiMethods.ApiMethod int apiMethod,
+            @ApiLatencyStats.CallerForegroundState int callerForegroundState,
+            @ApiLatencyStats.Pool int pool,
+            long scheduledTimeNanos) {
+        return () -> {
+            final long startTimeNanos = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                ApiLatencyStats.getInstance()
+                        .record(
+                                apiMethod,
+                                callerForegroundState,
+                                pool,
+                                startTimeNanos - scheduledTimeNanos,
+                                System.nanoTime() - startTimeNanos);
+            }
+        };
+    }
+
+    private static ScheduledThreadPoolExecutor createInternalDelayExecutor() {
+        ScheduledThreadPoolExecutor executor =
+                new ScheduledThreadPoolExecutor(NUM_EXECUTOR_THREADS_INTERNAL_DELAY);
+        executor.setKeepAliveTime(KEEP_ALIVE_TIME_INTERNAL_DELAY, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private static boolean isUidInForeground(Context context, int uid) {
         ActivityManager activityManager = context.getSystemService(ActivityManager.class);
         Objects.requireNonNull(activityManager);
@@ -51,6 +51,7 @@ import android.content.Context;
 import android.content.ContextWrapper;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.health.connect.HealthConnectDataState;
 import android.health.connect.HealthConnectException;
 import android.health.connect.HealthConnectManager.DataDownloadState;
@@ -76,6 +77,7 @@ import android.util.Slog;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.healthconnect.HealthConnectDeviceConfigManager;
 import com.android.server.healthconnect.HealthConnectThreadScheduler;
 import com.android.server.healthconnect.migration.MigrationStateManager;
 import com.android.server.healthconnect.permission.FirstGrantTimeManager;
@@ -94,16 +96,20 @@ import com.android.server.healthconnect.storage.utils.RecordHelperProvider;
 import com.android.server.healthconnect.utils.FilesUtil;
 import com.android.server.healthconnect.utils.RunnableWithThrowable;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
@@ -113,6 +119,8 @@ import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Class that takes up the responsibility to perform backup / restore related tasks.
@@ -193,6 +201,9 @@ public final class BackupRestore {
     @VisibleForTesting
     static final String STAGED_DATABASE_NAME = "healthconnect_staged.db";
 
+    private static final String DATABASE_SNAPSHOT_FILE_NAME = "healthconnect_snapshot.db";
+    private static final int BACKUP_BUFFER_SIZE_BYTES = 64 * 1024;
+
     private static final String TAG = "HealthConnectBackupRestore";
     private final ReentrantReadWriteLock mStatesLock = new ReentrantReadWriteLock(true);
     private final FirstGrantTimeManager mFirstGrantTimeManager;
@@ -282,7 +293,7 @@ public final class BackupRestore {
                             Path destinationPath =
                                     FileSystems.getDefault().getPath(destination.getAbsolutePath());
                             Files.copy(
-                                    inputStream,
+                                    getDecompressedInputStream(inputStream),
                                     destinationPath,
                                     StandardCopyOption.REPLACE_EXISTING);
                         } catch (IOException e) {
@@ -355,24 +366,85 @@ public final class BackupRestore {
         Map<String, ParcelFileDescriptor> pfdsByFileName =
                 stageRemoteDataRequest.getPfdsByFileName();
 
-        var backupFilesByFileNames = getBackupFilesByFileNames(userHandle);
-        pfdsByFileName.forEach(
-                (fileName, pfd) -> {
-                    @SuppressWarnings("NullAway")
-                    Path sourceFilePath = backupFilesByFileNames.get(fileName).toPath();
-                    try (FileOutputStream outputStream =
-                            new FileOutputStream(pfd.getFileDescriptor())) {
-                        Files.copy(sourceFilePath, outputStream);
-                    } catch (IOException | SecurityException e) {
-                        Slog.e(TAG, "Failed to send " + fileName + " for backup", e);
-                    } finally {
-                        try {
-                            pfd.close();
-                        } catch (IOException e) {
-                            Slog.e(TAG, "Failed to close " + fileName + " for backup", e);
+        var backupFilesByFileNames =
+                getBackupFilesByFileNames(userHandle, pfdsByFileName.keySet());
+        boolean compress =
+                HealthConnectDeviceConfigManager.getInitialisedInstance()
+                        .isBackupCompressionEnabled();
+        try {
+            pfdsByFileName.forEach(
+                    (fileName, pfd) -> {
+                        File sourceFile = backupFilesByFileNames.get(fileName);
+                        if (sourceFile == null) {
+                            Slog.e(TAG, "No data to send for " + fileName);
+                            closeBackupFile(fileName, pfd);
+                            return;
                         }
-                    }
-                });
+                        try (FileOutputStream outputStream =
+                                new FileOutputStream(pfd.getFileDescriptor())) {
+                            writeBackupFile(sourceFile.toPath(), outputStream, compress);
+                        } catch (IOException | SecurityException e) {
+                            Slog.e(TAG, "Failed to send " + fileName + " for backup", e);
+                        } finally {
+                            closeBackupFile(fileName, pfd);
+                        }
+                    });
+        } finally {
+            new File(
+                            getBackupDataDirectoryForUser(userHandle.getIdentifier()),
+                            DATABASE_SNAPSHOT_FILE_NAME)
+                    .delete();
+        }
+    }
+
+    private static void closeBackupFile(String fileName, ParcelFileDescriptor pfd) {
+        try {
+            pfd.close();
+        } catch (IOException e) {
+            Slog.e(TAG, "Failed to close " + fileName + " for backup", e);
+        }
+    }
+
+    /**
+     * Writes the file at {@code sourceFilePath} to {@code outputStream}, either gzip compressed or
+     * as is. Uncompressed files are transferred without copying through a user space buffer.
+     */
+    private static void writeBackupFile(
+            Path sourceFilePath, FileOutputStream outputStream, boolean compress)
+            throws IOException {
+        if (compress) {
+            try (GZIPOutputStream gzipOutputStream =
+                    new GZIPOutputStream(outputStream, BACKUP_BUFFER_SIZE_BYTES)) {
+                Files.copy(sourceFilePath, gzipOutputStream);
+            }
+            return;
+        }
+
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ)) {
+            FileChannel destination = outputStream.getChannel();
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, destination);
+            }
+        }
+    }
+
+    /**
+     * Returns a stream reading the content of {@code inputStream}, decompressed if it was
+     * compressed by {@link #writeBackupFile}.
+     */
+    private static InputStream getDecompressedInputStream(InputStream inputStream)
+            throws IOException {
+        BufferedInputStream bufferedInputStream =
+                new BufferedInputStream(inputStream, BACKUP_BUFFER_SIZE_BYTES);
+        bufferedInputStream.mark(2);
+        int magic = bufferedInputStream.read() | (bufferedInputStream.read() << 8);
+        bufferedInputStream.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC) {
+            return new GZIPInputStream(bufferedInputStream, BACKUP_BUFFER_SIZE_BYTES);
+        }
+        return bufferedInputStream;
     }
 
     /** Get the file names of all the files that are transported during backup / restore. */
@@ -626,14 +698,17 @@ public final class BackupRestore {
         setInternalRestoreState(INTERNAL_RESTORE_STATE_MERGING_DONE, false);
     }
 
-    private Map<String, File> getBackupFilesByFileNames(UserHandle userHandle) {
+    private Map<String, File> getBackupFilesByFileNames(
+            UserHandle userHandle, Set<String> fileNames) {
         ArrayMap<String, File> backupFilesByFileNames = new ArrayMap<>();
 
-        File databasePath = TransactionManager.getInitialisedInstance().getDatabasePath();
-        backupFilesByFileNames.put(STAGED_DATABASE_NAME, databasePath);
-
         File backupDataDir = getBackupDataDirectoryForUser(userHandle.getIdentifier());
         backupDataDir.mkdirs();
+        if (fileNames.contains(STAGED_DATABASE_NAME)) {
+            backupFilesByFileNames.put(
+                    STAGED_DATABASE_NAME, createDatabaseSnapshot(backupDataDir));
+        }
+
         File grantTimeFile = new File(backupDataDir, GRANT_TIME_FILE_NAME);
         try {
             grantTimeFile.createNewFile();
@@ -647,6 +722,32 @@ public final class BackupRestore {
         return backupFilesByFileNames;
     }
 
+    /**
+     * Returns a copy of the database to back up. The copy is consistent even if there are
+     * concurrent writes, and doesn't contain free pages so less data is sent. Falls back to the
+     * database file if the copy can't be made.
+     */
+    private static File createDatabaseSnapshot(File backupDataDir) {
+        TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
+        File snapshotFile = new File(backupDataDir, DATABASE_SNAPSHOT_FILE_NAME);
+        // VACUUM INTO fails if the destination file exists and isn't empty.
+        snapshotFile.delete();
+        try {
+            transactionManager.vacuumInto(snapshotFile);
+            return snapshotFile;
+        } catch (SQLiteException e) {
+            Slog.e(TAG, "Could not create the database snapshot for backup.", e);
+            snapshotFile.delete();
+            // Recent commits may only be in the write-ahead log.
+            try {
+                transactionManager.checkpointWal();
+            } catch (SQLiteException checkpointException) {
+                Slog.e(TAG, "Could not checkpoint the database for backup.", checkpointException);
+            }
+            return transactionManager.getDatabasePath();
+        }
+    }
+
     @DataDownloadState private int getDataDownloadState() {
         mStatesLock.readLock().lock();
         try {
@@ -1112,9 +1213,9 @@ public final class BackupRestore {
 
     private Cursor read(ReadTableRequest request) {
         synchronized (mMergingLock) {
-            return getStagedDatabase()
-                    .getReadableDatabase()
-                    .rawQuery(request.getReadCommand(), null);
+            SQLiteDatabase db = getStagedDatabase().getReadableDatabase();
+            request.loadJoinTablePartitions(db);
+            return db.rawQuery(request.getReadCommand(), null);
 
         }
     }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.logging;
+
+import android.annotation.IntDef;
+import android.annotation.NonNull;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.healthconnect.logging.HealthConnectServiceLogger.ApiMethods;
+
+import java.io.PrintWriter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of the API calls, per API, caller foreground state and thread pool the call
+ * ran on, which are printed by dumpsys.
+ *
+ * <p>The time a call waited in the queue of its pool is recorded apart from the time it took to
+ * run, to tell a backlog of the scheduler apart from slow queries.
+ *
+ * @hide
+ */
+public final class ApiLatencyStats {
+    public static final int POOL_FOREGROUND = 0;
+    public static final int POOL_BACKGROUND = 1;
+    public static final int POOL_CONTROLLER = 2;
+
+    /** @hide */
+    @IntDef({POOL_FOREGROUND, POOL_BACKGROUND, POOL_CONTROLLER})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Pool {}
+
+    public static final int CALLER_FOREGROUND_STATE_UNSPECIFIED = 0;
+    public static final int CALLER_FOREGROUND_STATE_FOREGROUND = 1;
+    public static final int CALLER_FOREGROUND_STATE_BACKGROUND = 2;
+
+    /** @hide */
+    @IntDef({
+        CALLER_FOREGROUND_STATE_UNSPECIFIED,
+        CALLER_FOREGROUND_STATE_FOREGROUND,
+        CALLER_FOREGROUND_STATE_BACKGROUND
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface CallerForegroundState {}
+
+    private static final double[] DUMPED_PERCENTILES = {50, 95, 99};
+
+    private static final ApiLatencyStats sInstance = new ApiLatencyStats();
+
+    private final ConcurrentHashMap<Integer, Latencies> mLatencies = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    ApiLatencyStats() {}
+
+    @NonNull
+    public static ApiLatencyStats getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Records the latencies of a call of {@code apiMethod}.
+     *
+     * @param queueWaitNanos time from the call being scheduled to it starting to run.
+     * @param executionNanos time the call took to run.
+     */
+    public void record(
+            @ApiMethods.ApiMethod int apiMethod,
+            @CallerForegroundState int callerForegroundState,
+            @Pool int pool,
+            long queueWaitNanos,
+            long executionNanos) {
+        int key = getKey(apiMethod, callerForegroundState, pool);
+        Latencies latencies = mLatencies.get(key);
+        if (latencies == null) {
+            latencies = mLatencies.computeIfAbsent(key, unused -> new Latencies());
+        }
+        latencies.mQueueWait.record(TimeUnit.NANOSECONDS.toMicros(queueWaitNanos));
+        latencies.mExecution.record(TimeUnit.NANOSECONDS.toMicros(executionNanos));
+    }
+
+    /** Prints the percentiles of the latencies recorded so far, in milliseconds. */
+    public void dump(@NonNull PrintWriter writer) {
+        writer.println("API latencies (ms):");
+        List<Integer> keys = new ArrayList<>(mLatencies.keySet());
+        if (keys.isEmpty()) {
+            writer.println("  None");
+            return;
+        }
+        Collections.sort(keys);
+        for (int key : keys) {
+            Latencies latencies = mLatencies.get(key);
+            writer.println(
+                    "  "
+                            + getApiMethodName(key >>> 8)
+                            + ", caller "
+                            + getCallerForegroundStateName((key >>> 4) & 0xF)
+                            + ", "
+                            + getPoolName(key & 0xF)
+                            + " pool: "
+                            + latencies.mExecution.getCount()
+                            + " calls");
+            writer.println("    queue wait: " + getPercentiles(latencies.mQueueWait));
+            writer.println("    execution: " + getPercentiles(latencies.mExecution));
+        }
+    }
+
+    private static int getKey(int apiMethod, int callerForegroundState, int pool) {
+        return apiMethod << 8 | callerForegroundState << 4 | pool;
+    }
+
+    private static String getPercentiles(LatencyHistogram histogram) {
+        StringBuilder builder = new StringBuilder();
+        for (double percentile : DUMPED_PERCENTILES) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(
+                    String.format(
+                            Locale.US,
+                            "p%d=%.3f",
+                            (int) percentile,
+                            histogram.getValueAtPercentile(percentile) / 1000d));
+        }
+        return builder.toString();
+    }
+
+    private static String getApiMethodName(int apiMethod) {
+        switch (apiMethod) {
+            case ApiMethods.DELETE_DATA:
+                return "DELETE_DATA";
+            case ApiMethods.GET_CHANGES:
+                return "GET_CHANGES";
+            case ApiMethods.GET_CHANGES_TOKEN:
+                return "GET_CHANGES_TOKEN";
+            case ApiMethods.GET_GRANTED_PERMISSIONS:
+                return "GET_GRANTED_PERMISSIONS";
+            case ApiMethods.INSERT_DATA:
+                return "INSERT_DATA";
+            case ApiMethods.READ_AGGREGATED_DATA:
+                return "READ_AGGREGATED_DATA";
+            case ApiMethods.READ_DATA:
+                return "READ_DATA";
+            case ApiMethods.REVOKE_ALL_PERMISSIONS:
+                return "REVOKE_ALL_PERMISSIONS";
+            case ApiMethods.UPDATE_DATA:
+                return "UPDATE_DATA";
+            case ApiMethods.API_METHOD_UNKNOWN:
+            default:
+                return "API_METHOD_UNKNOWN";
+        }
+    }
+
+    private static String getCallerForegroundStateName(int callerForegroundState) {
+        switch (callerForegroundState) {
+            case CALLER_FOREGROUND_STATE_FOREGROUND:
+                return "in foreground";
+            case CALLER_FOREGROUND_STATE_BACKGROUND:
+                return "in background";
+            case CALLER_FOREGROUND_STATE_UNSPECIFIED:
+            default:
+                return "state unspecified";
+        }
+    }
+
+    private static String getPoolName(int pool) {
+        switch (pool) {
+            case POOL_FOREGROUND:
+                return "foreground";
+            case POOL_BACKGROUND:
+                return "background";
+            case POOL_CONTROLLER:
+            default:
+                return "controller";
+        }
+    }
+
+    private static final class Latencies {
+        private final LatencyHistogram mQueueWait = new LatencyHistogram();
+        private final LatencyHistogram mExecution = new LatencyHistogram();
+    }
+}
@@ -29,6 +29,7 @@ import android.health.connect.migration.PermissionMigrationPayload;
 import android.health.connect.migration.PriorityMigrationPayload;
 import android.health.connect.migration.RecordMigrationPayload;
 import android.os.UserHandle;
+import android.util.Pair;
 
 import com.android.internal.annotations.GuardedBy;
 import com.android.server.healthconnect.permission.FirstGrantTimeManager;
@@ -46,7 +47,19 @@ import com.android.server.healthconnect.storage.utils.StorageUtils;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -59,6 +72,15 @@ public final class DataMigrationManager {
 
     private static final Object sLock = new Object();
 
+    private static final int RECORDS_CHUNK_SIZE = 500;
+    private static final int PREPARE_THREADS_COUNT =
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final long PREPARE_THREADS_KEEP_ALIVE_TIME = 60L;
+
+    // Executor building the records of migrateRecords, its threads are only started on first use
+    // and stop when idle, as migrations are rare.
+    private static final ThreadPoolExecutor sPrepareExecutor = createPrepareExecutor();
+
     private final Context mUserContext;
     private final TransactionManager mTransactionManager;
     private final HealthConnectPermissionHelper mPermissionHelper;
@@ -108,15 +130,38 @@ public final class DataMigrationManager {
                         // Grab the lock again to make sure error-prone is happy, and so that tests
                         // break if the following code is run asynchronously
                         synchronized (sLock) {
-                            for (MigrationEntity entity : entities) {
-                                migrateEntity(db, entity);
-                            }
+                            migrateEntities(db, entities);
                         }
                     });
         }
     }
 
-    /** Migrates the provided {@link MigrationEntity}. Must be called inside a DB transaction. */
+    /**
+     * Migrates the provided entities in order. Consecutive records are migrated together by
+     * {@link #migrateRecords}. Must be called inside a DB transaction.
+     */
+    @GuardedBy("sLock")
+    private void migrateEntities(
+            @NonNull SQLiteDatabase db, @NonNull Collection<MigrationEntity> entities)
+            throws EntityWriteException {
+        final List<MigrationEntity> records = new ArrayList<>();
+        for (MigrationEntity entity : entities) {
+            if (entity.getPayload() instanceof RecordMigrationPayload) {
+                records.add(entity);
+                continue;
+            }
+
+            migrateRecords(db, records);
+            records.clear();
+            migrateEntity(db, entity);
+        }
+        migrateRecords(db, records);
+    }
+
+    /**
+     * Migrates the provided {@link MigrationEntity}, which must not be a record. Must be called
+     * inside a DB transaction.
+     */
     @GuardedBy("sLock")
     private void migrateEntity(@NonNull SQLiteDatabase db, @NonNull MigrationEntity entity)
             throws EntityWriteException {
@@ -126,9 +171,7 @@ public final class DataMigrationManager {
             }
 
             final MigrationPayload payload = entity.getPayload();
-            if (payload instanceof RecordMigrationPayload) {
-                migrateRecord(db, (RecordMigrationPayload) payload);
-            } else if (payload instanceof PermissionMigrationPayload) {
+            if (payload instanceof PermissionMigrationPayload) {
                 migratePermissions((PermissionMigrationPayload) payload);
             } else if (payload instanceof AppInfoMigrationPayload) {
                 migrateAppInfo((AppInfoMigrationPayload) payload);
@@ -144,29 +187,144 @@ public final class DataMigrationManager {
         }
     }
 
+    /**
+     * Migrates the provided record entities. Must be called inside a DB transaction.
+     *
+     * <p>Records are processed in chunks of {@link #RECORDS_CHUNK_SIZE}. App and device info
+     * ids are populated on the calling thread, as they may write to the DB, while UUIDs and
+     * content values are built in parallel on a shared executor. The next chunk is prepared while
+     * the current one is written, grouped by table. Activity dates are de-duplicated and written
+     * once at the end.
+     */
     @GuardedBy("sLock")
-    private void migrateRecord(
-            @NonNull SQLiteDatabase db, @NonNull RecordMigrationPayload payload) {
-        long recordRowId = mTransactionManager.insertOrIgnore(db, parseRecord(payload));
-        if (recordRowId != -1) {
+    private void migrateRecords(
+            @NonNull SQLiteDatabase db, @NonNull List<MigrationEntity> entities)
+            throws EntityWriteException {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        final Set<Pair<Integer, Long>> activityDates = new LinkedHashSet<>();
+        CompletableFuture<List<PreparedRecord>> nextChunk =
+                prepareRecords(entities, 0, sPrepareExecutor);
+        for (int start = 0; start < entities.size(); start += RECORDS_CHUNK_SIZE) {
+            final CompletableFuture<List<PreparedRecord>> chunk = nextChunk;
+            nextChunk = prepareRecords(entities, start + RECORDS_CHUNK_SIZE, sPrepareExecutor);
+            writeRecords(db, getPreparedRecords(Objects.requireNonNull(chunk)), activityDates);
+        }
+
+        for (Pair<Integer, Long> activityDate : activityDates) {
             mTransactionManager.insertOrIgnore(
-                    db, mActivityDateHelper.getUpsertTableRequest(payload.getRecordInternal()));
+                    db,
+                    mActivityDateHelper.getUpsertTableRequest(
+                            activityDate.first, activityDate.second));
+        }
+    }
+
+    /**
+     * Starts preparing the chunk of {@code entities} starting at {@code start} on {@code
+     * executor}, returns null if there is no such chunk.
+     */
+    @Nullable
+    @GuardedBy("sLock")
+    private CompletableFuture<List<PreparedRecord>> prepareRecords(
+            @NonNull List<MigrationEntity> entities, int start, @NonNull Executor executor) {
+        if (start >= entities.size()) {
+            return null;
+        }
+
+        final int end = Math.min(start + RECORDS_CHUNK_SIZE, entities.size());
+        final List<PreparedRecord> records = new ArrayList<>(end - start);
+        for (MigrationEntity entity : entities.subList(start, end)) {
+            final PreparedRecord record = new PreparedRecord(entity);
+            try {
+                mAppInfoHelper.populateAppInfoId(record.mRecordInternal, mUserContext, false);
+                mDeviceInfoHelper.populateDeviceInfoId(record.mRecordInternal);
+            } catch (RuntimeException e) {
+                record.mError = e;
+            }
+            records.add(record);
+        }
+
+        final int sliceSize =
+                (records.size() + PREPARE_THREADS_COUNT - 1) / PREPARE_THREADS_COUNT;
+        final List<CompletableFuture<Void>> slices = new ArrayList<>(PREPARE_THREADS_COUNT);
+        for (int sliceStart = 0; sliceStart < records.size(); sliceStart += sliceSize) {
+            final int sliceEnd = Math.min(sliceStart + sliceSize, records.size());
+            final List<PreparedRecord> slice = records.subList(sliceStart, sliceEnd);
+            slices.add(
+                    CompletableFuture.runAsync(
+                            () -> slice.forEach(this::buildUpsertRequests), executor));
+        }
+        return CompletableFuture.allOf(slices.toArray(new CompletableFuture<?>[0]))
+                .thenApply(unused -> records);
+    }
+
+    /** Builds the requests for {@code record}. Runs on the executor preparing its chunk. */
+    private void buildUpsertRequests(@NonNull PreparedRecord record) {
+        if (record.mError != null) {
+            return;
+        }
+
+        try {
+            final RecordInternal<?> recordInternal = record.mRecordInternal;
+            if (recordInternal.getUuid() == null) {
+                StorageUtils.addNameBasedUUIDTo(recordInternal);
+            }
+            record.mUpsertRequest =
+                    mRecordHelperProvider
+                            .getRecordHelper(recordInternal.getRecordType())
+                            .getUpsertTableRequest(recordInternal);
+            record.mActivityDate =
+                    Pair.create(
+                            recordInternal.getRecordType(),
+                            ActivityDateHelper.getEpochDays(recordInternal));
+        } catch (RuntimeException e) {
+            record.mError = e;
         }
     }
 
     @NonNull
-    private UpsertTableRequest parseRecord(@NonNull RecordMigrationPayload payload) {
-        final RecordInternal<?> record = payload.getRecordInternal();
-        mAppInfoHelper.populateAppInfoId(record, mUserContext, false);
-        mDeviceInfoHelper.populateDeviceInfoId(record);
+    private static List<PreparedRecord> getPreparedRecords(
+            @NonNull CompletableFuture<List<PreparedRecord>> chunk) {
+        try {
+            return chunk.join();
+        } catch (CompletionException e) {
+            // Errors of individual records are caught when preparing them
+            throw new IllegalStateException("Failed to prepare records", e.getCause());
+        }
+    }
 
-        if (record.getUuid() == null) {
-            StorageUtils.addNameBasedUUIDTo(record);
+    /**
+     * Writes the prepared {@code records}, grouped by table, and adds the activity dates of the
+     * inserted ones to {@code activityDates}.
+     */
+    @GuardedBy("sLock")
+    private void writeRecords(
+            @NonNull SQLiteDatabase db,
+            @NonNull List<PreparedRecord> records,
+            @NonNull Set<Pair<Integer, Long>> activityDates)
+            throws EntityWriteException {
+        final Map<String, List<PreparedRecord>> recordsByTable = new LinkedHashMap<>();
+        for (PreparedRecord record : records) {
+            if (record.mError != null) {
+                throw new EntityWriteException(record.mEntityId, record.mError);
+            }
+            final String table = record.mUpsertRequest.getTable();
+            recordsByTable.computeIfAbsent(table, unused -> new ArrayList<>()).add(record);
         }
 
-        return mRecordHelperProvider
-                .getRecordHelper(record.getRecordType())
-                .getUpsertTableRequest(record);
+        for (List<PreparedRecord> tableRecords : recordsByTable.values()) {
+            for (PreparedRecord record : tableRecords) {
+                try {
+                    if (mTransactionManager.insertOrIgnore(db, record.mUpsertRequest) != -1) {
+                        activityDates.add(record.mActivityDate);
+                    }
+                } catch (RuntimeException e) {
+                    throw new EntityWriteException(record.mEntityId, e);
+                }
+            }
+        }
     }
 
     @GuardedBy("sLock")
@@ -253,6 +411,41 @@ public final class DataMigrationManager {
         return mTransactionManager.insertOrIgnore(db, request) != -1;
     }
 
+    private static ThreadPoolExecutor createPrepareExecutor() {
+        final AtomicInteger threadsCount = new AtomicInteger();
+        final ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(
+                        PREPARE_THREADS_COUNT,
+                        PREPARE_THREADS_COUNT,
+                        PREPARE_THREADS_KEEP_ALIVE_TIME,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        runnable ->
+                                new Thread(
+                                        runnable,
+                                        "HealthConnectMigrationPrepare-"
+                                                + threadsCount.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** A record being migrated, with the requests to write it once prepared. */
+    private static final class PreparedRecord {
+        private final String mEntityId;
+        private final RecordInternal<?> mRecordInternal;
+        // Written by the thread preparing the record, read after the chunk future completed.
+        private UpsertTableRequest mUpsertRequest;
+        private Pair<Integer, Long> mActivityDate;
+        @Nullable private RuntimeException mError;
+
+        @SuppressWarnings("NullAway.Init")
+        PreparedRecord(@NonNull MigrationEntity entity) {
+            mEntityId = entity.getEntityId();
+            final RecordMigrationPayload payload = (RecordMigrationPayload) entity.getPayload();
+            mRecordInternal = payload.getRecordInternal();
+        }
+    }
+
     /** Indicates an error during entity migration. */
     public static final class EntityWriteException extends Exception {
         private final String mEntityId;
@@ -18,11 +18,13 @@ package com.android.server.healthconnect.permission;
 
 import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.os.UserHandle;
 
 import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.time.Instant;
 
 /**
  * Class for managing health permissions first grant time datastore.
@@ -59,6 +61,30 @@ public interface FirstGrantTimeDatastore {
             @NonNull UserHandle user,
             @DataType int dataType);
 
+    /**
+     * Sets the first grant time of {@code packageName} for given user, or removes it if {@code
+     * time} is null, leaving the other grant times unchanged.
+     *
+     * @hide
+     */
+    void writePackageGrantTimeForUser(
+            @NonNull String packageName,
+            @Nullable Instant time,
+            @NonNull UserHandle user,
+            @DataType int dataType);
+
+    /**
+     * Sets the first grant time of {@code sharedUserName} for given user, or removes it if {@code
+     * time} is null, leaving the other grant times unchanged.
+     *
+     * @hide
+     */
+    void writeSharedUserGrantTimeForUser(
+            @NonNull String sharedUserName,
+            @Nullable Instant time,
+            @NonNull UserHandle user,
+            @DataType int dataType);
+
     /**
      * Returns the name of the files used by the store for the given user.
      *
@@ -73,6 +99,6 @@ public interface FirstGrantTimeDatastore {
      */
     @NonNull
     static FirstGrantTimeDatastore createInstance() {
-        return new FirstGrantTimeDatastoreXmlPersistence();
+        return new FirstGrantTimeDatastoreBinaryPersistence();
     }
 }
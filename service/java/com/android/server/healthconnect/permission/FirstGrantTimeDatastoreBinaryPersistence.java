@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.permission;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.health.connect.Constants;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.healthconnect.utils.FilesUtil;
+
+import libcore.io.IoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Binary persistence of the first grant times. The grant times of a user are stored as a snapshot,
+ * and the grant times set since are appended to a journal next to it.
+ *
+ * <p>Setting a grant time only appends a record to the journal, which is compacted into a new
+ * snapshot once it holds more records than the snapshot has grant times. So setting the grant times
+ * of many apps costs I/O proportional to the number of changes. The grant times are cached once
+ * read. Grant times written by {@link FirstGrantTimeDatastoreXmlPersistence} are migrated when they
+ * are first read, and their file is kept so that a rollback doesn't lose them.
+ *
+ * @hide
+ */
+class FirstGrantTimeDatastoreBinaryPersistence implements FirstGrantTimeDatastore {
+    private static final String TAG = "HealthConnectFirstGrantTimeDatastore";
+    private static final String GRANT_TIME_FILE_NAME = "health-permissions-first-grant-times.bin";
+
+    private static final String STAGED_GRANT_TIME_FILE_NAME =
+            "staged-health-permissions-first-grant-times.bin";
+
+    private static final String JOURNAL_FILE_SUFFIX = ".journal";
+    private static final int FORMAT_VERSION = 1;
+    private static final byte RECORD_TYPE_PACKAGE = 0;
+    private static final byte RECORD_TYPE_SHARED_USER = 1;
+    // Package names are at most a few hundred bytes, so larger records are corrupt.
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    /** Journals with fewer records are not compacted, even if the snapshot is smaller. */
+    @VisibleForTesting static final int MIN_RECORDS_TO_COMPACT = 32;
+
+    private final FirstGrantTimeDatastore mLegacyDatastore =
+            new FirstGrantTimeDatastoreXmlPersistence();
+
+    private final Random mRandom = new Random();
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final Map<File, CachedState> mCachedStates = new ArrayMap<>();
+
+    FirstGrantTimeDatastoreBinaryPersistence() {}
+
+    /**
+     * Read {@link UserGrantTimeState for given user}.
+     *
+     * @hide
+     */
+    @SuppressWarnings("NullAway")
+    @Nullable
+    @Override
+    public UserGrantTimeState readForUser(@NonNull UserHandle user, @DataType int dataType) {
+        synchronized (mLock) {
+            UserGrantTimeState state = getCachedStateLocked(user, dataType).mState;
+            return state != null ? copyOf(state) : null;
+        }
+    }
+
+    /**
+     * Write {@link UserGrantTimeState for given user}.
+     *
+     * @hide
+     */
+    @Override
+    public void writeForUser(
+            @NonNull UserGrantTimeState grantTimesState,
+            @NonNull UserHandle user,
+            @DataType int dataType) {
+        synchronized (mLock) {
+            CachedState cachedState = getCachedStateLocked(user, dataType);
+            cachedState.mState = copyOf(grantTimesState);
+            writeSnapshotLocked(getFile(user, dataType), cachedState);
+        }
+    }
+
+    @Override
+    public void writePackageGrantTimeForUser(
+            @NonNull String packageName,
+            @Nullable Instant time,
+            @NonNull UserHandle user,
+            @DataType int dataType) {
+        writeGrantTimeForUser(RECORD_TYPE_PACKAGE, packageName, time, user, dataType);
+    }
+
+    @Override
+    public void writeSharedUserGrantTimeForUser(
+            @NonNull String sharedUserName,
+            @Nullable Instant time,
+            @NonNull UserHandle user,
+            @DataType int dataType) {
+        writeGrantTimeForUser(RECORD_TYPE_SHARED_USER, sharedUserName, time, user, dataType);
+    }
+
+    @Override
+    public File getFile(@NonNull UserHandle user, @DataType int sourceType) {
+        String fileName =
+                sourceType == FirstGrantTimeDatastore.DATA_TYPE_CURRENT
+                        ? GRANT_TIME_FILE_NAME
+                        : STAGED_GRANT_TIME_FILE_NAME;
+        return new File(
+                FilesUtil.getDataSystemCeHCDirectoryForUser(user.getIdentifier()), fileName);
+    }
+
+    private void writeGrantTimeForUser(
+            byte recordType,
+            @NonNull String name,
+            @Nullable Instant time,
+            @NonNull UserHandle user,
+            @DataType int dataType) {
+        Objects.requireNonNull(name);
+        synchronized (mLock) {
+            File file = getFile(user, dataType);
+            CachedState cachedState = getCachedStateLocked(user, dataType);
+            if (cachedState.mState == null) {
+                if (time == null) {
+                    return;
+                }
+                // The journal can only be replayed on a snapshot, so start with an empty one.
+                cachedState.mState =
+                        new UserGrantTimeState(FirstGrantTimeManager.CURRENT_VERSION);
+                applyRecord(cachedState.mState, recordType, name, time);
+                writeSnapshotLocked(file, cachedState);
+                return;
+            }
+
+            Map<String, Instant> grantTimes = getGrantTimes(cachedState.mState, recordType);
+            if (Objects.equals(grantTimes.get(name), time)
+                    && (time != null || !grantTimes.containsKey(name))) {
+                return;
+            }
+            applyRecord(cachedState.mState, recordType, name, time);
+            appendRecordLocked(file, cachedState, recordType, name, time);
+        }
+    }
+
+    @GuardedBy("mLock")
+    @NonNull
+    private CachedState getCachedStateLocked(@NonNull UserHandle user, @DataType int dataType) {
+        File file = getFile(user, dataType);
+        CachedState cachedState = mCachedStates.get(file);
+        if (cachedState == null) {
+            cachedState = readLocked(file, user, dataType);
+            mCachedStates.put(file, cachedState);
+        }
+        return cachedState;
+    }
+
+    @GuardedBy("mLock")
+    @NonNull
+    private CachedState readLocked(
+            @NonNull File file, @NonNull UserHandle user, @DataType int dataType) {
+        if (Constants.DEBUG) {
+            Log.d(TAG, "Reading grant times from " + file);
+        }
+        CachedState cachedState = new CachedState();
+        boolean snapshotExists;
+        try {
+            snapshotExists = readSnapshot(file, cachedState);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + file + ", dropping its grant times", e);
+            cachedState.mState = null;
+            return cachedState;
+        }
+        if (!snapshotExists) {
+            // Nothing was written in this format yet, so migrate the grant times written as xml.
+            UserGrantTimeState legacyState = readLegacyState(user, dataType);
+            if (legacyState != null) {
+                cachedState.mState = legacyState;
+                // The xml file is kept, for a rollback to a release which only reads it.
+                writeSnapshotLocked(file, cachedState);
+            }
+            return cachedState;
+        }
+
+        if (!replayJournal(getJournalFile(file), cachedState)) {
+            // Records appended after a corrupt one would be lost, so start a new journal.
+            writeSnapshotLocked(file, cachedState);
+        }
+        return cachedState;
+    }
+
+    @Nullable
+    private UserGrantTimeState readLegacyState(@NonNull UserHandle user, @DataType int dataType) {
+        try {
+            return mLegacyDatastore.readForUser(user, dataType);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Failed to migrate the grant times of " + user, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the snapshot in {@code file} into {@code cachedState}. Returns false if there is no
+     * snapshot.
+     */
+    private static boolean readSnapshot(@NonNull File file, @NonNull CachedState cachedState)
+            throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(
+                        new BufferedInputStream(new AtomicFile(file).openRead()))) {
+            int formatVersion = in.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unknown format version " + formatVersion);
+            }
+            cachedState.mJournalId = in.readLong();
+            int version = in.readInt();
+            Map<String, Instant> packageGrantTimes = readGrantTimes(in);
+            Map<String, Instant> sharedUserGrantTimes = readGrantTimes(in);
+            cachedState.mState =
+                    new UserGrantTimeState(packageGrantTimes, sharedUserGrantTimes, version);
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Applies the records of {@code journalFile} to {@code cachedState}, if it was started after
+     * its snapshot. Returns false if a corrupt record was found, e.g. after a partial write, in
+     * which case the records before it are applied.
+     */
+    private static boolean replayJournal(
+            @NonNull File journalFile, @NonNull CachedState cachedState) {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (in.readLong() != cachedState.mJournalId) {
+                // The journal was written before the snapshot, which already includes it.
+                journalFile.delete();
+                return true;
+            }
+            CRC32 crc = new CRC32();
+            while (true) {
+                int size;
+                try {
+                    size = in.readInt();
+                } catch (EOFException e) {
+                    return true;
+                }
+                if (size < 0 || size > MAX_RECORD_SIZE) {
+                    Log.w(TAG, "Invalid record size " + size + " in " + journalFile);
+                    return false;
+                }
+                byte[] record = new byte[size];
+                in.readFully(record);
+                long checksum = in.readLong();
+                crc.reset();
+                crc.update(record);
+                if (crc.getValue() != checksum) {
+                    Log.w(TAG, "Invalid record checksum in " + journalFile);
+                    return false;
+                }
+                applyRecord(cachedState.mState, record);
+                cachedState.mJournalRecords++;
+            }
+        } catch (FileNotFoundException e) {
+            return true;
+        } catch (EOFException e) {
+            Log.w(TAG, "Truncated record in " + journalFile);
+            return false;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + journalFile, e);
+            return false;
+        }
+    }
+
+    @GuardedBy("mLock")
+    private void appendRecordLocked(
+            @NonNull File file,
+            @NonNull CachedState cachedState,
+            byte recordType,
+            @NonNull String name,
+            @Nullable Instant time) {
+        if (cachedState.mJournalRecords >= MIN_RECORDS_TO_COMPACT
+                && cachedState.mJournalRecords >= getSize(cachedState.mState)) {
+            // The state already includes this record.
+            writeSnapshotLocked(file, cachedState);
+            return;
+        }
+
+        File journalFile = getJournalFile(file);
+        FileOutputStream outputStream = null;
+        try {
+            byte[] record = serializeRecord(recordType, name, time);
+            CRC32 crc = new CRC32();
+            crc.update(record);
+
+            outputStream = new FileOutputStream(journalFile, /* append= */ true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+            if (cachedState.mJournalRecords == 0) {
+                // In case the journal of a previous snapshot could not be deleted.
+                outputStream.getChannel().truncate(0);
+                out.writeLong(cachedState.mJournalId);
+            }
+            out.writeInt(record.length);
+            out.write(record);
+            out.writeLong(crc.getValue());
+            out.flush();
+            outputStream.getFD().sync();
+            cachedState.mJournalRecords++;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to " + journalFile + ", writing a snapshot instead", e);
+            writeSnapshotLocked(file, cachedState);
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+    }
+
+    /**
+     * Writes the state of {@code cachedState} as a new snapshot, and starts a new journal. Returns
+     * false if the snapshot could not be written.
+     */
+    @GuardedBy("mLock")
+    private boolean writeSnapshotLocked(@NonNull File file, @NonNull CachedState cachedState) {
+        if (Constants.DEBUG) {
+            Log.d(TAG, "Writing grant times to " + file);
+        }
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream outputStream = null;
+        long journalId = mRandom.nextLong();
+        UserGrantTimeState state = Objects.requireNonNull(cachedState.mState);
+        try {
+            outputStream = atomicFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(journalId);
+            out.writeInt(state.getVersion());
+            writeGrantTimes(out, state.getPackageGrantTimes());
+            writeGrantTimes(out, state.getSharedUserGrantTimes());
+            out.flush();
+            atomicFile.finishWrite(outputStream);
+        } catch (Exception e) {
+            Log.wtf(TAG, "Failed to write, restoring backup: " + file, e);
+            atomicFile.failWrite(outputStream);
+            return false;
+        }
+
+        // The journal of the previous snapshot is ignored from now on, even if this fails.
+        cachedState.mJournalId = journalId;
+        cachedState.mJournalRecords = 0;
+        getJournalFile(file).delete();
+        return true;
+    }
+
+    @NonNull
+    private static byte[] serializeRecord(
+            byte recordType, @NonNull String name, @Nullable Instant time) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(recordType);
+        out.writeUTF(name);
+        out.writeBoolean(time != null);
+        if (time != null) {
+            writeInstant(out, time);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void applyRecord(@NonNull UserGrantTimeState state, @NonNull byte[] record)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte recordType = in.readByte();
+        String name = in.readUTF();
+        Instant time = in.readBoolean() ? readInstant(in) : null;
+        if (recordType != RECORD_TYPE_PACKAGE && recordType != RECORD_TYPE_SHARED_USER) {
+            throw new IOException("Unknown record type " + recordType);
+        }
+        applyRecord(state, recordType, name, time);
+    }
+
+    private static void applyRecord(
+            @NonNull UserGrantTimeState state,
+            byte recordType,
+            @NonNull String name,
+            @Nullable Instant time) {
+        Map<String, Instant> grantTimes = getGrantTimes(state, recordType);
+        if (time == null) {
+            grantTimes.remove(name);
+        } else {
+            grantTimes.put(name, time);
+        }
+    }
+
+    @NonNull
+    private static Map<String, Instant> getGrantTimes(
+            @NonNull UserGrantTimeState state, byte recordType) {
+        return recordType == RECORD_TYPE_PACKAGE
+                ? state.getPackageGrantTimes()
+                : state.getSharedUserGrantTimes();
+    }
+
+    private static void writeGrantTimes(
+            @NonNull DataOutputStream out, @NonNull Map<String, Instant> grantTimes)
+            throws IOException {
+        out.writeInt(grantTimes.size());
+        for (Map.Entry<String, Instant> entry : grantTimes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeInstant(out, entry.getValue());
+        }
+    }
+
+    @NonNull
+    private static Map<String, Instant> readGrantTimes(@NonNull DataInputStream in)
+            throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Invalid size " + size);
+        }
+        Map<String, Instant> grantTimes = new ArrayMap<>(size);
+        for (int i = 0; i < size; i++) {
+            grantTimes.put(in.readUTF(), readInstant(in));
+        }
+        return grantTimes;
+    }
+
+    private static void writeInstant(@NonNull DataOutputStream out, @NonNull Instant time)
+            throws IOException {
+        out.writeLong(time.getEpochSecond());
+        out.writeInt(time.getNano());
+    }
+
+    @NonNull
+    private static Instant readInstant(@NonNull DataInputStream in) throws IOException {
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+
+    private static int getSize(@NonNull UserGrantTimeState state) {
+        return state.getPackageGrantTimes().size() + state.getSharedUserGrantTimes().size();
+    }
+
+    @NonNull
+    private static UserGrantTimeState copyOf(@NonNull UserGrantTimeState state) {
+        return new UserGrantTimeState(
+                new ArrayMap<>(state.getPackageGrantTimes()),
+                new ArrayMap<>(state.getSharedUserGrantTimes()),
+                state.getVersion());
+    }
+
+    @NonNull
+    private static File getJournalFile(@NonNull File file) {
+        return new File(file.getPath() + JOURNAL_FILE_SUFFIX);
+    }
+
+    /** Grant times of a user, with the state of their journal. */
+    private static final class CachedState {
+        // Null if nothing was written.
+        @Nullable private UserGrantTimeState mState;
+        // Written in the snapshot and at the start of its journal, so that a journal left from
+        // another snapshot is not replayed.
+        private long mJournalId;
+        private int mJournalRecords;
+    }
+}
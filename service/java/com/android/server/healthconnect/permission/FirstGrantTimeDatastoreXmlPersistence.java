@@ -25,6 +25,7 @@ import android.util.Log;
 import com.android.server.healthconnect.utils.FilesUtil;
 
 import java.io.File;
+import java.time.Instant;
 
 class FirstGrantTimeDatastoreXmlPersistence implements FirstGrantTimeDatastore {
     private static final String TAG = "HealthConnectFirstGrantTimeDatastore";
@@ -68,6 +69,36 @@ class FirstGrantTimeDatastoreXmlPersistence implements FirstGrantTimeDatastore {
         GrantTimeXmlHelper.serializeGrantTimes(file, grantTimesState);
     }
 
+    @Override
+    public void writePackageGrantTimeForUser(
+            @NonNull String packageName,
+            @Nullable Instant time,
+            @NonNull UserHandle user,
+            @DataType int dataType) {
+        UserGrantTimeState state = readOrCreateForUser(user, dataType);
+        if (time == null) {
+            state.getPackageGrantTimes().remove(packageName);
+        } else {
+            state.setPackageGrantTime(packageName, time);
+        }
+        writeForUser(state, user, dataType);
+    }
+
+    @Override
+    public void writeSharedUserGrantTimeForUser(
+            @NonNull String sharedUserName,
+            @Nullable Instant time,
+            @NonNull UserHandle user,
+            @DataType int dataType) {
+        UserGrantTimeState state = readOrCreateForUser(user, dataType);
+        if (time == null) {
+            state.getSharedUserGrantTimes().remove(sharedUserName);
+        } else {
+            state.setSharedUserGrantTime(sharedUserName, time);
+        }
+        writeForUser(state, user, dataType);
+    }
+
     @Override
     public File getFile(@NonNull UserHandle user, @DataType int sourceType) {
         String fileName =
@@ -77,4 +108,11 @@ class FirstGrantTimeDatastoreXmlPersistence implements FirstGrantTimeDatastore {
         return new File(
                 FilesUtil.getDataSystemCeHCDirectoryForUser(user.getIdentifier()), fileName);
     }
+
+    @NonNull
+    private UserGrantTimeState readOrCreateForUser(
+            @NonNull UserHandle user, @DataType int dataType) {
+        UserGrantTimeState state = readForUser(user, dataType);
+        return state != null ? state : new UserGrantTimeState(UserGrantTimeState.NO_VERSION);
+    }
 }
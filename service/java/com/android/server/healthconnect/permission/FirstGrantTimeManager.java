@@ -40,6 +40,7 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -49,7 +50,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  */
 public class FirstGrantTimeManager implements PackageManager.OnPermissionsChangedListener {
     private static final String TAG = "HealthFirstGrantTimeMan";
-    private static final int CURRENT_VERSION = 1;
+    static final int CURRENT_VERSION = 1;
 
     private final PackageManager mPackageManager;
     private final HealthPermissionIntentAppsTracker mTracker;
@@ -65,6 +66,10 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
     @GuardedBy("mGrantTimeLock")
     private final Set<Integer> mRestoredAndValidatedUsers = new ArraySet<>();
 
+    // Uids of the packages of each user id, as resolving them queries the package manager.
+    // Entries are removed when their packages are removed.
+    private final Map<Integer, Map<String, Integer>> mPackageUids = new ConcurrentHashMap<>();
+
     private final PackageInfoUtils mPackageInfoHelper;
     private final Context mContext;
 
@@ -87,7 +92,7 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
     public Instant getFirstGrantTime(@NonNull String packageName, @NonNull UserHandle user)
             throws IllegalArgumentException {
 
-        Integer uid = mPackageInfoHelper.getPackageUid(packageName, user, getUserContext(user));
+        Integer uid = getPackageUid(packageName, user);
         if (uid == null) {
             throw new IllegalArgumentException(
                     "Package name "
@@ -102,8 +107,7 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
         if (grantTimeDate == null) {
             // Check and update the state in case health permission has been granted before
             // onPermissionsChanged callback was propagated.
-            onPermissionsChanged(
-                    mPackageInfoHelper.getPackageUid(packageName, user, getUserContext(user)));
+            onPermissionsChanged(uid);
             grantTimeDate = getGrantTimeReadLocked(uid);
         }
 
@@ -113,8 +117,7 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
     /** Sets the provided first grant time for the given {@code packageName}. */
     public void setFirstGrantTime(
             @NonNull String packageName, @NonNull Instant time, @NonNull UserHandle user) {
-        final Integer uid =
-                mPackageInfoHelper.getPackageUid(packageName, user, getUserContext(user));
+        final Integer uid = getPackageUid(packageName, user);
         if (uid == null) {
             throw new IllegalArgumentException(
                     "Package name "
@@ -127,8 +130,7 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
         mGrantTimeLock.writeLock().lock();
         try {
             mUidToGrantTimeCache.put(uid, time);
-            mDatastore.writeForUser(
-                    mUidToGrantTimeCache.extractUserGrantTimeState(user), user, DATA_TYPE_CURRENT);
+            writeGrantTimeLocked(uid, user);
         } finally {
             mGrantTimeLock.writeLock().unlock();
         }
@@ -175,10 +177,8 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
                     }
                 }
 
-                UserGrantTimeState updatedState =
-                        mUidToGrantTimeCache.extractUserGrantTimeState(user);
-                logIfInDebugMode("State after onPermissionsChanged :", updatedState);
-                mDatastore.writeForUser(updatedState, user, DATA_TYPE_CURRENT);
+                logIfInDebugMode("Cache after onPermissionsChanged :", mUidToGrantTimeCache);
+                writeGrantTimeLocked(uid, user);
             } else {
                 // Update priority table only if migration is not in progress as it should already
                 // take care of merging permissions
@@ -231,6 +231,11 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
 
     void onPackageRemoved(
             @NonNull String packageName, int removedPackageUid, @NonNull UserHandle userHandle) {
+        Map<String, Integer> packageUids = mPackageUids.get(userHandle.getIdentifier());
+        if (packageUids != null) {
+            packageUids.remove(packageName);
+        }
+
         String[] leftSharedUidPackages =
                 mPackageInfoHelper.getPackagesForUid(
                         removedPackageUid, userHandle, getUserContext(userHandle));
@@ -242,17 +247,17 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
 
         initAndValidateUserStateIfNeedLocked(userHandle);
 
-        if (getGrantTimeReadLocked(removedPackageUid) != null) {
-            mGrantTimeLock.writeLock().lock();
-            try {
-                mUidToGrantTimeCache.remove(removedPackageUid);
-                UserGrantTimeState updatedState =
-                        mUidToGrantTimeCache.extractUserGrantTimeState(userHandle);
-                logIfInDebugMode("State after package " + packageName + " removed: ", updatedState);
-                mDatastore.writeForUser(updatedState, userHandle, DATA_TYPE_CURRENT);
-            } finally {
-                mGrantTimeLock.writeLock().unlock();
+        mGrantTimeLock.writeLock().lock();
+        try {
+            if (mUidToGrantTimeCache.remove(removedPackageUid) != null) {
+                writeGrantTimeLocked(removedPackageUid, userHandle);
+                logIfInDebugMode(
+                        "Cache after package " + packageName + " removed: ", mUidToGrantTimeCache);
             }
+            // The uid may later be assigned to another package.
+            mUidToGrantTimeCache.removeNames(removedPackageUid);
+        } finally {
+            mGrantTimeLock.writeLock().unlock();
         }
     }
 
@@ -267,20 +272,35 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
         }
     }
 
+    /**
+     * Persists the grant time of {@code uid}, or its removal if it has none, without rewriting the
+     * other grant times of the user.
+     */
+    @GuardedBy("mGrantTimeLock")
+    private void writeGrantTimeLocked(@NonNull Integer uid, @NonNull UserHandle user) {
+        Instant time = mUidToGrantTimeCache.get(uid);
+        String sharedUserName = mUidToGrantTimeCache.getSharedUserName(uid);
+        if (sharedUserName != null) {
+            mDatastore.writeSharedUserGrantTimeForUser(
+                    sharedUserName, time, user, DATA_TYPE_CURRENT);
+            return;
+        }
+        String packageName = mUidToGrantTimeCache.getPackageName(uid);
+        if (packageName != null) {
+            mDatastore.writePackageGrantTimeForUser(packageName, time, user, DATA_TYPE_CURRENT);
+        }
+    }
+
     @GuardedBy("mGrantTimeLock")
     private void updateGrantTimesWithStagedDataLocked(UserHandle user) {
-        boolean stateChanged = false;
         for (Integer uid : mUidToGrantTimeCache.mUidToGrantTime.keySet()) {
             if (!UserHandle.getUserHandleForUid(uid).equals(user)) {
                 continue;
             }
 
-            stateChanged |= tryUpdateGrantTimeFromStagedDataLocked(user, uid);
-        }
-
-        if (stateChanged) {
-            mDatastore.writeForUser(
-                    mUidToGrantTimeCache.extractUserGrantTimeState(user), user, DATA_TYPE_CURRENT);
+            if (tryUpdateGrantTimeFromStagedDataLocked(user, uid)) {
+                writeGrantTimeLocked(uid, user);
+            }
         }
     }
 
@@ -315,9 +335,8 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
 
         mUidToGrantTimeCache.put(uid, stagedTime);
         for (String packageName : mPackageInfoHelper.getPackageNamesForUid(uid)) {
-            backupState.getPackageGrantTimes().remove(packageName);
+            mDatastore.writePackageGrantTimeForUser(packageName, null, user, DATA_TYPE_STAGED);
         }
-        mDatastore.writeForUser(backupState, user, DATA_TYPE_STAGED);
         return true;
     }
 
@@ -415,11 +434,13 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
             }
 
             if (info.sharedUserId == null) {
-                stateChanged |= setPackageGrantTimeIfNotRecorded(recordedState, info.packageName);
+                stateChanged |=
+                        setPackageGrantTimeIfNotRecorded(recordedState, info.packageName, user);
                 validPackagesPerUser.add(info.packageName);
             } else {
                 stateChanged |=
-                        setSharedUserGrantTimeIfNotRecorded(recordedState, info.sharedUserId);
+                        setSharedUserGrantTimeIfNotRecorded(
+                                recordedState, info.sharedUserId, user);
                 validSharedUsersPerUser.add(info.sharedUserId);
             }
         }
@@ -427,28 +448,33 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
         // If package is not installed / doesn't hold health permissions
         // but has recorded first grant time, remove it from grant time state.
         stateChanged |=
-                removeInvalidPackagesFromGrantTimeStateForUser(recordedState, validPackagesPerUser);
+                removeInvalidPackagesFromGrantTimeStateForUser(
+                        recordedState, validPackagesPerUser, user);
 
         stateChanged |=
                 removeInvalidSharedUsersFromGrantTimeStateForUser(
-                        recordedState, validSharedUsersPerUser);
+                        recordedState, validSharedUsersPerUser, user);
 
+        // The corrections were persisted one by one, without rewriting the whole state.
         if (stateChanged) {
             logIfInDebugMode("Changed state after validation for " + user + ": ", recordedState);
-            mDatastore.writeForUser(recordedState, user, DATA_TYPE_CURRENT);
         }
     }
 
     @GuardedBy("mGrantTimeLock")
     private boolean setPackageGrantTimeIfNotRecorded(
-            @NonNull UserGrantTimeState grantTimeState, @NonNull String packageName) {
+            @NonNull UserGrantTimeState grantTimeState,
+            @NonNull String packageName,
+            @NonNull UserHandle user) {
         if (!grantTimeState.containsPackageGrantTime(packageName)) {
             Log.w(
                     TAG,
                     "No recorded grant time for package:"
                             + packageName
                             + ". Assigning current time as the first grant time.");
-            grantTimeState.setPackageGrantTime(packageName, Instant.now());
+            Instant time = Instant.now();
+            grantTimeState.setPackageGrantTime(packageName, time);
+            mDatastore.writePackageGrantTimeForUser(packageName, time, user, DATA_TYPE_CURRENT);
             return true;
         }
         return false;
@@ -456,14 +482,19 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
 
     @GuardedBy("mGrantTimeLock")
     private boolean setSharedUserGrantTimeIfNotRecorded(
-            @NonNull UserGrantTimeState grantTimeState, @NonNull String sharedUserIdName) {
+            @NonNull UserGrantTimeState grantTimeState,
+            @NonNull String sharedUserIdName,
+            @NonNull UserHandle user) {
         if (!grantTimeState.containsSharedUserGrantTime(sharedUserIdName)) {
             Log.w(
                     TAG,
                     "No recorded grant time for shared user:"
                             + sharedUserIdName
                             + ". Assigning current time as first grant time.");
-            grantTimeState.setSharedUserGrantTime(sharedUserIdName, Instant.now());
+            Instant time = Instant.now();
+            grantTimeState.setSharedUserGrantTime(sharedUserIdName, time);
+            mDatastore.writeSharedUserGrantTimeForUser(
+                    sharedUserIdName, time, user, DATA_TYPE_CURRENT);
             return true;
         }
         return false;
@@ -471,7 +502,9 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
 
     @GuardedBy("mGrantTimeLock")
     private boolean removeInvalidPackagesFromGrantTimeStateForUser(
-            @NonNull UserGrantTimeState recordedState, @NonNull Set<String> validApps) {
+            @NonNull UserGrantTimeState recordedState,
+            @NonNull Set<String> validApps,
+            @NonNull UserHandle user) {
         Set<String> recordedButNotValid =
                 new ArraySet<>(recordedState.getPackageGrantTimes().keySet());
         if (validApps != null) {
@@ -486,6 +519,10 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
                             + " have recorded  grant times, but not installed or hold health "
                             + "permissions anymore. Removing them from the grant time state.");
             recordedState.getPackageGrantTimes().keySet().removeAll(recordedButNotValid);
+            for (String packageName : recordedButNotValid) {
+                mDatastore.writePackageGrantTimeForUser(
+                        packageName, /* time= */ null, user, DATA_TYPE_CURRENT);
+            }
             return true;
         }
         return false;
@@ -493,7 +530,9 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
 
     @GuardedBy("mGrantTimeLock")
     private boolean removeInvalidSharedUsersFromGrantTimeStateForUser(
-            @NonNull UserGrantTimeState recordedState, @NonNull Set<String> validSharedUsers) {
+            @NonNull UserGrantTimeState recordedState,
+            @NonNull Set<String> validSharedUsers,
+            @NonNull UserHandle user) {
         Set<String> recordedButNotValid =
                 new ArraySet<>(recordedState.getSharedUserGrantTimes().keySet());
         if (validSharedUsers != null) {
@@ -508,6 +547,10 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
                             + " have recorded  grant times, but not installed or hold health "
                             + "permissions anymore. Removing them from the grant time state.");
             recordedState.getSharedUserGrantTimes().keySet().removeAll(recordedButNotValid);
+            for (String sharedUserName : recordedButNotValid) {
+                mDatastore.writeSharedUserGrantTimeForUser(
+                        sharedUserName, /* time= */ null, user, DATA_TYPE_CURRENT);
+            }
             return true;
         }
         return false;
@@ -529,11 +572,33 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
         }
     }
 
+    @Nullable
+    private Integer getPackageUid(@NonNull String packageName, @NonNull UserHandle user) {
+        Map<String, Integer> packageUids =
+                mPackageUids.computeIfAbsent(
+                        user.getIdentifier(), userId -> new ConcurrentHashMap<>());
+        Integer uid = packageUids.get(packageName);
+        if (uid == null) {
+            uid = mPackageInfoHelper.getPackageUid(packageName, user, getUserContext(user));
+            if (uid != null) {
+                packageUids.put(packageName, uid);
+            }
+        }
+        return uid;
+    }
+
     private class UidToGrantTimeCache {
         private final Map<Integer, Instant> mUidToGrantTime;
 
+        // Names the grant times of the uids are persisted under, so that they can be written
+        // without querying the package manager, including once their packages are removed.
+        private final Map<Integer, String> mUidToSharedUserName;
+        private final Map<Integer, String> mUidToPackageName;
+
         UidToGrantTimeCache() {
             mUidToGrantTime = new ArrayMap<>();
+            mUidToSharedUserName = new ArrayMap<>();
+            mUidToPackageName = new ArrayMap<>();
         }
 
         @Override
@@ -563,36 +628,35 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
 
         @Nullable
         Instant put(@NonNull Integer uid, @NonNull Instant time) {
-            return mUidToGrantTime.put(uid, time);
-        }
-
-        @NonNull
-        UserGrantTimeState extractUserGrantTimeState(@NonNull UserHandle user) {
-            Map<String, Instant> sharedUserToGrantTime = new ArrayMap<>();
-            Map<String, Instant> packageNameToGrantTime = new ArrayMap<>();
-
-            for (Map.Entry<Integer, Instant> entry : mUidToGrantTime.entrySet()) {
-                Integer uid = entry.getKey();
-                Instant time = entry.getValue();
-
-                if (!UserHandle.getUserHandleForUid(uid).equals(user)) {
-                    continue;
-                }
-
+            if (!mUidToSharedUserName.containsKey(uid) && !mUidToPackageName.containsKey(uid)) {
                 String sharedUserName =
-                        mPackageInfoHelper.getSharedUserNameFromUid(uid, getUserContext(user));
+                        mPackageInfoHelper.getSharedUserNameFromUid(
+                                uid, getUserContext(UserHandle.getUserHandleForUid(uid)));
                 if (sharedUserName != null) {
-                    sharedUserToGrantTime.put(sharedUserName, time);
+                    mUidToSharedUserName.put(uid, sharedUserName);
                 } else {
                     String packageName = mPackageInfoHelper.getPackageNameFromUid(uid);
                     if (packageName != null) {
-                        packageNameToGrantTime.put(packageName, time);
+                        mUidToPackageName.put(uid, packageName);
                     }
                 }
             }
+            return mUidToGrantTime.put(uid, time);
+        }
 
-            return new UserGrantTimeState(
-                    packageNameToGrantTime, sharedUserToGrantTime, CURRENT_VERSION);
+        @Nullable
+        String getSharedUserName(@NonNull Integer uid) {
+            return mUidToSharedUserName.get(uid);
+        }
+
+        @Nullable
+        String getPackageName(@NonNull Integer uid) {
+            return mUidToPackageName.get(uid);
+        }
+
+        void removeNames(@NonNull Integer uid) {
+            mUidToSharedUserName.remove(uid);
+            mUidToPackageName.remove(uid);
         }
 
         @SuppressWarnings("NullAway")
@@ -636,6 +700,7 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
                 }
 
                 for (Integer uid : sharedUserNameToUids.get(sharedUserName)) {
+                    mUidToSharedUserName.put(uid, sharedUserName);
                     put(uid, time);
                 }
             }
@@ -645,9 +710,9 @@ public class FirstGrantTimeManager implements PackageManager.OnPermissionsChange
                 String packageName = entry.getKey();
                 Instant time = entry.getValue();
 
-                Integer uid =
-                        mPackageInfoHelper.getPackageUid(packageName, user, getUserContext(user));
+                Integer uid = getPackageUid(packageName, user);
                 if (uid != null) {
+                    mUidToPackageName.put(uid, packageName);
                     put(uid, time);
                 }
             }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.permission;
+
+import static android.content.pm.PackageManager.GET_PERMISSIONS;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.health.connect.Constants;
+import android.health.connect.HealthConnectManager;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.healthconnect.HealthConnectThreadScheduler;
+import com.android.server.healthconnect.utils.FilesUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Index of the packages requesting health permissions of each user, so that the packages holding
+ * health permissions can be found without querying all the installed packages.
+ *
+ * <p>The index is updated from package broadcasts, and persisted so that it is available after a
+ * reboot. As packages may have changed while broadcasts were not received, the index read from
+ * disk is verified by a full scan of the installed packages in the background. The installed
+ * packages are only scanned synchronously when a user has no index yet.
+ *
+ * @hide
+ */
+public final class HealthPackagesIndex {
+    private static final String TAG = "HealthPackagesIndex";
+    private static final String INDEX_FILE_NAME = "health-permission-packages.bin";
+    private static final int FORMAT_VERSION = 1;
+    // Verification scans are retried if the index changes while they run.
+    private static final int MAX_VERIFICATION_ATTEMPTS = 3;
+
+    @SuppressWarnings("NullAway.Init")
+    private static volatile HealthPackagesIndex sHealthPackagesIndex;
+
+    private final Executor mVerificationExecutor;
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final Map<Integer, Set<String>> mUserIdToPackageNames = new ArrayMap<>();
+
+    // Bumped on every change of the index.
+    @GuardedBy("mLock")
+    private long mGeneration;
+
+    @VisibleForTesting
+    HealthPackagesIndex(@NonNull Executor verificationExecutor) {
+        mVerificationExecutor = Objects.requireNonNull(verificationExecutor);
+    }
+
+    @NonNull
+    public static synchronized HealthPackagesIndex getInstance() {
+        if (sHealthPackagesIndex == null) {
+            sHealthPackagesIndex =
+                    new HealthPackagesIndex(HealthConnectThreadScheduler::scheduleInternalTask);
+        }
+
+        return sHealthPackagesIndex;
+    }
+
+    /** Returns the names of the packages of {@code user} requesting health permissions. */
+    @NonNull
+    public List<String> getPackageNames(@NonNull UserHandle user, @NonNull Context context) {
+        synchronized (mLock) {
+            Set<String> packageNames = loadPackageNamesLocked(user, context);
+            if (packageNames == null) {
+                Log.i(TAG, "No index for user " + user.getIdentifier() + ", scanning packages.");
+                packageNames = scanPackageNames(user, context);
+                mUserIdToPackageNames.put(user.getIdentifier(), packageNames);
+                mGeneration++;
+                writePackageNames(user, packageNames);
+            }
+
+            List<String> sortedPackageNames = new ArrayList<>(packageNames);
+            Collections.sort(sortedPackageNames);
+            return sortedPackageNames;
+        }
+    }
+
+    /** Updates the index after {@code packageName} was installed, updated or changed. */
+    public void onPackageChanged(
+            @NonNull String packageName, @NonNull UserHandle user, @NonNull Context context) {
+        PackageInfo packageInfo = getPackageInfo(packageName, user, context);
+        boolean requestsHealthPermissions =
+                packageInfo != null && anyHealthPermissionRequested(context, packageInfo);
+        synchronized (mLock) {
+            Set<String> packageNames = loadPackageNamesLocked(user, context);
+            if (packageNames == null) {
+                // The packages will be scanned on first use.
+                return;
+            }
+            boolean changed =
+                    requestsHealthPermissions
+                            ? packageNames.add(packageName)
+                            : packageNames.remove(packageName);
+            if (changed) {
+                mGeneration++;
+                writePackageNames(user, packageNames);
+            }
+        }
+    }
+
+    /** Updates the index after {@code packageName} was uninstalled. */
+    public void onPackageRemoved(
+            @NonNull String packageName, @NonNull UserHandle user, @NonNull Context context) {
+        synchronized (mLock) {
+            Set<String> packageNames = loadPackageNamesLocked(user, context);
+            if (packageNames != null && packageNames.remove(packageName)) {
+                mGeneration++;
+                writePackageNames(user, packageNames);
+            }
+        }
+    }
+
+    /** Replaces the index of {@code user} with a scan of its installed packages, if different. */
+    @VisibleForTesting
+    void verifyPackageNames(@NonNull UserHandle user, @NonNull Context context) {
+        for (int attempt = 0; attempt < MAX_VERIFICATION_ATTEMPTS; attempt++) {
+            long generation;
+            synchronized (mLock) {
+                generation = mGeneration;
+            }
+
+            Set<String> scannedPackageNames = scanPackageNames(user, context);
+            synchronized (mLock) {
+                if (generation != mGeneration) {
+                    continue;
+                }
+                if (!scannedPackageNames.equals(
+                        mUserIdToPackageNames.get(user.getIdentifier()))) {
+                    Log.w(TAG, "Index of user " + user.getIdentifier() + " was out of date.");
+                    mUserIdToPackageNames.put(user.getIdentifier(), scannedPackageNames);
+                    mGeneration++;
+                    writePackageNames(user, scannedPackageNames);
+                }
+                return;
+            }
+        }
+        Log.w(TAG, "Index of user " + user.getIdentifier() + " changed during verification.");
+    }
+
+    /**
+     * Returns the index of {@code user} in memory or on disk, or null if there is none. Schedules
+     * its verification when it is read from disk.
+     */
+    @GuardedBy("mLock")
+    @Nullable
+    private Set<String> loadPackageNamesLocked(@NonNull UserHandle user, @NonNull Context context) {
+        Set<String> packageNames = mUserIdToPackageNames.get(user.getIdentifier());
+        if (packageNames != null) {
+            return packageNames;
+        }
+
+        packageNames = readPackageNames(user);
+        if (packageNames != null) {
+            mUserIdToPackageNames.put(user.getIdentifier(), packageNames);
+            mVerificationExecutor.execute(() -> verifyPackageNames(user, context));
+        }
+        return packageNames;
+    }
+
+    @NonNull
+    private static Set<String> scanPackageNames(
+            @NonNull UserHandle user, @NonNull Context context) {
+        List<PackageInfo> packageInfos =
+                context.createContextAsUser(user, /* flags= */ 0)
+                        .getPackageManager()
+                        .getInstalledPackages(PackageManager.PackageInfoFlags.of(GET_PERMISSIONS));
+        Set<String> packageNames = new ArraySet<>();
+        for (PackageInfo packageInfo : packageInfos) {
+            if (anyHealthPermissionRequested(context, packageInfo)) {
+                packageNames.add(packageInfo.packageName);
+            }
+        }
+        return packageNames;
+    }
+
+    @Nullable
+    private static PackageInfo getPackageInfo(
+            @NonNull String packageName, @NonNull UserHandle user, @NonNull Context context) {
+        try {
+            return context.createContextAsUser(user, /* flags= */ 0)
+                    .getPackageManager()
+                    .getPackageInfo(
+                            packageName, PackageManager.PackageInfoFlags.of(GET_PERMISSIONS));
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static boolean anyHealthPermissionRequested(
+            @NonNull Context context, @NonNull PackageInfo packageInfo) {
+        if (packageInfo.requestedPermissions == null) {
+            return false;
+        }
+
+        for (String permission : packageInfo.requestedPermissions) {
+            if (HealthConnectManager.isHealthPermission(context, permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static Set<String> readPackageNames(@NonNull UserHandle user) {
+        File file = getFile(user);
+        try (DataInputStream in =
+                new DataInputStream(
+                        new BufferedInputStream(new AtomicFile(file).openRead()))) {
+            int formatVersion = in.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                Log.w(TAG, "Unknown format version " + formatVersion + " of " + file);
+                return null;
+            }
+            int size = in.readInt();
+            if (size < 0) {
+                Log.w(TAG, "Invalid size " + size + " in " + file);
+                return null;
+            }
+            Set<String> packageNames = new ArraySet<>(size);
+            for (int i = 0; i < size; i++) {
+                packageNames.add(in.readUTF());
+            }
+            return packageNames;
+        } catch (FileNotFoundException e) {
+            if (Constants.DEBUG) {
+                Log.d(TAG, file.getPath() + " not found");
+            }
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + file, e);
+            return null;
+        }
+    }
+
+    private static void writePackageNames(
+            @NonNull UserHandle user, @NonNull Set<String> packageNames) {
+        AtomicFile atomicFile = new AtomicFile(getFile(user));
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = atomicFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(packageNames.size());
+            for (String packageName : packageNames) {
+                out.writeUTF(packageName);
+            }
+            out.flush();
+            atomicFile.finishWrite(outputStream);
+        } catch (IOException e) {
+            // An out of date index on disk is corrected by its verification after a reboot.
+            Log.e(TAG, "Failed to write " + atomicFile.getBaseFile(), e);
+            atomicFile.failWrite(outputStream);
+        }
+    }
+
+    @NonNull
+    private static File getFile(@NonNull UserHandle user) {
+        return new File(
+                FilesUtil.getDataSystemCeHCDirectoryForUser(user.getIdentifier()),
+                INDEX_FILE_NAME);
+    }
+}
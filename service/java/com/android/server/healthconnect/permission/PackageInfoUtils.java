@@ -79,14 +79,13 @@ public class PackageInfoUtils {
 
     @NonNull
     public List<PackageInfo> getPackagesHoldingHealthPermissions(UserHandle user, Context context) {
-        // TODO(b/260707328): replace with getPackagesHoldingPermissions
-        List<PackageInfo> allInfos =
-                getPackageManagerAsUser(user, context)
-                        .getInstalledPackages(PackageManager.PackageInfoFlags.of(GET_PERMISSIONS));
+        // Only the packages requesting health permissions can hold them, so there is no need to
+        // query all the installed packages.
         List<PackageInfo> healthAppsInfos = new ArrayList<>();
-
-        for (PackageInfo info : allInfos) {
-            if (anyRequestedHealthPermissionGranted(context, info)) {
+        for (String packageName :
+                HealthPackagesIndex.getInstance().getPackageNames(user, context)) {
+            PackageInfo info = getPackageInfoWithPermissionsAsUser(packageName, user, context);
+            if (info != null && anyRequestedHealthPermissionGranted(context, info)) {
                 healthAppsInfos.add(info);
             }
         }
@@ -93,6 +93,11 @@ public class PermissionPackageChangesOrchestrator extends BroadcastReceiver {
         boolean isPackageRemoved =
                 intent.getAction().equals(Intent.ACTION_PACKAGE_REMOVED)
                         && !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+        if (isPackageRemoved) {
+            HealthPackagesIndex.getInstance().onPackageRemoved(packageName, userHandle, context);
+        } else {
+            HealthPackagesIndex.getInstance().onPackageChanged(packageName, userHandle, context);
+        }
         // If the package was removed, we reset grant time. If the package is present but the health
         // intent support removed we revoke all health permissions and also reset grant time
         // (is done via onPermissionChanged callback)
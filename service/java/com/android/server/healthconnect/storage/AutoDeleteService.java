@@ -18,6 +18,7 @@ package com.android.server.healthconnect.storage;
 
 import android.annotation.NonNull;
 import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
 import android.util.Slog;
 
 import com.android.server.healthconnect.storage.datatypehelpers.AccessLogsHelper;
@@ -27,11 +28,17 @@ import com.android.server.healthconnect.storage.datatypehelpers.ChangeLogsHelper
 import com.android.server.healthconnect.storage.datatypehelpers.ChangeLogsRequestHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.HealthDataCategoryPriorityHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.PreferenceHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.RecordHelper;
 import com.android.server.healthconnect.storage.request.DeleteTableRequest;
+import com.android.server.healthconnect.storage.utils.DropTableRequest;
 import com.android.server.healthconnect.storage.utils.RecordHelperProvider;
+import com.android.server.healthconnect.storage.utils.TablePartitions;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A service that is run periodically to handle deletion of stale entries in HC DB.
@@ -87,6 +94,9 @@ public class AutoDeleteService {
                         : Integer.parseInt(recordAutoDeletePeriodString);
         if (recordAutoDeletePeriod != 0) {
             // 0 represents that no period is set,to delete only if not 0 else don't do anything
+            // The same cutoff for the records and the partitions of their samples, so that no
+            // record is left without its samples.
+            Instant endTime = Instant.now().minus(recordAutoDeletePeriod, ChronoUnit.DAYS);
             List<DeleteTableRequest> deleteTableRequests = new ArrayList<>();
             RecordHelperProvider.getInstance()
                     .getRecordHelpers()
@@ -94,16 +104,50 @@ public class AutoDeleteService {
                     .forEach(
                             (recordHelper) -> {
                                 DeleteTableRequest request =
-                                        recordHelper.getDeleteRequestForAutoDelete(
-                                                recordAutoDeletePeriod);
+                                        recordHelper.getDeleteRequestForAutoDelete(endTime);
                                 deleteTableRequests.add(request);
                             });
+            long partitionsEndTime = endTime.toEpochMilli();
+            ReentrantReadWriteLock.WriteLock partitionsDropLock = TablePartitions.getDropLock();
             try {
-                TransactionManager.getInitialisedInstance()
-                        .deleteWithoutChangeLogs(deleteTableRequests);
+                TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
+                // In one transaction, so that records are never left without their samples.
+                transactionManager.runAsTransaction(
+                        db -> {
+                            // Until the transaction has ended, when the drops become visible.
+                            partitionsDropLock.lock();
+                            dropStalePartitions(db, partitionsEndTime);
+                            transactionManager.deleteWithoutChangeLogs(deleteTableRequests);
+                        });
             } catch (Exception exception) {
                 Slog.e(TAG, "Auto delete for records failed", exception);
                 // Don't rethrow as that will crash system_server
+            } finally {
+                if (partitionsDropLock.isHeldByCurrentThread()) {
+                    partitionsDropLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the partitions of records which all start before {@code endTime}, rather than deleting
+     * their rows one by one when their records are deleted.
+     */
+    private static void dropStalePartitions(SQLiteDatabase db, long endTime) {
+        for (RecordHelper<?> recordHelper :
+                RecordHelperProvider.getInstance().getRecordHelpers().values()) {
+            for (String childTable : recordHelper.getAllChildTables()) {
+                if (!recordHelper.isTablePartitioned(childTable)) {
+                    continue;
+                }
+                for (String partition : TablePartitions.getPartitions(db, childTable)) {
+                    // Like the records deleted with them, which start from the epoch.
+                    if (TablePartitions.getStartTime(partition) >= 0
+                            && TablePartitions.getEndTime(partition) <= endTime) {
+                        db.execSQL(new DropTableRequest(partition).getCommand());
+                    }
+                }
             }
         }
     }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import static com.android.server.healthconnect.HealthConnectDeviceConfigManager.DATABASE_CACHE_SIZE_KIB_DEFAULT_FLAG_VALUE;
+import static com.android.server.healthconnect.HealthConnectDeviceConfigManager.DATABASE_MMAP_SIZE_BYTES_DEFAULT_FLAG_VALUE;
+import static com.android.server.healthconnect.HealthConnectDeviceConfigManager.ENABLE_DATABASE_SYNCHRONOUS_NORMAL_DEFAULT_FLAG_VALUE;
+import static com.android.server.healthconnect.HealthConnectDeviceConfigManager.ENABLE_DATABASE_WAL_DEFAULT_FLAG_VALUE;
+
+import android.annotation.NonNull;
+
+/**
+ * Settings of the connections to the HealthConnect database, applied when the database is opened.
+ *
+ * @hide
+ */
+public final class DatabaseConnectionProfile {
+    /** Profile with the default values of the flags. */
+    @NonNull
+    public static final DatabaseConnectionProfile DEFAULT =
+            new DatabaseConnectionProfile(
+                    ENABLE_DATABASE_WAL_DEFAULT_FLAG_VALUE,
+                    ENABLE_DATABASE_SYNCHRONOUS_NORMAL_DEFAULT_FLAG_VALUE,
+                    DATABASE_CACHE_SIZE_KIB_DEFAULT_FLAG_VALUE,
+                    DATABASE_MMAP_SIZE_BYTES_DEFAULT_FLAG_VALUE);
+
+    private final boolean mWriteAheadLoggingEnabled;
+    private final boolean mSynchronousNormal;
+    private final int mCacheSizeKib;
+    private final long mMmapSizeBytes;
+
+    public DatabaseConnectionProfile(
+            boolean writeAheadLoggingEnabled,
+            boolean synchronousNormal,
+            int cacheSizeKib,
+            long mmapSizeBytes) {
+        mWriteAheadLoggingEnabled = writeAheadLoggingEnabled;
+        mSynchronousNormal = synchronousNormal;
+        mCacheSizeKib = cacheSizeKib;
+        mMmapSizeBytes = mmapSizeBytes;
+    }
+
+    /** Returns whether the database uses write-ahead logging instead of a rollback journal. */
+    public boolean isWriteAheadLoggingEnabled() {
+        return mWriteAheadLoggingEnabled;
+    }
+
+    /**
+     * Returns whether commits skip the sync of the WAL, which is still durable across app crashes
+     * and only loses the last commits on power loss.
+     */
+    public boolean isSynchronousNormal() {
+        return mSynchronousNormal;
+    }
+
+    /** Returns the size of the page cache of each connection in KiB, or 0 for SQLite's default. */
+    public int getCacheSizeKib() {
+        return mCacheSizeKib;
+    }
+
+    /** Returns the size of the database mapped in memory, or 0 to read it with system calls. */
+    public long getMmapSizeBytes() {
+        return mMmapSizeBytes;
+    }
+}
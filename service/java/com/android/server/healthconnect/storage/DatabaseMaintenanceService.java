@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import android.annotation.NonNull;
+import android.content.Context;
+import android.util.Pair;
+import android.util.Slog;
+
+import com.android.server.healthconnect.storage.datatypehelpers.ChangeLogsHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.DatabaseStatsCollector;
+
+/**
+ * A service that is run periodically to keep the HC DB fast and small: compacts the change logs,
+ * refreshes the statistics of the query planner and releases the pages freed by deletions.
+ *
+ * @hide
+ */
+public final class DatabaseMaintenanceService {
+    private static final String TAG = "HealthConnectDbMaintenance";
+
+    /** Starts the maintenance of the database. */
+    public static void startMaintenance(@NonNull Context context) {
+        try {
+            // Before the vacuum, which releases the pages it frees.
+            Pair<Long, Long> uuidCounts = ChangeLogsHelper.getInstance().compactChangeLogs();
+            Slog.i(
+                    TAG,
+                    "Change logs compaction kept "
+                            + uuidCounts.second
+                            + " of "
+                            + uuidCounts.first
+                            + " UUIDs, compaction ratio "
+                            + (uuidCounts.second == 0
+                                    ? 1
+                                    : (double) uuidCounts.first / uuidCounts.second));
+        } catch (Exception e) {
+            Slog.e(TAG, "Change logs compaction failed", e);
+            // Don't rethrow as that will crash system_server
+        }
+
+        TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
+        try {
+            transactionManager.optimize();
+        } catch (Exception e) {
+            Slog.e(TAG, "Database optimize failed", e);
+            // Don't rethrow as that will crash system_server
+        }
+
+        try {
+            long sizeBefore = DatabaseStatsCollector.getDatabaseSize(context);
+            long freePagesSizeBefore = DatabaseStatsCollector.getFreePagesSize();
+            transactionManager.vacuum();
+            // The database file only shrinks once the log is checkpointed.
+            transactionManager.checkpointWal();
+            Slog.i(
+                    TAG,
+                    "Vacuum released "
+                            + (freePagesSizeBefore - DatabaseStatsCollector.getFreePagesSize())
+                            + " bytes, database size "
+                            + sizeBefore
+                            + " -> "
+                            + DatabaseStatsCollector.getDatabaseSize(context));
+        } catch (Exception e) {
+            Slog.e(TAG, "Database vacuum failed", e);
+            // Don't rethrow as that will crash system_server
+        }
+    }
+}
@@ -17,7 +17,9 @@
 package com.android.server.healthconnect.storage;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
@@ -54,19 +56,40 @@ public class HealthConnectDatabase extends SQLiteOpenHelper {
 
     public static final int DB_VERSION_GENERATED_LOCAL_TIME = 10;
     private static final String TAG = "HealthConnectDatabase";
+    private static final String SYNCHRONOUS_NORMAL = "NORMAL";
     private static final int DATABASE_VERSION = 10;
     private static final String DEFAULT_DATABASE_NAME = "healthconnect.db";
     @NonNull private final Collection<RecordHelper<?>> mRecordHelpers;
     private final Context mContext;
+    @Nullable private final DatabaseConnectionProfile mConnectionProfile;
 
-    public HealthConnectDatabase(@NonNull Context context) {
-        this(context, DEFAULT_DATABASE_NAME);
+    public HealthConnectDatabase(
+            @NonNull Context context, @NonNull DatabaseConnectionProfile connectionProfile) {
+        this(context, DEFAULT_DATABASE_NAME, connectionProfile);
     }
 
     public HealthConnectDatabase(@NonNull Context context, String databaseName) {
+        this(context, databaseName, /* connectionProfile= */ null);
+    }
+
+    private HealthConnectDatabase(
+            @NonNull Context context,
+            String databaseName,
+            @Nullable DatabaseConnectionProfile connectionProfile) {
         super(context, databaseName, null, DATABASE_VERSION);
         mRecordHelpers = RecordHelperProvider.getInstance().getRecordHelpers().values();
         mContext = context;
+        mConnectionProfile = connectionProfile;
+        if (connectionProfile != null) {
+            if (connectionProfile.isSynchronousNormal()) {
+                // Must be set before enabling WAL, which updates the open params.
+                setOpenParams(
+                        new SQLiteDatabase.OpenParams.Builder()
+                                .setSynchronousMode(SYNCHRONOUS_NORMAL)
+                                .build());
+            }
+            setWriteAheadLoggingEnabled(connectionProfile.isWriteAheadLoggingEnabled());
+        }
     }
 
     @Override
@@ -93,6 +116,24 @@ public class HealthConnectDatabase extends SQLiteOpenHelper {
         // Enforce FK constraints for DB writes as we want to enforce FK constraints on DB write.
         // This is also required for when we delete entries, for cascade to work
         db.setForeignKeyConstraintsEnabled(true);
+
+        if (mConnectionProfile != null) {
+            // Lets deleted pages be released without rebuilding the file. Takes effect when the
+            // database is created, or after the next full vacuum of an existing database.
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+
+            // The settings below only apply to the primary connection, the platform doesn't let
+            // us configure the connections of its pool that serve reads outside of transactions.
+            // Negative values are a size in KiB rather than a number of pages.
+            if (mConnectionProfile.getCacheSizeKib() > 0) {
+                db.execSQL("PRAGMA cache_size = -" + mConnectionProfile.getCacheSizeKib());
+            }
+            if (mConnectionProfile.getMmapSizeBytes() > 0) {
+                // Returns the new size, so it can't be run with execSQL.
+                DatabaseUtils.longForQuery(
+                        db, "PRAGMA mmap_size = " + mConnectionProfile.getMmapSizeBytes(), null);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import static com.android.server.healthconnect.storage.request.UpsertTableRequest.TYPE_BLOB;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Pair;
+import android.util.Slog;
+
+import com.android.server.healthconnect.HealthConnectThreadScheduler;
+import com.android.server.healthconnect.storage.request.ReadTableRequest;
+import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+import com.android.server.healthconnect.storage.utils.BloomFilter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bloom filters over the values of the unique columns of the rows of each table, which tell the
+ * inserts that can't conflict with an existing row, e.g. with the dedupe hash of a record, apart
+ * from the probable duplicates.
+ *
+ * <p>The filter of a table is built in the background from the table the first time it is needed,
+ * sized for twice the values of the table, and rebuilt once it is full. Until it is built, every
+ * insert is tried directly. The values written meanwhile are kept and added to the filter once it
+ * is built, and the values written after are added to it as they are written. Only tables with more
+ * values than {@link #MAX_KEYS} aren't filtered, to bound the memory of a filter. The values of
+ * deleted or updated rows are only removed by a rebuild, until then they only make their values
+ * look like probable duplicates. Rows written without going through the filter may be missed by
+ * it, so inserts must still handle conflicts.
+ *
+ * @hide
+ */
+final class InsertConflictFilter {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+    // A filter is built with room for twice the values of its table, so this bounds the memory of
+    // a filter to about 5 MB at this false positive rate, e.g. for a table of a million records
+    // with two unique columns.
+    private static final int MAX_KEYS = 2_000_000;
+    private static final String TAG = "HealthConnectInsertFilter";
+
+    private final Supplier<SQLiteDatabase> mDatabaseSupplier;
+    private final ConcurrentHashMap<String, BloomFilter> mFilters = new ConcurrentHashMap<>();
+    // The keys written to each table while its filter is built, guarded by mPendingKeysLock.
+    private final Map<String, List<byte[]>> mPendingKeys = new HashMap<>();
+    private final Object mPendingKeysLock = new Object();
+    private final Set<String> mUnfilteredTables = ConcurrentHashMap.newKeySet();
+    // Bumped when the filters are dropped, so that the builds started before aren't kept.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    InsertConflictFilter(@NonNull Supplier<SQLiteDatabase> databaseSupplier) {
+        mDatabaseSupplier = databaseSupplier;
+    }
+
+    /**
+     * Returns false if no row of the table of {@code request} has any of its unique values, or if
+     * the table has no filter yet.
+     */
+    boolean mightConflict(@NonNull UpsertTableRequest request) {
+        String table = request.getTable();
+        if (mUnfilteredTables.contains(table)) {
+            return false;
+        }
+        BloomFilter filter = mFilters.get(table);
+        if (filter == null || filter.isFull()) {
+            scheduleBuild(request);
+        }
+        if (filter == null) {
+            return false;
+        }
+
+        for (byte[] key : getKeys(request)) {
+            if (filter.mightContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Adds the unique values of {@code request}, once it has been written to its table. */
+    void onWritten(@NonNull UpsertTableRequest request) {
+        String table = request.getTable();
+        List<byte[]> keys = getKeys(request);
+        BloomFilter filter = mFilters.get(table);
+        // A build is only scheduled while the table has no filter or a full one.
+        if (filter == null || filter.isFull()) {
+            synchronized (mPendingKeysLock) {
+                // The build may have read the table before the row was written.
+                List<byte[]> pendingKeys = mPendingKeys.get(table);
+                if (pendingKeys != null) {
+                    pendingKeys.addAll(keys);
+                }
+                filter = mFilters.get(table);
+            }
+        }
+        if (filter != null) {
+            for (byte[] key : keys) {
+                filter.add(key);
+            }
+        }
+    }
+
+    /** Drops all the filters, e.g. when the database changes. */
+    void clear() {
+        synchronized (mPendingKeysLock) {
+            mGeneration.incrementAndGet();
+            mFilters.clear();
+            mPendingKeys.clear();
+        }
+        mUnfilteredTables.clear();
+    }
+
+    private void scheduleBuild(UpsertTableRequest request) {
+        String table = request.getTable();
+        int generation;
+        synchronized (mPendingKeysLock) {
+            if (mPendingKeys.containsKey(table)) {
+                return;
+            }
+            // Read under the lock, so that clear() also drops the pending keys of this build.
+            generation = mGeneration.get();
+            mPendingKeys.put(table, new ArrayList<>());
+        }
+        try {
+            HealthConnectThreadScheduler.scheduleInternalTask(
+                    () -> {
+                        try {
+                            BloomFilter filter = buildFilter(mDatabaseSupplier.get(), request);
+                            publishFilter(table, filter, generation);
+                        } catch (RuntimeException e) {
+                            Slog.w(TAG, "Failed to build the insert filter of " + table, e);
+                            abandonBuild(table, generation);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            // The thread pools are being reset on user switch, the next insert schedules it again.
+            abandonBuild(table, generation);
+        }
+    }
+
+    /** Ends the build of the filter of {@code table}, keeping its current filter if any. */
+    private void abandonBuild(String table, int generation) {
+        synchronized (mPendingKeysLock) {
+            if (mGeneration.get() == generation) {
+                mPendingKeys.remove(table);
+            }
+        }
+    }
+
+    /**
+     * Replaces the filter of {@code table} by {@code filter} with the keys written during its
+     * build, or marks the table as unfiltered if it is null, and ends the build.
+     */
+    private void publishFilter(String table, @Nullable BloomFilter filter, int generation) {
+        synchronized (mPendingKeysLock) {
+            if (mGeneration.get() != generation) {
+                // The pending keys were dropped with the filters.
+                return;
+            }
+            List<byte[]> pendingKeys = mPendingKeys.remove(table);
+            if (filter == null) {
+                mUnfilteredTables.add(table);
+                mFilters.remove(table);
+                return;
+            }
+            if (pendingKeys != null) {
+                for (byte[] key : pendingKeys) {
+                    filter.add(key);
+                }
+            }
+            mFilters.put(table, filter);
+        }
+    }
+
+    /**
+     * Returns the filter of the table of {@code request}, or null if it has too many values to be
+     * filtered.
+     */
+    @Nullable
+    private static BloomFilter buildFilter(SQLiteDatabase db, UpsertTableRequest request) {
+        List<Pair<String, Integer>> uniqueColumns = request.getUniqueColumns();
+        long keysCount =
+                DatabaseUtils.queryNumEntries(db, request.getTable()) * uniqueColumns.size();
+        if (keysCount > MAX_KEYS) {
+            return null;
+        }
+
+        List<String> columnNames = new ArrayList<>(uniqueColumns.size());
+        for (Pair<String, Integer> uniqueColumn : uniqueColumns) {
+            columnNames.add(uniqueColumn.first);
+        }
+        ReadTableRequest readTableRequest =
+                new ReadTableRequest(request.getTable()).setColumnNames(columnNames);
+
+        // Leaves room for as many new values as there are existing ones before the next rebuild.
+        // The keys are added as they are read, so the build only holds the filter in memory.
+        BloomFilter filter =
+                new BloomFilter(
+                        (int) Math.max(MIN_CAPACITY, keysCount * 2), FALSE_POSITIVE_RATE);
+        try (Cursor cursor = db.rawQuery(readTableRequest.getReadCommand(), null)) {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < uniqueColumns.size(); i++) {
+                    byte[] value =
+                            uniqueColumns.get(i).second == TYPE_BLOB
+                                    ? cursor.getBlob(i)
+                                    : getBytes(cursor.getString(i));
+                    if (value != null) {
+                        filter.add(getKey(i, value));
+                    }
+                }
+            }
+        }
+        return filter;
+    }
+
+    private static List<byte[]> getKeys(UpsertTableRequest request) {
+        List<Pair<String, Integer>> uniqueColumns = request.getUniqueColumns();
+        ContentValues contentValues = request.getContentValues();
+        List<byte[]> keys = new ArrayList<>(uniqueColumns.size());
+        for (int i = 0; i < uniqueColumns.size(); i++) {
+            Pair<String, Integer> uniqueColumn = uniqueColumns.get(i);
+            byte[] value =
+                    uniqueColumn.second == TYPE_BLOB
+                            ? contentValues.getAsByteArray(uniqueColumn.first)
+                            : getBytes(contentValues.getAsString(uniqueColumn.first));
+            if (value != null) {
+                keys.add(getKey(i, value));
+            }
+        }
+        return keys;
+    }
+
+    // Prefixes the value with its column, so that equal values of different columns don't match.
+    private static byte[] getKey(int columnIndex, byte[] value) {
+        byte[] key = new byte[value.length + 1];
+        key[0] = (byte) columnIndex;
+        System.arraycopy(value, 0, key, 1, value.length);
+        return key;
+    }
+
+    @Nullable
+    private static byte[] getBytes(@Nullable String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+}
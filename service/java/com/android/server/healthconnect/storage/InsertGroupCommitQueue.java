@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.SystemClock;
+import android.util.Slog;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.server.healthconnect.storage.request.UpsertTransactionRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Commits the insert requests of concurrent callers together in one transaction, so that they
+ * share a single commit instead of paying one each.
+ *
+ * <p>The first caller to find no group forming leads the next group. If no insert of this queue is
+ * in flight, it inserts its request right away. Otherwise, as that insert holds the database
+ * anyway, it waits for it to end, for up to the commit window or until enough records are queued,
+ * then inserts all the requests queued meanwhile in one transaction. Every caller returns once
+ * the transaction of its request has ended. If the group transaction fails, its requests are
+ * retried in a transaction each, so that the failure of one request is only reported to its
+ * caller.
+ *
+ * @hide
+ */
+final class InsertGroupCommitQueue {
+    private static final String TAG = "HealthConnectInsertQueue";
+
+    private final Consumer<List<UpsertTransactionRequest>> mGroupInserter;
+    private final Function<UpsertTransactionRequest, List<String>> mInserter;
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private List<PendingInsert> mPendingInserts = new ArrayList<>();
+
+    @GuardedBy("mLock")
+    private int mPendingRecordsCount;
+
+    @GuardedBy("mLock")
+    private boolean mHasLeader;
+
+    @GuardedBy("mLock")
+    private int mInsertsInFlight;
+
+    /**
+     * @param groupInserter inserts the given requests in one transaction.
+     * @param inserter inserts the given request in its own transaction and returns the uuids of
+     *     its records.
+     */
+    InsertGroupCommitQueue(
+            @NonNull Consumer<List<UpsertTransactionRequest>> groupInserter,
+            @NonNull Function<UpsertTransactionRequest, List<String>> inserter) {
+        mGroupInserter = groupInserter;
+        mInserter = inserter;
+    }
+
+    /**
+     * Inserts {@code request} together with the requests of other callers, and returns the uuids
+     * of its records once they are committed.
+     *
+     * @param windowMillis maximum time to wait for an insert in flight to end.
+     * @param maxRecords number of queued records for which the group is committed without waiting
+     *     for the end of the window.
+     */
+    List<String> insertAll(
+            @NonNull UpsertTransactionRequest request, long windowMillis, int maxRecords) {
+        PendingInsert pendingInsert = new PendingInsert(request);
+        boolean isLeader;
+        synchronized (mLock) {
+            mPendingInserts.add(pendingInsert);
+            mPendingRecordsCount += request.getUpsertRequests().size();
+            isLeader = !mHasLeader;
+            mHasLeader = true;
+            if (mPendingRecordsCount >= maxRecords) {
+                mLock.notifyAll();
+            }
+        }
+
+        if (isLeader) {
+            List<PendingInsert> group = awaitGroup(windowMillis, maxRecords);
+            try {
+                commit(group);
+            } finally {
+                synchronized (mLock) {
+                    mInsertsInFlight--;
+                    mLock.notifyAll();
+                }
+            }
+        }
+        return pendingInsert.awaitResult();
+    }
+
+    private List<PendingInsert> awaitGroup(long windowMillis, int maxRecords) {
+        synchronized (mLock) {
+            long deadline = SystemClock.uptimeMillis() + windowMillis;
+            long remainingMillis = windowMillis;
+            boolean interrupted = false;
+            while (mInsertsInFlight > 0
+                    && mPendingRecordsCount < maxRecords
+                    && remainingMillis > 0) {
+                try {
+                    mLock.wait(remainingMillis);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                remainingMillis = deadline - SystemClock.uptimeMillis();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            // Requests queued from now on form the next group, led by the next caller.
+            List<PendingInsert> group = mPendingInserts;
+            mPendingInserts = new ArrayList<>();
+            mPendingRecordsCount = 0;
+            mHasLeader = false;
+            mInsertsInFlight++;
+            return group;
+        }
+    }
+
+    private void commit(List<PendingInsert> group) {
+        try {
+            if (group.size() > 1) {
+                List<UpsertTransactionRequest> requests = new ArrayList<>(group.size());
+                for (PendingInsert pendingInsert : group) {
+                    requests.add(pendingInsert.mRequest);
+                }
+                try {
+                    mGroupInserter.accept(requests);
+                    for (PendingInsert pendingInsert : group) {
+                        pendingInsert.setResult(pendingInsert.mRequest.getUUIdsInOrder(), null);
+                    }
+                    return;
+                } catch (RuntimeException e) {
+                    Slog.w(TAG, "Group insert failed, inserting requests one by one", e);
+                }
+            }
+
+            for (PendingInsert pendingInsert : group) {
+                try {
+                    pendingInsert.setResult(mInserter.apply(pendingInsert.mRequest), null);
+                } catch (RuntimeException e) {
+                    pendingInsert.setResult(null, e);
+                }
+            }
+        } finally {
+            // Never leave a caller waiting, even if an error escaped.
+            for (PendingInsert pendingInsert : group) {
+                pendingInsert.setResult(
+                        null, new IllegalStateException("Insert request was not committed"));
+            }
+        }
+    }
+
+    private static final class PendingInsert {
+        private final UpsertTransactionRequest mRequest;
+
+        @GuardedBy("this")
+        private boolean mDone;
+
+        @GuardedBy("this")
+        @Nullable
+        private List<String> mUuids;
+
+        @GuardedBy("this")
+        @Nullable
+        private RuntimeException mException;
+
+        private PendingInsert(UpsertTransactionRequest request) {
+            mRequest = request;
+        }
+
+        /** Sets the result of the insert, if it isn't set yet, and wakes up its caller. */
+        private synchronized void setResult(
+                @Nullable List<String> uuids, @Nullable RuntimeException exception) {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            mUuids = uuids;
+            mException = exception;
+            notifyAll();
+        }
+
+        @SuppressWarnings("NullAway")
+        private synchronized List<String> awaitResult() {
+            boolean interrupted = false;
+            while (!mDone) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // The insert may already be in progress, so wait for its outcome regardless.
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (mException != null) {
+                throw mException;
+            }
+            return mUuids;
+        }
+    }
+}
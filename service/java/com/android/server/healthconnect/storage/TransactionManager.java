@@ -30,6 +30,7 @@ import static com.google.common.collect.Iterables.getOnlyElement;
 import static java.util.Objects.requireNonNull;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
@@ -39,6 +40,7 @@ import android.database.sqlite.SQLiteException;
 import android.health.connect.Constants;
 import android.health.connect.HealthConnectException;
 import android.health.connect.internal.datatypes.RecordInternal;
+import android.os.CancellationSignal;
 import android.os.UserHandle;
 import android.util.Pair;
 import android.util.Slog;
@@ -47,6 +49,7 @@ import com.android.server.healthconnect.HealthConnectUserContext;
 import com.android.server.healthconnect.storage.datatypehelpers.AppInfoHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.RecordHelper;
 import com.android.server.healthconnect.storage.request.AggregateTableRequest;
+import com.android.server.healthconnect.storage.request.CreateTableRequest;
 import com.android.server.healthconnect.storage.request.DeleteTableRequest;
 import com.android.server.healthconnect.storage.request.DeleteTransactionRequest;
 import com.android.server.healthconnect.storage.request.ReadTableRequest;
@@ -55,6 +58,9 @@ import com.android.server.healthconnect.storage.request.UpsertTableRequest;
 import com.android.server.healthconnect.storage.request.UpsertTransactionRequest;
 import com.android.server.healthconnect.storage.utils.RecordHelperProvider;
 import com.android.server.healthconnect.storage.utils.StorageUtils;
+import com.android.server.healthconnect.storage.utils.TablePartitions;
+import com.android.server.healthconnect.storage.utils.TempUuidsTable;
+import com.android.server.healthconnect.storage.utils.WriteGenerations;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -65,6 +71,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 import java.util.function.BiConsumer;
 
 /**
@@ -76,17 +83,31 @@ import java.util.function.BiConsumer;
  */
 public final class TransactionManager {
     private static final String TAG = "HealthConnectTransactionMan";
+    // Value of PRAGMA auto_vacuum when it is set to INCREMENTAL.
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
     private static final ConcurrentHashMap<UserHandle, HealthConnectDatabase>
             mUserHandleToDatabaseMap = new ConcurrentHashMap<>();
+    // Static so that the generations keep growing if the instance is recreated.
+    private static final WriteGenerations sWriteGenerations = new WriteGenerations();
 
     @SuppressWarnings("NullAway.Init")
     private static volatile TransactionManager sTransactionManager;
 
     private volatile HealthConnectDatabase mHealthConnectDatabase;
     private UserHandle mUserHandle;
-
-    private TransactionManager(@NonNull HealthConnectUserContext context) {
-        mHealthConnectDatabase = new HealthConnectDatabase(context);
+    private final DatabaseConnectionProfile mConnectionProfile;
+    private final WalCheckpointScheduler mWalCheckpointScheduler =
+            new WalCheckpointScheduler(this::getWritableDb);
+    private final InsertGroupCommitQueue mInsertGroupCommitQueue =
+            new InsertGroupCommitQueue(this::insertAllInOneTransaction, this::insertAll);
+    private final InsertConflictFilter mInsertConflictFilter =
+            new InsertConflictFilter(this::getReadableDb);
+
+    private TransactionManager(
+            @NonNull HealthConnectUserContext context,
+            @NonNull DatabaseConnectionProfile connectionProfile) {
+        mConnectionProfile = connectionProfile;
+        mHealthConnectDatabase = new HealthConnectDatabase(context, connectionProfile);
         mUserHandleToDatabaseMap.put(context.getCurrentUserHandle(), mHealthConnectDatabase);
         mUserHandle = context.getCurrentUserHandle();
     }
@@ -96,12 +117,23 @@ public final class TransactionManager {
                 healthConnectUserContext.getCurrentUserHandle())) {
             mUserHandleToDatabaseMap.put(
                     healthConnectUserContext.getCurrentUserHandle(),
-                    new HealthConnectDatabase(healthConnectUserContext));
+                    new HealthConnectDatabase(healthConnectUserContext, mConnectionProfile));
         }
 
         mHealthConnectDatabase =
                 mUserHandleToDatabaseMap.get(healthConnectUserContext.getCurrentUserHandle());
         mUserHandle = healthConnectUserContext.getCurrentUserHandle();
+        sWriteGenerations.onAllTablesWritten();
+        mInsertConflictFilter.clear();
+    }
+
+    /**
+     * Returns the write generations of the tables, bumped by this class after each write
+     * transaction.
+     */
+    @NonNull
+    public WriteGenerations getWriteGenerations() {
+        return sWriteGenerations;
     }
 
     /**
@@ -120,24 +152,73 @@ public final class TransactionManager {
         final SQLiteDatabase db = getWritableDb();
         db.beginTransaction();
         try {
-            for (UpsertTableRequest upsertRequest : request.getUpsertRequests()) {
-                insertOrReplaceRecord(db, upsertRequest);
-            }
-            for (UpsertTableRequest insertRequestsForChangeLog :
-                    request.getInsertRequestsForChangeLogs()) {
-                insertRecord(db, insertRequestsForChangeLog);
-            }
+            insertTransactionRequest(db, request);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            onTablesWritten(request.getUpsertRequests());
+        }
 
-            for (UpsertTableRequest insertRequestsForAccessLogs : request.getAccessLogs()) {
-                insertRecord(db, insertRequestsForAccessLogs);
-            }
+        return request.getUUIdsInOrder();
+    }
+
+    /**
+     * Inserts all the {@link RecordInternal} in {@code request} into the HealthConnect database,
+     * in the same transaction as the concurrent requests of other callers.
+     *
+     * <p>The caller waits for up to {@code windowMillis} for other requests, so that they share a
+     * single commit. A request fails on its own, without failing the other requests of its group.
+     *
+     * @param request an insert request.
+     * @param windowMillis maximum time to wait for an insert in flight to end, to commit with the
+     *     requests queued meanwhile, or 0 to insert {@code request} in its own transaction.
+     * @param maxRecords number of queued records for which the group is committed right away.
+     * @return List of uids of the inserted {@link RecordInternal}, in the same order as they
+     *     presented to {@code request}, once they are committed.
+     */
+    public List<String> insertAllWithGroupCommit(
+            @NonNull UpsertTransactionRequest request, long windowMillis, int maxRecords)
+            throws SQLiteException {
+        if (windowMillis <= 0) {
+            return insertAll(request);
+        }
+        return mInsertGroupCommitQueue.insertAll(request, windowMillis, maxRecords);
+    }
+
+    /** Inserts all the records of {@code requests} in a single transaction. */
+    private void insertAllInOneTransaction(@NonNull List<UpsertTransactionRequest> requests) {
+        if (Constants.DEBUG) {
+            Slog.d(TAG, "Inserting " + requests.size() + " transaction requests together.");
+        }
 
+        final SQLiteDatabase db = getWritableDb();
+        db.beginTransaction();
+        try {
+            for (UpsertTransactionRequest request : requests) {
+                insertTransactionRequest(db, request);
+            }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            for (UpsertTransactionRequest request : requests) {
+                onTablesWritten(request.getUpsertRequests());
+            }
         }
+    }
 
-        return request.getUUIdsInOrder();
+    private void insertTransactionRequest(
+            @NonNull SQLiteDatabase db, @NonNull UpsertTransactionRequest request) {
+        for (UpsertTableRequest upsertRequest : request.getUpsertRequests()) {
+            insertOrReplaceRecord(db, upsertRequest);
+        }
+        for (UpsertTableRequest insertRequestsForChangeLog :
+                request.getInsertRequestsForChangeLogs()) {
+            insertRecord(db, insertRequestsForChangeLog);
+        }
+
+        for (UpsertTableRequest insertRequestsForAccessLogs : request.getAccessLogs()) {
+            insertRecord(db, insertRequestsForAccessLogs);
+        }
     }
 
     /** Ignores if a record is already present. */
@@ -151,6 +232,7 @@ public final class TransactionManager {
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            onTablesWritten(requests);
         }
     }
 
@@ -179,6 +261,7 @@ public final class TransactionManager {
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            onTablesWritten(upsertTableRequests);
         }
     }
 
@@ -197,6 +280,7 @@ public final class TransactionManager {
         int numberOfRecordsDeleted = 0;
         try {
             for (DeleteTableRequest deleteTableRequest : request.getDeleteTableRequests()) {
+                TempUuidsTable.load(db, deleteTableRequest.getUuidFilters());
                 if (deleteTableRequest.requiresRead()) {
                     /*
                     Delete request needs UUID before the entry can be
@@ -225,6 +309,7 @@ public final class TransactionManager {
                 }
                 numberOfRecordsDeleted += deleteTableRequest.getTotalNumberOfRecordsDeleted();
                 db.execSQL(deleteTableRequest.getDeleteCommand());
+                TempUuidsTable.clear(db, deleteTableRequest.getUuidFilters());
             }
 
             request.getChangeLogUpsertRequests()
@@ -233,6 +318,9 @@ public final class TransactionManager {
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            for (DeleteTableRequest deleteTableRequest : request.getDeleteTableRequests()) {
+                onTableWritten(deleteTableRequest.getTableName());
+            }
         }
         return numberOfRecordsDeleted;
     }
@@ -244,15 +332,41 @@ public final class TransactionManager {
      */
     @NonNull
     public void populateWithAggregation(AggregateTableRequest aggregateTableRequest) {
+        populateWithAggregation(aggregateTableRequest, /* cancellationSignal= */ null);
+    }
+
+    /**
+     * Handles the aggregation requests for {@code aggregateTableRequest}
+     *
+     * @param aggregateTableRequest an aggregate request.
+     * @param cancellationSignal cancels the queries, which then throw {@link
+     *     android.os.OperationCanceledException}.
+     */
+    public void populateWithAggregation(
+            @NonNull AggregateTableRequest aggregateTableRequest,
+            @Nullable CancellationSignal cancellationSignal) {
         final SQLiteDatabase db = getReadableDb();
         if (!aggregateTableRequest.getRecordHelper().isRecordOperationsEnabled()) {
             return;
         }
-        try (Cursor cursor = db.rawQuery(aggregateTableRequest.getAggregationCommand(), null);
-                Cursor metaDataCursor =
-                        db.rawQuery(
-                                aggregateTableRequest.getCommandToFetchAggregateMetadata(), null)) {
-            aggregateTableRequest.onResultsFetched(cursor, metaDataCursor);
+        Lock partitionsReadLock = TablePartitions.getReadLock();
+        partitionsReadLock.lock();
+        try {
+            aggregateTableRequest.loadTablePartitions(db);
+            try (Cursor cursor =
+                            db.rawQuery(
+                                    aggregateTableRequest.getAggregationCommand(),
+                                    null,
+                                    cancellationSignal);
+                    Cursor metaDataCursor =
+                            db.rawQuery(
+                                    aggregateTableRequest.getCommandToFetchAggregateMetadata(),
+                                    null,
+                                    cancellationSignal)) {
+                aggregateTableRequest.onResultsFetched(cursor, metaDataCursor);
+            }
+        } finally {
+            partitionsReadLock.unlock();
         }
     }
 
@@ -267,21 +381,43 @@ public final class TransactionManager {
      */
     public List<RecordInternal<?>> readRecordsByIds(@NonNull ReadTransactionRequest request)
             throws SQLiteException {
+        return readRecordsByIds(request, /* cancellationSignal= */ null);
+    }
+
+    /**
+     * Reads the records {@link RecordInternal} stored in the HealthConnect database.
+     *
+     * @param request a read request.
+     * @param cancellationSignal cancels the queries, which then throw {@link
+     *     android.os.OperationCanceledException}.
+     * @return List of records read {@link RecordInternal} from table based on ids.
+     */
+    public List<RecordInternal<?>> readRecordsByIds(
+            @NonNull ReadTransactionRequest request,
+            @Nullable CancellationSignal cancellationSignal)
+            throws SQLiteException {
         // TODO(b/308158714): Make this build time check once we have different classes.
         checkArgument(
                 request.getPageToken() == null && request.getPageSize().isEmpty(),
                 "Expect read by id request, but request contains pagination info.");
         List<RecordInternal<?>> recordInternals = new ArrayList<>();
-        for (ReadTableRequest readTableRequest : request.getReadRequests()) {
-            RecordHelper<?> helper = readTableRequest.getRecordHelper();
-            requireNonNull(helper);
-            if (helper.isRecordOperationsEnabled()) {
-                try (Cursor cursor = read(readTableRequest)) {
-                    List<RecordInternal<?>> internalRecords = helper.getInternalRecords(cursor);
-                    populateInternalRecordsWithExtraData(internalRecords, readTableRequest);
-                    recordInternals.addAll(internalRecords);
+        Lock partitionsReadLock = TablePartitions.getReadLock();
+        partitionsReadLock.lock();
+        try {
+            for (ReadTableRequest readTableRequest : request.getReadRequests()) {
+                RecordHelper<?> helper = readTableRequest.getRecordHelper();
+                requireNonNull(helper);
+                if (helper.isRecordOperationsEnabled()) {
+                    try (Cursor cursor = read(readTableRequest, cancellationSignal)) {
+                        List<RecordInternal<?>> internalRecords =
+                                helper.getInternalRecords(cursor);
+                        populateInternalRecordsWithExtraData(internalRecords, readTableRequest);
+                        recordInternals.addAll(internalRecords);
+                    }
                 }
             }
+        } finally {
+            partitionsReadLock.unlock();
         }
         return recordInternals;
     }
@@ -300,6 +436,24 @@ public final class TransactionManager {
      */
     public Pair<List<RecordInternal<?>>, Long> readRecordsAndPageToken(
             @NonNull ReadTransactionRequest request) throws SQLiteException {
+        return readRecordsAndPageToken(request, /* cancellationSignal= */ null);
+    }
+
+    /**
+     * Reads the records {@link RecordInternal} stored in the HealthConnect database and returns the
+     * next page token.
+     *
+     * @param request a read request. Only one {@link ReadTableRequest} is expected in the {@link
+     *     ReadTransactionRequest request}.
+     * @param cancellationSignal cancels the query, which then throws {@link
+     *     android.os.OperationCanceledException}.
+     * @return Pair containing records list read {@link RecordInternal} from the table and a page
+     *     token for pagination.
+     */
+    public Pair<List<RecordInternal<?>>, Long> readRecordsAndPageToken(
+            @NonNull ReadTransactionRequest request,
+            @Nullable CancellationSignal cancellationSignal)
+            throws SQLiteException {
         // TODO(b/308158714): Make this build time check once we have different classes.
         checkArgument(
                 request.getPageToken() != null && request.getPageSize().isPresent(),
@@ -314,7 +468,9 @@ public final class TransactionManager {
         }
 
         long pageToken;
-        try (Cursor cursor = read(readTableRequest)) {
+        Lock partitionsReadLock = TablePartitions.getReadLock();
+        partitionsReadLock.lock();
+        try (Cursor cursor = read(readTableRequest, cancellationSignal)) {
             Pair<List<RecordInternal<?>>, Long> readResult =
                     helper.getNextInternalRecordsPageAndToken(
                             cursor,
@@ -324,10 +480,54 @@ public final class TransactionManager {
             recordInternalList = readResult.first;
             pageToken = readResult.second;
             populateInternalRecordsWithExtraData(recordInternalList, readTableRequest);
+        } finally {
+            partitionsReadLock.unlock();
         }
         return Pair.create(recordInternalList, pageToken);
     }
 
+    /**
+     * Reads the records {@link RecordInternal} for all the {@code requests}, one after the other.
+     *
+     * <p>The requests are not read in a transaction: the transactions available at this API level
+     * take the write lock of the database, which would block every writer for the whole read. A
+     * write committed during the call may therefore only be seen by the requests read after it.
+     *
+     * @param requests read requests, either by ids or by filters.
+     * @return Pair containing records list read {@link RecordInternal} and the page token for each
+     *     request, in the same order as {@code requests}. The page token is {@link
+     *     android.health.connect.Constants#DEFAULT_LONG} for read by id requests.
+     */
+    public List<Pair<List<RecordInternal<?>>, Long>> readRecordsAndPageTokens(
+            @NonNull List<ReadTransactionRequest> requests) throws SQLiteException {
+        return readRecordsAndPageTokens(requests, /* cancellationSignal= */ null);
+    }
+
+    /**
+     * Reads the records {@link RecordInternal} for all the {@code requests}, one after the other.
+     *
+     * @param requests read requests, either by ids or by filters.
+     * @param cancellationSignal cancels the queries of all the requests, which then throw {@link
+     *     android.os.OperationCanceledException}.
+     * @return Pair containing records list read {@link RecordInternal} and the page token for each
+     *     request, in the same order as {@code requests}.
+     */
+    public List<Pair<List<RecordInternal<?>>, Long>> readRecordsAndPageTokens(
+            @NonNull List<ReadTransactionRequest> requests,
+            @Nullable CancellationSignal cancellationSignal)
+            throws SQLiteException {
+        List<Pair<List<RecordInternal<?>>, Long>> results = new ArrayList<>(requests.size());
+        for (ReadTransactionRequest request : requests) {
+            if (request.getPageToken() == null) {
+                results.add(
+                        Pair.create(readRecordsByIds(request, cancellationSignal), DEFAULT_LONG));
+            } else {
+                results.add(readRecordsAndPageToken(request, cancellationSignal));
+            }
+        }
+        return results;
+    }
+
     /**
      * Inserts record into the table in {@code request} into the HealthConnect database.
      *
@@ -343,7 +543,11 @@ public final class TransactionManager {
      */
     public long insert(@NonNull UpsertTableRequest request) {
         final SQLiteDatabase db = getWritableDb();
-        return insertRecord(db, request);
+        try {
+            return insertRecord(db, request);
+        } finally {
+            onTableWritten(request.getTable());
+        }
     }
 
     /**
@@ -360,7 +564,11 @@ public final class TransactionManager {
      */
     public void update(@NonNull UpsertTableRequest request) {
         final SQLiteDatabase db = getWritableDb();
-        updateRecord(db, request);
+        try {
+            updateRecord(db, request);
+        } finally {
+            onTableWritten(request.getTable());
+        }
     }
 
     /**
@@ -380,16 +588,36 @@ public final class TransactionManager {
      */
     public long insertOrReplace(@NonNull UpsertTableRequest request) {
         final SQLiteDatabase db = getWritableDb();
-        return insertOrReplaceRecord(db, request);
+        try {
+            return insertOrReplaceRecord(db, request);
+        } finally {
+            onTableWritten(request.getTable());
+        }
     }
 
-    /** Note: It is the responsibility of the caller to close the returned cursor */
+    /** Note: It is the responsibility of the caller to close the returned cursor. */
     @NonNull
     public Cursor read(@NonNull ReadTableRequest request) {
+        return read(request, /* cancellationSignal= */ null);
+    }
+
+    /**
+     * Note: It is the responsibility of the caller to close the returned cursor. If {@code request}
+     * reads from partitions, the caller must hold {@link TablePartitions#getReadLock()} until the
+     * cursor is closed.
+     *
+     * @param cancellationSignal cancels the query, which then throws {@link
+     *     android.os.OperationCanceledException}, including while the cursor is read.
+     */
+    @NonNull
+    public Cursor read(
+            @NonNull ReadTableRequest request, @Nullable CancellationSignal cancellationSignal) {
+        final SQLiteDatabase db = getReadableDb();
+        request.loadJoinTablePartitions(db);
         if (Constants.DEBUG) {
             Slog.d(TAG, "Read query: " + request.getReadCommand());
         }
-        return getReadableDb().rawQuery(request.getReadCommand(), null);
+        return db.rawQuery(request.getReadCommand(), null, cancellationSignal);
     }
 
     public long getLastRowIdFor(String tableName) {
@@ -424,7 +652,16 @@ public final class TransactionManager {
 
     public void delete(DeleteTableRequest request) {
         final SQLiteDatabase db = getWritableDb();
-        db.execSQL(request.getDeleteCommand());
+        db.beginTransaction();
+        try {
+            TempUuidsTable.load(db, request.getUuidFilters());
+            db.execSQL(request.getDeleteCommand());
+            TempUuidsTable.clear(db, request.getUuidFilters());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            onTableWritten(request.getTableName());
+        }
     }
 
     /**
@@ -449,6 +686,7 @@ public final class TransactionManager {
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            onTablesWritten(request.getUpsertRequests());
         }
     }
 
@@ -502,16 +740,71 @@ public final class TransactionManager {
         db.beginTransaction();
         try {
             for (DeleteTableRequest deleteTableRequest : deleteTableRequests) {
+                TempUuidsTable.load(db, deleteTableRequest.getUuidFilters());
                 db.execSQL(deleteTableRequest.getDeleteCommand());
+                TempUuidsTable.clear(db, deleteTableRequest.getUuidFilters());
             }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            for (DeleteTableRequest deleteTableRequest : deleteTableRequests) {
+                onTableWritten(deleteTableRequest.getTableName());
+            }
+        }
+    }
+
+    /**
+     * Writes a consistent and compacted copy of the database to {@code destination}, which must
+     * not exist or be empty. The copy is made in a single read transaction, so concurrent writes
+     * are either fully included or not at all.
+     */
+    public void vacuumInto(@NonNull File destination) throws SQLiteException {
+        requireNonNull(destination);
+        final SQLiteDatabase db = getReadableDb();
+        db.execSQL("VACUUM INTO ?", new Object[] {destination.getAbsolutePath()});
+    }
+
+    /** Number of unused pages in the database file, which a vacuum would release. */
+    public long getFreePageCount() {
+        return DatabaseUtils.longForQuery(getReadableDb(), "PRAGMA freelist_count", null);
+    }
+
+    /** Size of the pages of the database file in bytes. */
+    public long getPageSize() {
+        return DatabaseUtils.longForQuery(getReadableDb(), "PRAGMA page_size", null);
+    }
+
+    /** Updates the statistics that the query planner uses, for the tables that need it. */
+    public void optimize() {
+        getWritableDb().execSQL("PRAGMA optimize");
+    }
+
+    /**
+     * Releases the unused pages of the database file to the file system.
+     *
+     * <p>Databases created before incremental vacuum was enabled need a full vacuum, which rebuilds
+     * the file, before unused pages can be released incrementally.
+     */
+    public void vacuum() {
+        final SQLiteDatabase db = getWritableDb();
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL) {
+            // Releases pages as the statement steps, so it is run through a cursor until done,
+            // like the other pragmas which return rows.
+            try (Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null)) {
+                while (cursor.moveToNext()) {
+                    // Nothing to read, the pages are released as the statement steps.
+                }
+            }
+        } else {
+            db.execSQL("VACUUM");
         }
     }
 
     public void onUserSwitching() {
         mHealthConnectDatabase.close();
+        sWriteGenerations.onAllTablesWritten();
+        mWalCheckpointScheduler.reset();
+        mInsertConflictFilter.clear();
     }
 
     private void insertAll(
@@ -525,9 +818,21 @@ public final class TransactionManager {
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            onTablesWritten(upsertTableRequests);
+        }
+    }
+
+    private void onTablesWritten(@NonNull List<UpsertTableRequest> upsertTableRequests) {
+        for (UpsertTableRequest upsertTableRequest : upsertTableRequests) {
+            onTableWritten(upsertTableRequest.getTable());
         }
     }
 
+    private void onTableWritten(@NonNull String tableName) {
+        sWriteGenerations.onTableWritten(tableName);
+        mWalCheckpointScheduler.onWrite();
+    }
+
     public <E extends Throwable> void runAsTransaction(TransactionRunnable<E> task) throws E {
         final SQLiteDatabase db = getWritableDb();
         db.beginTransaction();
@@ -536,12 +841,37 @@ public final class TransactionManager {
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            // The tables written by the task are not known.
+            sWriteGenerations.onAllTablesWritten();
+            mWalCheckpointScheduler.onWrite();
+        }
+    }
+
+    /**
+     * Runs {@code task} in a transaction, like {@link #runAsTransaction(TransactionRunnable)}, for
+     * tasks which only write to {@code tableNames}. Only the data cached from these tables is
+     * invalidated.
+     */
+    public <E extends Throwable> void runAsTransaction(
+            @NonNull List<String> tableNames, TransactionRunnable<E> task) throws E {
+        requireNonNull(tableNames);
+        final SQLiteDatabase db = getWritableDb();
+        db.beginTransaction();
+        try {
+            task.run(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            for (String tableName : tableNames) {
+                onTableWritten(tableName);
+            }
         }
     }
 
     /** Assumes that caller will be closing {@code db} and handling the transaction if required */
     public long insertRecord(@NonNull SQLiteDatabase db, @NonNull UpsertTableRequest request) {
         long rowId = db.insertOrThrow(request.getTable(), null, request.getContentValues());
+        createChildTablesIfMissing(request, db);
         request.getChildTableRequests()
                 .forEach(childRequest -> insertRecord(db, childRequest.withParentKey(rowId)));
 
@@ -564,6 +894,7 @@ public final class TransactionManager {
                         SQLiteDatabase.CONFLICT_IGNORE);
 
         if (rowId != -1) {
+            createChildTablesIfMissing(request, db);
             request.getChildTableRequests()
                     .forEach(childRequest -> insertRecord(db, childRequest.withParentKey(rowId)));
         }
@@ -597,6 +928,14 @@ public final class TransactionManager {
         return mHealthConnectDatabase.getDatabasePath();
     }
 
+    /**
+     * Copies the content of the write-ahead log into the database file and resets the log, so that
+     * the file at {@link #getDatabasePath()} holds all the committed data.
+     */
+    public void checkpointWal() {
+        mWalCheckpointScheduler.checkpoint(/* truncate= */ true);
+    }
+
     public void updateTable(UpsertTableRequest upsertTableRequest) {
         getWritableDb()
                 .update(
@@ -604,6 +943,7 @@ public final class TransactionManager {
                         upsertTableRequest.getContentValues(),
                         upsertTableRequest.getUpdateWhereClauses().get(false),
                         null);
+        onTableWritten(upsertTableRequest.getTable());
     }
 
     public int getDatabaseVersion() {
@@ -679,12 +1019,23 @@ public final class TransactionManager {
      */
     private long insertOrReplaceRecord(
             @NonNull SQLiteDatabase db, @NonNull UpsertTableRequest request) {
-        try {
-            if (request.getUniqueColumnsCount() == 0) {
-                throw new RuntimeException(
-                        "insertOrReplaceRecord should only be called with unique columns set");
+        if (request.getUniqueColumnsCount() == 0) {
+            throw new RuntimeException(
+                    "insertOrReplaceRecord should only be called with unique columns set");
+        }
+
+        // Probable duplicates are looked up and updated, rather than failing their insert.
+        if (mInsertConflictFilter.mightConflict(request)) {
+            try (Cursor cursor = db.rawQuery(request.getReadRequest().getReadCommand(), null)) {
+                if (cursor.moveToFirst()) {
+                    long rowId = updateEntriesIfRequired(db, request, cursor);
+                    mInsertConflictFilter.onWritten(request);
+                    return rowId;
+                }
             }
+        }
 
+        try {
             long rowId =
                     db.insertWithOnConflict(
                             request.getTable(),
@@ -692,15 +1043,19 @@ public final class TransactionManager {
                             request.getContentValues(),
                             SQLiteDatabase.CONFLICT_FAIL);
             insertChildTableRequest(request, rowId, db);
+            mInsertConflictFilter.onWritten(request);
             return rowId;
         } catch (SQLiteConstraintException e) {
+            // The filter misses the rows that were written without it.
             try (Cursor cursor = db.rawQuery(request.getReadRequest().getReadCommand(), null)) {
                 if (!cursor.moveToFirst()) {
                     throw new HealthConnectException(
                             ERROR_INTERNAL, "Conflict found, but couldn't read the entry.");
                 }
 
-                return updateEntriesIfRequired(db, request, cursor);
+                long rowId = updateEntriesIfRequired(db, request, cursor);
+                mInsertConflictFilter.onWritten(request);
+                return rowId;
             }
         }
     }
@@ -733,14 +1088,31 @@ public final class TransactionManager {
     private void deleteChildTableRequest(
             UpsertTableRequest request, long rowId, SQLiteDatabase db) {
         for (String childTable : request.getAllChildTablesToDelete()) {
-            DeleteTableRequest deleteTableRequest =
-                    new DeleteTableRequest(childTable).setId(PARENT_KEY, String.valueOf(rowId));
-            db.execSQL(deleteTableRequest.getDeleteCommand());
+            deleteChildRows(childTable, rowId, db);
+            if (request.isChildTablePartitioned(childTable)) {
+                // The rows may be in any partition if the record was moved in time.
+                for (String partition : TablePartitions.getPartitions(db, childTable)) {
+                    deleteChildRows(partition, rowId, db);
+                }
+            }
+        }
+    }
+
+    private static void deleteChildRows(String childTable, long rowId, SQLiteDatabase db) {
+        DeleteTableRequest deleteTableRequest =
+                new DeleteTableRequest(childTable).setId(PARENT_KEY, String.valueOf(rowId));
+        db.execSQL(deleteTableRequest.getDeleteCommand());
+    }
+
+    private static void createChildTablesIfMissing(UpsertTableRequest request, SQLiteDatabase db) {
+        for (CreateTableRequest createTableRequest : request.getChildTablesToCreate()) {
+            TablePartitions.createIfMissing(db, createTableRequest);
         }
     }
 
     private void insertChildTableRequest(
             UpsertTableRequest request, long rowId, SQLiteDatabase db) {
+        createChildTablesIfMissing(request, db);
         for (UpsertTableRequest childTableRequest : request.getChildTableRequests()) {
             db.insertOrThrow(
                     childTableRequest.withParentKey(rowId).getTable(),
@@ -753,11 +1125,21 @@ public final class TransactionManager {
         void run(SQLiteDatabase db) throws E;
     }
 
+    @NonNull
+    public static TransactionManager getInstance(@NonNull HealthConnectUserContext context) {
+        return getInstance(context, DatabaseConnectionProfile.DEFAULT);
+    }
+
+    /**
+     * Returns the instance of this class, creating it with {@code connectionProfile} if it doesn't
+     * exist yet.
+     */
     @NonNull
     public static synchronized TransactionManager getInstance(
-            @NonNull HealthConnectUserContext context) {
+            @NonNull HealthConnectUserContext context,
+            @NonNull DatabaseConnectionProfile connectionProfile) {
         if (sTransactionManager == null) {
-            sTransactionManager = new TransactionManager(context);
+            sTransactionManager = new TransactionManager(context, connectionProfile);
         }
 
         return sTransactionManager;
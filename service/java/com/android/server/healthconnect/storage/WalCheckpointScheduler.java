@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import android.annotation.NonNull;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Slog;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.healthconnect.HealthConnectThreadScheduler;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Checkpoints the write-ahead log of the database in the background, so that it doesn't keep
+ * growing during write bursts and readers don't have to go through it.
+ *
+ * <p>A passive checkpoint, which doesn't wait for readers or writers, runs after every {@link
+ * #WRITES_PER_PASSIVE_CHECKPOINT} writes. A truncating checkpoint, which also resets the log file,
+ * runs once no write has happened for {@link #IDLE_CHECKPOINT_DELAY_MILLIS}.
+ *
+ * @hide
+ */
+final class WalCheckpointScheduler {
+    private static final String TAG = "HealthConnectWalCheckpoint";
+
+    @VisibleForTesting static final int WRITES_PER_PASSIVE_CHECKPOINT = 500;
+    @VisibleForTesting static final long IDLE_CHECKPOINT_DELAY_MILLIS = 30_000;
+
+    private final Supplier<SQLiteDatabase> mDatabaseSupplier;
+    private final AtomicInteger mWritesSinceCheckpoint = new AtomicInteger();
+    private final AtomicBoolean mPassiveCheckpointScheduled = new AtomicBoolean();
+    private final AtomicBoolean mIdleCheckpointScheduled = new AtomicBoolean();
+    private volatile long mLastWriteUptimeMillis;
+
+    WalCheckpointScheduler(@NonNull Supplier<SQLiteDatabase> databaseSupplier) {
+        mDatabaseSupplier = databaseSupplier;
+    }
+
+    /** Called after a write to the database. */
+    void onWrite() {
+        mLastWriteUptimeMillis = SystemClock.uptimeMillis();
+        if (mWritesSinceCheckpoint.incrementAndGet() >= WRITES_PER_PASSIVE_CHECKPOINT
+                && mPassiveCheckpointScheduled.compareAndSet(false, true)) {
+            schedule(mPassiveCheckpointScheduled, this::onWriteBurst, /* delayMillis= */ 0);
+        }
+        if (mIdleCheckpointScheduled.compareAndSet(false, true)) {
+            schedule(
+                    mIdleCheckpointScheduled,
+                    this::onIdleDelayPassed,
+                    IDLE_CHECKPOINT_DELAY_MILLIS);
+        }
+    }
+
+    /** Forgets the scheduled checkpoints, called when the thread pools are shut down. */
+    void reset() {
+        mPassiveCheckpointScheduled.set(false);
+        mIdleCheckpointScheduled.set(false);
+        mWritesSinceCheckpoint.set(0);
+    }
+
+    /**
+     * Copies the content of the log into the database file, resetting the log if {@code truncate}
+     * is true. Does nothing if the database doesn't use write-ahead logging.
+     */
+    void checkpoint(boolean truncate) {
+        SQLiteDatabase db = mDatabaseSupplier.get();
+        if (!db.isWriteAheadLoggingEnabled()) {
+            return;
+        }
+        String mode = truncate ? "TRUNCATE" : "PASSIVE";
+        // Returns whether it was blocked, the pages in the log and the pages checkpointed.
+        try (Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(" + mode + ")", null)) {
+            if (cursor.moveToFirst() && cursor.getInt(0) != 0) {
+                Slog.i(TAG, mode + " checkpoint could not complete, the database is busy");
+            }
+        }
+    }
+
+    private void onWriteBurst() {
+        mPassiveCheckpointScheduled.set(false);
+        mWritesSinceCheckpoint.set(0);
+        checkpoint(/* truncate= */ false);
+    }
+
+    private void onIdleDelayPassed() {
+        long idleMillis = SystemClock.uptimeMillis() - mLastWriteUptimeMillis;
+        if (idleMillis < IDLE_CHECKPOINT_DELAY_MILLIS) {
+            schedule(
+                    mIdleCheckpointScheduled,
+                    this::onIdleDelayPassed,
+                    IDLE_CHECKPOINT_DELAY_MILLIS - idleMillis);
+            return;
+        }
+        // Writes from now on schedule a new idle checkpoint.
+        mIdleCheckpointScheduled.set(false);
+        mWritesSinceCheckpoint.set(0);
+        checkpoint(/* truncate= */ true);
+    }
+
+    private static void schedule(AtomicBoolean scheduled, Runnable task, long delayMillis) {
+        try {
+            if (delayMillis == 0) {
+                HealthConnectThreadScheduler.scheduleInternalTask(task);
+            } else {
+                HealthConnectThreadScheduler.scheduleInternalTask(task, delayMillis);
+            }
+        } catch (RejectedExecutionException e) {
+            // The thread pools are being reset on user switch, the next write schedules it again.
+            scheduled.set(false);
+        }
+    }
+}
@@ -33,6 +33,8 @@ import android.health.connect.accesslog.AccessLog.OperationType;
 import android.health.connect.datatypes.RecordTypeIdentifier;
 import android.util.Pair;
 
+import com.android.internal.annotations.GuardedBy;
+import com.android.server.healthconnect.HealthConnectThreadScheduler;
 import com.android.server.healthconnect.storage.TransactionManager;
 import com.android.server.healthconnect.storage.request.CreateTableRequest;
 import com.android.server.healthconnect.storage.request.DeleteTableRequest;
@@ -59,10 +61,25 @@ public final class AccessLogsHelper extends DatabaseHelper {
     private static final String OPERATION_TYPE_COLUMN_NAME = "operation_type";
     private static final int NUM_COLS = 5;
     private static final int DEFAULT_ACCESS_LOG_TIME_PERIOD_IN_DAYS = 7;
+    // Pending access logs are written at most this long after they were added...
+    private static final long FLUSH_DELAY_MILLIS = 1000;
+    // ...or as soon as this many of them are pending.
+    private static final int FLUSH_THRESHOLD = 64;
 
     @SuppressWarnings("NullAway.Init")
     private static volatile AccessLogsHelper sAccessLogsHelper;
 
+    private final Object mPendingAccessLogsLock = new Object();
+    // Held while pending access logs are written, so that a flush returns only once all the access
+    // logs added before it are in the DB, even if another thread is writing them.
+    private final Object mFlushLock = new Object();
+
+    @GuardedBy("mPendingAccessLogsLock")
+    private List<UpsertTableRequest> mPendingAccessLogs = new ArrayList<>();
+
+    @GuardedBy("mPendingAccessLogsLock")
+    private boolean mIsFlushScheduled;
+
     private AccessLogsHelper() {}
 
     @NonNull
@@ -74,6 +91,7 @@ public final class AccessLogsHelper extends DatabaseHelper {
      * @return AccessLog list
      */
     public List<AccessLog> queryAccessLogs() {
+        flushAccessLogs();
         final ReadTableRequest readTableRequest = new ReadTableRequest(TABLE_NAME);
 
         List<AccessLog> accessLogsList = new ArrayList<>();
@@ -104,7 +122,7 @@ public final class AccessLogsHelper extends DatabaseHelper {
      * access log.
      */
     public long getLatestAccessLogTimeStamp() {
-
+        flushAccessLogs();
         final ReadTableRequest readTableRequest =
                 new ReadTableRequest(TABLE_NAME)
                         .setOrderBy(
@@ -123,14 +141,54 @@ public final class AccessLogsHelper extends DatabaseHelper {
         return mostRecentAccessTime;
     }
 
-    /** Adds an entry in to the access logs table for every insert or read operation request */
+    /**
+     * Adds an entry in to the access logs table for every insert or read operation request.
+     *
+     * <p>The entry is buffered and written together with other pending entries in a single
+     * transaction, so that the caller doesn't have to wait for a DB write. Use {@link
+     * #flushAccessLogs()} to make sure all pending entries are written.
+     */
     public void addAccessLog(
             String packageName,
             @RecordTypeIdentifier.RecordType List<Integer> recordTypeList,
             @OperationType.OperationTypes int operationType) {
         UpsertTableRequest request =
                 getUpsertTableRequest(packageName, recordTypeList, operationType);
-        TransactionManager.getInitialisedInstance().insert(request);
+        synchronized (mPendingAccessLogsLock) {
+            mPendingAccessLogs.add(request);
+            if (mPendingAccessLogs.size() == FLUSH_THRESHOLD) {
+                HealthConnectThreadScheduler.scheduleInternalTask(this::flushAccessLogs);
+            } else if (!mIsFlushScheduled) {
+                mIsFlushScheduled = true;
+                HealthConnectThreadScheduler.scheduleInternalTask(
+                        this::flushAccessLogs, FLUSH_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /** Writes all the pending access logs to the access logs table in a single transaction. */
+    public void flushAccessLogs() {
+        synchronized (mFlushLock) {
+            List<UpsertTableRequest> accessLogs;
+            synchronized (mPendingAccessLogsLock) {
+                mIsFlushScheduled = false;
+                if (mPendingAccessLogs.isEmpty()) {
+                    return;
+                }
+                accessLogs = mPendingAccessLogs;
+                mPendingAccessLogs = new ArrayList<>();
+            }
+
+            final TransactionManager transactionManager =
+                    TransactionManager.getInitialisedInstance();
+            transactionManager.runAsTransaction(
+                    List.of(TABLE_NAME),
+                    db -> {
+                        for (UpsertTableRequest request : accessLogs) {
+                            transactionManager.insertRecord(db, request);
+                        }
+                    });
+        }
     }
 
     @NonNull
@@ -175,6 +233,13 @@ public final class AccessLogsHelper extends DatabaseHelper {
         return columnInfo;
     }
 
+    @Override
+    protected void clearCache() {
+        synchronized (mPendingAccessLogsLock) {
+            mPendingAccessLogs = new ArrayList<>();
+        }
+    }
+
     @Override
     protected String getMainTableName() {
         return TABLE_NAME;
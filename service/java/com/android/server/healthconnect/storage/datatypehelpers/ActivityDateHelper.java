@@ -138,6 +138,7 @@ public final class ActivityDateHelper extends DatabaseHelper {
                                                 getUpsertTableRequest(recordTypeId, epochDay))));
 
         transactionManager.runAsTransaction(
+                List.of(TABLE_NAME),
                 db -> {
                     db.execSQL(deleteTableRequest.getDeleteCommand());
                     upsertTableRequests.forEach(
@@ -223,8 +224,11 @@ public final class ActivityDateHelper extends DatabaseHelper {
 
     /** Creates UpsertTableRequest to insert into activity_date_table table from recordInternal. */
     public UpsertTableRequest getUpsertTableRequest(RecordInternal<?> recordInternal) {
-        return getUpsertTableRequest(
-                recordInternal.getRecordType(),
-                ChronoUnit.DAYS.between(LocalDate.EPOCH, recordInternal.getLocalDate()));
+        return getUpsertTableRequest(recordInternal.getRecordType(), getEpochDays(recordInternal));
+    }
+
+    /** Returns the activity date of {@code recordInternal}, in days since epoch. */
+    public static long getEpochDays(RecordInternal<?> recordInternal) {
+        return ChronoUnit.DAYS.between(LocalDate.EPOCH, recordInternal.getLocalDate());
     }
 }
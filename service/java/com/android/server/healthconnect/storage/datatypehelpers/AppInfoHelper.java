@@ -51,6 +51,7 @@ import android.health.connect.internal.datatypes.AppInfoInternal;
 import android.health.connect.internal.datatypes.RecordInternal;
 import android.health.connect.internal.datatypes.utils.RecordMapper;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.Pair;
 import android.util.Slog;
 
@@ -58,6 +59,7 @@ import com.android.server.healthconnect.storage.TransactionManager;
 import com.android.server.healthconnect.storage.request.CreateTableRequest;
 import com.android.server.healthconnect.storage.request.ReadTableRequest;
 import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+import com.android.server.healthconnect.storage.utils.CopyOnWriteLongObjectMap;
 import com.android.server.healthconnect.storage.utils.WhereClauses;
 
 import java.io.ByteArrayOutputStream;
@@ -91,6 +93,8 @@ public final class AppInfoHelper extends DatabaseHelper {
     private static final String TAG = "HealthConnectAppInfoHelper";
     private static final String RECORD_TYPES_USED_COLUMN_NAME = "record_types_used";
     private static final int COMPRESS_FACTOR = 100;
+    // Decoded icons are only needed by a handful of UI facing APIs, so only keep a few of them.
+    private static final int MAX_ICON_CACHE_SIZE_BYTES = 4 * 1024 * 1024;
 
     @SuppressWarnings("NullAway.Init")
     private static volatile AppInfoHelper sAppInfoHelper;
@@ -100,16 +104,32 @@ public final class AppInfoHelper extends DatabaseHelper {
      *
      * <p>TO HAVE THREAD SAFETY DON'T USE THESE VARIABLES DIRECTLY, INSTEAD USE ITS GETTER
      */
-    private volatile ConcurrentHashMap<Long, String> mIdPackageNameMap;
+    private volatile CopyOnWriteLongObjectMap<String> mIdPackageNameMap;
+
+    /**
+     * Map to store packageName -> appInfoId mapping for populating record for write
+     *
+     * <p>TO HAVE THREAD SAFETY DON'T USE THESE VARIABLES DIRECTLY, INSTEAD USE ITS GETTER
+     */
+    private volatile ConcurrentHashMap<String, Long> mPackageNameIdMap;
 
     /**
      * Map to store application package-name -> AppInfo mapping (such as packageName -> appName,
-     * icon, rowId in the DB etc.)
+     * rowId in the DB etc.). Icons are not part of these entries, see {@link #mIconCache}.
      *
      * <p>TO HAVE THREAD SAFETY DON'T USE THESE VARIABLES DIRECTLY, INSTEAD USE ITS GETTER
      */
     private volatile ConcurrentHashMap<String, AppInfoInternal> mAppInfoMap;
 
+    /** Bounded cache of package-name -> decoded icon, populated from the DB on demand. */
+    private final LruCache<String, Bitmap> mIconCache =
+            new LruCache<>(MAX_ICON_CACHE_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(String packageName, Bitmap icon) {
+                    return icon.getAllocationByteCount();
+                }
+            };
+
     @SuppressWarnings("NullAway.Init")
     private AppInfoHelper() {}
 
@@ -118,6 +138,13 @@ public final class AppInfoHelper extends DatabaseHelper {
     public synchronized void clearCache() {
         mAppInfoMap = null;
         mIdPackageNameMap = null;
+        mPackageNameIdMap = null;
+        mIconCache.evictAll();
+    }
+
+    @Override
+    public void warmUpCache() {
+        populateAppInfoMap();
     }
 
     @Override
@@ -138,9 +165,10 @@ public final class AppInfoHelper extends DatabaseHelper {
     public void populateAppInfoId(
             @NonNull RecordInternal<?> record, @NonNull Context context, boolean requireAllFields) {
         final String packageName = requireNonNull(record.getPackageName());
-        AppInfoInternal appInfo = getAppInfoMap().get(packageName);
+        Long appInfoId = getPackageNameIdMap().get(packageName);
 
-        if (appInfo == null) {
+        if (appInfoId == null) {
+            AppInfoInternal appInfo;
             try {
                 appInfo = getAppInfo(packageName, context);
             } catch (NameNotFoundException e) {
@@ -153,11 +181,10 @@ public final class AppInfoHelper extends DatabaseHelper {
                                 DEFAULT_LONG, packageName, record.getAppName(), null, null);
             }
 
-            insertIfNotPresent(packageName, appInfo);
+            appInfoId = insertIfNotPresent(packageName, appInfo);
         }
 
-        record.setAppInfoId(appInfo.getId());
-        record.setPackageName(appInfo.getPackageName());
+        record.setAppInfoId(appInfoId);
     }
 
     /**
@@ -179,7 +206,7 @@ public final class AppInfoHelper extends DatabaseHelper {
             @SuppressWarnings("NullAway")
             var recordTypesUsed =
                     containsAppInfo(packageName)
-                            ? mAppInfoMap.get(packageName).getRecordTypesUsed()
+                            ? getAppInfoMap().get(packageName).getRecordTypesUsed()
                             : null;
             AppInfoInternal appInfoInternal =
                     new AppInfoInternal(
@@ -209,16 +236,11 @@ public final class AppInfoHelper extends DatabaseHelper {
             return DEFAULT_LONG;
         }
 
-        AppInfoInternal appInfo = getAppInfoMap().getOrDefault(packageName, null);
-
-        if (appInfo == null) {
-            return DEFAULT_LONG;
-        }
-        return appInfo.getId();
+        return getPackageNameIdMap().getOrDefault(packageName, DEFAULT_LONG);
     }
 
     private boolean containsAppInfo(String packageName) {
-        return getAppInfoMap().containsKey(packageName);
+        return getPackageNameIdMap().containsKey(packageName);
     }
 
     /**
@@ -227,14 +249,22 @@ public final class AppInfoHelper extends DatabaseHelper {
      */
     public List<Long> getAppInfoIds(List<String> packageNames) {
         if (DEBUG) {
-            Slog.d(TAG, "App info map: " + mAppInfoMap);
+            Slog.d(TAG, "App info id map: " + mPackageNameIdMap);
         }
         if (packageNames == null || packageNames.isEmpty()) {
             return Collections.emptyList();
         }
 
+        // Add the ids already boxed in the map rather than unboxing and boxing them again.
+        Map<String, Long> packageNameIdMap = getPackageNameIdMap();
+        Long defaultId = DEFAULT_LONG;
         List<Long> result = new ArrayList<>(packageNames.size());
-        packageNames.forEach(packageName -> result.add(getAppInfoId(packageName)));
+        for (String packageName : packageNames) {
+            result.add(
+                    packageName == null
+                            ? defaultId
+                            : packageNameIdMap.getOrDefault(packageName, defaultId));
+        }
 
         return result;
     }
@@ -271,25 +301,59 @@ public final class AppInfoHelper extends DatabaseHelper {
                         (appInfo) ->
                                 (appInfo.getRecordTypesUsed() != null
                                         && !appInfo.getRecordTypesUsed().isEmpty()))
-                .map(AppInfoInternal::toExternal)
+                .map(
+                        (appInfo) ->
+                                new AppInfo.Builder(
+                                                appInfo.getPackageName(),
+                                                appInfo.getName(),
+                                                getIcon(appInfo.getPackageName()))
+                                        .build())
                 .collect(Collectors.toList());
     }
 
+    /** Returns the decoded icon of {@code packageName}, reading it from the DB if not cached. */
+    @Nullable
+    private Bitmap getIcon(@NonNull String packageName) {
+        Bitmap icon = mIconCache.get(packageName);
+        if (icon != null) {
+            return icon;
+        }
+
+        WhereClauses whereClauses = new WhereClauses(AND);
+        whereClauses.addWhereEqualsClause(PACKAGE_COLUMN_NAME, packageName);
+        ReadTableRequest readTableRequest =
+                new ReadTableRequest(TABLE_NAME)
+                        .setColumnNames(List.of(APP_ICON_COLUMN_NAME))
+                        .setWhereClause(whereClauses);
+        try (Cursor cursor =
+                TransactionManager.getInitialisedInstance().read(readTableRequest)) {
+            if (cursor.moveToFirst()) {
+                icon = decodeBitmap(getCursorBlob(cursor, APP_ICON_COLUMN_NAME));
+            }
+        }
+
+        if (icon != null) {
+            mIconCache.put(packageName, icon);
+        }
+        return icon;
+    }
+
     /** Returns AppInfo id for the provided {@code packageName}, creating it if needed. */
     public long getOrInsertAppInfoId(@NonNull String packageName, @NonNull Context context) {
-        AppInfoInternal appInfoInternal = getAppInfoMap().get(packageName);
+        Long appInfoId = getPackageNameIdMap().get(packageName);
 
-        if (appInfoInternal == null) {
+        if (appInfoId == null) {
+            AppInfoInternal appInfoInternal;
             try {
                 appInfoInternal = getAppInfo(packageName, context);
             } catch (NameNotFoundException e) {
                 throw new IllegalArgumentException("Could not find package info for package", e);
             }
 
-            insertIfNotPresent(packageName, appInfoInternal);
+            appInfoId = insertIfNotPresent(packageName, appInfoInternal);
         }
 
-        return appInfoInternal.getId();
+        return appInfoId;
     }
 
     private synchronized void populateAppInfoMap() {
@@ -297,15 +361,24 @@ public final class AppInfoHelper extends DatabaseHelper {
             return;
         }
         ConcurrentHashMap<String, AppInfoInternal> appInfoMap = new ConcurrentHashMap<>();
-        ConcurrentHashMap<Long, String> idPackageNameMap = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Long> packageNameIdMap = new ConcurrentHashMap<>();
         final TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
-        try (Cursor cursor = transactionManager.read(new ReadTableRequest(TABLE_NAME))) {
+        // Icons are deliberately not read here, see getIcon.
+        ReadTableRequest readTableRequest =
+                new ReadTableRequest(TABLE_NAME)
+                        .setColumnNames(
+                                List.of(
+                                        RecordHelper.PRIMARY_COLUMN_NAME,
+                                        PACKAGE_COLUMN_NAME,
+                                        APPLICATION_COLUMN_NAME,
+                                        RECORD_TYPES_USED_COLUMN_NAME));
+        try (Cursor cursor = transactionManager.read(readTableRequest)) {
+            CopyOnWriteLongObjectMap.Builder<String> idPackageNameMap =
+                    new CopyOnWriteLongObjectMap.Builder<>(cursor.getCount());
             while (cursor.moveToNext()) {
                 long rowId = getCursorLong(cursor, RecordHelper.PRIMARY_COLUMN_NAME);
                 String packageName = getCursorString(cursor, PACKAGE_COLUMN_NAME);
                 String appName = getCursorString(cursor, APPLICATION_COLUMN_NAME);
-                byte[] icon = getCursorBlob(cursor, APP_ICON_COLUMN_NAME);
-                Bitmap bitmap = decodeBitmap(icon);
                 String recordTypesUsed = getCursorString(cursor, RECORD_TYPES_USED_COLUMN_NAME);
 
                 Set<Integer> recordTypesListAsSet = getRecordTypesAsSet(recordTypesUsed);
@@ -313,12 +386,14 @@ public final class AppInfoHelper extends DatabaseHelper {
                 appInfoMap.put(
                         packageName,
                         new AppInfoInternal(
-                                rowId, packageName, appName, bitmap, recordTypesListAsSet));
+                                rowId, packageName, appName, null, recordTypesListAsSet));
                 idPackageNameMap.put(rowId, packageName);
+                packageNameIdMap.put(packageName, rowId);
             }
+            mIdPackageNameMap = idPackageNameMap.build();
         }
         mAppInfoMap = appInfoMap;
-        mIdPackageNameMap = idPackageNameMap;
+        mPackageNameIdMap = packageNameIdMap;
     }
 
     @Nullable
@@ -538,14 +613,16 @@ public final class AppInfoHelper extends DatabaseHelper {
         WhereClauses whereClauseForAppInfoTableUpdate = new WhereClauses(AND);
         whereClauseForAppInfoTableUpdate.addWhereEqualsClause(
                 PACKAGE_COLUMN_NAME, appInfo.getPackageName());
+        // The icon is left untouched, as it is not changed by this update.
         UpsertTableRequest upsertRequestForAppInfoUpdate =
                 new UpsertTableRequest(
-                        TABLE_NAME, getContentValues(packageName, appInfo), UNIQUE_COLUMN_INFO);
+                        TABLE_NAME,
+                        getContentValues(packageName, appInfo, /* includeIcon= */ false),
+                        UNIQUE_COLUMN_INFO);
         TransactionManager.getInitialisedInstance().update(upsertRequestForAppInfoUpdate);
 
         // update locally stored maps to keep data in sync.
         getAppInfoMap().put(packageName, appInfo);
-        getIdPackageNameMap().put(appInfo.getId(), packageName);
         if (DEBUG) {
             Log.d(
                     TAG,
@@ -590,7 +667,7 @@ public final class AppInfoHelper extends DatabaseHelper {
         return mAppInfoMap;
     }
 
-    private Map<Long, String> getIdPackageNameMap() {
+    private CopyOnWriteLongObjectMap<String> getIdPackageNameMap() {
         if (mIdPackageNameMap == null) {
             populateAppInfoMap();
         }
@@ -598,6 +675,14 @@ public final class AppInfoHelper extends DatabaseHelper {
         return mIdPackageNameMap;
     }
 
+    private Map<String, Long> getPackageNameIdMap() {
+        if (mPackageNameIdMap == null) {
+            populateAppInfoMap();
+        }
+
+        return mPackageNameIdMap;
+    }
+
     private AppInfoInternal getAppInfo(@NonNull String packageName, @NonNull Context context)
             throws NameNotFoundException {
         PackageManager packageManager = context.getPackageManager();
@@ -610,10 +695,12 @@ public final class AppInfoHelper extends DatabaseHelper {
         return new AppInfoInternal(DEFAULT_LONG, packageName, appName, bitmap, null);
     }
 
-    private synchronized void insertIfNotPresent(
+    /** Returns the id of {@code packageName}, inserting {@code appInfo} if not present. */
+    private synchronized long insertIfNotPresent(
             @NonNull String packageName, @NonNull AppInfoInternal appInfo) {
-        if (getAppInfoMap().containsKey(packageName)) {
-            return;
+        Long currentRowId = getPackageNameIdMap().get(packageName);
+        if (currentRowId != null) {
+            return currentRowId;
         }
 
         long rowId =
@@ -621,34 +708,62 @@ public final class AppInfoHelper extends DatabaseHelper {
                         .insert(
                                 new UpsertTableRequest(
                                         TABLE_NAME,
-                                        getContentValues(packageName, appInfo),
+                                        getContentValues(
+                                                packageName, appInfo, /* includeIcon= */ true),
                                         UNIQUE_COLUMN_INFO));
-        appInfo.setId(rowId);
-        getAppInfoMap().put(packageName, appInfo);
-        getIdPackageNameMap().put(appInfo.getId(), packageName);
+        putInCache(packageName, appInfo.setId(rowId));
+        return rowId;
     }
 
     private synchronized void updateIfPresent(String packageName, AppInfoInternal appInfoInternal) {
-        if (!getAppInfoMap().containsKey(packageName)) {
+        Long currentRowId = getPackageNameIdMap().get(packageName);
+        if (currentRowId == null) {
             return;
         }
 
         UpsertTableRequest upsertTableRequest =
                 new UpsertTableRequest(
                         TABLE_NAME,
-                        getContentValues(packageName, appInfoInternal),
+                        getContentValues(packageName, appInfoInternal, /* includeIcon= */ true),
                         UNIQUE_COLUMN_INFO);
 
         TransactionManager.getInitialisedInstance().updateTable(upsertTableRequest);
-        getAppInfoMap().put(packageName, appInfoInternal);
+        putInCache(packageName, appInfoInternal.setId(currentRowId));
+    }
+
+    /**
+     * Updates the locally stored maps with {@code appInfo}. The icon is kept in {@link #mIconCache}
+     * only, so that it can be evicted independently of the rest of the app info.
+     */
+    private synchronized void putInCache(
+            @NonNull String packageName, @NonNull AppInfoInternal appInfo) {
+        getAppInfoMap()
+                .put(
+                        packageName,
+                        new AppInfoInternal(
+                                appInfo.getId(),
+                                packageName,
+                                appInfo.getName(),
+                                null,
+                                appInfo.getRecordTypesUsed()));
+        getIdPackageNameMap().put(appInfo.getId(), packageName);
+        getPackageNameIdMap().put(packageName, appInfo.getId());
+        if (appInfo.getIcon() != null) {
+            mIconCache.put(packageName, appInfo.getIcon());
+        } else {
+            mIconCache.remove(packageName);
+        }
     }
 
     @NonNull
-    private ContentValues getContentValues(String packageName, AppInfoInternal appInfo) {
+    private ContentValues getContentValues(
+            String packageName, AppInfoInternal appInfo, boolean includeIcon) {
         ContentValues contentValues = new ContentValues();
         contentValues.put(PACKAGE_COLUMN_NAME, packageName);
         contentValues.put(APPLICATION_COLUMN_NAME, appInfo.getName());
-        contentValues.put(APP_ICON_COLUMN_NAME, encodeBitmap(appInfo.getIcon()));
+        if (includeIcon) {
+            contentValues.put(APP_ICON_COLUMN_NAME, encodeBitmap(appInfo.getIcon()));
+        }
         String recordTypesUsedAsString = null;
         // Since a list of recordTypeIds cannot be saved directly in the database, record types IDs
         // are concatenated using ',' and are saved as a string.
@@ -32,6 +32,7 @@ import static com.android.server.healthconnect.storage.utils.WhereClauses.Logica
 import android.annotation.NonNull;
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.health.connect.accesslog.AccessLog.OperationType;
 import android.health.connect.changelog.ChangeLogsRequest;
 import android.health.connect.changelog.ChangeLogsResponse.DeletedLog;
@@ -39,11 +40,13 @@ import android.health.connect.datatypes.RecordTypeIdentifier;
 import android.util.ArrayMap;
 import android.util.Pair;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.healthconnect.storage.TransactionManager;
 import com.android.server.healthconnect.storage.request.CreateTableRequest;
 import com.android.server.healthconnect.storage.request.DeleteTableRequest;
 import com.android.server.healthconnect.storage.request.ReadTableRequest;
 import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+import com.android.server.healthconnect.storage.utils.OrderByClause;
 import com.android.server.healthconnect.storage.utils.StorageUtils;
 import com.android.server.healthconnect.storage.utils.WhereClauses;
 
@@ -51,9 +54,11 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -70,6 +75,10 @@ public final class ChangeLogsHelper extends DatabaseHelper {
     private static final String OPERATION_TYPE_COLUMN_NAME = "operation_type";
     private static final String TIME_COLUMN_NAME = "time";
     private static final int NUM_COLS = 5;
+    // Bound the memory used by a compaction: the change logs read at a time, in a transaction
+    // each, and the UUIDs tracked to find superseded changes.
+    @VisibleForTesting static final int COMPACTION_WINDOW_ROWS = 500;
+    private static final int COMPACTION_MAX_TRACKED_UUIDS = 20_000;
 
     @SuppressWarnings("NullAway.Init")
     private static volatile ChangeLogsHelper sChangeLogsHelper;
@@ -150,10 +159,181 @@ public final class ChangeLogsHelper extends DatabaseHelper {
         return new ChangeLogsResponse(operationToChangeLogMap, nextToken, hasMoreRecords);
     }
 
+    /**
+     * Removes from the change logs that the outstanding tokens can still return the UUIDs whose
+     * change is superseded by a later change log of the same record type and app, so that
+     * consumers read each changed record once rather than once per change.
+     *
+     * <p>An upsert is superseded by any later upsert or delete of the record, and a delete by a
+     * later delete. The latest change of each record is always kept, which keeps the tokens
+     * valid: a consumer that hasn't read a removed change still reads the later one, whatever
+     * pages it reads the change logs with. So the delete of a record that was upserted then
+     * deleted is kept, for the consumers which already read the upsert.
+     *
+     * @return the number of UUIDs in those change logs before and after the compaction.
+     */
+    @NonNull
+    public Pair<Long, Long> compactChangeLogs() {
+        long oldestTokenRowId = ChangeLogsRequestHelper.getOldestTokenRowId();
+        if (oldestTokenRowId == DEFAULT_LONG) {
+            // No token can return any of the change logs.
+            return new Pair<>(0L, 0L);
+        }
+
+        TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
+        final ReadTableRequest readTableRequest =
+                new ReadTableRequest(TABLE_NAME)
+                        .setColumnNames(List.of(RECORD_TYPE_COLUMN_NAME, APP_ID_COLUMN_NAME))
+                        .setWhereClause(
+                                new WhereClauses(AND)
+                                        .addWhereGreaterThanClause(
+                                                PRIMARY_COLUMN_NAME, oldestTokenRowId))
+                        .setDistinctClause(true);
+        List<Pair<Integer, Long>> recordTypeAndAppIds = new ArrayList<>();
+        try (Cursor cursor = transactionManager.read(readTableRequest)) {
+            while (cursor.moveToNext()) {
+                recordTypeAndAppIds.add(
+                        new Pair<>(
+                                getCursorInt(cursor, RECORD_TYPE_COLUMN_NAME),
+                                getCursorLong(cursor, APP_ID_COLUMN_NAME)));
+            }
+        }
+
+        long[] uuidCounts = new long[2];
+        for (Pair<Integer, Long> recordTypeAndAppId : recordTypeAndAppIds) {
+            compactChangeLogs(
+                    transactionManager,
+                    recordTypeAndAppId.first,
+                    recordTypeAndAppId.second,
+                    oldestTokenRowId,
+                    uuidCounts);
+        }
+        return new Pair<>(uuidCounts[0], uuidCounts[1]);
+    }
+
     public long getLatestRowId() {
         return TransactionManager.getInitialisedInstance().getLastRowIdFor(TABLE_NAME);
     }
 
+    /**
+     * Compacts the change logs of {@code recordType} and {@code appId} after {@code afterRowId},
+     * from the latest one, in windows of {@link #COMPACTION_WINDOW_ROWS} change logs. Only the
+     * first {@link #COMPACTION_MAX_TRACKED_UUIDS} UUIDs seen are tracked, the earlier changes of
+     * the others are kept.
+     */
+    private static void compactChangeLogs(
+            TransactionManager transactionManager,
+            int recordType,
+            long appId,
+            long afterRowId,
+            long[] uuidCounts) {
+        // Going from the latest change log, the UUIDs changed and deleted in later change logs.
+        Set<UUID> changedLaterUuids = new HashSet<>();
+        Set<UUID> deletedLaterUuids = new HashSet<>();
+        // The lowest row id read so far, the next window is read before it.
+        long[] beforeRowId = {Long.MAX_VALUE};
+        boolean[] hasMoreRows = {true};
+        while (hasMoreRows[0]) {
+            // One transaction per window, so that writes don't wait for the whole compaction.
+            transactionManager.runAsTransaction(
+                    List.of(TABLE_NAME),
+                    db -> {
+                        int rowsCount =
+                                compactChangeLogsWindow(
+                                        db,
+                                        recordType,
+                                        appId,
+                                        afterRowId,
+                                        beforeRowId,
+                                        changedLaterUuids,
+                                        deletedLaterUuids,
+                                        uuidCounts);
+                        hasMoreRows[0] = rowsCount == COMPACTION_WINDOW_ROWS;
+                    });
+        }
+    }
+
+    /**
+     * Compacts the latest {@link #COMPACTION_WINDOW_ROWS} change logs before {@code beforeRowId},
+     * and updates it to the lowest row id read.
+     *
+     * @return the number of change logs read.
+     */
+    private static int compactChangeLogsWindow(
+            SQLiteDatabase db,
+            int recordType,
+            long appId,
+            long afterRowId,
+            long[] beforeRowId,
+            Set<UUID> changedLaterUuids,
+            Set<UUID> deletedLaterUuids,
+            long[] uuidCounts) {
+        final ReadTableRequest readTableRequest =
+                new ReadTableRequest(TABLE_NAME)
+                        .setWhereClause(
+                                new WhereClauses(AND)
+                                        .addWhereGreaterThanClause(PRIMARY_COLUMN_NAME, afterRowId)
+                                        .addWhereLessThanClause(
+                                                PRIMARY_COLUMN_NAME, beforeRowId[0])
+                                        .addWhereInIntsClause(
+                                                RECORD_TYPE_COLUMN_NAME, List.of(recordType))
+                                        .addWhereInLongsClause(APP_ID_COLUMN_NAME, List.of(appId)))
+                        .setOrderBy(
+                                new OrderByClause()
+                                        .addOrderByClause(
+                                                PRIMARY_COLUMN_NAME, /* isAscending= */ false))
+                        .setLimit(COMPACTION_WINDOW_ROWS);
+
+        int rowsCount = 0;
+        // The rows are only written once read, as the cursor could skip rows deleted before it.
+        List<Pair<Long, List<UUID>>> compactedRows = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(readTableRequest.getReadCommand(), null)) {
+            while (cursor.moveToNext()) {
+                rowsCount++;
+                beforeRowId[0] = getCursorLong(cursor, PRIMARY_COLUMN_NAME);
+                boolean isDelete = getCursorInt(cursor, OPERATION_TYPE_COLUMN_NAME) == DELETE;
+                Set<UUID> supersedingUuids = isDelete ? deletedLaterUuids : changedLaterUuids;
+                List<UUID> uuids = StorageUtils.getCursorUUIDList(cursor, UUIDS_COLUMN_NAME);
+                List<UUID> remainingUuids = new ArrayList<>(uuids.size());
+                for (UUID uuid : uuids) {
+                    if (!supersedingUuids.contains(uuid)) {
+                        remainingUuids.add(uuid);
+                    }
+                }
+                // Not tracking a UUID only keeps its earlier changes.
+                if (changedLaterUuids.size() < COMPACTION_MAX_TRACKED_UUIDS) {
+                    changedLaterUuids.addAll(uuids);
+                }
+                if (isDelete && deletedLaterUuids.size() < COMPACTION_MAX_TRACKED_UUIDS) {
+                    deletedLaterUuids.addAll(uuids);
+                }
+
+                uuidCounts[0] += uuids.size();
+                uuidCounts[1] += remainingUuids.size();
+                if (remainingUuids.size() < uuids.size()) {
+                    compactedRows.add(new Pair<>(beforeRowId[0], remainingUuids));
+                }
+            }
+        }
+
+        for (Pair<Long, List<UUID>> compactedRow : compactedRows) {
+            String whereClause =
+                    new WhereClauses(AND)
+                            .addWhereEqualsClause(
+                                    PRIMARY_COLUMN_NAME, String.valueOf(compactedRow.first))
+                            .get(/* withWhereKeyword= */ false);
+            if (compactedRow.second.isEmpty()) {
+                db.delete(TABLE_NAME, whereClause, null);
+            } else {
+                ContentValues contentValues = new ContentValues();
+                contentValues.put(
+                        UUIDS_COLUMN_NAME, StorageUtils.getSingleByteArray(compactedRow.second));
+                db.update(TABLE_NAME, contentValues, whereClause, null);
+            }
+        }
+        return rowsCount;
+    }
+
     @SuppressWarnings("NullAway")
     private int addChangeLogs(Cursor cursor, Map<Integer, ChangeLogs> changeLogs) {
         @RecordTypeIdentifier.RecordType
@@ -16,6 +16,8 @@
 
 package com.android.server.healthconnect.storage.datatypehelpers;
 
+import static android.health.connect.Constants.DEFAULT_LONG;
+
 import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.PRIMARY_COLUMN_NAME;
 import static com.android.server.healthconnect.storage.utils.StorageUtils.DELIMITER;
 import static com.android.server.healthconnect.storage.utils.StorageUtils.INTEGER;
@@ -24,6 +26,7 @@ import static com.android.server.healthconnect.storage.utils.StorageUtils.TEXT_N
 import static com.android.server.healthconnect.storage.utils.StorageUtils.TEXT_NULL;
 import static com.android.server.healthconnect.storage.utils.StorageUtils.getCursorInt;
 import static com.android.server.healthconnect.storage.utils.StorageUtils.getCursorIntegerList;
+import static com.android.server.healthconnect.storage.utils.StorageUtils.getCursorLong;
 import static com.android.server.healthconnect.storage.utils.StorageUtils.getCursorString;
 import static com.android.server.healthconnect.storage.utils.StorageUtils.getCursorStringList;
 import static com.android.server.healthconnect.storage.utils.WhereClauses.LogicalOperator.AND;
@@ -39,6 +42,7 @@ import com.android.server.healthconnect.storage.request.CreateTableRequest;
 import com.android.server.healthconnect.storage.request.DeleteTableRequest;
 import com.android.server.healthconnect.storage.request.ReadTableRequest;
 import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+import com.android.server.healthconnect.storage.utils.OrderByClause;
 import com.android.server.healthconnect.storage.utils.StorageUtils;
 import com.android.server.healthconnect.storage.utils.WhereClauses;
 
@@ -162,6 +166,27 @@ public final class ChangeLogsRequestHelper extends DatabaseHelper {
         }
     }
 
+    /**
+     * Returns the lowest change logs row id of the outstanding tokens, after which change logs may
+     * still be returned to a consumer, or {@code DEFAULT_LONG} if there is no token.
+     */
+    public static long getOldestTokenRowId() {
+        ReadTableRequest readTableRequest =
+                new ReadTableRequest(TABLE_NAME)
+                        .setColumnNames(List.of(ROW_ID_CHANGE_LOGS_TABLE_COLUMN_NAME))
+                        .setOrderBy(
+                                new OrderByClause()
+                                        .addOrderByClause(
+                                                ROW_ID_CHANGE_LOGS_TABLE_COLUMN_NAME,
+                                                /* isAscending= */ true))
+                        .setLimit(1);
+        try (Cursor cursor = TransactionManager.getInitialisedInstance().read(readTableRequest)) {
+            return cursor.moveToFirst()
+                    ? getCursorLong(cursor, ROW_ID_CHANGE_LOGS_TABLE_COLUMN_NAME)
+                    : DEFAULT_LONG;
+        }
+    }
+
     @NonNull
     public static String getNextPageToken(TokenRequest changeLogTokenRequest, long nextRowId) {
         ContentValues contentValues = new ContentValues();
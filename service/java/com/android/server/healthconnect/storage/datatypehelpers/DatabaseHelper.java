@@ -77,6 +77,12 @@ public abstract class DatabaseHelper {
 
     protected void clearCache() {}
 
+    /**
+     * Populates the in-memory cache of this helper, if it has one, so that the first client
+     * request after the user DB is opened doesn't have to pay for it.
+     */
+    public void warmUpCache() {}
+
     protected abstract String getMainTableName();
 
     protected abstract List<Pair<String, String>> getColumnInfo();
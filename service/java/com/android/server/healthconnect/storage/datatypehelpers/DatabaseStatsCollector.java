@@ -34,6 +34,12 @@ public class DatabaseStatsCollector {
         return transactionManager.getDatabaseSize(context);
     }
 
+    /** Get the size of the unused pages in Health Connect database, which a vacuum releases. */
+    public static long getFreePagesSize() {
+        final TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
+        return transactionManager.getFreePageCount() * transactionManager.getPageSize();
+    }
+
     /** Get the number of interval record entries in Health Connect database. */
     public static long getNumberOfIntervalRecordRows() {
         final TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
@@ -22,128 +22,340 @@ import static com.android.server.healthconnect.storage.datatypehelpers.BasalMeta
 import static com.android.server.healthconnect.storage.datatypehelpers.BasalMetabolicRateRecordHelper.BASAL_METABOLIC_RATE_RECORD_TABLE_NAME;
 import static com.android.server.healthconnect.storage.datatypehelpers.InstantRecordHelper.LOCAL_DATE_TIME_COLUMN_NAME;
 import static com.android.server.healthconnect.storage.datatypehelpers.InstantRecordHelper.TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.END_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.LOCAL_DATE_TIME_END_TIME_COLUMN_NAME;
 import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.LOCAL_DATE_TIME_START_TIME_COLUMN_NAME;
 import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.START_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.APP_INFO_ID_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.LAST_MODIFIED_TIME_COLUMN_NAME;
 import static com.android.server.healthconnect.storage.utils.WhereClauses.LogicalOperator.AND;
 
 import android.annotation.NonNull;
 import android.database.Cursor;
-import android.util.Pair;
 
 import com.android.server.healthconnect.storage.TransactionManager;
 import com.android.server.healthconnect.storage.request.ReadTableRequest;
 import com.android.server.healthconnect.storage.utils.OrderByClause;
 import com.android.server.healthconnect.storage.utils.WhereClauses;
 
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * Helper class for deriving TotalCaloriesBurned aggregate from {@link
+ * android.health.connect.datatypes.TotalCaloriesBurnedRecord}, and from {@link
  * android.health.connect.datatypes.BasalMetabolicRateRecord} and {@link
- * android.health.connect.datatypes.ActiveCaloriesBurnedRecord}
+ * android.health.connect.datatypes.ActiveCaloriesBurnedRecord} for the time without total.
+ *
+ * <p>All the groups are computed in a single pass over the records sorted by start time. The time
+ * is swept from one boundary (group split, record start or record end) to the next, and on each
+ * interval only the record with the highest app priority is accounted for, prorated by the part
+ * of its duration in the interval.
+ *
+ * <p>Example: App1 > App2. App1 : T1-T3 -> value1, App2 : T2-T4 -> value2 gives value1 +
+ * value2*(T4-T3)/(T4-T2) for T1-T4.
  *
  * @hide
  */
 public final class DeriveTotalCaloriesBurnedHelper {
-    private final long mStartTime;
-    private final long mEndTime;
-    private final List<Long> mPriority;
-    private Cursor mActiveCaloriesBurnedCursor;
-    private Cursor mBasalCaloriesBurnedCursor;
-    private MergeDataHelper mMergeDataHelper;
-    private DeriveBasalCaloriesBurnedHelper mBasalCaloriesBurnedHelper;
-
-    private String mInstantRecordTimeColumnName;
+    private static final int INITIAL_OPEN_RECORDS_CAPACITY = 4;
 
-    private String mIntervalStartTimeColumnName;
-
-    private boolean mUseLocalTime;
+    private final long[] mGroupSplits;
+    // App ids in priority order, highest priority first.
+    private final long[] mAppIdPriorityOrder;
+    private final boolean mIgnoreAppsWithoutPriority;
+    private final String mInstantRecordTimeColumnName;
+    private final String mIntervalStartTimeColumnName;
+    private final String mIntervalEndTimeColumnName;
 
+    /**
+     * @param groupSplits the start of each group, followed by the end of the last group.
+     * @param priorityList app ids, highest priority first.
+     * @param ignoreAppsWithoutPriority whether to skip the records of apps not in {@code
+     *     priorityList}, rather than giving them the lowest priority.
+     */
     public DeriveTotalCaloriesBurnedHelper(
-            long startTime, long endTime, @NonNull List<Long> priorityList, boolean useLocaleTime) {
+            @NonNull List<Long> groupSplits,
+            @NonNull List<Long> priorityList,
+            boolean ignoreAppsWithoutPriority,
+            boolean useLocalTime) {
+        Objects.requireNonNull(groupSplits);
         Objects.requireNonNull(priorityList);
-        mStartTime = startTime;
-        mEndTime = endTime;
-        mPriority = priorityList;
-        mUseLocalTime = useLocaleTime;
-        if (useLocaleTime) {
+        mGroupSplits = new long[groupSplits.size()];
+        for (int i = 0; i < groupSplits.size(); i++) {
+            mGroupSplits[i] = groupSplits.get(i);
+        }
+        mAppIdPriorityOrder = new long[priorityList.size()];
+        for (int i = 0; i < priorityList.size(); i++) {
+            mAppIdPriorityOrder[i] = priorityList.get(i);
+        }
+        mIgnoreAppsWithoutPriority = ignoreAppsWithoutPriority;
+        if (useLocalTime) {
             mInstantRecordTimeColumnName = LOCAL_DATE_TIME_COLUMN_NAME;
             mIntervalStartTimeColumnName = LOCAL_DATE_TIME_START_TIME_COLUMN_NAME;
+            mIntervalEndTimeColumnName = LOCAL_DATE_TIME_END_TIME_COLUMN_NAME;
         } else {
             mInstantRecordTimeColumnName = TIME_COLUMN_NAME;
             mIntervalStartTimeColumnName = START_TIME_COLUMN_NAME;
+            mIntervalEndTimeColumnName = END_TIME_COLUMN_NAME;
+        }
+    }
+
+    /**
+     * Calculates and returns total calories burned for each group, from {@code
+     * totalCaloriesBurnedCursor} and, for the time where it has no record, from {@link
+     * android.health.connect.datatypes.ActiveCaloriesBurnedRecord} and {@link
+     * android.health.connect.datatypes.BasalMetabolicRateRecord}.
+     *
+     * @param totalCaloriesBurnedCursor total calories burned records sorted by start time.
+     * @param energyColumnName name of the energy column of {@code totalCaloriesBurnedCursor}.
+     */
+    public double[] getTotalCaloriesBurned(
+            @NonNull Cursor totalCaloriesBurnedCursor, @NonNull String energyColumnName) {
+        Objects.requireNonNull(totalCaloriesBurnedCursor);
+        Objects.requireNonNull(energyColumnName);
+        try (Cursor activeCaloriesBurnedCursor = readActiveCaloriesBurned();
+                Cursor basalMetabolicRateCursor = readBasalMetabolicRate()) {
+            return getTotalCaloriesBurned(
+                    new IntervalRecords(totalCaloriesBurnedCursor, energyColumnName),
+                    new IntervalRecords(activeCaloriesBurnedCursor, ENERGY_COLUMN_NAME),
+                    new DeriveBasalCaloriesBurnedHelper(
+                            basalMetabolicRateCursor,
+                            BASAL_METABOLIC_RATE_COLUMN_NAME,
+                            mInstantRecordTimeColumnName));
+        }
+    }
+
+    private double[] getTotalCaloriesBurned(
+            IntervalRecords totalCaloriesBurned,
+            IntervalRecords activeCaloriesBurned,
+            DeriveBasalCaloriesBurnedHelper basalCaloriesBurnedHelper) {
+        double[] totals = new double[mGroupSplits.length - 1];
+        for (int group = 0; group < totals.length; group++) {
+            long groupEndTime = mGroupSplits[group + 1];
+            long time = mGroupSplits[group];
+            // Start of the current time without total calories burned, derived from active and
+            // basal calories burned instead. The basal calories are computed once per such gap.
+            long gapStartTime = time;
+            boolean inGap = false;
+            while (time < groupEndTime) {
+                totalCaloriesBurned.advanceTo(time);
+                activeCaloriesBurned.advanceTo(time);
+                long nextTime =
+                        Math.min(
+                                totalCaloriesBurned.getNextBoundary(groupEndTime),
+                                activeCaloriesBurned.getNextBoundary(groupEndTime));
+
+                int total = totalCaloriesBurned.getHighestPriorityRecord();
+                if (total >= 0) {
+                    if (inGap) {
+                        totals[group] +=
+                                basalCaloriesBurnedHelper.getBasalCaloriesBurned(
+                                        gapStartTime, time);
+                        inGap = false;
+                    }
+                    totals[group] += totalCaloriesBurned.getValue(total, time, nextTime);
+                } else {
+                    if (!inGap) {
+                        gapStartTime = time;
+                        inGap = true;
+                    }
+                    int active = activeCaloriesBurned.getHighestPriorityRecord();
+                    if (active >= 0) {
+                        totals[group] += activeCaloriesBurned.getValue(active, time, nextTime);
+                    }
+                }
+                time = nextTime;
+            }
+
+            if (inGap) {
+                totals[group] +=
+                        basalCaloriesBurnedHelper.getBasalCaloriesBurned(
+                                gapStartTime, groupEndTime);
+            }
         }
-        inititalizeCursors();
+        return totals;
     }
 
-    private void inititalizeCursors() {
-        final TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
-        mActiveCaloriesBurnedCursor =
-                transactionManager.read(
+    private Cursor readActiveCaloriesBurned() {
+        return TransactionManager.getInitialisedInstance()
+                .read(
                         new ReadTableRequest(ACTIVE_CALORIES_BURNED_RECORD_TABLE_NAME)
                                 .setWhereClause(
                                         new WhereClauses(AND)
                                                 .addWhereBetweenTimeClause(
                                                         mIntervalStartTimeColumnName,
-                                                        mStartTime,
-                                                        mEndTime))
+                                                        mGroupSplits[0],
+                                                        mGroupSplits[mGroupSplits.length - 1]))
                                 .setOrderBy(
                                         new OrderByClause()
                                                 .addOrderByClause(
                                                         mIntervalStartTimeColumnName, true)));
-        mBasalCaloriesBurnedCursor =
-                transactionManager.read(
+    }
+
+    private Cursor readBasalMetabolicRate() {
+        return TransactionManager.getInitialisedInstance()
+                .read(
                         new ReadTableRequest(BASAL_METABOLIC_RATE_RECORD_TABLE_NAME)
                                 .setWhereClause(
                                         new WhereClauses(AND)
                                                 .addWhereBetweenTimeClause(
                                                         mInstantRecordTimeColumnName,
-                                                        mStartTime,
-                                                        mEndTime))
+                                                        mGroupSplits[0],
+                                                        mGroupSplits[mGroupSplits.length - 1]))
                                 .setOrderBy(
                                         new OrderByClause()
                                                 .addOrderByClause(
                                                         mInstantRecordTimeColumnName, true)));
-        mMergeDataHelper =
-                new MergeDataHelper(
-                        mActiveCaloriesBurnedCursor,
-                        mPriority,
-                        ENERGY_COLUMN_NAME,
-                        Double.class,
-                        mUseLocalTime);
-        mBasalCaloriesBurnedHelper =
-                new DeriveBasalCaloriesBurnedHelper(
-                        mBasalCaloriesBurnedCursor,
-                        BASAL_METABOLIC_RATE_COLUMN_NAME,
-                        mInstantRecordTimeColumnName);
     }
 
-    /** Close the cursors created */
-    public void closeCursors() {
-        if (mActiveCaloriesBurnedCursor != null) {
-            mActiveCaloriesBurnedCursor.close();
-        }
-        if (mBasalCaloriesBurnedCursor != null) {
-            mBasalCaloriesBurnedCursor.close();
+    /**
+     * Returns the priority of {@code appInfoId}, apps with higher priority have higher values.
+     * Priority lists are short, so a scan of the array is cheaper than a boxed map lookup.
+     */
+    private int getPriority(long appInfoId) {
+        for (int i = 0; i < mAppIdPriorityOrder.length; i++) {
+            if (mAppIdPriorityOrder[i] == appInfoId) {
+                return mAppIdPriorityOrder.length - i;
+            }
         }
+        return Integer.MIN_VALUE;
     }
 
     /**
-     * Calculates and returns total derived calories for the empty interval time gaps where there is
-     * no entry in {@link android.health.connect.datatypes.TotalCaloriesBurnedRecord}
+     * Interval records of a cursor sorted by start time, read as the time advances. Keeps the
+     * records open at the current time in parallel arrays.
      */
-    public double getDerivedCalories(List<Pair<Instant, Instant>> emptyIntervalList) {
-        double totalDerivedCalories = 0.0;
-        for (Pair<Instant, Instant> instantInstantPair : emptyIntervalList) {
-            long intervalStartTime = instantInstantPair.first.toEpochMilli();
-            long intervalEndTime = instantInstantPair.second.toEpochMilli();
-            totalDerivedCalories +=
-                    mMergeDataHelper.readCursor(intervalStartTime, intervalEndTime)
-                            + mBasalCaloriesBurnedHelper.getBasalCaloriesBurned(
-                                    intervalStartTime, intervalEndTime);
+    private final class IntervalRecords {
+        private final Cursor mCursor;
+        private final int mStartTimeIndex;
+        private final int mEndTimeIndex;
+        private final int mAppInfoIdIndex;
+        private final int mLastModifiedTimeIndex;
+        private final int mValueIndex;
+
+        // Next record of the cursor, which is not open yet.
+        private boolean mHasNext;
+        private long mNextStartTime;
+        private long mNextEndTime;
+        private int mNextPriority;
+        private long mNextLastModifiedTime;
+        private double mNextValue;
+
+        private int mOpenCount;
+        private long[] mOpenStartTimes = new long[INITIAL_OPEN_RECORDS_CAPACITY];
+        private long[] mOpenEndTimes = new long[INITIAL_OPEN_RECORDS_CAPACITY];
+        private int[] mOpenPriorities = new int[INITIAL_OPEN_RECORDS_CAPACITY];
+        private long[] mOpenLastModifiedTimes = new long[INITIAL_OPEN_RECORDS_CAPACITY];
+        private double[] mOpenValues = new double[INITIAL_OPEN_RECORDS_CAPACITY];
+
+        IntervalRecords(Cursor cursor, String valueColumnName) {
+            mCursor = cursor;
+            mStartTimeIndex = cursor.getColumnIndex(mIntervalStartTimeColumnName);
+            mEndTimeIndex = cursor.getColumnIndex(mIntervalEndTimeColumnName);
+            mAppInfoIdIndex = cursor.getColumnIndex(APP_INFO_ID_COLUMN_NAME);
+            mLastModifiedTimeIndex = cursor.getColumnIndex(LAST_MODIFIED_TIME_COLUMN_NAME);
+            mValueIndex = cursor.getColumnIndex(valueColumnName);
+            readNext();
+        }
+
+        /** Closes the records ended by {@code time} and opens the ones started by then. */
+        void advanceTo(long time) {
+            int openCount = 0;
+            for (int i = 0; i < mOpenCount; i++) {
+                if (mOpenEndTimes[i] > time) {
+                    mOpenStartTimes[openCount] = mOpenStartTimes[i];
+                    mOpenEndTimes[openCount] = mOpenEndTimes[i];
+                    mOpenPriorities[openCount] = mOpenPriorities[i];
+                    mOpenLastModifiedTimes[openCount] = mOpenLastModifiedTimes[i];
+                    mOpenValues[openCount] = mOpenValues[i];
+                    openCount++;
+                }
+            }
+            mOpenCount = openCount;
+
+            while (mHasNext && mNextStartTime <= time) {
+                if (mNextEndTime > time) {
+                    openNext();
+                }
+                readNext();
+            }
+        }
+
+        /** Returns the first start or end of a record after the current time, up to {@code max}. */
+        long getNextBoundary(long max) {
+            long boundary = max;
+            if (mHasNext) {
+                boundary = Math.min(boundary, mNextStartTime);
+            }
+            for (int i = 0; i < mOpenCount; i++) {
+                boundary = Math.min(boundary, mOpenEndTimes[i]);
+            }
+            return boundary;
+        }
+
+        /**
+         * Returns the index of the open record with the highest priority, the most recently
+         * modified one between records of the same app, or -1 if no record is open.
+         */
+        int getHighestPriorityRecord() {
+            int highest = -1;
+            for (int i = 0; i < mOpenCount; i++) {
+                if (highest == -1
+                        || mOpenPriorities[i] > mOpenPriorities[highest]
+                        || (mOpenPriorities[i] == mOpenPriorities[highest]
+                                && mOpenLastModifiedTimes[i] > mOpenLastModifiedTimes[highest])) {
+                    highest = i;
+                }
+            }
+            return highest;
+        }
+
+        /** Returns the value of the open record at {@code index} prorated to the interval. */
+        double getValue(int index, long startTime, long endTime) {
+            return mOpenValues[index]
+                    * ((double) (endTime - startTime)
+                            / (mOpenEndTimes[index] - mOpenStartTimes[index]));
+        }
+
+        private void readNext() {
+            while (mCursor.moveToNext()) {
+                long startTime = mCursor.getLong(mStartTimeIndex);
+                long endTime = mCursor.getLong(mEndTimeIndex);
+                int priority = getPriority(mCursor.getLong(mAppInfoIdIndex));
+                // Records without duration have no value on any interval.
+                if (endTime <= startTime
+                        || (mIgnoreAppsWithoutPriority && priority == Integer.MIN_VALUE)) {
+                    continue;
+                }
+
+                mNextStartTime = startTime;
+                mNextEndTime = endTime;
+                mNextPriority = priority;
+                mNextLastModifiedTime = mCursor.getLong(mLastModifiedTimeIndex);
+                mNextValue = mCursor.getDouble(mValueIndex);
+                mHasNext = true;
+                return;
+            }
+            mHasNext = false;
+        }
+
+        private void openNext() {
+            if (mOpenCount == mOpenEndTimes.length) {
+                int capacity = mOpenCount * 2;
+                mOpenStartTimes = Arrays.copyOf(mOpenStartTimes, capacity);
+                mOpenEndTimes = Arrays.copyOf(mOpenEndTimes, capacity);
+                mOpenPriorities = Arrays.copyOf(mOpenPriorities, capacity);
+                mOpenLastModifiedTimes = Arrays.copyOf(mOpenLastModifiedTimes, capacity);
+                mOpenValues = Arrays.copyOf(mOpenValues, capacity);
+            }
+            mOpenStartTimes[mOpenCount] = mNextStartTime;
+            mOpenEndTimes[mOpenCount] = mNextEndTime;
+            mOpenPriorities[mOpenCount] = mNextPriority;
+            mOpenLastModifiedTimes[mOpenCount] = mNextLastModifiedTime;
+            mOpenValues[mOpenCount] = mNextValue;
+            mOpenCount++;
         }
-        return totalDerivedCalories;
     }
 }
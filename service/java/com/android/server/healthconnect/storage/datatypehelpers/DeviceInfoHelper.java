@@ -36,6 +36,7 @@ import com.android.server.healthconnect.storage.TransactionManager;
 import com.android.server.healthconnect.storage.request.CreateTableRequest;
 import com.android.server.healthconnect.storage.request.ReadTableRequest;
 import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+import com.android.server.healthconnect.storage.utils.CopyOnWriteLongObjectMap;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -61,7 +62,7 @@ public class DeviceInfoHelper extends DatabaseHelper {
 
     /** Map to store deviceInfoId -> DeviceInfo mapping for populating record for read */
     @SuppressWarnings("NullAway.Init")
-    private volatile ConcurrentHashMap<Long, DeviceInfo> mIdDeviceInfoMap;
+    private volatile CopyOnWriteLongObjectMap<DeviceInfo> mIdDeviceInfoMap;
 
     /** ArrayMap to store DeviceInfo -> rowId mapping (model,manufacturer,device_type -> rowId) */
     @SuppressWarnings("NullAway.Init")
@@ -115,6 +116,11 @@ public class DeviceInfoHelper extends DatabaseHelper {
         mIdDeviceInfoMap = null;
     }
 
+    @Override
+    public void warmUpCache() {
+        populateDeviceInfoMap();
+    }
+
     @Override
     protected String getMainTableName() {
         return TABLE_NAME;
@@ -126,9 +132,10 @@ public class DeviceInfoHelper extends DatabaseHelper {
         }
 
         ConcurrentHashMap<DeviceInfo, Long> deviceInfoMap = new ConcurrentHashMap<>();
-        ConcurrentHashMap<Long, DeviceInfo> idDeviceInfoMap = new ConcurrentHashMap<>();
         final TransactionManager transactionManager = TransactionManager.getInitialisedInstance();
         try (Cursor cursor = transactionManager.read(new ReadTableRequest(TABLE_NAME))) {
+            CopyOnWriteLongObjectMap.Builder<DeviceInfo> idDeviceInfoMap =
+                    new CopyOnWriteLongObjectMap.Builder<>(cursor.getCount());
             while (cursor.moveToNext()) {
                 long rowId = getCursorLong(cursor, RecordHelper.PRIMARY_COLUMN_NAME);
                 String manufacturer = getCursorString(cursor, MANUFACTURER_COLUMN_NAME);
@@ -138,13 +145,13 @@ public class DeviceInfoHelper extends DatabaseHelper {
                 deviceInfoMap.put(deviceInfo, rowId);
                 idDeviceInfoMap.put(rowId, deviceInfo);
             }
+            mIdDeviceInfoMap = idDeviceInfoMap.build();
         }
 
         mDeviceInfoMap = deviceInfoMap;
-        mIdDeviceInfoMap = idDeviceInfoMap;
     }
 
-    private Map<Long, DeviceInfo> getIdDeviceInfoMap() {
+    private CopyOnWriteLongObjectMap<DeviceInfo> getIdDeviceInfoMap() {
         if (mIdDeviceInfoMap == null) {
             populateDeviceInfoMap();
         }
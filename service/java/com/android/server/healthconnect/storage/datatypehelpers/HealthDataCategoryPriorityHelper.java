@@ -297,6 +297,11 @@ public class HealthDataCategoryPriorityHelper extends DatabaseHelper {
         mHealthDataCategoryToAppIdPriorityMap = null;
     }
 
+    @Override
+    public void warmUpCache() {
+        populateDataCategoryToAppIdPriorityMap();
+    }
+
     @Override
     protected String getMainTableName() {
         return TABLE_NAME;
@@ -109,13 +109,13 @@ public class PreferenceHelper extends DatabaseHelper {
     }
 
     @Override
-    protected String getMainTableName() {
-        return TABLE_NAME;
+    public void warmUpCache() {
+        populatePreferences();
     }
 
-    /** Fetch preferences into memory. */
-    public void initializePreferences() {
-        populatePreferences();
+    @Override
+    protected String getMainTableName() {
+        return TABLE_NAME;
     }
 
     protected Map<String, String> getPreferences() {
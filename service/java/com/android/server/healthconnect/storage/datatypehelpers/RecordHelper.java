@@ -65,7 +65,10 @@ import com.android.server.healthconnect.storage.utils.PageTokenUtil;
 import com.android.server.healthconnect.storage.utils.PageTokenWrapper;
 import com.android.server.healthconnect.storage.utils.SqlJoin;
 import com.android.server.healthconnect.storage.utils.StorageUtils;
+import com.android.server.healthconnect.storage.utils.TablePartitions;
 import com.android.server.healthconnect.storage.utils.WhereClauses;
+import com.android.server.healthconnect.storage.utils.RecordHelperProvider;
+import com.android.server.healthconnect.storage.utils.WriteGenerations;
 
 import java.lang.reflect.InvocationTargetException;
 import java.time.Instant;
@@ -106,13 +109,17 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
     }
 
     public DeleteTableRequest getDeleteRequestForAutoDelete(int recordAutoDeletePeriodInDays) {
+        return getDeleteRequestForAutoDelete(
+                Instant.now().minus(recordAutoDeletePeriodInDays, ChronoUnit.DAYS));
+    }
+
+    /** Returns the request deleting the records starting from the epoch up to {@code endTime}. */
+    public DeleteTableRequest getDeleteRequestForAutoDelete(@NonNull Instant endTime) {
         return new DeleteTableRequest(getMainTableName())
                 .setTimeFilter(
                         getStartTimeColumnName(),
                         Instant.EPOCH.toEpochMilli(),
-                        Instant.now()
-                                .minus(recordAutoDeletePeriodInDays, ChronoUnit.DAYS)
-                                .toEpochMilli());
+                        endTime.toEpochMilli());
     }
 
     @RecordTypeIdentifier.RecordType
@@ -182,7 +189,8 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
         }
 
         return new AggregateTableRequest(params, aggregationType, this, whereClauses, useLocalTime)
-                .setTimeFilter(startTime, endTime);
+                .setTimeFilter(startTime, endTime)
+                .setTablePartitioned(isTablePartitioned(params.getTableName()));
     }
 
     /**
@@ -289,6 +297,8 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
                                     }
                                 })
                         .setChildTableRequests(getChildTableUpsertRequests((T) recordInternal))
+                        .setChildTablesToCreate(
+                                getChildTablesToCreateOnUpsert((T) recordInternal))
                         .setHelper(this)
                         .setExtraWritePermissionsStateMapping(extraWritePermissionToStateMap);
         Trace.traceEnd(TRACE_TAG_RECORD_HELPER);
@@ -336,17 +346,35 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
             boolean enforceSelfRead,
             long startDateAccess,
             Map<String, Boolean> extraPermsState) {
-        return new ReadTableRequest(getMainTableName())
-                .setJoinClause(getJoinForReadRequest())
-                .setWhereClause(
-                        getReadTableWhereClause(
-                                request, callingPackageName, enforceSelfRead, startDateAccess))
-                .setOrderBy(getOrderByClause(request))
-                .setLimit(getLimitSize(request))
-                .setRecordHelper(this)
-                .setExtraReadRequests(
-                        getExtraDataReadRequests(
-                                request, callingPackageName, startDateAccess, extraPermsState));
+        ReadTableRequest readTableRequest =
+                new ReadTableRequest(getMainTableName())
+                        .setJoinClause(getJoinForReadRequest())
+                        .setWhereClause(
+                                getReadTableWhereClause(
+                                        request,
+                                        callingPackageName,
+                                        enforceSelfRead,
+                                        startDateAccess))
+                        .setOrderBy(getOrderByClause(request))
+                        .setLimit(getLimitSize(request))
+                        .setRecordHelper(this)
+                        .setExtraReadRequests(
+                                getExtraDataReadRequests(
+                                        request,
+                                        callingPackageName,
+                                        startDateAccess,
+                                        extraPermsState));
+        if (request.getRecordIdFiltersParcel() == null) {
+            setJoinTablePartitionsIfNeeded(
+                    readTableRequest,
+                    request.getStartTime(),
+                    request.getEndTime(),
+                    request.usesLocalTimeFilter());
+        } else {
+            setJoinTablePartitionsIfNeeded(
+                    readTableRequest, DEFAULT_LONG, DEFAULT_LONG, /* useLocalTime= */ false);
+        }
+        return readTableRequest;
     }
 
     /**
@@ -377,18 +405,42 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
             List<UUID> uuids,
             long startDateAccess,
             Map<String, Boolean> extraPermsState) {
-        return new ReadTableRequest(getMainTableName())
-                .setJoinClause(getJoinForReadRequest())
-                .setWhereClause(
-                        new WhereClauses(AND)
-                                .addWhereInClauseWithoutQuotes(
-                                        UUID_COLUMN_NAME, StorageUtils.getListOfHexString(uuids))
-                                .addWhereLaterThanTimeClause(
-                                        getStartTimeColumnName(), startDateAccess))
-                .setRecordHelper(this)
-                .setExtraReadRequests(
-                        getExtraDataReadRequests(
-                                packageName, uuids, startDateAccess, extraPermsState));
+        ReadTableRequest readTableRequest =
+                new ReadTableRequest(getMainTableName())
+                        .setJoinClause(getJoinForReadRequest())
+                        .setWhereClause(
+                                new WhereClauses(AND)
+                                        .addWhereInUuidsClause(UUID_COLUMN_NAME, uuids)
+                                        .addWhereLaterThanTimeClause(
+                                                getStartTimeColumnName(), startDateAccess))
+                        .setRecordHelper(this)
+                        .setExtraReadRequests(
+                                getExtraDataReadRequests(
+                                        packageName, uuids, startDateAccess, extraPermsState));
+        setJoinTablePartitionsIfNeeded(
+                readTableRequest, DEFAULT_LONG, DEFAULT_LONG, /* useLocalTime= */ false);
+        return readTableRequest;
+    }
+
+    /**
+     * Sets the partitions of the joined table of {@code request} to read, if it is partitioned, for
+     * records starting between {@code startTime} and {@code endTime}, any of which may be {@code
+     * DEFAULT_LONG} if not bounded.
+     */
+    private void setJoinTablePartitionsIfNeeded(
+            ReadTableRequest request, long startTime, long endTime, boolean useLocalTime) {
+        SqlJoin join = getJoinForReadRequest();
+        if (join == null || !isTablePartitioned(join.getTableNameToJoinOn())) {
+            return;
+        }
+        request.setJoinTablePartitioned(
+                startTime == DEFAULT_LONG
+                        ? Long.MIN_VALUE
+                        : TablePartitions.getMinStartTime(
+                                startTime, useLocalTime, /* overlapping= */ false),
+                endTime == DEFAULT_LONG
+                        ? Long.MAX_VALUE
+                        : TablePartitions.getMaxStartTime(endTime, useLocalTime));
     }
 
     /**
@@ -599,7 +651,7 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
 
     public DeleteTableRequest getDeleteTableRequest(List<UUID> ids) {
         return new DeleteTableRequest(getMainTableName(), getRecordIdentifier())
-                .setIds(UUID_COLUMN_NAME, StorageUtils.getListOfHexString(ids))
+                .setUuids(UUID_COLUMN_NAME, ids)
                 .setRequiresUuId(UUID_COLUMN_NAME)
                 .setEnforcePackageCheck(APP_INFO_ID_COLUMN_NAME, UUID_COLUMN_NAME);
     }
@@ -638,6 +690,23 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
     @NonNull
     abstract String getMainTableName();
 
+    /**
+     * Returns the write generation of the tables read by aggregations of this record type. Derived
+     * types are computed from other record types too, so they change with any record write.
+     */
+    public final long getWriteGeneration(@NonNull WriteGenerations writeGenerations) {
+        if (!StorageUtils.isDerivedType(mRecordIdentifier)) {
+            return writeGenerations.getGeneration(getMainTableName());
+        }
+        // Generations only grow, so their sum changes whenever one of them does.
+        long generation = 0;
+        for (RecordHelper<?> recordHelper :
+                RecordHelperProvider.getInstance().getRecordHelpers().values()) {
+            generation += writeGenerations.getGeneration(recordHelper.getMainTableName());
+        }
+        return generation;
+    }
+
     /** Returns the information required to perform aggregate operation. */
     @SuppressWarnings("NullAway")
     AggregateParams getAggregateParams(AggregationType<?> aggregateRequest) {
@@ -677,6 +746,23 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
         return null;
     }
 
+    /**
+     * Returns true if {@code tableName} may have partitions, see {@link TablePartitions}, which are
+     * then read along with it.
+     */
+    public boolean isTablePartitioned(@NonNull String tableName) {
+        return false;
+    }
+
+    /**
+     * Returns the tables which the child rows of {@code record} are written to, and which may not
+     * exist yet, e.g. partitions. They are created before inserting the child rows.
+     */
+    @NonNull
+    List<CreateTableRequest> getChildTablesToCreateOnUpsert(@NonNull T record) {
+        return Collections.emptyList();
+    }
+
     private static int getLimitSize(ReadRecordsRequestParcel request) {
         // Querying extra records on top of page size
         // + pageOffset: <pageOffset> records has already been returned in previous page(s). See
@@ -760,9 +846,7 @@ public abstract class RecordHelper<T extends RecordInternal<?>> {
                                         StorageUtils.getUUIDFor(recordIdFilter, callingPackageName))
                         .toList();
         WhereClauses filterByIdsWhereClauses =
-                new WhereClauses(AND)
-                        .addWhereInClauseWithoutQuotes(
-                                UUID_COLUMN_NAME, StorageUtils.getListOfHexString(ids));
+                new WhereClauses(AND).addWhereInUuidsClause(UUID_COLUMN_NAME, ids);
 
         if (enforceSelfRead) {
             if (callingAppInfoId == DEFAULT_LONG) {
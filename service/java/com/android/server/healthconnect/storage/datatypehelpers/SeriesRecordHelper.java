@@ -27,9 +27,11 @@ import android.health.connect.datatypes.RecordTypeIdentifier;
 import android.health.connect.internal.datatypes.SeriesRecordInternal;
 import android.util.Pair;
 
+import com.android.server.healthconnect.HealthConnectDeviceConfigManager;
 import com.android.server.healthconnect.storage.request.CreateTableRequest;
 import com.android.server.healthconnect.storage.request.UpsertTableRequest;
 import com.android.server.healthconnect.storage.utils.SqlJoin;
+import com.android.server.healthconnect.storage.utils.TablePartitions;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -47,12 +49,16 @@ abstract class SeriesRecordHelper<
 
     @Override
     final List<CreateTableRequest> getChildTableCreateRequests() {
-        return Collections.singletonList(
-                new CreateTableRequest(getSeriesDataTableName(), getSeriesTableColumnInfo())
-                        .addForeignKey(
-                                getMainTableName(),
-                                Collections.singletonList(PARENT_KEY_COLUMN_NAME),
-                                Collections.singletonList(PRIMARY_COLUMN_NAME)));
+        return Collections.singletonList(getSeriesTableCreateRequest(getSeriesDataTableName()));
+    }
+
+    @Override
+    final List<CreateTableRequest> getChildTablesToCreateOnUpsert(@NonNull T record) {
+        String seriesTableName = getSeriesTableNameFor(record);
+        if (seriesTableName.equals(getSeriesDataTableName())) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(getSeriesTableCreateRequest(seriesTableName));
     }
 
     @Override
@@ -60,18 +66,25 @@ abstract class SeriesRecordHelper<
     final List<UpsertTableRequest> getChildTableUpsertRequests(@NonNull T record) {
         List<? extends SeriesRecordInternal.Sample> samples = record.getSamples().stream().toList();
         List<UpsertTableRequest> requests = new ArrayList<>(samples.size());
+        String seriesTableName = getSeriesTableNameFor(record);
         samples.forEach(
                 (sample -> {
                     ContentValues contentValues = new ContentValues();
                     populateSampleTo(contentValues, (U) sample);
                     requests.add(
-                            new UpsertTableRequest(getSeriesDataTableName(), contentValues)
+                            new UpsertTableRequest(seriesTableName, contentValues)
                                     .setParentColumnForChildTables(PARENT_KEY_COLUMN_NAME));
                 }));
 
         return requests;
     }
 
+    /** Series tables may have monthly partitions, see {@link TablePartitions}. */
+    @Override
+    public final boolean isTablePartitioned(@NonNull String tableName) {
+        return getSeriesDataTableName().equals(tableName);
+    }
+
     /** Returns the INNER JOIN clause for querying from the table for series datatype */
     @Override
     final SqlJoin getJoinForReadRequest() {
@@ -121,6 +134,31 @@ abstract class SeriesRecordHelper<
     /** Puts the {@code sample} to the {@code contentValues} */
     abstract void populateSampleTo(@NonNull ContentValues contentValues, @NonNull U sample);
 
+    /**
+     * Returns the table the samples of {@code record} are written to: a monthly partition of the
+     * series table if enabled, or the series table itself.
+     */
+    @NonNull
+    private String getSeriesTableNameFor(@NonNull T record) {
+        if (HealthConnectDeviceConfigManager.getInitialisedInstance()
+                        .isSeriesTablePartitionsEnabled()
+                && TablePartitions.shouldPartition(
+                        record.getStartTimeInMillis(), record.getEndTimeInMillis())) {
+            return TablePartitions.getPartitionName(
+                    getSeriesDataTableName(), record.getStartTimeInMillis());
+        }
+        return getSeriesDataTableName();
+    }
+
+    @NonNull
+    private CreateTableRequest getSeriesTableCreateRequest(@NonNull String tableName) {
+        return new CreateTableRequest(tableName, getSeriesTableColumnInfo())
+                .addForeignKey(
+                        getMainTableName(),
+                        Collections.singletonList(PARENT_KEY_COLUMN_NAME),
+                        Collections.singletonList(PRIMARY_COLUMN_NAME));
+    }
+
     @NonNull
     private List<Pair<String, String>> getSeriesTableColumnInfo() {
         ArrayList<Pair<String, String>> columnInfo = new ArrayList<>();
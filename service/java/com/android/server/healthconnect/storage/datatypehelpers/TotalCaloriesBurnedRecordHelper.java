@@ -31,11 +31,11 @@ import android.health.connect.internal.datatypes.TotalCaloriesBurnedRecordIntern
 import android.util.Pair;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.healthconnect.HealthConnectDeviceConfigManager;
 import com.android.server.healthconnect.storage.request.AggregateParams;
 import com.android.server.healthconnect.storage.request.AggregateTableRequest;
 import com.android.server.healthconnect.storage.utils.StorageUtils;
 
-import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -102,45 +102,16 @@ public final class TotalCaloriesBurnedRecordHelper
 
     @Override
     public double[] deriveAggregate(Cursor cursor, AggregateTableRequest request) {
-        int index = 0;
-        List<Pair<Long, Long>> groupIntervals = request.getGroupSplitIntervals();
-
-        List<Long> priorityList =
-                StorageUtils.getAppIdPriorityList(RECORD_TYPE_TOTAL_CALORIES_BURNED);
-        MergeDataHelper mergeDataHelper =
-                new MergeDataHelper(
-                        cursor,
-                        priorityList,
-                        ENERGY_COLUMN_NAME,
-                        Double.class,
-                        request.getUseLocalTime());
+        // For TotalCaloriesBurned aggregate request we derive data from ActiveCaloriesRecord and
+        // BasalMetabolicRateRecord for the time without TotalCaloriesBurnedRecord
         DeriveTotalCaloriesBurnedHelper deriveTotalCaloriesBurnedHelper =
                 new DeriveTotalCaloriesBurnedHelper(
-                        groupIntervals.get(0).first,
-                        groupIntervals.get(groupIntervals.size() - 1).second,
-                        priorityList,
+                        request.getGroupSplits(),
+                        StorageUtils.getAppIdPriorityList(RECORD_TYPE_TOTAL_CALORIES_BURNED),
+                        HealthConnectDeviceConfigManager.getInitialisedInstance()
+                                .isAggregationSourceControlsEnabled(),
                         request.getUseLocalTime());
-        double[] totalCaloriesBurnedArray = new double[groupIntervals.size()];
-        for (Pair<Long, Long> groupInterval : groupIntervals) {
-            long groupStartTime = groupInterval.first;
-            long groupEndTime = groupInterval.second;
-            // Based on the number of groups calculate aggregate for each group by calling
-            // MergeDataHelper by eliminate duplicate for overlapping time interval
-            double total = mergeDataHelper.readCursor(groupStartTime, groupEndTime);
-            // For only TotalCaloriesBurned aggregate request we derive data from
-            // ActiveCaloriesRecord and BasalMetabolicRateRecord for empty intervals
-            List<Pair<Instant, Instant>> emptyIntervalList =
-                    mergeDataHelper.getEmptyIntervals(
-                            Instant.ofEpochMilli(groupStartTime),
-                            Instant.ofEpochMilli(groupEndTime));
-            if (emptyIntervalList.size() > 0) {
-                total += deriveTotalCaloriesBurnedHelper.getDerivedCalories(emptyIntervalList);
-            }
-
-            totalCaloriesBurnedArray[index++] = total;
-        }
-        deriveTotalCaloriesBurnedHelper.closeCursors();
-        return totalCaloriesBurnedArray;
+        return deriveTotalCaloriesBurnedHelper.getTotalCaloriesBurned(cursor, ENERGY_COLUMN_NAME);
     }
 
     @Override
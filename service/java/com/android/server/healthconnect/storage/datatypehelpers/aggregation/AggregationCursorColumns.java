@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.datatypehelpers.aggregation;
+
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.END_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.LOCAL_DATE_TIME_END_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.LOCAL_DATE_TIME_START_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.START_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.START_ZONE_OFFSET_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.APP_INFO_ID_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.LAST_MODIFIED_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.UUID_COLUMN_NAME;
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * Column indices of an aggregation cursor, resolved once per cursor instead of once per row.
+ *
+ * @hide
+ */
+final class AggregationCursorColumns {
+    private final Cursor mCursor;
+    private final int mStartTimeIndex;
+    private final int mEndTimeIndex;
+    private final int mLastModifiedTimeIndex;
+    private final int mStartZoneOffsetIndex;
+    private final int mAppInfoIdIndex;
+    private final int mUuidIndex;
+
+    // Small cache for the columns specific to an aggregation type, looked up by name.
+    private String[] mExtraColumnNames = new String[2];
+    private int[] mExtraColumnIndices = new int[2];
+    private int mExtraColumnsCount;
+
+    AggregationCursorColumns(Cursor cursor, boolean useLocalTime) {
+        mCursor = cursor;
+        mStartTimeIndex =
+                cursor.getColumnIndex(
+                        useLocalTime
+                                ? LOCAL_DATE_TIME_START_TIME_COLUMN_NAME
+                                : START_TIME_COLUMN_NAME);
+        mEndTimeIndex =
+                cursor.getColumnIndex(
+                        useLocalTime ? LOCAL_DATE_TIME_END_TIME_COLUMN_NAME : END_TIME_COLUMN_NAME);
+        mLastModifiedTimeIndex = cursor.getColumnIndex(LAST_MODIFIED_TIME_COLUMN_NAME);
+        mStartZoneOffsetIndex = cursor.getColumnIndex(START_ZONE_OFFSET_COLUMN_NAME);
+        mAppInfoIdIndex = cursor.getColumnIndex(APP_INFO_ID_COLUMN_NAME);
+        mUuidIndex = cursor.getColumnIndex(UUID_COLUMN_NAME);
+    }
+
+    /** Returns true if this object was resolved for {@code cursor}. */
+    boolean isFor(Cursor cursor) {
+        return mCursor == cursor;
+    }
+
+    int getStartTimeIndex() {
+        return mStartTimeIndex;
+    }
+
+    int getEndTimeIndex() {
+        return mEndTimeIndex;
+    }
+
+    int getLastModifiedTimeIndex() {
+        return mLastModifiedTimeIndex;
+    }
+
+    /** Returns the index of the start zone offset column, or -1 if the cursor doesn't have it. */
+    int getStartZoneOffsetIndex() {
+        return mStartZoneOffsetIndex;
+    }
+
+    int getAppInfoIdIndex() {
+        return mAppInfoIdIndex;
+    }
+
+    int getUuidIndex() {
+        return mUuidIndex;
+    }
+
+    /** Returns the index of {@code columnName}, resolving it on the cursor on first use. */
+    int getColumnIndex(String columnName) {
+        for (int i = 0; i < mExtraColumnsCount; i++) {
+            if (mExtraColumnNames[i].equals(columnName)) {
+                return mExtraColumnIndices[i];
+            }
+        }
+
+        if (mExtraColumnsCount == mExtraColumnNames.length) {
+            mExtraColumnNames = Arrays.copyOf(mExtraColumnNames, mExtraColumnsCount * 2);
+            mExtraColumnIndices = Arrays.copyOf(mExtraColumnIndices, mExtraColumnsCount * 2);
+        }
+        int index = mCursor.getColumnIndex(columnName);
+        mExtraColumnNames[mExtraColumnsCount] = columnName;
+        mExtraColumnIndices[mExtraColumnsCount] = index;
+        mExtraColumnsCount++;
+        return index;
+    }
+}
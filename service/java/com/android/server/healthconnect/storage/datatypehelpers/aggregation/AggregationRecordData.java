@@ -16,22 +16,12 @@
 
 package com.android.server.healthconnect.storage.datatypehelpers.aggregation;
 
-import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.END_TIME_COLUMN_NAME;
-import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.LOCAL_DATE_TIME_END_TIME_COLUMN_NAME;
-import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.LOCAL_DATE_TIME_START_TIME_COLUMN_NAME;
-import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.START_TIME_COLUMN_NAME;
-import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.START_ZONE_OFFSET_COLUMN_NAME;
-import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.APP_INFO_ID_COLUMN_NAME;
-import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.LAST_MODIFIED_TIME_COLUMN_NAME;
-import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.UUID_COLUMN_NAME;
-
 import android.database.Cursor;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.healthconnect.storage.utils.StorageUtils;
 
 import java.time.ZoneOffset;
-import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -44,9 +34,8 @@ public abstract class AggregationRecordData implements Comparable<AggregationRec
     private long mRecordEndTime;
     private int mPriority;
     private long mLastModifiedTime;
-
-    @SuppressWarnings("NullAway.Init")
-    private ZoneOffset mStartTimeZoneOffset;
+    private boolean mHasStartTimeZoneOffset;
+    private int mStartTimeZoneOffsetSeconds;
 
     long getStartTime() {
         return mRecordStartTime;
@@ -64,33 +53,36 @@ public abstract class AggregationRecordData implements Comparable<AggregationRec
         return mLastModifiedTime;
     }
 
+    /**
+     * Returns the start time zone offset. The {@link ZoneOffset} is only created on demand, as it
+     * is only needed for the first record of each group.
+     */
+    @SuppressWarnings("NullAway")
     ZoneOffset getStartTimeZoneOffset() {
-        return mStartTimeZoneOffset;
+        return mHasStartTimeZoneOffset
+                ? ZoneOffset.ofTotalSeconds(mStartTimeZoneOffsetSeconds)
+                : null;
     }
 
-    protected UUID readUuid(Cursor cursor) {
-        return StorageUtils.getCursorUUID(cursor, UUID_COLUMN_NAME);
+    int getStartTimeZoneOffsetSeconds() {
+        return mStartTimeZoneOffsetSeconds;
+    }
+
+    protected UUID readUuid(Cursor cursor, AggregationCursorColumns columns) {
+        return StorageUtils.convertBytesToUUID(cursor.getBlob(columns.getUuidIndex()));
     }
 
     void populateAggregationData(
-            Cursor cursor, boolean useLocalTime, Map<Long, Integer> appIdToPriority) {
-        mRecordStartTime =
-                StorageUtils.getCursorLong(
-                        cursor,
-                        useLocalTime
-                                ? LOCAL_DATE_TIME_START_TIME_COLUMN_NAME
-                                : START_TIME_COLUMN_NAME);
-        mRecordEndTime =
-                StorageUtils.getCursorLong(
-                        cursor,
-                        useLocalTime ? LOCAL_DATE_TIME_END_TIME_COLUMN_NAME : END_TIME_COLUMN_NAME);
-        mLastModifiedTime = StorageUtils.getCursorLong(cursor, LAST_MODIFIED_TIME_COLUMN_NAME);
-        mStartTimeZoneOffset = StorageUtils.getZoneOffset(cursor, START_ZONE_OFFSET_COLUMN_NAME);
-        mPriority =
-                appIdToPriority.getOrDefault(
-                        StorageUtils.getCursorLong(cursor, APP_INFO_ID_COLUMN_NAME),
-                        Integer.MIN_VALUE);
-        populateSpecificAggregationData(cursor, useLocalTime);
+            Cursor cursor, AggregationCursorColumns columns, boolean useLocalTime, int priority) {
+        mRecordStartTime = cursor.getLong(columns.getStartTimeIndex());
+        mRecordEndTime = cursor.getLong(columns.getEndTimeIndex());
+        mLastModifiedTime = cursor.getLong(columns.getLastModifiedTimeIndex());
+        mHasStartTimeZoneOffset = columns.getStartZoneOffsetIndex() != -1;
+        if (mHasStartTimeZoneOffset) {
+            mStartTimeZoneOffsetSeconds = cursor.getInt(columns.getStartZoneOffsetIndex());
+        }
+        mPriority = priority;
+        populateSpecificAggregationData(cursor, columns, useLocalTime);
     }
 
     AggregationTimestamp getStartTimestamp() {
@@ -121,7 +113,8 @@ public abstract class AggregationRecordData implements Comparable<AggregationRec
     abstract double getResultOnInterval(
             AggregationTimestamp startPoint, AggregationTimestamp endPoint);
 
-    abstract void populateSpecificAggregationData(Cursor cursor, boolean useLocalTime);
+    abstract void populateSpecificAggregationData(
+            Cursor cursor, AggregationCursorColumns columns, boolean useLocalTime);
 
     @Override
     public String toString() {
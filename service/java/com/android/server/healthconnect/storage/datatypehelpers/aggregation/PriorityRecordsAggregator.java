@@ -51,7 +51,8 @@ public class PriorityRecordsAggregator {
     static final String TAG = "HealthPriorityRecordsAggregator";
 
     private final List<Long> mGroupSplits;
-    private final Map<Long, Integer> mAppIdToPriority;
+    // App ids in priority order, highest priority first.
+    private final long[] mAppIdPriorityOrder;
     private final Map<Integer, Double> mGroupToAggregationResult;
     private final Map<Integer, ZoneOffset> mGroupToFirstZoneOffset;
     private final int mNumberOfGroups;
@@ -66,6 +67,8 @@ public class PriorityRecordsAggregator {
 
     private final boolean mUseLocalTime;
 
+    @Nullable private AggregationCursorColumns mCursorColumns;
+
     public PriorityRecordsAggregator(
             List<Long> groupSplits,
             List<Long> appIdPriorityList,
@@ -75,10 +78,9 @@ public class PriorityRecordsAggregator {
         mGroupSplits = groupSplits;
         mAggregationType = aggregationType;
         mExtraParams = extraParams;
-        mAppIdToPriority = new ArrayMap<>();
+        mAppIdPriorityOrder = new long[appIdPriorityList.size()];
         for (int i = 0; i < appIdPriorityList.size(); i++) {
-            // Add to the map with -index, so app with higher priority has higher value in the map.
-            mAppIdToPriority.put(appIdPriorityList.get(i), appIdPriorityList.size() - i);
+            mAppIdPriorityOrder[i] = appIdPriorityList.get(i);
         }
         mUseLocalTime = useLocalTime;
         mTimestampsBuffer = new TreeSet<>();
@@ -204,11 +206,31 @@ public class PriorityRecordsAggregator {
 
     @VisibleForTesting
     AggregationRecordData readNewData(Cursor cursor) {
+        if (mCursorColumns == null || !mCursorColumns.isFor(cursor)) {
+            mCursorColumns = new AggregationCursorColumns(cursor, mUseLocalTime);
+        }
         AggregationRecordData data = createAggregationRecordData();
-        data.populateAggregationData(cursor, mUseLocalTime, mAppIdToPriority);
+        data.populateAggregationData(
+                cursor,
+                mCursorColumns,
+                mUseLocalTime,
+                getPriority(cursor.getLong(mCursorColumns.getAppInfoIdIndex())));
         return data;
     }
 
+    /**
+     * Returns the priority of {@code appInfoId}, apps with higher priority have higher values.
+     * Priority lists are short, so a scan of the array is cheaper than a boxed map lookup.
+     */
+    private int getPriority(long appInfoId) {
+        for (int i = 0; i < mAppIdPriorityOrder.length; i++) {
+            if (mAppIdPriorityOrder[i] == appInfoId) {
+                return mAppIdPriorityOrder.length - i;
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
     /** Returns result for the given group */
     @SuppressWarnings("NullAway")
     public Double getResultForGroup(Integer groupNumber) {
@@ -16,9 +16,6 @@
 
 package com.android.server.healthconnect.storage.datatypehelpers.aggregation;
 
-import static com.android.server.healthconnect.storage.utils.StorageUtils.getCursorLong;
-import static com.android.server.healthconnect.storage.utils.StorageUtils.isNullValue;
-
 import android.database.Cursor;
 import android.health.connect.Constants;
 import android.util.Slog;
@@ -59,12 +56,15 @@ public class SessionDurationAggregationData extends AggregationRecordData {
     }
 
     @Override
-    void populateSpecificAggregationData(Cursor cursor, boolean useLocalTime) {
-        UUID currentSessionUuid = readUuid(cursor);
+    void populateSpecificAggregationData(
+            Cursor cursor, AggregationCursorColumns columns, boolean useLocalTime) {
+        UUID currentSessionUuid = readUuid(cursor, columns);
+        int excludeStartIndex = columns.getColumnIndex(mExcludeIntervalStartTimeColumn);
+        int excludeEndIndex = columns.getColumnIndex(mExcludeIntervalEndTimeColumn);
         do {
             // Populate stages from each row.
-            updateIntervalsToExclude(cursor, useLocalTime);
-        } while (cursor.moveToNext() && currentSessionUuid.equals(readUuid(cursor)));
+            updateIntervalsToExclude(cursor, excludeStartIndex, excludeEndIndex, useLocalTime);
+        } while (cursor.moveToNext() && currentSessionUuid.equals(readUuid(cursor, columns)));
         // In case we hit another record, move the cursor back to read next record in outer
         // RecordHelper#getInternalRecords loop.
         cursor.moveToPrevious();
@@ -87,8 +87,9 @@ public class SessionDurationAggregationData extends AggregationRecordData {
         return this;
     }
 
-    private void updateIntervalsToExclude(Cursor cursor, boolean useLocalTime) {
-        if (isNullValue(cursor, mExcludeIntervalStartTimeColumn)) {
+    private void updateIntervalsToExclude(
+            Cursor cursor, int excludeStartIndex, int excludeEndIndex, boolean useLocalTime) {
+        if (cursor.isNull(excludeStartIndex)) {
             return;
         }
 
@@ -98,17 +99,17 @@ public class SessionDurationAggregationData extends AggregationRecordData {
         }
 
         if (useLocalTime) {
-            mExcludeStarts.add(calculateLocalTime(cursor, mExcludeIntervalStartTimeColumn));
-            mExcludeEnds.add(calculateLocalTime(cursor, mExcludeIntervalEndTimeColumn));
+            mExcludeStarts.add(calculateLocalTime(cursor, excludeStartIndex));
+            mExcludeEnds.add(calculateLocalTime(cursor, excludeEndIndex));
         } else {
-            mExcludeStarts.add(getCursorLong(cursor, mExcludeIntervalStartTimeColumn));
-            mExcludeEnds.add(getCursorLong(cursor, mExcludeIntervalEndTimeColumn));
+            mExcludeStarts.add(cursor.getLong(excludeStartIndex));
+            mExcludeEnds.add(cursor.getLong(excludeEndIndex));
         }
     }
 
-    private Long calculateLocalTime(Cursor cursor, String physicalColumnName) {
-        return getCursorLong(cursor, physicalColumnName)
-                + MILLIS_IN_SECOND * getStartTimeZoneOffset().getTotalSeconds();
+    private long calculateLocalTime(Cursor cursor, int physicalColumnIndex) {
+        return cursor.getLong(physicalColumnIndex)
+                + MILLIS_IN_SECOND * getStartTimeZoneOffsetSeconds();
     }
 
     private long calculateDurationToExclude(long startTime, long endTime) {
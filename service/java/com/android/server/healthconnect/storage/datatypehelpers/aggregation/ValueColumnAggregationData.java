@@ -23,7 +23,6 @@ import android.database.Cursor;
 
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.healthconnect.storage.request.AggregateParams.PriorityAggregationExtraParams.ValueColumnType;
-import com.android.server.healthconnect.storage.utils.StorageUtils;
 
 /**
  * Represents priority aggregation data for one column.
@@ -67,11 +66,13 @@ public class ValueColumnAggregationData extends AggregationRecordData {
     }
 
     @Override
-    void populateSpecificAggregationData(Cursor cursor, boolean useLocalTime) {
+    void populateSpecificAggregationData(
+            Cursor cursor, AggregationCursorColumns columns, boolean useLocalTime) {
+        int valueColumnIndex = columns.getColumnIndex(mValueColumnName);
         if (mValueColumnType == VALUE_TYPE_DOUBLE) {
-            mValue = StorageUtils.getCursorDouble(cursor, mValueColumnName);
+            mValue = cursor.getDouble(valueColumnIndex);
         } else if (mValueColumnType == VALUE_TYPE_LONG) {
-            mValue = StorageUtils.getCursorLong(cursor, mValueColumnName);
+            mValue = cursor.getLong(valueColumnIndex);
         } else {
             throw new IllegalArgumentException("Unknown aggregation column type.");
         }
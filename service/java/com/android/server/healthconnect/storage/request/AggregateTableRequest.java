@@ -23,9 +23,11 @@ import static android.health.connect.datatypes.AggregationType.MIN;
 import static android.health.connect.datatypes.AggregationType.SUM;
 
 import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.APP_INFO_ID_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.utils.StorageUtils.SELECT_ALL;
 
 import android.annotation.NonNull;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.health.connect.AggregateResult;
 import android.health.connect.Constants;
 import android.health.connect.LocalTimeRangeFilter;
@@ -43,12 +45,14 @@ import com.android.server.healthconnect.storage.datatypehelpers.aggregation.Prio
 import com.android.server.healthconnect.storage.utils.OrderByClause;
 import com.android.server.healthconnect.storage.utils.SqlJoin;
 import com.android.server.healthconnect.storage.utils.StorageUtils;
+import com.android.server.healthconnect.storage.utils.TablePartitions;
 import com.android.server.healthconnect.storage.utils.WhereClauses;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.Period;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -60,6 +64,7 @@ import java.util.Map;
 public class AggregateTableRequest {
     private static final String TAG = "HealthConnectAggregate";
     private static final String GROUP_BY_COLUMN_NAME = "category";
+    private static final String UNION_ALL = " UNION ALL ";
 
     private static final int MAX_NUMBER_OF_GROUPS = Constants.MAXIMUM_PAGE_SIZE;
 
@@ -86,6 +91,10 @@ public class AggregateTableRequest {
     private final AggregateParams.PriorityAggregationExtraParams mPriorityParams;
     private final boolean mUseLocalTime;
     private List<Long> mTimeSplits;
+    // Size of all the groups but the last one, which can be shorter, or 0 if their sizes differ.
+    private long mGroupSizeMillis;
+    private boolean mTablePartitioned = false;
+    private List<String> mTablePartitions = Collections.emptyList();
 
     @SuppressWarnings("NullAway.Init")
     public AggregateTableRequest(
@@ -205,6 +214,37 @@ public class AggregateTableRequest {
         return this;
     }
 
+    /**
+     * Sets whether the table may have partitions, see {@link TablePartitions}, which are then
+     * aggregated along with it.
+     */
+    public AggregateTableRequest setTablePartitioned(boolean tablePartitioned) {
+        mTablePartitioned = tablePartitioned;
+        return this;
+    }
+
+    /**
+     * Lists the partitions of the table to aggregate from {@code db}, for the records overlapping
+     * the time range. Must be called on the database the commands run on, before building them.
+     */
+    public void loadTablePartitions(@NonNull SQLiteDatabase db) {
+        if (!mTablePartitioned) {
+            return;
+        }
+        long minStartTime = Long.MIN_VALUE;
+        long maxStartTime = Long.MAX_VALUE;
+        if (mTimeSplits != null) {
+            minStartTime =
+                    TablePartitions.getMinStartTime(
+                            mTimeSplits.get(0), mUseLocalTime, /* overlapping= */ true);
+            maxStartTime =
+                    TablePartitions.getMaxStartTime(
+                            mTimeSplits.get(mTimeSplits.size() - 1), mUseLocalTime);
+        }
+        mTablePartitions =
+                TablePartitions.getPartitions(db, mTableName, minStartTime, maxStartTime);
+    }
+
     /** Sets group by fields. */
     public void setGroupBy(
             String columnName, Period period, Duration duration, TimeRangeFilter timeRangeFilter) {
@@ -218,6 +258,7 @@ public class AggregateTableRequest {
                     "Either aggregation period or duration should be not null");
         }
         mGroupBySize = mTimeSplits.size() - 1;
+        mGroupSizeMillis = getGroupSizeMillis(mTimeSplits);
 
         if (Constants.DEBUG) {
             Slog.d(
@@ -300,28 +341,40 @@ public class AggregateTableRequest {
     private String appendAggregateCommand(StringBuilder builder, boolean isMetadata) {
         boolean useGroupBy = mGroupByColumnName != null && !isMetadata;
         if (useGroupBy) {
-            builder.append(" CASE ");
-            int groupByIndex = 0;
-            for (int i = 0; i < mTimeSplits.size() - 1; i++) {
-                builder.append(" WHEN ")
-                        .append(mTimeColumnName)
-                        .append(" >= ")
-                        .append(mTimeSplits.get(i))
-                        .append(" AND ")
+            long start = mTimeSplits.get(0);
+            builder.append(" CASE WHEN ")
+                    .append(mTimeColumnName)
+                    .append(" >= ")
+                    .append(start)
+                    .append(" AND ")
+                    .append(mTimeColumnName)
+                    .append(" < ")
+                    .append(mTimeSplits.get(mGroupBySize))
+                    .append(" THEN ");
+            if (mGroupSizeMillis > 0) {
+                // Both operands are integers, so this is an integer division.
+                builder.append("(")
                         .append(mTimeColumnName)
-                        .append(" < ")
-                        .append(mTimeSplits.get(i + 1))
-                        .append(" THEN ")
-                        .append(groupByIndex++);
+                        .append(" - ")
+                        .append(start)
+                        .append(") / ")
+                        .append(mGroupSizeMillis);
+            } else {
+                appendGroupSearch(builder, 0, mGroupBySize);
             }
             builder.append(" END " + GROUP_BY_COLUMN_NAME + " ");
         } else {
             builder.setLength(builder.length() - 2); // Remove the last 2 char i.e. ", "
         }
 
-        builder.append(" FROM ").append(mTableName);
-        if (mSqlJoin != null) {
-            builder.append(mSqlJoin.getJoinCommand());
+        builder.append(" FROM ");
+        if (mTablePartitions.isEmpty()) {
+            builder.append(mTableName);
+            if (mSqlJoin != null) {
+                builder.append(mSqlJoin.getJoinCommand());
+            }
+        } else {
+            appendTableWithPartitions(builder);
         }
 
         builder.append(mWhereClauses.get(/* withWhereKeyword= */ true));
@@ -341,6 +394,65 @@ public class AggregateTableRequest {
         return builder.toString();
     }
 
+    /**
+     * Appends the union of the table and of its partitions, each joined on its own so that the
+     * filters on the joined table are pushed down to all of them and use their indexes.
+     */
+    private void appendTableWithPartitions(StringBuilder builder) {
+        builder.append("( ").append(SELECT_ALL).append(mTableName);
+        if (mSqlJoin != null) {
+            builder.append(mSqlJoin.getJoinCommand());
+        }
+        for (String partition : mTablePartitions) {
+            builder.append(UNION_ALL).append(SELECT_ALL).append(partition);
+            if (mSqlJoin != null) {
+                builder.append(mSqlJoin.withSelfTableName(partition).getJoinCommand());
+            }
+        }
+        builder.append(" ) AS ").append(mTableName);
+    }
+
+    /**
+     * Appends an expression that returns which of the groups in [{@code fromGroup}, {@code
+     * toGroup}) contains the time, by binary search on the splits. Used when the groups don't have
+     * the same size, e.g. months.
+     */
+    private void appendGroupSearch(StringBuilder builder, int fromGroup, int toGroup) {
+        if (toGroup - fromGroup <= 1) {
+            builder.append(fromGroup);
+            return;
+        }
+        int middleGroup = (fromGroup + toGroup) >>> 1;
+        builder.append("CASE WHEN ")
+                .append(mTimeColumnName)
+                .append(" < ")
+                .append(mTimeSplits.get(middleGroup))
+                .append(" THEN ");
+        appendGroupSearch(builder, fromGroup, middleGroup);
+        builder.append(" ELSE ");
+        appendGroupSearch(builder, middleGroup, toGroup);
+        builder.append(" END");
+    }
+
+    /**
+     * Returns the size of the groups between {@code splits} if all of them but the last have the
+     * same size, or 0 otherwise.
+     */
+    private static long getGroupSizeMillis(List<Long> splits) {
+        if (splits.size() < 2) {
+            return 0;
+        }
+        long groupSize = splits.get(1) - splits.get(0);
+        for (int i = 1; i < splits.size() - 2; i++) {
+            if (splits.get(i + 1) - splits.get(i) != groupSize) {
+                return 0;
+            }
+        }
+        // The last group is cut at the end of the time range, which the CASE checks separately.
+        long lastGroupSize = splits.get(splits.size() - 1) - splits.get(splits.size() - 2);
+        return lastGroupSize <= groupSize ? groupSize : 0;
+    }
+
     @SuppressWarnings("NullAway")
     private void updateResultWithDataOriginPackageNames(Cursor metaDataCursor) {
         List<Long> packageIds = new ArrayList<>();
@@ -353,6 +465,11 @@ public class AggregateTableRequest {
                 (n, v) -> mAggregateResults.get(n).setDataOrigins(packageNames));
     }
 
+    /** Returns the start of each group, followed by the end of the last group. */
+    public List<Long> getGroupSplits() {
+        return Collections.unmodifiableList(mTimeSplits);
+    }
+
     public List<Pair<Long, Long>> getGroupSplitIntervals() {
         List<Pair<Long, Long>> groupIntervals = new ArrayList<>();
         long previous = mTimeSplits.get(0);
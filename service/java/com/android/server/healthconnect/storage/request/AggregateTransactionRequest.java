@@ -17,6 +17,7 @@
 package com.android.server.healthconnect.storage.request;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.health.connect.AggregateRecordsResponse;
 import android.health.connect.AggregateResult;
 import android.health.connect.TimeRangeFilter;
@@ -24,15 +25,22 @@ import android.health.connect.aidl.AggregateDataRequestParcel;
 import android.health.connect.aidl.AggregateDataResponseParcel;
 import android.health.connect.datatypes.AggregationType;
 import android.health.connect.internal.datatypes.utils.AggregationTypeIdMapper;
+import android.os.CancellationSignal;
 import android.util.ArrayMap;
 
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.datatypehelpers.AppInfoHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.RecordHelper;
+import com.android.server.healthconnect.storage.utils.GenerationLruCache;
 import com.android.server.healthconnect.storage.utils.RecordHelperProvider;
+import com.android.server.healthconnect.storage.utils.StorageUtils;
+import com.android.server.healthconnect.storage.utils.WriteGenerations;
 
 import java.time.Duration;
 import java.time.Period;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -44,11 +52,21 @@ import java.util.Objects;
  * @hide
  */
 public final class AggregateTransactionRequest {
+    private static final int MAX_CACHED_RESPONSES = 64;
+
+    /**
+     * Responses of recent requests, valid until the tables they were computed from are written.
+     * Dashboards repeat the same aggregations on every refresh.
+     */
+    private static final GenerationLruCache<List<Object>, List<AggregateRecordsResponse<?>>>
+            sResponsesCache = new GenerationLruCache<>(MAX_CACHED_RESPONSES);
+
     private final String mPackageName;
     private final List<AggregateTableRequest> mAggregateTableRequests;
     private final Period mPeriod;
     private final Duration mDuration;
     private final TimeRangeFilter mTimeRangeFilter;
+    private final List<Object> mCacheKey;
 
     public AggregateTransactionRequest(
             @NonNull String packageName,
@@ -63,6 +81,7 @@ public final class AggregateTransactionRequest {
         final AggregationTypeIdMapper aggregationTypeIdMapper =
                 AggregationTypeIdMapper.getInstance();
         RecordHelperProvider recordHelperProvider = RecordHelperProvider.getInstance();
+        List<Object> priorityLists = new ArrayList<>(request.getAggregateIds().length);
         for (int id : request.getAggregateIds()) {
             AggregationType<?> aggregationType = aggregationTypeIdMapper.getAggregationTypeFor(id);
             List<Integer> recordTypeIds = aggregationType.getApplicableRecordTypeIds();
@@ -87,10 +106,28 @@ public final class AggregateTransactionRequest {
                             mTimeRangeFilter);
                 }
                 mAggregateTableRequests.add(aggregateTableRequest);
+                // Priorities are not stored with the records, so they are part of the key.
+                priorityLists.add(
+                        new ArrayList<>(
+                                StorageUtils.getAppIdPriorityList(
+                                        recordHelper.getRecordIdentifier())));
             } else {
                 throw new UnsupportedOperationException();
             }
         }
+
+        mCacheKey =
+                Arrays.asList(
+                        packageName,
+                        Arrays.toString(request.getAggregateIds()),
+                        request.getStartTime(),
+                        request.getEndTime(),
+                        request.useLocalTimeFilter(),
+                        mPeriod,
+                        mDuration,
+                        new ArrayList<>(request.getPackageFilters()),
+                        startDateAccess,
+                        priorityLists);
     }
 
     @NonNull
@@ -102,11 +139,67 @@ public final class AggregateTransactionRequest {
      * @return Compute and return aggregations
      */
     public AggregateDataResponseParcel getAggregateDataResponseParcel() {
+        return getAggregateDataResponseParcel(/* cancellationSignal= */ null);
+    }
+
+    /**
+     * @param cancellationSignal cancels the aggregation queries, which then throw {@link
+     *     android.os.OperationCanceledException}.
+     * @return Compute and return aggregations
+     */
+    public AggregateDataResponseParcel getAggregateDataResponseParcel(
+            @Nullable CancellationSignal cancellationSignal) {
+        // Read the generations before the tables, so that writes made while computing the
+        // responses invalidate them.
+        long[] generations = getWriteGenerations();
+        List<AggregateRecordsResponse<?>> aggregateRecordsResponses =
+                sResponsesCache.get(mCacheKey, generations);
+        if (aggregateRecordsResponses == null) {
+            aggregateRecordsResponses = computeAggregateRecordsResponses(cancellationSignal);
+            sResponsesCache.put(mCacheKey, generations, aggregateRecordsResponses);
+        }
+
+        // Create and return parcel
+        AggregateDataResponseParcel aggregateDataResponseParcel =
+                new AggregateDataResponseParcel(aggregateRecordsResponses);
+        if (mPeriod != null) {
+            aggregateDataResponseParcel.setPeriod(mPeriod, mTimeRangeFilter);
+        } else if (mDuration != null) {
+            aggregateDataResponseParcel.setDuration(mDuration, mTimeRangeFilter);
+        }
+
+        return aggregateDataResponseParcel;
+    }
+
+    /** Clears the cached responses. */
+    @VisibleForTesting
+    public static void clearCache() {
+        sResponsesCache.clear();
+    }
+
+    private long[] getWriteGenerations() {
+        WriteGenerations writeGenerations =
+                TransactionManager.getInitialisedInstance().getWriteGenerations();
+        long[] generations = new long[mAggregateTableRequests.size() + 1];
+        // Data origins in the responses are read from the app info table.
+        generations[0] = writeGenerations.getGeneration(AppInfoHelper.TABLE_NAME);
+        for (int i = 0; i < mAggregateTableRequests.size(); i++) {
+            generations[i + 1] =
+                    mAggregateTableRequests
+                            .get(i)
+                            .getRecordHelper()
+                            .getWriteGeneration(writeGenerations);
+        }
+        return generations;
+    }
+
+    private List<AggregateRecordsResponse<?>> computeAggregateRecordsResponses(
+            @Nullable CancellationSignal cancellationSignal) {
         Map<AggregationType<?>, List<AggregateResult<?>>> results = new ArrayMap<>();
         for (AggregateTableRequest aggregateTableRequest : mAggregateTableRequests) {
             // Compute aggregations
             TransactionManager.getInitialisedInstance()
-                    .populateWithAggregation(aggregateTableRequest);
+                    .populateWithAggregation(aggregateTableRequest, cancellationSignal);
             results.put(
                     aggregateTableRequest.getAggregationType(),
                     aggregateTableRequest.getAggregateResults());
@@ -127,16 +220,6 @@ public final class AggregateTransactionRequest {
             }
             aggregateRecordsResponses.add(new AggregateRecordsResponse<>(aggregateResultMap));
         }
-
-        // Create and return parcel
-        AggregateDataResponseParcel aggregateDataResponseParcel =
-                new AggregateDataResponseParcel(aggregateRecordsResponses);
-        if (mPeriod != null) {
-            aggregateDataResponseParcel.setPeriod(mPeriod, mTimeRangeFilter);
-        } else if (mDuration != null) {
-            aggregateDataResponseParcel.setDuration(mDuration, mTimeRangeFilter);
-        }
-
-        return aggregateDataResponseParcel;
+        return aggregateRecordsResponses;
     }
 }
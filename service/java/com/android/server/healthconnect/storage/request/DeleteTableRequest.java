@@ -28,11 +28,13 @@ import android.health.connect.datatypes.RecordTypeIdentifier;
 import android.util.Slog;
 
 import com.android.server.healthconnect.storage.utils.StorageUtils;
+import com.android.server.healthconnect.storage.utils.TempUuidsTable;
 import com.android.server.healthconnect.storage.utils.WhereClauses;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
  * No need to have delete-requests for child tables as ideally they should be following cascaded
@@ -55,6 +57,7 @@ public class DeleteTableRequest {
     private long mEndTime = DEFAULT_LONG;
     private boolean mRequiresUuId;
     private List<String> mIds;
+    @Nullable private TempUuidsTable.Filter mUuidsFilter;
     private boolean mEnforcePackageCheck;
     private int mNumberOfUuidsToDelete;
     private WhereClauses mCustomWhereClauses;
@@ -98,6 +101,26 @@ public class DeleteTableRequest {
         Objects.requireNonNull(idColumnName);
 
         mIds = ids.stream().map(StorageUtils::getNormalisedString).toList();
+        mUuidsFilter = null;
+        mIdColumnName = idColumnName;
+        return this;
+    }
+
+    /**
+     * Sets the UUIDs to delete. Large sets of UUIDs are read from {@link TempUuidsTable}, see
+     * {@link #getUuidFilters()}.
+     */
+    public DeleteTableRequest setUuids(@NonNull String idColumnName, @NonNull List<UUID> uuids) {
+        Objects.requireNonNull(uuids);
+        Objects.requireNonNull(idColumnName);
+
+        if (TempUuidsTable.shouldUseFor(uuids.size())) {
+            mUuidsFilter = new TempUuidsTable.Filter(uuids);
+            mIds = null;
+        } else {
+            mUuidsFilter = null;
+            mIds = StorageUtils.getListOfHexString(uuids);
+        }
         mIdColumnName = idColumnName;
         return this;
     }
@@ -107,6 +130,7 @@ public class DeleteTableRequest {
         Objects.requireNonNull(idColumnName);
 
         mIds = Collections.singletonList(StorageUtils.getNormalisedString(id));
+        mUuidsFilter = null;
         mIdColumnName = idColumnName;
         return this;
     }
@@ -138,6 +162,18 @@ public class DeleteTableRequest {
         return mIds;
     }
 
+    /**
+     * Returns the {@link TempUuidsTable} filters used by the read and delete commands, which must
+     * be loaded before running them.
+     */
+    @NonNull
+    public List<TempUuidsTable.Filter> getUuidFilters() {
+        if (mUuidsFilter == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(mUuidsFilter);
+    }
+
     @NonNull
     public String getTableName() {
         return mTableName;
@@ -173,6 +209,9 @@ public class DeleteTableRequest {
         whereClauses.addWhereInLongsClause(mPackageColumnName, mPackageFilters);
         whereClauses.addWhereBetweenTimeClause(mTimeColumnName, mStartTime, mEndTime);
         whereClauses.addWhereInClauseWithoutQuotes(mIdColumnName, mIds);
+        if (mUuidsFilter != null) {
+            whereClauses.addWhereInUuidsClause(mIdColumnName, mUuidsFilter);
+        }
 
         if (Constants.DEBUG) {
             Slog.d(
@@ -221,6 +260,6 @@ public class DeleteTableRequest {
         if (requiresRead()) {
             return mNumberOfUuidsToDelete;
         }
-        return mIds.size();
+        return mUuidsFilter != null ? mUuidsFilter.size() : mIds.size();
     }
 }
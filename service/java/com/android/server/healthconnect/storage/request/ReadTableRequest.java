@@ -18,10 +18,12 @@ package com.android.server.healthconnect.storage.request;
 
 import static com.android.server.healthconnect.storage.utils.StorageUtils.DELIMITER;
 import static com.android.server.healthconnect.storage.utils.StorageUtils.LIMIT_SIZE;
+import static com.android.server.healthconnect.storage.utils.StorageUtils.SELECT_ALL;
 import static com.android.server.healthconnect.storage.utils.WhereClauses.LogicalOperator.AND;
 
 import android.annotation.NonNull;
 import android.annotation.Nullable;
+import android.database.sqlite.SQLiteDatabase;
 import android.health.connect.Constants;
 import android.util.Slog;
 
@@ -29,9 +31,11 @@ import com.android.server.healthconnect.storage.TransactionManager;
 import com.android.server.healthconnect.storage.datatypehelpers.RecordHelper;
 import com.android.server.healthconnect.storage.utils.OrderByClause;
 import com.android.server.healthconnect.storage.utils.SqlJoin;
+import com.android.server.healthconnect.storage.utils.TablePartitions;
 import com.android.server.healthconnect.storage.utils.WhereClauses;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -54,6 +58,10 @@ public class ReadTableRequest {
     private String mLimitClause = "";
     private List<ReadTableRequest> mExtraReadRequests;
     private List<ReadTableRequest> mUnionReadRequests;
+    private boolean mJoinTablePartitioned = false;
+    private long mJoinPartitionsMinStartTime = Long.MIN_VALUE;
+    private long mJoinPartitionsMaxStartTime = Long.MAX_VALUE;
+    private List<String> mJoinTablePartitions = Collections.emptyList();
 
     @SuppressWarnings("NullAway.Init")
     public ReadTableRequest(@NonNull String tableName) {
@@ -90,6 +98,38 @@ public class ReadTableRequest {
         return this;
     }
 
+    /**
+     * Marks the table of the join clause as partitioned, see {@link TablePartitions}, and sets the
+     * start times of the records whose partitions are read along with it.
+     */
+    @NonNull
+    public ReadTableRequest setJoinTablePartitioned(long minStartTime, long maxStartTime) {
+        mJoinTablePartitioned = true;
+        mJoinPartitionsMinStartTime = minStartTime;
+        mJoinPartitionsMaxStartTime = maxStartTime;
+        return this;
+    }
+
+    /**
+     * Lists the partitions of the joined table to read from {@code db}. Must be called on the
+     * database the read command runs on, before building it.
+     */
+    public void loadJoinTablePartitions(@NonNull SQLiteDatabase db) {
+        if (mJoinTablePartitioned) {
+            mJoinTablePartitions =
+                    TablePartitions.getPartitions(
+                            db,
+                            mJoinClause.getTableNameToJoinOn(),
+                            mJoinPartitionsMinStartTime,
+                            mJoinPartitionsMaxStartTime);
+        }
+        if (mUnionReadRequests != null) {
+            for (ReadTableRequest unionReadRequest : mUnionReadRequests) {
+                unionReadRequest.loadJoinTablePartitions(db);
+            }
+        }
+    }
+
     /**
      * Use this method to enable the Distinct clause in the read command.
      *
@@ -121,7 +161,10 @@ public class ReadTableRequest {
 
         String readQuery = builder.toString();
         if (mJoinClause != null) {
-            readQuery = mJoinClause.getJoinWithQueryCommand(readQuery);
+            readQuery =
+                    mJoinTablePartitions.isEmpty()
+                            ? mJoinClause.getJoinWithQueryCommand(readQuery)
+                            : getJoinWithPartitionsCommand(readQuery);
         }
 
         if (Constants.DEBUG) {
@@ -176,6 +219,26 @@ public class ReadTableRequest {
         return this;
     }
 
+    /**
+     * Joins {@code innerQuery} on the table and on each of its partitions separately, so that every
+     * join uses the index of its table, then sorts the rows of all of them again.
+     */
+    private String getJoinWithPartitionsCommand(String innerQuery) {
+        StringBuilder command =
+                new StringBuilder(SELECT_ALL)
+                        .append("( ")
+                        .append(mJoinClause.getJoinWithQueryCommand(innerQuery));
+        for (String partition : mJoinTablePartitions) {
+            command.append(UNION_ALL)
+                    .append(
+                            mJoinClause
+                                    .withTableNameToJoinOn(partition)
+                                    .getJoinWithQueryCommand(innerQuery));
+        }
+        command.append(" )").append(mOrderByClause.getOrderBy());
+        return command.toString();
+    }
+
     private String getColumnsToFetch() {
         if (mColumnNames == null || mColumnNames.isEmpty()) {
             return "*";
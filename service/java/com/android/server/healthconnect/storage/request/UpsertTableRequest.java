@@ -50,6 +50,7 @@ public class UpsertTableRequest {
     private ContentValues mContentValues;
     private final List<Pair<String, Integer>> mUniqueColumns;
     private List<UpsertTableRequest> mChildTableRequests = Collections.emptyList();
+    private List<CreateTableRequest> mChildTablesToCreate = Collections.emptyList();
     private String mParentCol;
     private long mRowId = INVALID_ROW_ID;
     private WhereClauses mWhereClausesForUpdate;
@@ -82,6 +83,12 @@ public class UpsertTableRequest {
         return mUniqueColumns.size();
     }
 
+    /** Returns the names of the columns with a unique constraint, with their {@link ColumnType}. */
+    @NonNull
+    public List<Pair<String, Integer>> getUniqueColumns() {
+        return mUniqueColumns;
+    }
+
     @NonNull
     public UpsertTableRequest withParentKey(long rowId) {
         mRowId = rowId;
@@ -136,6 +143,24 @@ public class UpsertTableRequest {
         return this;
     }
 
+    /** Returns the tables to create, if they don't exist, before inserting the child rows. */
+    @NonNull
+    public List<CreateTableRequest> getChildTablesToCreate() {
+        return mChildTablesToCreate;
+    }
+
+    /**
+     * Sets the tables the child rows are inserted into which may not exist yet, e.g. partitions.
+     */
+    @NonNull
+    public UpsertTableRequest setChildTablesToCreate(
+            @NonNull List<CreateTableRequest> childTablesToCreate) {
+        Objects.requireNonNull(childTablesToCreate);
+
+        mChildTablesToCreate = childTablesToCreate;
+        return this;
+    }
+
     @NonNull
     public WhereClauses getUpdateWhereClauses() {
         if (mWhereClausesForUpdate == null) {
@@ -217,6 +242,11 @@ public class UpsertTableRequest {
         return mRecordHelper == null ? Collections.emptyList() : mRecordHelper.getAllChildTables();
     }
 
+    /** Returns true if the child table {@code tableName} may have partitions. */
+    public boolean isChildTablePartitioned(@NonNull String tableName) {
+        return mRecordHelper != null && mRecordHelper.isTablePartitioned(tableName);
+    }
+
     public RecordInternal<?> getRecordInternal() {
         return mRecordInternal;
     }
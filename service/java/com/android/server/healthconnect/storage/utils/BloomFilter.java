@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import android.annotation.NonNull;
+
+/**
+ * Set of byte array keys that may report keys it doesn't contain, at a rate which is bounded by
+ * the one it is created with as long as it holds at most its capacity, but never misses a key.
+ *
+ * @hide
+ */
+public final class BloomFilter {
+    // Bit indexes are ints, the false positive rate grows past this size.
+    private static final int MAX_BIT_COUNT = Integer.MAX_VALUE - Long.SIZE;
+
+    private final long[] mBits;
+    private final int mBitCount;
+    private final int mHashCount;
+    private final int mCapacity;
+    private int mKeyCount;
+
+    /**
+     * @param capacity number of keys up to which the false positive rate is {@code
+     *     falsePositiveRate}.
+     */
+    public BloomFilter(int capacity, double falsePositiveRate) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "Invalid capacity or false positive rate: "
+                            + capacity
+                            + ", "
+                            + falsePositiveRate);
+        }
+        double log2 = Math.log(2);
+        long bitCount = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (log2 * log2));
+        mBitCount = (int) Math.max(Long.SIZE, Math.min(bitCount, MAX_BIT_COUNT));
+        mHashCount = (int) Math.max(1, Math.round((double) mBitCount / capacity * log2));
+        mBits = new long[(mBitCount + Long.SIZE - 1) / Long.SIZE];
+        mCapacity = capacity;
+    }
+
+    /** Adds {@code key}. */
+    public synchronized void add(@NonNull byte[] key) {
+        long hash = hash(key);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < mHashCount; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, mBitCount);
+            mBits[bit / Long.SIZE] |= 1L << bit;
+        }
+        mKeyCount++;
+    }
+
+    /** Returns false if {@code key} was never added, true if it may have been. */
+    public synchronized boolean mightContain(@NonNull byte[] key) {
+        long hash = hash(key);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < mHashCount; i++) {
+            int bit = Math.floorMod(hash1 + i * hash2, mBitCount);
+            if ((mBits[bit / Long.SIZE] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns whether more keys than the capacity were added. */
+    public synchronized boolean isFull() {
+        return mKeyCount > mCapacity;
+    }
+
+    // 64-bit FNV-1a followed by the finalizer of MurmurHash3, whose halves are used as the two
+    // hashes from which the positions of the bits of a key are derived.
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
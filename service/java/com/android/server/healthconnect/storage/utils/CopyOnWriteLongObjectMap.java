@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+
+import java.util.Objects;
+
+/**
+ * A {@code long} -> object map which doesn't box its keys, meant for the id -> value caches that
+ * are read for every row of a read request and rarely written.
+ *
+ * <p>Entries are stored in an open addressing table. Reads are lock free and never allocate;
+ * writes copy the table and publish the new one atomically, so readers always see a consistent
+ * snapshot. Null values are not supported.
+ *
+ * @param <V> type of the values
+ * @hide
+ */
+public final class CopyOnWriteLongObjectMap<V> {
+    private volatile Table mTable;
+
+    public CopyOnWriteLongObjectMap() {
+        this(new Table(/* expectedSize= */ 0));
+    }
+
+    private CopyOnWriteLongObjectMap(@NonNull Table table) {
+        mTable = table;
+    }
+
+    /** Returns the value mapped to {@code key}, or null if there is none. */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) mTable.get(key);
+    }
+
+    /** Returns the value mapped to {@code key}, or {@code defaultValue} if there is none. */
+    @Nullable
+    public V getOrDefault(long key, @Nullable V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /** Returns true if a value is mapped to {@code key}. */
+    public boolean containsKey(long key) {
+        return mTable.get(key) != null;
+    }
+
+    /** Returns the number of entries in the map. */
+    public int size() {
+        return mTable.mSize;
+    }
+
+    /** Maps {@code key} to {@code value}, replacing the current value if any. */
+    public synchronized void put(long key, @NonNull V value) {
+        Objects.requireNonNull(value);
+        Table current = mTable;
+        Table updated = current.copyWithCapacityFor(current.mSize + 1);
+        updated.put(key, value);
+        mTable = updated;
+    }
+
+    @Override
+    public String toString() {
+        Table table = mTable;
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < table.mKeys.length; i++) {
+            if (table.mValues[i] != null) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(table.mKeys[i]).append('=').append(table.mValues[i]);
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Builder used to populate a map in bulk without copying the table for every entry.
+     *
+     * @param <V> type of the values
+     */
+    public static final class Builder<V> {
+        private Table mTable;
+
+        public Builder(int expectedSize) {
+            mTable = new Table(expectedSize);
+        }
+
+        /** Maps {@code key} to {@code value}, replacing the current value if any. */
+        @NonNull
+        public Builder<V> put(long key, @NonNull V value) {
+            Objects.requireNonNull(value);
+            if (Table.needsResize(mTable.mKeys.length, mTable.mSize + 1)) {
+                mTable = mTable.copyWithCapacityFor(mTable.mSize + 1);
+            }
+            mTable.put(key, value);
+            return this;
+        }
+
+        /** Returns a map containing the entries added to this builder. */
+        @NonNull
+        public CopyOnWriteLongObjectMap<V> build() {
+            // Copy so that the builder can't modify the table once it is published.
+            return new CopyOnWriteLongObjectMap<>(mTable.copyWithCapacityFor(mTable.mSize));
+        }
+    }
+
+    /** Open addressing table with linear probing. A null value marks an empty slot. */
+    private static final class Table {
+        private static final int MIN_CAPACITY = 8;
+
+        private final long[] mKeys;
+        private final Object[] mValues;
+        private final int mMask;
+        private int mSize;
+
+        Table(int expectedSize) {
+            int capacity = capacityFor(expectedSize);
+            mKeys = new long[capacity];
+            mValues = new Object[capacity];
+            mMask = capacity - 1;
+        }
+
+        @Nullable
+        Object get(long key) {
+            int index = indexOf(key);
+            while (mValues[index] != null) {
+                if (mKeys[index] == key) {
+                    return mValues[index];
+                }
+                index = (index + 1) & mMask;
+            }
+            return null;
+        }
+
+        void put(long key, @NonNull Object value) {
+            int index = indexOf(key);
+            while (mValues[index] != null) {
+                if (mKeys[index] == key) {
+                    mValues[index] = value;
+                    return;
+                }
+                index = (index + 1) & mMask;
+            }
+            mKeys[index] = key;
+            mValues[index] = value;
+            mSize++;
+        }
+
+        @NonNull
+        Table copyWithCapacityFor(int size) {
+            Table copy = new Table(Math.max(size, mSize));
+            for (int i = 0; i < mKeys.length; i++) {
+                if (mValues[i] != null) {
+                    copy.put(mKeys[i], mValues[i]);
+                }
+            }
+            return copy;
+        }
+
+        private int indexOf(long key) {
+            // Fibonacci hashing spreads sequential row ids over the whole table.
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mMask;
+        }
+
+        static boolean needsResize(int capacity, int size) {
+            // Keep the load factor at or below 0.5 so that probe sequences stay short.
+            return size * 2 > capacity;
+        }
+
+        private static int capacityFor(int size) {
+            int capacity = MIN_CAPACITY;
+            while (needsResize(capacity, size)) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+    }
+}
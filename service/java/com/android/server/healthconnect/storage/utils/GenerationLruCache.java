@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache whose values are only returned if they were computed at the same {@link
+ * WriteGenerations} as the ones of the lookup.
+ *
+ * @param <K> type of the keys, which must implement {@link Object#equals} and {@link
+ *     Object#hashCode} and not be mutated once added.
+ * @param <V> type of the values, which must not be mutated once added.
+ * @hide
+ */
+public final class GenerationLruCache<K, V> {
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final LinkedHashMap<K, Entry<V>> mEntries;
+
+    public GenerationLruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        mEntries =
+                new LinkedHashMap<>(maxSize, 0.75f, /* accessOrder= */ true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                        return size() > maxSize;
+                    }
+                };
+    }
+
+    /**
+     * Returns the value of {@code key} if it was put with the same {@code generations}, or null.
+     * A value put with other generations is stale and is removed.
+     */
+    @Nullable
+    public V get(@NonNull K key, @NonNull long[] generations) {
+        synchronized (mLock) {
+            Entry<V> entry = mEntries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (!Arrays.equals(entry.mGenerations, generations)) {
+                mEntries.remove(key);
+                return null;
+            }
+            return entry.mValue;
+        }
+    }
+
+    /**
+     * Adds {@code value} for {@code key}, computed from data read at {@code generations}. Evicts
+     * the least recently used value if the cache is full.
+     */
+    public void put(@NonNull K key, @NonNull long[] generations, @NonNull V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        synchronized (mLock) {
+            mEntries.put(key, new Entry<>(generations.clone(), value));
+        }
+    }
+
+    /** Returns the number of values in the cache. */
+    public int size() {
+        synchronized (mLock) {
+            return mEntries.size();
+        }
+    }
+
+    /** Removes all the values. */
+    public void clear() {
+        synchronized (mLock) {
+            mEntries.clear();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final long[] mGenerations;
+        private final V mValue;
+
+        private Entry(long[] generations, V value) {
+            mGenerations = generations;
+            mValue = value;
+        }
+    }
+}
@@ -120,6 +120,51 @@ public final class SqlJoin {
         mTableToJoinWhereClause = whereClause;
     }
 
+    /** Returns the name of the table which is joined on. */
+    public String getTableNameToJoinOn() {
+        return mTableNameToJoinOn;
+    }
+
+    /**
+     * Returns a copy of this join matching the rows of {@code selfTableName} instead of the self
+     * table, e.g. of a partition of it.
+     */
+    public SqlJoin withSelfTableName(@NonNull String selfTableName) {
+        Objects.requireNonNull(selfTableName);
+        SqlJoin join = copyWith(selfTableName, mTableNameToJoinOn);
+        if (mAttachedJoins != null) {
+            for (SqlJoin attachedJoin : mAttachedJoins) {
+                join.attachJoin(attachedJoin.withSelfTableName(selfTableName));
+            }
+        }
+        return join;
+    }
+
+    /**
+     * Returns a copy of this join on {@code tableNameToJoinOn} instead of the joined table, e.g. on
+     * a partition of it.
+     */
+    public SqlJoin withTableNameToJoinOn(@NonNull String tableNameToJoinOn) {
+        Objects.requireNonNull(tableNameToJoinOn);
+        SqlJoin join = copyWith(mSelfTableName, tableNameToJoinOn);
+        if (mAttachedJoins != null) {
+            mAttachedJoins.forEach(join::attachJoin);
+        }
+        return join;
+    }
+
+    private SqlJoin copyWith(String selfTableName, String tableNameToJoinOn) {
+        SqlJoin join =
+                new SqlJoin(
+                                selfTableName,
+                                tableNameToJoinOn,
+                                mSelfColumnNameToMatch,
+                                mJoiningColumnNameToMatch)
+                        .setJoinType(mJoinType);
+        join.mTableToJoinWhereClause = mTableToJoinWhereClause;
+        return join;
+    }
+
     private String getJoinCommand(boolean withSelfTableNamePrefix) {
         String selfColumnPrefix = withSelfTableNamePrefix ? mSelfTableName + "." : "";
         return " "
@@ -48,6 +48,8 @@ import android.util.Slog;
 import com.android.server.healthconnect.storage.datatypehelpers.HealthDataCategoryPriorityHelper;
 
 import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -84,6 +86,16 @@ public final class StorageUtils {
     public static final int BOOLEAN_TRUE_VALUE = 1;
     public static final int UUID_BYTE_SIZE = 16;
     private static final String TAG = "HealthConnectUtils";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<MessageDigest> MD5_DIGEST =
+            ThreadLocal.withInitial(
+                    () -> {
+                        try {
+                            return MessageDigest.getInstance("MD5");
+                        } catch (NoSuchAlgorithmException e) {
+                            throw new InternalError("MD5 not supported", e);
+                        }
+                    });
 
     // Returns null if fetching any of the fields resulted in an error
     @Nullable
@@ -332,7 +344,33 @@ public final class StorageUtils {
                         .putInt(getRecordTypeIdForUuid(recordTypeId))
                         .put(clientRecordIdBytes)
                         .array();
-        return UUID.nameUUIDFromBytes(bytes);
+        return nameUUIDFromBytes(bytes);
+    }
+
+    /**
+     * Same as {@link UUID#nameUUIDFromBytes}, but reuses an MD5 digest per thread instead of
+     * getting a new one for every UUID.
+     */
+    private static UUID nameUUIDFromBytes(byte[] name) {
+        byte[] md5Bytes = MD5_DIGEST.get().digest(name);
+        md5Bytes[6] &= 0x0f; // clear version
+        md5Bytes[6] |= 0x30; // set to version 3
+        md5Bytes[8] &= 0x3f; // clear variant
+        md5Bytes[8] |= (byte) 0x80; // set to IETF variant
+        return convertBytesToUUID(md5Bytes);
+    }
+
+    private static int startHexLiteral(char[] chars) {
+        chars[0] = 'x';
+        chars[1] = '\'';
+        return 2;
+    }
+
+    private static int appendHexDigits(long value, char[] chars, int index) {
+        for (int shift = Long.SIZE - 4; shift >= 0; shift -= 4) {
+            chars[index++] = HEX_DIGITS[(int) (value >>> shift) & 0xf];
+        }
+        return index;
     }
 
     /**
@@ -382,23 +420,32 @@ public final class StorageUtils {
             return "";
         }
 
-        final StringBuilder builder = new StringBuilder("x'");
+        final char[] chars = new char[value.length * 2 + 3];
+        int index = startHexLiteral(chars);
         for (byte b : value) {
-            builder.append(String.format("%02x", b));
+            chars[index++] = HEX_DIGITS[(b >> 4) & 0xf];
+            chars[index++] = HEX_DIGITS[b & 0xf];
         }
-        builder.append("'");
+        chars[index] = '\'';
 
-        return builder.toString();
+        return new String(chars);
     }
 
+    /** Returns the SQL blob literal of the bytes of {@code uuid}, without creating a byte[]. */
     public static String getHexString(UUID uuid) {
-        return getHexString(convertUUIDToBytes(uuid));
+        final char[] chars = new char[UUID_BYTE_SIZE * 2 + 3];
+        int index = startHexLiteral(chars);
+        index = appendHexDigits(uuid.getMostSignificantBits(), chars, index);
+        index = appendHexDigits(uuid.getLeastSignificantBits(), chars, index);
+        chars[index] = '\'';
+
+        return new String(chars);
     }
 
     public static List<String> getListOfHexString(List<UUID> uuids) {
-        List<String> hexStrings = new ArrayList<>();
+        List<String> hexStrings = new ArrayList<>(uuids.size());
         for (UUID uuid : uuids) {
-            hexStrings.add(getHexString(convertUUIDToBytes(uuid)));
+            hexStrings.add(getHexString(uuid));
         }
 
         return hexStrings;
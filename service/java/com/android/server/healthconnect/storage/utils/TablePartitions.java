@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import android.annotation.NonNull;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.android.server.healthconnect.storage.HealthConnectDatabase;
+import com.android.server.healthconnect.storage.request.CreateTableRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Monthly partitions of a table, named {@code <table>_p<yyyyMM>}, each holding the rows of the
+ * records which start in its month (UTC).
+ *
+ * <p>Partitions have the same columns as their table, and reads select from the union of the table
+ * and of the partitions which may hold records in their time range. Only records no longer than
+ * {@link #MAX_RECORD_DURATION} and starting from the epoch go to partitions, so that the partitions
+ * of the records overlapping a time range are bounded too. Other records stay in the table itself.
+ *
+ * <p>The partitions are listed from the schema of the database being queried, so that requests can
+ * run on any database, e.g. a staged one being merged. Schema changes of a partitioned table must
+ * be applied to its partitions too. Reads hold {@link #getReadLock()} from listing the partitions
+ * until their rows are read, as the statements they run don't share a transaction, so that the
+ * partitions can't be dropped in between.
+ *
+ * @hide
+ */
+public final class TablePartitions {
+    /** Maximum duration of the records whose rows are written to partitions. */
+    public static final Duration MAX_RECORD_DURATION = Duration.ofDays(1);
+
+    // Local times are at most 18 hours away from physical times.
+    private static final long LOCAL_TIME_MARGIN_MILLIS = Duration.ofDays(1).toMillis();
+    private static final String PARTITION_SUFFIX = "_p";
+    private static final String PARTITION_SUFFIX_GLOB =
+            PARTITION_SUFFIX + "[0-9][0-9][0-9][0-9][0-9][0-9]";
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("uuuuMM");
+    // Records deleted on retention only start from the epoch, so earlier partitions must not be
+    // dropped with them. Months from 10000 have names of another length.
+    private static final long MIN_PARTITION_TIME_MILLIS = 0;
+    private static final long MAX_PARTITION_TIME_MILLIS = toEpochMilli(YearMonth.of(10000, 1));
+    private static final String LIST_PARTITIONS_QUERY =
+            "SELECT name FROM sqlite_master WHERE type = 'table' AND name GLOB ? ORDER BY name";
+    private static final String COUNT_TABLES_QUERY =
+            "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?";
+
+    private static final ReentrantReadWriteLock sDropLock = new ReentrantReadWriteLock();
+
+    private TablePartitions() {}
+
+    /** Returns the lock to hold from listing partitions until the rows read from them are read. */
+    @NonNull
+    public static Lock getReadLock() {
+        return sDropLock.readLock();
+    }
+
+    /**
+     * Returns the lock to hold while partitions are dropped, until the transaction dropping them
+     * has ended. To avoid deadlocks with the writers reading partitions, it must be taken once the
+     * transaction has begun.
+     */
+    @NonNull
+    public static ReentrantReadWriteLock.WriteLock getDropLock() {
+        return sDropLock.writeLock();
+    }
+
+    /**
+     * Returns true if the rows of a record from {@code startTimeMillis} to {@code endTimeMillis}
+     * should be written to a partition rather than to the table itself.
+     */
+    public static boolean shouldPartition(long startTimeMillis, long endTimeMillis) {
+        return startTimeMillis >= MIN_PARTITION_TIME_MILLIS
+                && startTimeMillis < MAX_PARTITION_TIME_MILLIS
+                && endTimeMillis - startTimeMillis <= MAX_RECORD_DURATION.toMillis();
+    }
+
+    /** Returns the name of the partition of {@code tableName} holding records starting at time. */
+    @NonNull
+    public static String getPartitionName(@NonNull String tableName, long startTimeMillis) {
+        Objects.requireNonNull(tableName);
+        YearMonth month =
+                YearMonth.from(Instant.ofEpochMilli(startTimeMillis).atOffset(ZoneOffset.UTC));
+        return tableName + PARTITION_SUFFIX + month.format(MONTH_FORMATTER);
+    }
+
+    /** Returns the start time, inclusive, of the records in {@code partitionName}. */
+    public static long getStartTime(@NonNull String partitionName) {
+        return toEpochMilli(getMonth(partitionName));
+    }
+
+    /** Returns the end of the start times, exclusive, of the records in {@code partitionName}. */
+    public static long getEndTime(@NonNull String partitionName) {
+        return toEpochMilli(getMonth(partitionName).plusMonths(1));
+    }
+
+    /**
+     * Returns the lowest start time of the records in partitions which may match a filter from
+     * {@code startTime}.
+     *
+     * @param useLocalTime whether {@code startTime} is a local time.
+     * @param overlapping whether the filter matches the records overlapping it, rather than the
+     *     ones starting in it.
+     */
+    public static long getMinStartTime(long startTime, boolean useLocalTime, boolean overlapping) {
+        long margin =
+                (useLocalTime ? LOCAL_TIME_MARGIN_MILLIS : 0)
+                        + (overlapping ? MAX_RECORD_DURATION.toMillis() : 0);
+        return startTime < Long.MIN_VALUE + margin ? Long.MIN_VALUE : startTime - margin;
+    }
+
+    /**
+     * Returns the highest start time, exclusive, of the records in partitions which may match a
+     * filter up to {@code endTime}.
+     *
+     * @param useLocalTime whether {@code endTime} is a local time.
+     */
+    public static long getMaxStartTime(long endTime, boolean useLocalTime) {
+        long margin = useLocalTime ? LOCAL_TIME_MARGIN_MILLIS : 0;
+        return endTime > Long.MAX_VALUE - margin ? Long.MAX_VALUE : endTime + margin;
+    }
+
+    /** Returns the partitions of {@code tableName} in {@code db}, by increasing time. */
+    @NonNull
+    public static List<String> getPartitions(
+            @NonNull SQLiteDatabase db, @NonNull String tableName) {
+        return getPartitions(db, tableName, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the partitions of {@code tableName} in {@code db} holding records which start in
+     * [{@code minStartTime}, {@code maxStartTime}), by increasing time.
+     */
+    @NonNull
+    public static List<String> getPartitions(
+            @NonNull SQLiteDatabase db,
+            @NonNull String tableName,
+            long minStartTime,
+            long maxStartTime) {
+        Objects.requireNonNull(db);
+        Objects.requireNonNull(tableName);
+        List<String> partitions = new ArrayList<>();
+        try (Cursor cursor =
+                db.rawQuery(
+                        LIST_PARTITIONS_QUERY,
+                        new String[] {tableName + PARTITION_SUFFIX_GLOB})) {
+            while (cursor.moveToNext()) {
+                String partition = cursor.getString(0);
+                if (getStartTime(partition) < maxStartTime
+                        && getEndTime(partition) > minStartTime) {
+                    partitions.add(partition);
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Creates the partition described by {@code request}, with its indexes, if it doesn't exist in
+     * {@code db}.
+     */
+    public static void createIfMissing(
+            @NonNull SQLiteDatabase db, @NonNull CreateTableRequest request) {
+        if (DatabaseUtils.longForQuery(
+                        db, COUNT_TABLES_QUERY, new String[] {request.getTableName()})
+                == 0) {
+            HealthConnectDatabase.createTable(db, request);
+        }
+    }
+
+    private static YearMonth getMonth(String partitionName) {
+        return YearMonth.parse(
+                partitionName.substring(partitionName.lastIndexOf(PARTITION_SUFFIX) + 2),
+                MONTH_FORMATTER);
+    }
+
+    private static long toEpochMilli(YearMonth month) {
+        return month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import android.annotation.NonNull;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Temporary table holding large sets of UUIDs used to filter deletes.
+ *
+ * <p>Inlining thousands of UUIDs as blob literals in an IN list makes the statement expensive to
+ * build and to parse, and it can never be reused. Above {@link #MIN_UUIDS_COUNT} UUIDs the set is
+ * instead bound into this table with a single prepared statement, and the query filters with
+ * {@code column IN (SELECT uuid FROM temp table WHERE filter_id = N)}.
+ *
+ * <p>Temporary tables are only visible to the connection which created them, so the filters must
+ * be loaded with {@link #load} on the same connection, i.e. in the same transaction, as the
+ * statements using them. Each load replaces the content of the table, and {@link #clear} empties it
+ * once the statements have run, so the UUIDs don't stay in the memory of the connection. Reads
+ * don't use it, as they don't run in a transaction: transactions take the write lock of the
+ * database at this API level.
+ *
+ * @hide
+ */
+public final class TempUuidsTable {
+    /** Minimum number of UUIDs for which a filter goes through the temp table. */
+    public static final int MIN_UUIDS_COUNT = 100;
+
+    private static final String TABLE_NAME = "temp.uuid_filters_table";
+    private static final String FILTER_ID_COLUMN_NAME = "filter_id";
+    private static final String UUID_COLUMN_NAME = "uuid";
+    private static final String CREATE_TABLE_COMMAND =
+            "CREATE TEMP TABLE IF NOT EXISTS uuid_filters_table ("
+                    + FILTER_ID_COLUMN_NAME
+                    + " INTEGER NOT NULL, "
+                    + UUID_COLUMN_NAME
+                    + " BLOB NOT NULL, PRIMARY KEY ("
+                    + FILTER_ID_COLUMN_NAME
+                    + ", "
+                    + UUID_COLUMN_NAME
+                    + ")) WITHOUT ROWID";
+    private static final String DELETE_ALL_COMMAND = "DELETE FROM " + TABLE_NAME;
+    // The same SQL is used for every load, so the statement is served from the prepared
+    // statement cache of the connection after the first one.
+    private static final String INSERT_COMMAND =
+            "INSERT OR IGNORE INTO "
+                    + TABLE_NAME
+                    + " ("
+                    + FILTER_ID_COLUMN_NAME
+                    + ", "
+                    + UUID_COLUMN_NAME
+                    + ") VALUES (?, ?)";
+
+    private static final AtomicLong sNextFilterId = new AtomicLong();
+
+    private TempUuidsTable() {}
+
+    /** Returns true if a set of {@code uuidsCount} UUIDs should go through the temp table. */
+    public static boolean shouldUseFor(int uuidsCount) {
+        return uuidsCount >= MIN_UUIDS_COUNT;
+    }
+
+    /**
+     * Replaces the content of the temp table with the UUIDs of {@code filters}. Does nothing if
+     * there are no filters.
+     */
+    public static void load(@NonNull SQLiteDatabase db, @NonNull List<Filter> filters) {
+        Objects.requireNonNull(db);
+        Objects.requireNonNull(filters);
+        if (filters.isEmpty()) {
+            return;
+        }
+
+        db.beginTransactionNonExclusive();
+        try {
+            db.execSQL(CREATE_TABLE_COMMAND);
+            db.execSQL(DELETE_ALL_COMMAND);
+            try (SQLiteStatement statement = db.compileStatement(INSERT_COMMAND)) {
+                for (Filter filter : filters) {
+                    statement.bindLong(1, filter.mId);
+                    for (UUID uuid : filter.mUuids) {
+                        statement.bindBlob(2, StorageUtils.convertUUIDToBytes(uuid));
+                        statement.executeInsert();
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes the UUIDs loaded for {@code filters} from the temp table. Must be called in the same
+     * transaction as {@link #load}. Does nothing if there are no filters.
+     */
+    public static void clear(@NonNull SQLiteDatabase db, @NonNull List<Filter> filters) {
+        Objects.requireNonNull(db);
+        Objects.requireNonNull(filters);
+        if (filters.isEmpty()) {
+            return;
+        }
+
+        db.execSQL(DELETE_ALL_COMMAND);
+    }
+
+    /** A set of UUIDs stored in the temp table under its own id. */
+    public static final class Filter {
+        private final long mId;
+        private final List<UUID> mUuids;
+
+        public Filter(@NonNull List<UUID> uuids) {
+            Objects.requireNonNull(uuids);
+            mId = sNextFilterId.incrementAndGet();
+            mUuids = uuids;
+        }
+
+        /** Returns the number of UUIDs in this filter. */
+        public int size() {
+            return mUuids.size();
+        }
+
+        /** Returns the SQL sub query selecting the UUIDs of this filter. */
+        @NonNull
+        public String getSelectCommand() {
+            return "SELECT "
+                    + UUID_COLUMN_NAME
+                    + " FROM "
+                    + TABLE_NAME
+                    + " WHERE "
+                    + FILTER_ID_COLUMN_NAME
+                    + " = "
+                    + mId;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.android.server.healthconnect.storage.request.ReadTableRequest;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /** @hide */
@@ -88,6 +89,28 @@ public final class WhereClauses {
         return this;
     }
 
+    /**
+     * Adds clause columnName IN (uuids), with the UUIDs inlined as blob literals.
+     *
+     * <p>Reads don't run in a transaction, so they can't use {@link TempUuidsTable} filters, which
+     * must be loaded on the connection running the statement.
+     */
+    public WhereClauses addWhereInUuidsClause(String columnName, List<UUID> uuids) {
+        if (uuids == null || uuids.isEmpty()) return this;
+
+        return addWhereInClauseWithoutQuotes(columnName, StorageUtils.getListOfHexString(uuids));
+    }
+
+    /**
+     * Adds clause columnName IN (uuids of {@code filter}). The filter must be loaded with {@link
+     * TempUuidsTable#load} before running a statement using this clause.
+     */
+    public WhereClauses addWhereInUuidsClause(String columnName, TempUuidsTable.Filter filter) {
+        mClauses.add(columnName + " IN (" + filter.getSelectCommand() + ")");
+
+        return this;
+    }
+
     public WhereClauses addWhereEqualsClause(String columnName, String value) {
         if (columnName == null || value == null || value.isEmpty() || columnName.isEmpty()) {
             return this;
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import android.annotation.NonNull;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the writes to each table of the database, used to tell whether a result computed
+ * from a table is still up to date.
+ *
+ * <p>Writers bump the generations once their transaction has ended. So a result computed after
+ * reading the generations of its tables is up to date as long as they haven't changed since.
+ *
+ * @hide
+ */
+public final class WriteGenerations {
+    private final ConcurrentHashMap<String, AtomicLong> mTableGenerations =
+            new ConcurrentHashMap<>();
+    // Bumped when tables that are not known may have been written, e.g. on user switch.
+    private final AtomicLong mAllTablesGeneration = new AtomicLong();
+
+    /** Returns the current write generation of {@code tableName}. */
+    public long getGeneration(@NonNull String tableName) {
+        // Both counters only grow, so their sum changes whenever either of them does.
+        long generation = mAllTablesGeneration.get();
+        AtomicLong tableGeneration = mTableGenerations.get(tableName);
+        return tableGeneration == null ? generation : generation + tableGeneration.get();
+    }
+
+    /** Bumps the generation of {@code tableName}. */
+    public void onTableWritten(@NonNull String tableName) {
+        Objects.requireNonNull(tableName);
+        mTableGenerations.computeIfAbsent(tableName, name -> new AtomicLong()).incrementAndGet();
+    }
+
+    /** Bumps the generations of all the tables. */
+    public void onAllTablesWritten() {
+        mAllTablesGeneration.incrementAndGet();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.benchmarks;
+
+import android.health.connect.datatypes.RecordTypeIdentifier;
+import android.health.connect.internal.datatypes.BloodPressureRecordInternal;
+import android.health.connect.internal.datatypes.HeartRateRecordInternal;
+import android.health.connect.internal.datatypes.RecordInternal;
+import android.health.connect.internal.datatypes.StepsRecordInternal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Generates records to be used as benchmark input. */
+public final class BenchmarkRecords {
+    /** Start of the time range covered by the generated records. */
+    public static final long START_TIME_MILLIS = 1_600_000_000_000L;
+
+    /** Interval between two consecutive generated records. */
+    public static final long RECORD_INTERVAL_MILLIS = 60_000L;
+
+    private static final int HEART_RATE_SAMPLES_PER_RECORD = 60;
+
+    private BenchmarkRecords() {}
+
+    /** Returns the record types covered by the benchmarks. */
+    public static List<Integer> getRecordTypes() {
+        return List.of(
+                RecordTypeIdentifier.RECORD_TYPE_STEPS,
+                RecordTypeIdentifier.RECORD_TYPE_BLOOD_PRESSURE,
+                RecordTypeIdentifier.RECORD_TYPE_HEART_RATE);
+    }
+
+    /** Returns a readable name of {@code recordType}, used in the benchmark parameters. */
+    public static String getName(@RecordTypeIdentifier.RecordType int recordType) {
+        switch (recordType) {
+            case RecordTypeIdentifier.RECORD_TYPE_STEPS:
+                return "steps";
+            case RecordTypeIdentifier.RECORD_TYPE_BLOOD_PRESSURE:
+                return "blood_pressure";
+            case RecordTypeIdentifier.RECORD_TYPE_HEART_RATE:
+                return "heart_rate";
+            default:
+                throw new IllegalArgumentException("Unsupported record type: " + recordType);
+        }
+    }
+
+    /** Creates {@code count} consecutive, non overlapping records of {@code recordType}. */
+    public static List<RecordInternal<?>> createRecords(
+            @RecordTypeIdentifier.RecordType int recordType, int count) {
+        List<RecordInternal<?>> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long startTime = START_TIME_MILLIS + i * RECORD_INTERVAL_MILLIS;
+            records.add(createRecord(recordType, startTime, i));
+        }
+        return records;
+    }
+
+    private static RecordInternal<?> createRecord(
+            @RecordTypeIdentifier.RecordType int recordType, long startTime, int index) {
+        long endTime = startTime + RECORD_INTERVAL_MILLIS;
+        switch (recordType) {
+            case RecordTypeIdentifier.RECORD_TYPE_STEPS:
+                return new StepsRecordInternal()
+                        .setCount(100 + index % 50)
+                        .setStartTime(startTime)
+                        .setEndTime(endTime);
+            case RecordTypeIdentifier.RECORD_TYPE_BLOOD_PRESSURE:
+                return new BloodPressureRecordInternal()
+                        .setSystolic(110 + index % 20)
+                        .setDiastolic(70 + index % 10)
+                        .setTime(startTime);
+            case RecordTypeIdentifier.RECORD_TYPE_HEART_RATE:
+                Set<HeartRateRecordInternal.HeartRateSample> samples = new HashSet<>();
+                long sampleInterval = RECORD_INTERVAL_MILLIS / HEART_RATE_SAMPLES_PER_RECORD;
+                for (int i = 0; i < HEART_RATE_SAMPLES_PER_RECORD; i++) {
+                    samples.add(
+                            new HeartRateRecordInternal.HeartRateSample(
+                                    60 + (index + i) % 40, startTime + i * sampleInterval));
+                }
+                return new HeartRateRecordInternal()
+                        .setSamples(samples)
+                        .setStartTime(startTime)
+                        .setEndTime(endTime);
+            default:
+                throw new IllegalArgumentException("Unsupported record type: " + recordType);
+        }
+    }
+}
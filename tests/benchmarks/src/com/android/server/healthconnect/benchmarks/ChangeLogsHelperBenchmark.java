@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.benchmarks;
+
+import static com.android.server.healthconnect.benchmarks.HealthConnectBenchmarkDatabaseRule.BENCHMARK_PACKAGE_NAME;
+
+import android.health.connect.changelog.ChangeLogsRequest;
+import android.health.connect.datatypes.RecordTypeIdentifier;
+import android.health.connect.internal.datatypes.RecordInternal;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import com.android.server.healthconnect.storage.datatypehelpers.ChangeLogsHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.ChangeLogsRequestHelper;
+import com.android.server.healthconnect.storage.request.UpsertTransactionRequest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/** Benchmarks reading a page of change logs with {@link ChangeLogsHelper#getChangeLogs}. */
+@RunWith(Parameterized.class)
+public class ChangeLogsHelperBenchmark {
+    // Records are inserted in small requests, as every request writes its own change log rows.
+    private static final int RECORDS_PER_INSERT_REQUEST = 10;
+
+    @Rule public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Rule
+    public final HealthConnectBenchmarkDatabaseRule mDatabaseRule =
+            new HealthConnectBenchmarkDatabaseRule();
+
+    @Parameterized.Parameter(0)
+    public int mNumberOfRecords;
+
+    @Parameterized.Parameters(name = "records_{0}")
+    public static Collection<Object[]> getParameters() {
+        return Arrays.asList(new Object[][] {{100}, {1000}, {5000}});
+    }
+
+    @Before
+    public void setUp() {
+        List<RecordInternal<?>> records =
+                BenchmarkRecords.createRecords(
+                        RecordTypeIdentifier.RECORD_TYPE_STEPS, mNumberOfRecords);
+        for (int i = 0; i < records.size(); i += RECORDS_PER_INSERT_REQUEST) {
+            List<RecordInternal<?>> batch =
+                    records.subList(i, Math.min(i + RECORDS_PER_INSERT_REQUEST, records.size()));
+            mDatabaseRule
+                    .getTransactionManager()
+                    .insertAll(
+                            new UpsertTransactionRequest(
+                                    BENCHMARK_PACKAGE_NAME,
+                                    batch,
+                                    mDatabaseRule.getUserContext(),
+                                    /* isInsertRequest= */ true,
+                                    /* skipPackageNameAndLogs= */ false));
+        }
+    }
+
+    @Test
+    public void getChangeLogs() {
+        ChangeLogsRequestHelper.TokenRequest tokenRequest =
+                new ChangeLogsRequestHelper.TokenRequest(
+                        List.of(BENCHMARK_PACKAGE_NAME),
+                        List.of(RecordTypeIdentifier.RECORD_TYPE_STEPS),
+                        BENCHMARK_PACKAGE_NAME,
+                        /* rowIdChangeLogs= */ 0);
+        ChangeLogsRequest changeLogsRequest =
+                new ChangeLogsRequest.Builder(/* token= */ "0").setPageSize(5000).build();
+        ChangeLogsHelper changeLogsHelper = ChangeLogsHelper.getInstance();
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            changeLogsHelper.getChangeLogs(tokenRequest, changeLogsRequest);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.benchmarks;
+
+import static org.mockito.Mockito.when;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Environment;
+import android.os.UserHandle;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.dx.mockito.inline.extended.ExtendedMockito;
+import com.android.server.healthconnect.HealthConnectUserContext;
+import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.datatypehelpers.AppInfoHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.DatabaseHelper;
+import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+
+import org.junit.rules.ExternalResource;
+import org.mockito.MockitoSession;
+import org.mockito.quality.Strictness;
+
+import java.io.File;
+
+/** A rule that sets up a Health Connect database in a private directory for benchmarking. */
+public class HealthConnectBenchmarkDatabaseRule extends ExternalResource {
+    public static final String BENCHMARK_PACKAGE_NAME = "android.healthconnect.benchmark.app";
+
+    private MockitoSession mStaticMockSession;
+    private File mMockDataDirectory;
+    private HealthConnectUserContext mContext;
+    private TransactionManager mTransactionManager;
+
+    @Override
+    public void before() {
+        mStaticMockSession =
+                ExtendedMockito.mockitoSession()
+                        .mockStatic(Environment.class)
+                        .strictness(Strictness.LENIENT)
+                        .startMocking();
+
+        mContext =
+                new HealthConnectUserContext(
+                        InstrumentationRegistry.getInstrumentation().getContext(),
+                        UserHandle.of(UserHandle.myUserId()));
+        mMockDataDirectory = mContext.getDir("benchmark_data", Context.MODE_PRIVATE);
+        when(Environment.getDataDirectory()).thenReturn(mMockDataDirectory);
+
+        mTransactionManager = TransactionManager.getInstance(mContext);
+        insertBenchmarkApp();
+    }
+
+    @Override
+    public void after() {
+        DatabaseHelper.clearAllData(mTransactionManager);
+        TransactionManager.clearInstance();
+        deleteDir(mMockDataDirectory);
+        mStaticMockSession.finishMocking();
+    }
+
+    public HealthConnectUserContext getUserContext() {
+        return mContext;
+    }
+
+    public TransactionManager getTransactionManager() {
+        return mTransactionManager;
+    }
+
+    /** Deletes all the data in the database, keeping only the benchmark app. */
+    public void resetData() {
+        DatabaseHelper.clearAllData(mTransactionManager);
+        insertBenchmarkApp();
+    }
+
+    private void insertBenchmarkApp() {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(AppInfoHelper.PACKAGE_COLUMN_NAME, BENCHMARK_PACKAGE_NAME);
+        mTransactionManager.insert(
+                new UpsertTableRequest(
+                        AppInfoHelper.TABLE_NAME,
+                        contentValues,
+                        AppInfoHelper.UNIQUE_COLUMN_INFO));
+        AppInfoHelper.getInstance().clearCache();
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (var file : files) {
+                if (file.isDirectory()) {
+                    deleteDir(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.benchmarks;
+
+import static com.android.server.healthconnect.benchmarks.BenchmarkRecords.RECORD_INTERVAL_MILLIS;
+import static com.android.server.healthconnect.benchmarks.BenchmarkRecords.START_TIME_MILLIS;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.END_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.START_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.START_ZONE_OFFSET_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.APP_INFO_ID_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.LAST_MODIFIED_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.RecordHelper.UUID_COLUMN_NAME;
+
+import android.Manifest;
+import android.database.MatrixCursor;
+import android.health.connect.datatypes.AggregationType;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.server.healthconnect.HealthConnectDeviceConfigManager;
+import com.android.server.healthconnect.storage.datatypehelpers.aggregation.PriorityRecordsAggregator;
+import com.android.server.healthconnect.storage.request.AggregateParams;
+import com.android.server.healthconnect.storage.utils.StorageUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Benchmarks {@link PriorityRecordsAggregator#calculateAggregation} for steps count, with data
+ * from one or several apps covering the same time range.
+ */
+@RunWith(Parameterized.class)
+public class PriorityRecordsAggregatorBenchmark {
+    private static final String COUNT_COLUMN_NAME = "count";
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    @Rule public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter(0)
+    public int mNumberOfRecords;
+
+    @Parameterized.Parameter(1)
+    public int mNumberOfApps;
+
+    private Object[][] mRows;
+    private List<Long> mGroupSplits;
+    private List<Long> mAppIdPriorityList;
+
+    @Parameterized.Parameters(name = "records_{0}_apps_{1}")
+    public static Collection<Object[]> getParameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int numberOfRecords : new int[] {100, 1000, 10000}) {
+            for (int numberOfApps : new int[] {1, 3}) {
+                parameters.add(new Object[] {numberOfRecords, numberOfApps});
+            }
+        }
+        return parameters;
+    }
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation()
+                .getUiAutomation()
+                .adoptShellPermissionIdentity(Manifest.permission.READ_DEVICE_CONFIG);
+        HealthConnectDeviceConfigManager.initializeInstance(
+                InstrumentationRegistry.getInstrumentation().getContext());
+
+        // Every app writes the same time range, so that the aggregator has to resolve overlaps.
+        int recordsPerApp = mNumberOfRecords / mNumberOfApps;
+        mRows = new Object[recordsPerApp * mNumberOfApps][];
+        int row = 0;
+        for (int i = 0; i < recordsPerApp; i++) {
+            long startTime = START_TIME_MILLIS + i * RECORD_INTERVAL_MILLIS;
+            for (int appId = 1; appId <= mNumberOfApps; appId++) {
+                mRows[row++] =
+                        new Object[] {
+                            startTime,
+                            startTime + RECORD_INTERVAL_MILLIS,
+                            startTime,
+                            /* startZoneOffset */ 0,
+                            (long) appId,
+                            100L,
+                            StorageUtils.convertUUIDToBytes(UUID.randomUUID())
+                        };
+            }
+        }
+
+        long endTime = START_TIME_MILLIS + recordsPerApp * RECORD_INTERVAL_MILLIS;
+        mGroupSplits = new ArrayList<>();
+        for (long split = START_TIME_MILLIS;
+                split < endTime + HOUR_MILLIS;
+                split += HOUR_MILLIS) {
+            mGroupSplits.add(split);
+        }
+        mAppIdPriorityList = new ArrayList<>();
+        for (long appId = mNumberOfApps; appId >= 1; appId--) {
+            mAppIdPriorityList.add(appId);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation()
+                .getUiAutomation()
+                .dropShellPermissionIdentity();
+    }
+
+    @Test
+    public void calculateAggregation() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            MatrixCursor cursor = createCursor();
+            PriorityRecordsAggregator aggregator =
+                    new PriorityRecordsAggregator(
+                            mGroupSplits,
+                            mAppIdPriorityList,
+                            AggregationType.AggregationTypeIdentifier.STEPS_RECORD_COUNT_TOTAL,
+                            new AggregateParams.PriorityAggregationExtraParams(
+                                    COUNT_COLUMN_NAME, Long.class),
+                            /* useLocalTime= */ false);
+            state.resumeTiming();
+
+            aggregator.calculateAggregation(cursor);
+
+            state.pauseTiming();
+            cursor.close();
+            state.resumeTiming();
+        }
+    }
+
+    private MatrixCursor createCursor() {
+        MatrixCursor cursor =
+                new MatrixCursor(
+                        new String[] {
+                            START_TIME_COLUMN_NAME,
+                            END_TIME_COLUMN_NAME,
+                            LAST_MODIFIED_TIME_COLUMN_NAME,
+                            START_ZONE_OFFSET_COLUMN_NAME,
+                            APP_INFO_ID_COLUMN_NAME,
+                            COUNT_COLUMN_NAME,
+                            UUID_COLUMN_NAME
+                        },
+                        mRows.length);
+        for (Object[] row : mRows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+}
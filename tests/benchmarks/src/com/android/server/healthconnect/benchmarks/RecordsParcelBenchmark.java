@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.benchmarks;
+
+import android.health.connect.aidl.RecordsParcel;
+import android.health.connect.internal.datatypes.RecordInternal;
+import android.os.Parcel;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/** Benchmarks marshalling and unmarshalling of {@link RecordsParcel}. */
+@RunWith(Parameterized.class)
+public class RecordsParcelBenchmark {
+    @Rule public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter(0)
+    public String mRecordTypeName;
+
+    @Parameterized.Parameter(1)
+    public int mRecordType;
+
+    @Parameterized.Parameter(2)
+    public int mNumberOfRecords;
+
+    private List<RecordInternal<?>> mRecords;
+
+    @Parameterized.Parameters(name = "{0}_{2}")
+    public static Collection<Object[]> getParameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int recordType : BenchmarkRecords.getRecordTypes()) {
+            for (int numberOfRecords : new int[] {100, 1000, 5000}) {
+                parameters.add(
+                        new Object[] {
+                            BenchmarkRecords.getName(recordType), recordType, numberOfRecords
+                        });
+            }
+        }
+        return parameters;
+    }
+
+    @Before
+    public void setUp() {
+        mRecords = BenchmarkRecords.createRecords(mRecordType, mNumberOfRecords);
+    }
+
+    @Test
+    public void marshall() {
+        RecordsParcel recordsParcel = new RecordsParcel(mRecords);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            Parcel parcel = Parcel.obtain();
+            recordsParcel.writeToParcel(parcel, /* flags= */ 0);
+
+            state.pauseTiming();
+            parcel.recycle();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void unmarshall() {
+        Parcel parcel = Parcel.obtain();
+        new RecordsParcel(mRecords).writeToParcel(parcel, /* flags= */ 0);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            parcel.setDataPosition(0);
+            RecordsParcel.CREATOR.createFromParcel(parcel);
+        }
+        parcel.recycle();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.benchmarks;
+
+import static com.android.server.healthconnect.benchmarks.HealthConnectBenchmarkDatabaseRule.BENCHMARK_PACKAGE_NAME;
+
+import android.health.connect.internal.datatypes.RecordInternal;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import com.android.server.healthconnect.storage.request.UpsertTransactionRequest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Benchmarks the write side of merging restored data into the Health Connect database, i.e. what
+ * {@code BackupRestore#merge} does for every page of records read from the staged database.
+ */
+@RunWith(Parameterized.class)
+public class RestoreMergeBenchmark {
+    // Same page size as the one used to read records from the staged database.
+    private static final int MERGE_PAGE_SIZE = 2000;
+
+    @Rule public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Rule
+    public final HealthConnectBenchmarkDatabaseRule mDatabaseRule =
+            new HealthConnectBenchmarkDatabaseRule();
+
+    @Parameterized.Parameter(0)
+    public String mRecordTypeName;
+
+    @Parameterized.Parameter(1)
+    public int mRecordType;
+
+    @Parameterized.Parameter(2)
+    public int mNumberOfRecords;
+
+    @Parameterized.Parameters(name = "{0}_{2}")
+    public static Collection<Object[]> getParameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int recordType : BenchmarkRecords.getRecordTypes()) {
+            for (int numberOfRecords : new int[] {1000, 10000}) {
+                parameters.add(
+                        new Object[] {
+                            BenchmarkRecords.getName(recordType), recordType, numberOfRecords
+                        });
+            }
+        }
+        return parameters;
+    }
+
+    @Test
+    public void mergeRecords() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            mDatabaseRule.resetData();
+            List<RecordInternal<?>> records =
+                    BenchmarkRecords.createRecords(mRecordType, mNumberOfRecords);
+            for (RecordInternal<?> record : records) {
+                // Restored records already carry the package name of the app that wrote them.
+                record.setPackageName(BENCHMARK_PACKAGE_NAME);
+            }
+            state.resumeTiming();
+
+            for (int i = 0; i < records.size(); i += MERGE_PAGE_SIZE) {
+                UpsertTransactionRequest upsertTransactionRequest =
+                        new UpsertTransactionRequest(
+                                /* packageName= */ null,
+                                records.subList(i, Math.min(i + MERGE_PAGE_SIZE, records.size())),
+                                mDatabaseRule.getUserContext(),
+                                /* isInsertRequest= */ true,
+                                /* skipPackageNameAndLogs= */ true);
+                mDatabaseRule
+                        .getTransactionManager()
+                        .insertAll(upsertTransactionRequest.getUpsertRequests());
+            }
+        }
+    }
+}
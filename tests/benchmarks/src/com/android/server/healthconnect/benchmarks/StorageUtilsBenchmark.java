@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.benchmarks;
+
+import android.health.connect.internal.datatypes.RecordInternal;
+import android.health.connect.internal.datatypes.StepsRecordInternal;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import com.android.server.healthconnect.storage.utils.StorageUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Benchmarks the UUID helpers of {@link StorageUtils} used for every record written with a client
+ * record id and for every read or delete by ids.
+ */
+@RunWith(JUnit4.class)
+public class StorageUtilsBenchmark {
+    private static final int NUMBER_OF_RECORDS = 5000;
+
+    @Rule public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private List<UUID> mUuids;
+    private List<RecordInternal<?>> mRecords;
+
+    @Before
+    public void setUp() {
+        mUuids = new ArrayList<>(NUMBER_OF_RECORDS);
+        mRecords = new ArrayList<>(NUMBER_OF_RECORDS);
+        for (int i = 0; i < NUMBER_OF_RECORDS; i++) {
+            mUuids.add(UUID.randomUUID());
+            RecordInternal<?> record =
+                    new StepsRecordInternal().setCount(i).setClientRecordId("client.id." + i);
+            record.setPackageName(HealthConnectBenchmarkDatabaseRule.BENCHMARK_PACKAGE_NAME);
+            mRecords.add(record);
+        }
+    }
+
+    @Test
+    public void getListOfHexString() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            StorageUtils.getListOfHexString(mUuids);
+        }
+    }
+
+    @Test
+    public void addNameBasedUUIDTo() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            for (RecordInternal<?> record : mRecords) {
+                StorageUtils.addNameBasedUUIDTo(record);
+            }
+        }
+    }
+}
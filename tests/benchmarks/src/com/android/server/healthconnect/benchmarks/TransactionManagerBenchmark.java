@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.benchmarks;
+
+import static com.android.server.healthconnect.benchmarks.HealthConnectBenchmarkDatabaseRule.BENCHMARK_PACKAGE_NAME;
+
+import android.health.connect.ReadRecordsRequestUsingFilters;
+import android.health.connect.TimeInstantRangeFilter;
+import android.health.connect.datatypes.Record;
+import android.health.connect.internal.datatypes.RecordInternal;
+import android.health.connect.internal.datatypes.utils.RecordMapper;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.request.ReadTransactionRequest;
+import com.android.server.healthconnect.storage.request.UpsertTransactionRequest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/** Benchmarks the insert and read paths of {@link TransactionManager}. */
+@RunWith(Parameterized.class)
+public class TransactionManagerBenchmark {
+    @Rule public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Rule
+    public final HealthConnectBenchmarkDatabaseRule mDatabaseRule =
+            new HealthConnectBenchmarkDatabaseRule();
+
+    @Parameterized.Parameter(0)
+    public String mRecordTypeName;
+
+    @Parameterized.Parameter(1)
+    public int mRecordType;
+
+    @Parameterized.Parameter(2)
+    public int mNumberOfRecords;
+
+    private TransactionManager mTransactionManager;
+
+    @Parameterized.Parameters(name = "{0}_{2}")
+    public static Collection<Object[]> getParameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int recordType : BenchmarkRecords.getRecordTypes()) {
+            for (int numberOfRecords : new int[] {100, 1000, 5000}) {
+                parameters.add(
+                        new Object[] {
+                            BenchmarkRecords.getName(recordType), recordType, numberOfRecords
+                        });
+            }
+        }
+        return parameters;
+    }
+
+    @Before
+    public void setUp() {
+        mTransactionManager = mDatabaseRule.getTransactionManager();
+    }
+
+    @Test
+    public void insertAll() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            mDatabaseRule.resetData();
+            List<RecordInternal<?>> records =
+                    BenchmarkRecords.createRecords(mRecordType, mNumberOfRecords);
+            state.resumeTiming();
+
+            mTransactionManager.insertAll(
+                    new UpsertTransactionRequest(
+                            BENCHMARK_PACKAGE_NAME,
+                            records,
+                            mDatabaseRule.getUserContext(),
+                            /* isInsertRequest= */ true,
+                            /* skipPackageNameAndLogs= */ false));
+        }
+    }
+
+    @Test
+    public void readRecordsAndPageToken() {
+        mTransactionManager.insertAll(
+                new UpsertTransactionRequest(
+                        BENCHMARK_PACKAGE_NAME,
+                        BenchmarkRecords.createRecords(mRecordType, mNumberOfRecords),
+                        mDatabaseRule.getUserContext(),
+                        /* isInsertRequest= */ true,
+                        /* skipPackageNameAndLogs= */ false));
+        ReadRecordsRequestUsingFilters<? extends Record> request =
+                createReadRequest(
+                        RecordMapper.getInstance()
+                                .getRecordIdToExternalRecordClassMap()
+                                .get(mRecordType),
+                        mNumberOfRecords);
+
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            mTransactionManager.readRecordsAndPageToken(
+                    new ReadTransactionRequest(
+                            BENCHMARK_PACKAGE_NAME,
+                            request.toReadRecordsRequestParcel(),
+                            /* startDateAccessMillis= */ 0,
+                            /* enforceSelfRead= */ false,
+                            /* extraPermsState= */ Map.of()));
+        }
+    }
+
+    private static <T extends Record> ReadRecordsRequestUsingFilters<T> createReadRequest(
+            Class<T> recordClass, int pageSize) {
+        return new ReadRecordsRequestUsingFilters.Builder<>(recordClass)
+                .setTimeRangeFilter(
+                        new TimeInstantRangeFilter.Builder()
+                                .setStartTime(Instant.EPOCH)
+                                .setEndTime(Instant.now())
+                                .build())
+                .setPageSize(pageSize)
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import org.junit.Test;
+
+public class ApiCallCancellationTest {
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    @Test
+    public void testDeadlinePassed_cancelsWithDeadlineError() {
+        try (ApiCallCancellation cancellation =
+                new ApiCallCancellation(new Binder(), /* deadlineMillis= */ 1)) {
+            long timeout = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+            while (!cancellation.getCancellationSignal().isCanceled()
+                    && SystemClock.uptimeMillis() < timeout) {
+                SystemClock.sleep(10);
+            }
+
+            assertThat(cancellation.getCancellationSignal().isCanceled()).isTrue();
+            assertThat(cancellation.getCancellationException()).hasMessageThat().contains("1 ms");
+        }
+    }
+
+    @Test
+    public void testClosedBeforeDeadline_notCancelled() {
+        ApiCallCancellation cancellation =
+                new ApiCallCancellation(new Binder(), /* deadlineMillis= */ 100);
+        cancellation.close();
+        SystemClock.sleep(300);
+
+        assertThat(cancellation.getCancellationSignal().isCanceled()).isFalse();
+    }
+
+    @Test
+    public void testNoDeadline_notCancelled() {
+        try (ApiCallCancellation cancellation =
+                new ApiCallCancellation(new Binder(), /* deadlineMillis= */ 0)) {
+            assertThat(cancellation.getCancellationSignal().isCanceled()).isFalse();
+        }
+    }
+
+    @Test
+    public void testCallerDead_cancelled() throws RemoteException {
+        IBinder deadBinder = mock(IBinder.class);
+        doThrow(new RemoteException()).when(deadBinder).linkToDeath(any(), anyInt());
+
+        try (ApiCallCancellation cancellation =
+                new ApiCallCancellation(deadBinder, /* deadlineMillis= */ 0)) {
+            assertThat(cancellation.getCancellationSignal().isCanceled()).isTrue();
+        }
+    }
+
+    @Test
+    public void testCallerDies_cancelled() {
+        try (ApiCallCancellation cancellation =
+                new ApiCallCancellation(new Binder(), /* deadlineMillis= */ 0)) {
+            cancellation.binderDied();
+
+            assertThat(cancellation.getCancellationSignal().isCanceled()).isTrue();
+        }
+    }
+}
@@ -16,17 +16,24 @@
 
 package com.android.server.healthconnect;
 
+import static com.android.server.healthconnect.HealthConnectDailyJobs.HC_DAILY_JOB;
+import static com.android.server.healthconnect.HealthConnectDailyJobs.HC_DATABASE_MAINTENANCE_JOB;
+import static com.android.server.healthconnect.HealthConnectDailyService.EXTRA_JOB_NAME_KEY;
+
+import static com.google.common.truth.Truth.assertThat;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.app.job.JobInfo;
 import android.app.job.JobScheduler;
 import android.content.Context;
 
-
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -49,10 +56,26 @@ public class HealthConnectDailyJobsTest {
     @Test
     public void testJobSchedule() {
         HealthConnectDailyJobs.schedule(mContext, 0);
-        verify(mJobScheduler, times(1)).schedule(any());
-        HealthConnectDailyJobs.schedule(mContext, 1);
         verify(mJobScheduler, times(2)).schedule(any());
+        HealthConnectDailyJobs.schedule(mContext, 1);
+        verify(mJobScheduler, times(4)).schedule(any());
         HealthConnectDailyJobs.cancelAllJobs(mContext);
         verify(mJobScheduler, times(1)).cancelAll();
     }
+
+    @Test
+    public void testJobSchedule_schedulesDatabaseMaintenanceSeparately() {
+        HealthConnectDailyJobs.schedule(mContext, 0);
+
+        ArgumentCaptor<JobInfo> captor = ArgumentCaptor.forClass(JobInfo.class);
+        verify(mJobScheduler, times(2)).schedule(captor.capture());
+        JobInfo dailyJob = captor.getAllValues().get(0);
+        JobInfo maintenanceJob = captor.getAllValues().get(1);
+        assertThat(dailyJob.getExtras().getString(EXTRA_JOB_NAME_KEY)).isEqualTo(HC_DAILY_JOB);
+        assertThat(maintenanceJob.getExtras().getString(EXTRA_JOB_NAME_KEY))
+                .isEqualTo(HC_DATABASE_MAINTENANCE_JOB);
+        assertThat(maintenanceJob.getId()).isNotEqualTo(dailyJob.getId());
+        assertThat(maintenanceJob.isRequireDeviceIdle()).isTrue();
+        assertThat(maintenanceJob.isRequireCharging()).isTrue();
+    }
 }
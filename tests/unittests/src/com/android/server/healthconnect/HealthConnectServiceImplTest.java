@@ -17,12 +17,18 @@
 package com.android.server.healthconnect;
 
 import static android.Manifest.permission.MIGRATE_HEALTH_CONNECT_DATA;
+import static android.content.pm.PackageManager.PERMISSION_GRANTED;
+import static android.health.connect.Constants.DEFAULT_LONG;
+import static android.health.connect.HealthConnectException.ERROR_INVALID_ARGUMENT;
 import static android.health.connect.HealthConnectManager.DATA_DOWNLOAD_STARTED;
+import static android.health.connect.HealthPermissions.MANAGE_HEALTH_DATA_PERMISSION;
 
 import static com.android.server.healthconnect.backuprestore.BackupRestore.DATA_DOWNLOAD_STATE_KEY;
 import static com.android.server.healthconnect.backuprestore.BackupRestore.DATA_RESTORE_STATE_KEY;
 import static com.android.server.healthconnect.backuprestore.BackupRestore.INTERNAL_RESTORE_STATE_STAGING_DONE;
 import static com.android.server.healthconnect.backuprestore.BackupRestore.INTERNAL_RESTORE_STATE_STAGING_IN_PROGRESS;
+import static com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils.createBloodPressureRecord;
+import static com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils.createStepsRecord;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
@@ -43,14 +49,24 @@ import static org.mockito.Mockito.when;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
+import android.health.connect.ReadRecordsRequestUsingFilters;
+import android.health.connect.ReadRecordsRequestUsingIds;
+import android.health.connect.aidl.HealthConnectExceptionParcel;
 import android.health.connect.aidl.IDataStagingFinishedCallback;
 import android.health.connect.aidl.IHealthConnectService;
 import android.health.connect.aidl.IMigrationCallback;
+import android.health.connect.aidl.IReadMultipleRecordsResponseCallback;
+import android.health.connect.aidl.ReadMultipleRecordsRequestParcel;
+import android.health.connect.aidl.ReadMultipleRecordsResponseParcel;
+import android.health.connect.datatypes.BloodPressureRecord;
+import android.health.connect.datatypes.StepsRecord;
+import android.health.connect.internal.datatypes.RecordInternal;
 import android.health.connect.migration.MigrationEntityParcel;
 import android.health.connect.migration.MigrationException;
 import android.health.connect.restore.StageRemoteDataRequest;
 import android.os.Environment;
 import android.os.ParcelFileDescriptor;
+import android.os.Process;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.util.ArrayMap;
@@ -68,13 +84,16 @@ import com.android.server.healthconnect.migration.MigrationUiStateManager;
 import com.android.server.healthconnect.permission.FirstGrantTimeManager;
 import com.android.server.healthconnect.permission.HealthConnectPermissionHelper;
 import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.datatypehelpers.DatabaseHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.PreferenceHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.quality.Strictness;
 
@@ -83,6 +102,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
@@ -116,6 +136,7 @@ public class HealthConnectServiceImplTest {
                     "insertRecords",
                     "aggregateRecords",
                     "readRecords",
+                    "readMultipleRecords",
                     "updateRecords",
                     "getChangeLogToken",
                     "getChangeLogs",
@@ -168,7 +189,7 @@ public class HealthConnectServiceImplTest {
     @Mock private AppOpsManagerLocal mAppOpsManagerLocal;
     @Mock private PackageManager mPackageManager;
     @Mock IMigrationCallback mCallback;
-    private Context mContext;
+    private HealthConnectUserContext mContext;
     private HealthConnectServiceImpl mHealthConnectService;
     private UserHandle mUserHandle;
     private File mMockDataDirectory;
@@ -442,6 +463,87 @@ public class HealthConnectServiceImplTest {
         verify(mCallback).onSuccess();
     }
 
+    @Test
+    public void testReadMultipleRecords_noRequests_returnsInvalidArgument() throws Exception {
+        setUpPassingDataManagementPermissionCheck();
+        IReadMultipleRecordsResponseCallback callback =
+                mock(IReadMultipleRecordsResponseCallback.class);
+
+        mHealthConnectService.readMultipleRecords(
+                mContext.getAttributionSource(),
+                new ReadMultipleRecordsRequestParcel(List.of()),
+                callback);
+
+        ArgumentCaptor<HealthConnectExceptionParcel> exceptionCaptor =
+                ArgumentCaptor.forClass(HealthConnectExceptionParcel.class);
+        verify(callback, timeout(5000)).onError(exceptionCaptor.capture());
+        assertThat(exceptionCaptor.getValue().getHealthConnectException().getErrorCode())
+                .isEqualTo(ERROR_INVALID_ARGUMENT);
+    }
+
+    @Test
+    public void testReadMultipleRecords_returnsRecordsOfEachRequest() throws Exception {
+        setUpPassingDataManagementPermissionCheck();
+        TransactionManager transactionManager = TransactionManager.getInstance(mContext);
+        try {
+            TransactionTestUtils transactionTestUtils =
+                    new TransactionTestUtils(mContext, transactionManager);
+            transactionTestUtils.insertApp(mContext.getPackageName());
+            List<String> uuids =
+                    transactionTestUtils.insertRecords(
+                            mContext.getPackageName(),
+                            createStepsRecord(100, 200, 1000),
+                            createStepsRecord(300, 400, 2000),
+                            createBloodPressureRecord(500, 120.0, 80.0),
+                            createBloodPressureRecord(600, 110.0, 70.0));
+            HealthConnectServiceImpl healthConnectService =
+                    new HealthConnectServiceImpl(
+                            transactionManager,
+                            mDeviceConfigManager,
+                            mHealthConnectPermissionHelper,
+                            mMigrationCleaner,
+                            mFirstGrantTimeManager,
+                            mMigrationStateManager,
+                            mMigrationUiStateManager,
+                            mServiceContext);
+            IReadMultipleRecordsResponseCallback callback =
+                    mock(IReadMultipleRecordsResponseCallback.class);
+
+            healthConnectService.readMultipleRecords(
+                    mContext.getAttributionSource(),
+                    new ReadMultipleRecordsRequestParcel(
+                            List.of(
+                                    new ReadRecordsRequestUsingIds.Builder<>(StepsRecord.class)
+                                            .addId(uuids.get(1))
+                                            .build()
+                                            .toReadRecordsRequestParcel(),
+                                    new ReadRecordsRequestUsingFilters.Builder<>(
+                                                    BloodPressureRecord.class)
+                                            .setPageSize(1)
+                                            .build()
+                                            .toReadRecordsRequestParcel())),
+                    callback);
+
+            ArgumentCaptor<ReadMultipleRecordsResponseParcel> responseCaptor =
+                    ArgumentCaptor.forClass(ReadMultipleRecordsResponseParcel.class);
+            verify(callback, timeout(5000)).onResult(responseCaptor.capture());
+            ReadMultipleRecordsResponseParcel response = responseCaptor.getValue();
+            assertThat(
+                            response.getRecordsParcel().getRecords().stream()
+                                    .map(RecordInternal::getUuid)
+                                    .map(String::valueOf)
+                                    .toList())
+                    .containsExactly(uuids.get(1), uuids.get(2))
+                    .inOrder();
+            assertThat(response.getRecordCounts()).asList().containsExactly(1, 1).inOrder();
+            assertThat(response.getPageTokens()[0]).isEqualTo(DEFAULT_LONG);
+            assertThat(response.getPageTokens()[1]).isNotEqualTo(DEFAULT_LONG);
+        } finally {
+            DatabaseHelper.clearAllData(transactionManager);
+            TransactionManager.clearInstance();
+        }
+    }
+
     /**
      * Tests that new HealthConnect APIs block API calls during data sync using {@link
      * HealthConnectServiceImpl.BlockCallsDuringDataSync} annotation.
@@ -481,6 +583,14 @@ public class HealthConnectServiceImplTest {
         }
     }
 
+    private void setUpPassingDataManagementPermissionCheck() throws Exception {
+        when(mServiceContext.checkPermission(eq(MANAGE_HEALTH_DATA_PERMISSION), anyInt(), anyInt()))
+                .thenReturn(PERMISSION_GRANTED);
+        when(mServiceContext.createContextAsUser(any(), anyInt())).thenReturn(mServiceContext);
+        when(mPackageManager.getPackageUid(eq(mContext.getPackageName()), anyInt()))
+                .thenReturn(Process.myUid());
+    }
+
     private void setUpPassingPermissionCheckFor(String permission) {
         doNothing()
                 .when(mServiceContext)
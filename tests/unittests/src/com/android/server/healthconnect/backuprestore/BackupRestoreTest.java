@@ -48,7 +48,9 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -60,6 +62,7 @@ import android.app.job.JobInfo;
 import android.app.job.JobScheduler;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.health.connect.HealthConnectManager;
 import android.health.connect.restore.BackupFileNamesSet;
 import android.health.connect.restore.StageRemoteDataRequest;
@@ -75,6 +78,7 @@ import androidx.test.runner.AndroidJUnit4;
 import com.android.dx.mockito.inline.extended.ExtendedMockito;
 import com.android.modules.utils.testing.ExtendedMockitoRule;
 import com.android.server.healthconnect.FakePreferenceHelper;
+import com.android.server.healthconnect.HealthConnectDeviceConfigManager;
 import com.android.server.healthconnect.migration.MigrationStateManager;
 import com.android.server.healthconnect.permission.FirstGrantTimeManager;
 import com.android.server.healthconnect.permission.GrantTimeXmlHelper;
@@ -95,10 +99,13 @@ import org.mockito.Mock;
 import org.mockito.quality.Strictness;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.time.Instant;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 /** Unit test for class {@link BackupRestore} */
 @RunWith(AndroidJUnit4.class)
@@ -115,6 +122,7 @@ public class BackupRestoreTest {
                     .mockStatic(BackupRestore.BackupRestoreJobService.class)
                     .mockStatic(AppInfoHelper.class)
                     .mockStatic(SQLiteDatabase.class)
+                    .mockStatic(HealthConnectDeviceConfigManager.class)
                     .spyStatic(GrantTimeXmlHelper.class)
                     .spyStatic(BackupRestore.StagedDatabaseContext.class)
                     .setStrictness(Strictness.LENIENT)
@@ -128,6 +136,7 @@ public class BackupRestoreTest {
     @Mock private MigrationStateManager mMigrationStateManager;
     @Mock private Context mContext;
     @Mock private JobScheduler mJobScheduler;
+    @Mock private HealthConnectDeviceConfigManager mHealthConnectDeviceConfigManager;
     @Captor ArgumentCaptor<JobInfo> mJobInfoArgumentCaptor;
     private BackupRestore mBackupRestore;
     private final PreferenceHelper mFakePreferenceHelper = new FakePreferenceHelper();
@@ -147,6 +156,8 @@ public class BackupRestoreTest {
         when(PreferenceHelper.getInstance()).thenReturn(mFakePreferenceHelper);
         when(TransactionManager.getInitialisedInstance()).thenReturn(mTransactionManager);
         when(AppInfoHelper.getInstance()).thenReturn(mAppInfoHelper);
+        when(HealthConnectDeviceConfigManager.getInitialisedInstance())
+                .thenReturn(mHealthConnectDeviceConfigManager);
         when(mJobScheduler.forNamespace(BACKUP_RESTORE_JOBS_NAMESPACE)).thenReturn(mJobScheduler);
         when(mServiceContext.getUser()).thenReturn(mUserHandle);
         when(mServiceContext.getSystemService(JobScheduler.class)).thenReturn(mJobScheduler);
@@ -197,6 +208,7 @@ public class BackupRestoreTest {
                 createAndGetEmptyFile(mMockBackedDataDirectory, GRANT_TIME_FILE_NAME);
 
         when(mTransactionManager.getDatabasePath()).thenReturn(dbFileToBackup);
+        mockVacuumIntoCopies(dbFileToBackup);
         UserGrantTimeState userGrantTimeState =
                 new UserGrantTimeState(Map.of("package", Instant.now()), Map.of(), 1);
         when(mFirstGrantTimeManager.createBackupState(mUserHandle)).thenReturn(userGrantTimeState);
@@ -217,6 +229,51 @@ public class BackupRestoreTest {
                 .isEqualTo(userGrantTimeState.toString());
     }
 
+    @Test
+    public void testGetAllBackupData_compressionEnabled_sendsCompressedData() throws Exception {
+        File dbFileToBackup = createAndGetNonEmptyFile(mMockDataDirectory, DATABASE_NAME);
+        File dbFileBacked = createAndGetEmptyFile(mMockBackedDataDirectory, STAGED_DATABASE_NAME);
+        when(mFirstGrantTimeManager.createBackupState(mUserHandle))
+                .thenReturn(new UserGrantTimeState(Map.of(), Map.of(), 1));
+        mockVacuumIntoCopies(dbFileToBackup);
+        when(mHealthConnectDeviceConfigManager.isBackupCompressionEnabled()).thenReturn(true);
+
+        mBackupRestore.getAllDataForBackup(
+                new StageRemoteDataRequest(
+                        Map.of(
+                                STAGED_DATABASE_NAME,
+                                ParcelFileDescriptor.open(
+                                        dbFileBacked, ParcelFileDescriptor.MODE_READ_WRITE))),
+                mUserHandle);
+
+        try (GZIPInputStream inputStream =
+                new GZIPInputStream(new FileInputStream(dbFileBacked))) {
+            assertThat(inputStream.readAllBytes())
+                    .isEqualTo(Files.readAllBytes(dbFileToBackup.toPath()));
+        }
+    }
+
+    @Test
+    public void testGetAllBackupData_snapshotFails_copiesDatabaseFile() throws Exception {
+        File dbFileToBackup = createAndGetNonEmptyFile(mMockDataDirectory, DATABASE_NAME);
+        File dbFileBacked = createAndGetEmptyFile(mMockBackedDataDirectory, STAGED_DATABASE_NAME);
+        when(mFirstGrantTimeManager.createBackupState(mUserHandle))
+                .thenReturn(new UserGrantTimeState(Map.of(), Map.of(), 1));
+        when(mTransactionManager.getDatabasePath()).thenReturn(dbFileToBackup);
+        doThrow(new SQLiteException()).when(mTransactionManager).vacuumInto(any());
+
+        mBackupRestore.getAllDataForBackup(
+                new StageRemoteDataRequest(
+                        Map.of(
+                                STAGED_DATABASE_NAME,
+                                ParcelFileDescriptor.open(
+                                        dbFileBacked, ParcelFileDescriptor.MODE_READ_WRITE))),
+                mUserHandle);
+
+        assertThat(Files.readAllBytes(dbFileBacked.toPath()))
+                .isEqualTo(Files.readAllBytes(dbFileToBackup.toPath()));
+    }
+
     @Test
     public void testSetDataDownloadState_downloadStarted_schedulesDownloadTimeoutJob() {
         @HealthConnectManager.DataDownloadState int testDownloadStateSet = DATA_DOWNLOAD_STARTED;
@@ -731,6 +788,17 @@ public class BackupRestoreTest {
         assertThat(result).isFalse();
     }
 
+    private void mockVacuumIntoCopies(File databaseFile) {
+        doAnswer(
+                        invocation -> {
+                            File destination = invocation.getArgument(0);
+                            Files.copy(databaseFile.toPath(), destination.toPath());
+                            return null;
+                        })
+                .when(mTransactionManager)
+                .vacuumInto(any());
+    }
+
     private static File createAndGetNonEmptyFile(File dir, String fileName) throws IOException {
         File file = new File(dir, fileName);
         FileWriter fileWriter = new FileWriter(file);
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.logging;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.server.healthconnect.logging.HealthConnectServiceLogger.ApiMethods;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+public class ApiLatencyStatsTest {
+
+    @Test
+    public void testDump_noCalls() {
+        assertThat(dump(new ApiLatencyStats())).contains("None");
+    }
+
+    @Test
+    public void testDump_printsPercentilesPerApiStateAndPool() {
+        ApiLatencyStats stats = new ApiLatencyStats();
+        stats.record(
+                ApiMethods.READ_DATA,
+                ApiLatencyStats.CALLER_FOREGROUND_STATE_FOREGROUND,
+                ApiLatencyStats.POOL_FOREGROUND,
+                TimeUnit.MILLISECONDS.toNanos(1),
+                TimeUnit.MILLISECONDS.toNanos(4));
+        stats.record(
+                ApiMethods.INSERT_DATA,
+                ApiLatencyStats.CALLER_FOREGROUND_STATE_BACKGROUND,
+                ApiLatencyStats.POOL_BACKGROUND,
+                TimeUnit.MILLISECONDS.toNanos(2),
+                TimeUnit.MILLISECONDS.toNanos(3));
+
+        String dump = dump(stats);
+
+        assertThat(dump).contains("READ_DATA, caller in foreground, foreground pool: 1 calls");
+        assertThat(dump).contains("queue wait: p50=1.000 p95=1.000 p99=1.000");
+        assertThat(dump).contains("execution: p50=4.000 p95=4.000 p99=4.000");
+        assertThat(dump).contains("INSERT_DATA, caller in background, background pool: 1 calls");
+        assertThat(dump).contains("queue wait: p50=2.000 p95=2.000 p99=2.000");
+        assertThat(dump).contains("execution: p50=3.000 p95=3.000 p99=3.000");
+    }
+
+    private static String dump(ApiLatencyStats stats) {
+        StringWriter stringWriter = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(stringWriter)) {
+            stats.dump(writer);
+        }
+        return stringWriter.toString();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.migration;
+
+import static android.health.connect.datatypes.RecordTypeIdentifier.RECORD_TYPE_BLOOD_PRESSURE;
+import static android.health.connect.datatypes.RecordTypeIdentifier.RECORD_TYPE_STEPS;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.health.connect.datatypes.BloodPressureRecord;
+import android.health.connect.datatypes.Metadata;
+import android.health.connect.datatypes.Record;
+import android.health.connect.datatypes.StepsRecord;
+import android.health.connect.datatypes.units.Pressure;
+import android.health.connect.internal.datatypes.RecordInternal;
+import android.health.connect.migration.MigrationEntity;
+import android.health.connect.migration.RecordMigrationPayload;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.healthconnect.permission.FirstGrantTimeManager;
+import com.android.server.healthconnect.permission.HealthConnectPermissionHelper;
+import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.datatypehelpers.ActivityDateHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.AppInfoHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.DeviceInfoHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.HealthDataCategoryPriorityHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.MigrationEntityHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.RecordHelper;
+import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+import com.android.server.healthconnect.storage.utils.RecordHelperProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class DataMigrationManagerTest {
+    private static final String APP_PACKAGE_NAME = "android.healthconnect.mocked.app";
+    private static final String STEPS_TABLE_NAME = "steps_record_table";
+    private static final String BLOOD_PRESSURE_TABLE_NAME = "blood_pressure_record_table";
+
+    @Mock Context mUserContext;
+    @Mock TransactionManager mTransactionManager;
+    @Mock HealthConnectPermissionHelper mHealthConnectPermissionHelper;
+    @Mock FirstGrantTimeManager mFirstGrantTimeManager;
+    @Mock DeviceInfoHelper mDeviceInfoHelper;
+    @Mock AppInfoHelper mAppInfoHelper;
+    @Mock MigrationEntityHelper mMigrationEntityHelper;
+    @Mock RecordHelperProvider mRecordHelperProvider;
+    @Mock HealthDataCategoryPriorityHelper mHealthDataCategoryPriorityHelper;
+    @Mock PriorityMigrationHelper mPriorityMigrationHelper;
+    @Mock ActivityDateHelper mActivityDateHelper;
+    @Mock SQLiteDatabase mSQLiteDatabase;
+
+    DataMigrationManager mDataMigrationManager;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+
+        doAnswer(
+                        invocation -> {
+                            TransactionManager.TransactionRunnable<?> runnable =
+                                    invocation.getArgument(0);
+                            runnable.run(mSQLiteDatabase);
+                            return null;
+                        })
+                .when(mTransactionManager)
+                .runAsTransaction(any());
+        mockRecordHelper(RECORD_TYPE_STEPS, STEPS_TABLE_NAME);
+        mockRecordHelper(RECORD_TYPE_BLOOD_PRESSURE, BLOOD_PRESSURE_TABLE_NAME);
+        when(mActivityDateHelper.getUpsertTableRequest(anyInt(), anyLong()))
+                .thenReturn(new UpsertTableRequest("activity_date_table", new ContentValues()));
+
+        mDataMigrationManager =
+                new DataMigrationManager(
+                        mUserContext,
+                        mTransactionManager,
+                        mHealthConnectPermissionHelper,
+                        mFirstGrantTimeManager,
+                        mDeviceInfoHelper,
+                        mAppInfoHelper,
+                        mMigrationEntityHelper,
+                        mRecordHelperProvider,
+                        mHealthDataCategoryPriorityHelper,
+                        mPriorityMigrationHelper,
+                        mActivityDateHelper);
+    }
+
+    @Test
+    public void testMigrateRecords_writesAllRecordsGroupedByTable()
+            throws DataMigrationManager.EntityWriteException {
+        List<MigrationEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            entities.add(
+                    createRecordEntity(
+                            "entity" + i, i % 2 == 0 ? createStepsRecord(i) : createBpRecord(i)));
+        }
+
+        mDataMigrationManager.apply(entities);
+
+        verify(mAppInfoHelper, times(1200))
+                .populateAppInfoId(any(RecordInternal.class), eq(mUserContext), anyBoolean());
+        verify(mDeviceInfoHelper, times(1200)).populateDeviceInfoId(any(RecordInternal.class));
+        InOrder inOrder = inOrder(mTransactionManager);
+        // Each chunk of 500 records is written grouped by table.
+        inOrder.verify(mTransactionManager, times(250))
+                .insertOrIgnore(eq(mSQLiteDatabase), requestForTable(STEPS_TABLE_NAME));
+        inOrder.verify(mTransactionManager, times(250))
+                .insertOrIgnore(eq(mSQLiteDatabase), requestForTable(BLOOD_PRESSURE_TABLE_NAME));
+        inOrder.verify(mTransactionManager, times(250))
+                .insertOrIgnore(eq(mSQLiteDatabase), requestForTable(STEPS_TABLE_NAME));
+    }
+
+    @Test
+    public void testMigrateRecords_activityDatesWrittenOncePerTypeAndDay()
+            throws DataMigrationManager.EntityWriteException {
+        mDataMigrationManager.apply(
+                List.of(
+                        createRecordEntity("steps1", createStepsRecord(1)),
+                        createRecordEntity("steps2", createStepsRecord(2)),
+                        createRecordEntity("bp", createBpRecord(3))));
+
+        verify(mTransactionManager, times(5)).insertOrIgnore(eq(mSQLiteDatabase), any());
+        verify(mActivityDateHelper).getUpsertTableRequest(RECORD_TYPE_STEPS, 0);
+        verify(mActivityDateHelper).getUpsertTableRequest(RECORD_TYPE_BLOOD_PRESSURE, 0);
+    }
+
+    @Test
+    public void testMigrateRecords_failedRecord_throwsWithEntityId() {
+        doThrow(new IllegalArgumentException())
+                .when(mDeviceInfoHelper)
+                .populateDeviceInfoId(any(RecordInternal.class));
+
+        DataMigrationManager.EntityWriteException e =
+                assertThrows(
+                        DataMigrationManager.EntityWriteException.class,
+                        () ->
+                                mDataMigrationManager.apply(
+                                        List.of(
+                                                createRecordEntity(
+                                                        "steps1", createStepsRecord(1)))));
+
+        assertThat(e.getEntityId()).isEqualTo("steps1");
+        assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockRecordHelper(int recordType, String tableName) {
+        RecordHelper<RecordInternal<?>> helper = mock(RecordHelper.class);
+        when(helper.getUpsertTableRequest(any(RecordInternal.class)))
+                .thenAnswer(invocation -> new UpsertTableRequest(tableName, new ContentValues()));
+        doReturn(helper).when(mRecordHelperProvider).getRecordHelper(recordType);
+    }
+
+    private static UpsertTableRequest requestForTable(String tableName) {
+        return argThat(
+                request -> request != null && request.getTable().equals(tableName));
+    }
+
+    private static MigrationEntity createRecordEntity(String entityId, Record record) {
+        return new MigrationEntity(
+                entityId,
+                new RecordMigrationPayload.Builder(APP_PACKAGE_NAME, "app", record).build());
+    }
+
+    private static StepsRecord createStepsRecord(long timeMillis) {
+        return new StepsRecord.Builder(
+                        new Metadata.Builder().build(),
+                        Instant.ofEpochMilli(timeMillis),
+                        Instant.ofEpochMilli(timeMillis + 1),
+                        10)
+                .setStartZoneOffset(ZoneOffset.UTC)
+                .setEndZoneOffset(ZoneOffset.UTC)
+                .build();
+    }
+
+    private static BloodPressureRecord createBpRecord(long timeMillis) {
+        return new BloodPressureRecord.Builder(
+                        new Metadata.Builder().build(),
+                        Instant.ofEpochMilli(timeMillis),
+                        BloodPressureRecord.BloodPressureMeasurementLocation
+                                .BLOOD_PRESSURE_MEASUREMENT_LOCATION_UNKNOWN,
+                        Pressure.fromMillimetersOfMercury(120.0),
+                        Pressure.fromMillimetersOfMercury(80.0),
+                        BloodPressureRecord.BodyPosition.BODY_POSITION_UNKNOWN)
+                .setZoneOffset(ZoneOffset.UTC)
+                .build();
+    }
+}
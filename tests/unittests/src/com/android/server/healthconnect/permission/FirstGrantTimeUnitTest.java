@@ -23,6 +23,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -125,9 +126,21 @@ public class FirstGrantTimeUnitTest {
         assertThat(mGrantTimeManager.getFirstGrantTime(SELF_PACKAGE_NAME, CURRENT_USER))
                 .isLessThan(Instant.now().plusSeconds((long) 1e3));
         verify(mDatastore)
+                .writePackageGrantTimeForUser(
+                        ArgumentMatchers.eq(SELF_PACKAGE_NAME),
+                        ArgumentMatchers.notNull(),
+                        ArgumentMatchers.eq(CURRENT_USER),
+                        ArgumentMatchers.eq(DATA_TYPE_CURRENT));
+        verify(mDatastore, never())
+                .writeSharedUserGrantTimeForUser(
+                        ArgumentMatchers.any(),
+                        ArgumentMatchers.any(),
+                        ArgumentMatchers.any(),
+                        ArgumentMatchers.anyInt());
+        verify(mDatastore, never())
                 .writeForUser(
                         ArgumentMatchers.any(),
-                        ArgumentMatchers.eq(CURRENT_USER),
+                        ArgumentMatchers.any(),
                         ArgumentMatchers.eq(DATA_TYPE_CURRENT));
         verify(mDatastore)
                 .readForUser(
@@ -45,6 +45,8 @@ import org.mockito.Mockito;
 import org.mockito.quality.Strictness;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.time.Instant;
 import java.util.Map;
 
@@ -168,6 +170,115 @@ public class GrantTimePersistenceUnitTest {
         assertRestoredStateIsCorrect(restoredState2, SHARED_USERS_STATE);
     }
 
+    @Test
+    public void testWriteGrantTime_readByNewInstance_restoredCorrectly() {
+        FirstGrantTimeDatastore datastore = FirstGrantTimeDatastore.createInstance();
+        datastore.writeForUser(DEFAULT_STATE, mUser, DATA_TYPE_CURRENT);
+        datastore.writePackageGrantTimeForUser(
+                "package2", Instant.ofEpochSecond((long) 1e5), mUser, DATA_TYPE_CURRENT);
+        datastore.writePackageGrantTimeForUser("package1", null, mUser, DATA_TYPE_CURRENT);
+        datastore.writeSharedUserGrantTimeForUser(
+                "shared_user1", Instant.ofEpochSecond((long) 1e6), mUser, DATA_TYPE_CURRENT);
+
+        UserGrantTimeState restoredState =
+                FirstGrantTimeDatastore.createInstance().readForUser(mUser, DATA_TYPE_CURRENT);
+        assertRestoredStateIsCorrect(
+                restoredState,
+                new UserGrantTimeState(
+                        Map.of("package2", Instant.ofEpochSecond((long) 1e5)),
+                        Map.of("shared_user1", Instant.ofEpochSecond((long) 1e6)),
+                        1));
+    }
+
+    @Test
+    public void testWriteGrantTime_noStateWritten_restoredCorrectly() {
+        FirstGrantTimeDatastore datastore = FirstGrantTimeDatastore.createInstance();
+        datastore.writePackageGrantTimeForUser(
+                "package1", Instant.ofEpochSecond((long) 1e5), mUser, DATA_TYPE_STAGED);
+
+        UserGrantTimeState restoredState =
+                FirstGrantTimeDatastore.createInstance().readForUser(mUser, DATA_TYPE_STAGED);
+        assertThat(restoredState.getPackageGrantTimes())
+                .containsExactly("package1", Instant.ofEpochSecond((long) 1e5));
+        assertThat(restoredState.getSharedUserGrantTimes()).isEmpty();
+    }
+
+    @Test
+    public void testWriteGrantTime_moreWritesThanCompactionThreshold_restoredCorrectly() {
+        FirstGrantTimeDatastore datastore = FirstGrantTimeDatastore.createInstance();
+        datastore.writeForUser(EMPTY_STATE, mUser, DATA_TYPE_CURRENT);
+        Map<String, Instant> expectedGrantTimes = new ArrayMap<>();
+        int writes = 3 * FirstGrantTimeDatastoreBinaryPersistence.MIN_RECORDS_TO_COMPACT;
+        for (int i = 0; i < writes; i++) {
+            String packageName = "package" + (i % 10);
+            Instant time = Instant.ofEpochSecond(i, i);
+            datastore.writePackageGrantTimeForUser(packageName, time, mUser, DATA_TYPE_CURRENT);
+            expectedGrantTimes.put(packageName, time);
+        }
+
+        UserGrantTimeState restoredState =
+                FirstGrantTimeDatastore.createInstance().readForUser(mUser, DATA_TYPE_CURRENT);
+        assertRestoredStateIsCorrect(
+                restoredState, new UserGrantTimeState(expectedGrantTimes, new ArrayMap<>(), 3));
+    }
+
+    @Test
+    public void testWriteGrantTime_lastRecordTruncated_previousRecordsRestored()
+            throws IOException {
+        FirstGrantTimeDatastore datastore = FirstGrantTimeDatastore.createInstance();
+        datastore.writeForUser(EMPTY_STATE, mUser, DATA_TYPE_CURRENT);
+        datastore.writePackageGrantTimeForUser(
+                "package1", Instant.ofEpochSecond((long) 1e5), mUser, DATA_TYPE_CURRENT);
+        datastore.writePackageGrantTimeForUser(
+                "package2", Instant.ofEpochSecond((long) 1e6), mUser, DATA_TYPE_CURRENT);
+        File journalFile = new File(datastore.getFile(mUser, DATA_TYPE_CURRENT) + ".journal");
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        FirstGrantTimeDatastore newDatastore = FirstGrantTimeDatastore.createInstance();
+        assertThat(newDatastore.readForUser(mUser, DATA_TYPE_CURRENT).getPackageGrantTimes())
+                .containsExactly("package1", Instant.ofEpochSecond((long) 1e5));
+        newDatastore.writePackageGrantTimeForUser(
+                "package3", Instant.ofEpochSecond((long) 1e7), mUser, DATA_TYPE_CURRENT);
+        assertThat(
+                        FirstGrantTimeDatastore.createInstance()
+                                .readForUser(mUser, DATA_TYPE_CURRENT)
+                                .getPackageGrantTimes())
+                .containsExactly(
+                        "package1",
+                        Instant.ofEpochSecond((long) 1e5),
+                        "package3",
+                        Instant.ofEpochSecond((long) 1e7));
+    }
+
+    @Test
+    public void testReadData_xmlStateWritten_migratedCorrectly() {
+        FirstGrantTimeDatastore legacyDatastore = new FirstGrantTimeDatastoreXmlPersistence();
+        legacyDatastore.writeForUser(DEFAULT_STATE, mUser, DATA_TYPE_CURRENT);
+
+        FirstGrantTimeDatastore datastore = FirstGrantTimeDatastore.createInstance();
+        assertRestoredStateIsCorrect(
+                datastore.readForUser(mUser, DATA_TYPE_CURRENT), DEFAULT_STATE);
+        assertThat(legacyDatastore.getFile(mUser, DATA_TYPE_CURRENT).exists()).isTrue();
+        assertRestoredStateIsCorrect(
+                FirstGrantTimeDatastore.createInstance().readForUser(mUser, DATA_TYPE_CURRENT),
+                DEFAULT_STATE);
+    }
+
+    @Test
+    public void testWriteGrantTime_stateIsNotWritten_currentVersionIsWritten() {
+        FirstGrantTimeDatastore datastore = FirstGrantTimeDatastore.createInstance();
+        datastore.writePackageGrantTimeForUser(
+                "package1", Instant.ofEpochSecond((long) 1e5), mUser, DATA_TYPE_CURRENT);
+
+        assertThat(
+                        FirstGrantTimeDatastore.createInstance()
+                                .readForUser(mUser, DATA_TYPE_CURRENT)
+                                .getVersion())
+                .isEqualTo(FirstGrantTimeManager.CURRENT_VERSION);
+    }
+
     @Test
     public void testReadData_stateIsNotWritten_nullIsReturned() {
         FirstGrantTimeDatastore datastore = FirstGrantTimeDatastore.createInstance();
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.permission;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.health.connect.HealthConnectManager;
+import android.os.Environment;
+import android.os.Process;
+import android.os.UserHandle;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.dx.mockito.inline.extended.ExtendedMockito;
+import com.android.modules.utils.testing.ExtendedMockitoRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.quality.Strictness;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class HealthPackagesIndexTest {
+    private static final String HEALTH_PERMISSION = "HEALTH_PERMISSION";
+    private static final String NOT_HEALTH_PERMISSION = "NOT_HEALTH_PERMISSION";
+    private static final UserHandle CURRENT_USER = Process.myUserHandle();
+
+    @Rule
+    public final ExtendedMockitoRule mExtendedMockitoRule =
+            new ExtendedMockitoRule.Builder(this)
+                    .mockStatic(Environment.class)
+                    .mockStatic(HealthConnectManager.class)
+                    .setStrictness(Strictness.LENIENT)
+                    .build();
+
+    @Mock private Context mContext;
+    @Mock private Context mUserContext;
+    @Mock private PackageManager mPackageManager;
+
+    private final List<Runnable> mVerifications = new ArrayList<>();
+    private final List<PackageInfo> mInstalledPackages = new ArrayList<>();
+    private File mMockDataDirectory;
+
+    @Before
+    public void setUp() throws PackageManager.NameNotFoundException {
+        mMockDataDirectory =
+                InstrumentationRegistry.getContext().getDir("mock_data", Context.MODE_PRIVATE);
+        when(Environment.getDataDirectory()).thenReturn(mMockDataDirectory);
+        ExtendedMockito.doReturn(true)
+                .when(() -> HealthConnectManager.isHealthPermission(mContext, HEALTH_PERMISSION));
+        ExtendedMockito.doReturn(false)
+                .when(
+                        () ->
+                                HealthConnectManager.isHealthPermission(
+                                        mContext, NOT_HEALTH_PERMISSION));
+        when(mContext.createContextAsUser(any(), anyInt())).thenReturn(mUserContext);
+        when(mUserContext.getPackageManager()).thenReturn(mPackageManager);
+        when(mPackageManager.getInstalledPackages(any(PackageManager.PackageInfoFlags.class)))
+                .thenReturn(mInstalledPackages);
+        doThrow(new PackageManager.NameNotFoundException())
+                .when(mPackageManager)
+                .getPackageInfo(any(String.class), any(PackageManager.PackageInfoFlags.class));
+    }
+
+    @After
+    public void tearDown() {
+        deleteFile(mMockDataDirectory);
+    }
+
+    @Test
+    public void testGetPackageNames_noIndex_returnsScannedHealthPackages() {
+        installPackage("package2", HEALTH_PERMISSION);
+        installPackage("package1", NOT_HEALTH_PERMISSION, HEALTH_PERMISSION);
+        installPackage("package3", NOT_HEALTH_PERMISSION);
+
+        assertThat(createIndex().getPackageNames(CURRENT_USER, mContext))
+                .containsExactly("package1", "package2")
+                .inOrder();
+        assertThat(mVerifications).isEmpty();
+    }
+
+    @Test
+    public void testOnPackageChanged_healthPermissionRequested_addsPackage() {
+        HealthPackagesIndex index = createIndex();
+        index.getPackageNames(CURRENT_USER, mContext);
+
+        installPackage("package1", HEALTH_PERMISSION);
+        index.onPackageChanged("package1", CURRENT_USER, mContext);
+
+        assertThat(index.getPackageNames(CURRENT_USER, mContext)).containsExactly("package1");
+    }
+
+    @Test
+    public void testOnPackageChanged_healthPermissionNotRequested_removesPackage() {
+        installPackage("package1", HEALTH_PERMISSION);
+        HealthPackagesIndex index = createIndex();
+        index.getPackageNames(CURRENT_USER, mContext);
+
+        mInstalledPackages.clear();
+        installPackage("package1", NOT_HEALTH_PERMISSION);
+        index.onPackageChanged("package1", CURRENT_USER, mContext);
+
+        assertThat(index.getPackageNames(CURRENT_USER, mContext)).isEmpty();
+    }
+
+    @Test
+    public void testOnPackageRemoved_removesPackage() {
+        installPackage("package1", HEALTH_PERMISSION);
+        HealthPackagesIndex index = createIndex();
+        index.getPackageNames(CURRENT_USER, mContext);
+
+        index.onPackageRemoved("package1", CURRENT_USER, mContext);
+
+        assertThat(index.getPackageNames(CURRENT_USER, mContext)).isEmpty();
+    }
+
+    @Test
+    public void testGetPackageNames_indexPersisted_returnsIndexWithoutScan() {
+        installPackage("package1", HEALTH_PERMISSION);
+        createIndex().getPackageNames(CURRENT_USER, mContext);
+        installPackage("package2", HEALTH_PERMISSION);
+
+        HealthPackagesIndex index = createIndex();
+        assertThat(index.getPackageNames(CURRENT_USER, mContext)).containsExactly("package1");
+        verify(mPackageManager).getInstalledPackages(any(PackageManager.PackageInfoFlags.class));
+        assertThat(mVerifications).hasSize(1);
+    }
+
+    @Test
+    public void testGetPackageNames_indexVerified_returnsScannedHealthPackages() {
+        installPackage("package1", HEALTH_PERMISSION);
+        createIndex().getPackageNames(CURRENT_USER, mContext);
+        installPackage("package2", HEALTH_PERMISSION);
+
+        HealthPackagesIndex index = createIndex();
+        index.getPackageNames(CURRENT_USER, mContext);
+        mVerifications.forEach(Runnable::run);
+
+        assertThat(index.getPackageNames(CURRENT_USER, mContext))
+                .containsExactly("package1", "package2")
+                .inOrder();
+        assertThat(createIndex().getPackageNames(CURRENT_USER, mContext))
+                .containsExactly("package1", "package2")
+                .inOrder();
+    }
+
+    @Test
+    public void testOnPackageChanged_noIndex_doesNotScan() {
+        createIndex().onPackageChanged("package1", CURRENT_USER, mContext);
+
+        verify(mPackageManager, never())
+                .getInstalledPackages(any(PackageManager.PackageInfoFlags.class));
+    }
+
+    private HealthPackagesIndex createIndex() {
+        return new HealthPackagesIndex(mVerifications::add);
+    }
+
+    private void installPackage(String packageName, String... requestedPermissions) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = packageName;
+        packageInfo.requestedPermissions = requestedPermissions;
+        mInstalledPackages.add(packageInfo);
+        try {
+            doReturn(packageInfo)
+                    .when(mPackageManager)
+                    .getPackageInfo(eq(packageName), any(PackageManager.PackageInfoFlags.class));
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void deleteFile(File file) {
+        File[] contents = file.listFiles();
+        if (contents != null) {
+            for (File f : contents) {
+                deleteFile(f);
+            }
+        }
+        file.delete();
+    }
+}
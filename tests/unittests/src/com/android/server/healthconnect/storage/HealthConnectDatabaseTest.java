@@ -49,7 +49,8 @@ public class HealthConnectDatabaseTest {
                         InstrumentationRegistry.getInstrumentation()
                                 .getContext()
                                 .getDatabasePath("mock"));
-        mHealthConnectDatabase = new HealthConnectDatabase(mContext);
+        mHealthConnectDatabase =
+                new HealthConnectDatabase(mContext, DatabaseConnectionProfile.DEFAULT);
         mSQLiteDatabase = mHealthConnectDatabase.getWritableDatabase();
     }
 
@@ -66,4 +67,18 @@ public class HealthConnectDatabaseTest {
         cursor.moveToNext();
         Truth.assertThat(cursor.getInt(0)).isEqualTo(NUM_OF_TABLES);
     }
+
+    @Test
+    public void testConnectionProfile_appliedOnOpen() {
+        Truth.assertThat(mSQLiteDatabase.isWriteAheadLoggingEnabled()).isTrue();
+        // Reads in a transaction run on the primary connection, which is the one configured.
+        mSQLiteDatabase.beginTransaction();
+        try (Cursor cursor = mSQLiteDatabase.rawQuery("PRAGMA cache_size", null)) {
+            cursor.moveToNext();
+            Truth.assertThat(cursor.getLong(0))
+                    .isEqualTo(-DatabaseConnectionProfile.DEFAULT.getCacheSizeKib());
+        } finally {
+            mSQLiteDatabase.endTransaction();
+        }
+    }
 }
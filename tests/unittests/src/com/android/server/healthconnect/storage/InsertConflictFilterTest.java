@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import static com.android.server.healthconnect.storage.request.UpsertTableRequest.TYPE_STRING;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Pair;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class InsertConflictFilterTest {
+    private static final String TABLE_NAME = "test_table";
+    private static final String KEY_COLUMN_NAME = "key";
+    // Above the 100k values from which tables used not to be filtered.
+    private static final int ROWS_COUNT = 150_000;
+
+    private SQLiteDatabase mDatabase;
+    private InsertConflictFilter mInsertConflictFilter;
+
+    @Before
+    public void setUp() {
+        mDatabase = SQLiteDatabase.create(null);
+        mDatabase.execSQL(
+                "CREATE TABLE " + TABLE_NAME + " (" + KEY_COLUMN_NAME + " TEXT NOT NULL UNIQUE)");
+        mDatabase.beginTransaction();
+        try (SQLiteStatement statement =
+                mDatabase.compileStatement("INSERT INTO " + TABLE_NAME + " VALUES (?)")) {
+            for (int i = 0; i < ROWS_COUNT; i++) {
+                statement.bindString(1, getKey(i));
+                statement.executeInsert();
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        mInsertConflictFilter = new InsertConflictFilter(() -> mDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void mightConflict_largeTable_filtersNewValues() throws Exception {
+        waitForFilter();
+
+        int falsePositives = 0;
+        for (int i = ROWS_COUNT; i < ROWS_COUNT + 10_000; i++) {
+            if (mInsertConflictFilter.mightConflict(getRequest(i))) {
+                falsePositives++;
+            }
+        }
+        // 1% of the values, with a margin for the variance.
+        assertThat(falsePositives).isLessThan(300);
+        for (int i = 0; i < ROWS_COUNT; i += 1000) {
+            assertThat(mInsertConflictFilter.mightConflict(getRequest(i))).isTrue();
+        }
+    }
+
+    @Test
+    public void mightConflict_valueWrittenAfterBuild_returnsTrue() throws Exception {
+        waitForFilter();
+
+        mInsertConflictFilter.onWritten(getRequest(ROWS_COUNT));
+
+        assertThat(mInsertConflictFilter.mightConflict(getRequest(ROWS_COUNT))).isTrue();
+    }
+
+    @Test
+    public void mightConflict_valueWrittenDuringBuild_returnsTrue() throws Exception {
+        // Schedules the build.
+        assertThat(mInsertConflictFilter.mightConflict(getRequest(ROWS_COUNT))).isFalse();
+        mInsertConflictFilter.onWritten(getRequest(ROWS_COUNT));
+
+        waitForFilter();
+
+        assertThat(mInsertConflictFilter.mightConflict(getRequest(ROWS_COUNT))).isTrue();
+    }
+
+    // The filter is built in the background, until then no insert is reported as a conflict.
+    private void waitForFilter() throws InterruptedException {
+        Instant deadline = Instant.now().plus(Duration.ofSeconds(30));
+        while (!mInsertConflictFilter.mightConflict(getRequest(0))) {
+            assertThat(Instant.now()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static UpsertTableRequest getRequest(int value) {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(KEY_COLUMN_NAME, getKey(value));
+        return new UpsertTableRequest(
+                TABLE_NAME, contentValues, List.of(new Pair<>(KEY_COLUMN_NAME, TYPE_STRING)));
+    }
+
+    private static String getKey(int value) {
+        return "key" + value;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.database.sqlite.SQLiteException;
+
+import com.android.server.healthconnect.storage.request.UpsertTableRequest;
+import com.android.server.healthconnect.storage.request.UpsertTransactionRequest;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class InsertGroupCommitQueueTest {
+    private static final long LONG_WINDOW_MILLIS = 60_000;
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(3);
+    private final List<List<UpsertTransactionRequest>> mGroups =
+            Collections.synchronizedList(new ArrayList<>());
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testInsertAll_requestsQueuedDuringInsert_committedInOneTransaction()
+            throws Exception {
+        CountDownLatch inFlightInsertStarted = new CountDownLatch(1);
+        CountDownLatch inFlightInsertDone = new CountDownLatch(1);
+        InsertGroupCommitQueue queue =
+                new InsertGroupCommitQueue(
+                        mGroups::add,
+                        request -> {
+                            inFlightInsertStarted.countDown();
+                            awaitUninterruptibly(inFlightInsertDone);
+                            return request.getUUIdsInOrder();
+                        });
+        Future<List<String>> inFlightResult =
+                mExecutor.submit(
+                        () ->
+                                queue.insertAll(
+                                        createRequest("a"),
+                                        LONG_WINDOW_MILLIS,
+                                        /* maxRecords= */ 2));
+        inFlightInsertStarted.await();
+
+        // Both wait for the insert in flight, until they are enough to be committed together.
+        List<UpsertTransactionRequest> requests = List.of(createRequest("b"), createRequest("c"));
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (UpsertTransactionRequest request : requests) {
+            results.add(
+                    mExecutor.submit(
+                            () ->
+                                    queue.insertAll(
+                                            request, LONG_WINDOW_MILLIS, /* maxRecords= */ 2)));
+        }
+
+        assertThat(results.get(0).get()).containsExactly("b");
+        assertThat(results.get(1).get()).containsExactly("c");
+        inFlightInsertDone.countDown();
+        assertThat(inFlightResult.get()).containsExactly("a");
+        assertThat(mGroups).hasSize(1);
+        assertThat(mGroups.get(0)).containsExactlyElementsIn(requests);
+    }
+
+    @Test
+    public void testInsertAll_noInsertInFlight_committedWithoutWaiting() {
+        InsertGroupCommitQueue queue =
+                new InsertGroupCommitQueue(
+                        mGroups::add, UpsertTransactionRequest::getUUIdsInOrder);
+
+        // Returns right away rather than at the end of the window.
+        assertThat(queue.insertAll(createRequest("a"), LONG_WINDOW_MILLIS, 100))
+                .containsExactly("a");
+        assertThat(queue.insertAll(createRequest("b"), LONG_WINDOW_MILLIS, 100))
+                .containsExactly("b");
+        assertThat(mGroups).isEmpty();
+    }
+
+    @Test
+    public void testInsertAll_groupFails_failsOnlyFailingRequest() throws Exception {
+        UpsertTransactionRequest failingRequest = createRequest("b");
+        InsertGroupCommitQueue queue =
+                new InsertGroupCommitQueue(
+                        group -> {
+                            throw new SQLiteException("Group failed");
+                        },
+                        request -> {
+                            if (request == failingRequest) {
+                                throw new SQLiteException("Request failed");
+                            }
+                            return request.getUUIdsInOrder();
+                        });
+
+        Future<List<String>> result =
+                mExecutor.submit(
+                        () ->
+                                queue.insertAll(
+                                        createRequest("a"),
+                                        LONG_WINDOW_MILLIS,
+                                        /* maxRecords= */ 2));
+        Future<List<String>> failingResult =
+                mExecutor.submit(
+                        () ->
+                                queue.insertAll(
+                                        failingRequest, LONG_WINDOW_MILLIS, /* maxRecords= */ 2));
+
+        assertThat(result.get()).containsExactly("a");
+        Exception exception = assertThrows(Exception.class, failingResult::get);
+        assertThat(exception).hasCauseThat().isInstanceOf(SQLiteException.class);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static UpsertTransactionRequest createRequest(String uuid) {
+        UpsertTransactionRequest request = mock(UpsertTransactionRequest.class);
+        when(request.getUpsertRequests()).thenReturn(List.of(mock(UpsertTableRequest.class)));
+        when(request.getUUIdsInOrder()).thenReturn(List.of(uuid));
+        return request;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import static android.health.connect.Constants.DEFAULT_LONG;
+import static android.health.connect.datatypes.HeartRateRecord.BPM_MAX;
+import static android.health.connect.datatypes.HeartRateRecord.BPM_MIN;
+
+import static com.android.server.healthconnect.HealthConnectDeviceConfigManager.ENABLE_SERIES_TABLE_PARTITIONS_DEFAULT_FLAG_VALUE;
+import static com.android.server.healthconnect.HealthConnectDeviceConfigManager.ENABLE_SERIES_TABLE_PARTITIONS_FLAG;
+import static com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils.getReadTransactionRequest;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.Manifest;
+import android.health.connect.AggregateRecordsGroupedByDurationResponse;
+import android.health.connect.AggregateRecordsGroupedByPeriodResponse;
+import android.health.connect.AggregateRecordsRequest;
+import android.health.connect.AggregateRecordsResponse;
+import android.health.connect.LocalTimeRangeFilter;
+import android.health.connect.ReadRecordsRequestUsingFilters;
+import android.health.connect.ReadRecordsRequestUsingIds;
+import android.health.connect.TimeInstantRangeFilter;
+import android.health.connect.TimeRangeFilter;
+import android.health.connect.aidl.AggregateDataRequestParcel;
+import android.health.connect.aidl.AggregateDataResponseParcel;
+import android.health.connect.datatypes.HeartRateRecord;
+import android.health.connect.internal.datatypes.HeartRateRecordInternal;
+import android.health.connect.internal.datatypes.HeartRateRecordInternal.HeartRateSample;
+import android.health.connect.internal.datatypes.RecordInternal;
+import android.provider.DeviceConfig;
+import android.util.Pair;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.healthconnect.HealthConnectDeviceConfigManager;
+import com.android.server.healthconnect.HealthConnectUserContext;
+import com.android.server.healthconnect.storage.datatypehelpers.DatabaseHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.HealthConnectDatabaseTestRule;
+import com.android.server.healthconnect.storage.datatypehelpers.HeartRateRecordHelper;
+import com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils;
+import com.android.server.healthconnect.storage.request.AggregateTransactionRequest;
+import com.android.server.healthconnect.storage.request.ReadTransactionRequest;
+import com.android.server.healthconnect.storage.request.UpsertTransactionRequest;
+import com.android.server.healthconnect.storage.utils.PageTokenUtil;
+import com.android.server.healthconnect.storage.utils.PageTokenWrapper;
+import com.android.server.healthconnect.storage.utils.TablePartitions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Tests the reads and writes of heart rate records with partitioned series tables. */
+@RunWith(AndroidJUnit4.class)
+public class TransactionManagerTablePartitionsTest {
+    private static final String TEST_PACKAGE_NAME = "package.name";
+    private static final String SERIES_TABLE_NAME = "heart_rate_record_series_table";
+    private static final Instant JANUARY = Instant.parse("2020-01-10T10:00:00Z");
+    // Starts in February in local time.
+    private static final Instant END_OF_JANUARY = Instant.parse("2020-01-31T23:00:00Z");
+    private static final int END_OF_JANUARY_ZONE_OFFSET_SECONDS = 2 * 60 * 60;
+    private static final Instant FEBRUARY = Instant.parse("2020-02-15T10:00:00Z");
+    private static final Instant MARCH = Instant.parse("2020-03-15T10:00:00Z");
+
+    @Rule public final HealthConnectDatabaseTestRule testRule = new HealthConnectDatabaseTestRule();
+
+    private HealthConnectUserContext mContext;
+    private TransactionTestUtils mTransactionTestUtils;
+    private TransactionManager mTransactionManager;
+    private List<String> mUuids;
+
+    @Before
+    public void setup() {
+        InstrumentationRegistry.getInstrumentation()
+                .getUiAutomation()
+                .adoptShellPermissionIdentity(Manifest.permission.READ_DEVICE_CONFIG);
+        mContext = testRule.getUserContext();
+        mTransactionManager = TransactionManager.getInstance(mContext);
+        mTransactionTestUtils = new TransactionTestUtils(mContext, mTransactionManager);
+        mTransactionTestUtils.insertApp(TEST_PACKAGE_NAME);
+        HealthConnectDeviceConfigManager.initializeInstance(mContext);
+        setSeriesTablePartitionsEnabled(true);
+        AggregateTransactionRequest.clearCache();
+
+        mUuids =
+                mTransactionTestUtils.insertRecords(
+                        TEST_PACKAGE_NAME,
+                        createHeartRateRecord(JANUARY, /* zoneOffsetSeconds= */ 0, 60, 70),
+                        createHeartRateRecord(
+                                END_OF_JANUARY, END_OF_JANUARY_ZONE_OFFSET_SECONDS, 80),
+                        createHeartRateRecord(FEBRUARY, /* zoneOffsetSeconds= */ 0, 90, 100),
+                        createHeartRateRecord(MARCH, /* zoneOffsetSeconds= */ 0, 110));
+    }
+
+    @After
+    public void tearDown() {
+        setSeriesTablePartitionsEnabled(ENABLE_SERIES_TABLE_PARTITIONS_DEFAULT_FLAG_VALUE);
+        AggregateTransactionRequest.clearCache();
+        DatabaseHelper.clearAllData(mTransactionManager);
+        TransactionManager.clearInstance();
+    }
+
+    @Test
+    public void insertAll_writesSamplesToPartitionOfTheirMonth() {
+        assertThat(getPartitions())
+                .containsExactly(
+                        SERIES_TABLE_NAME + "_p202001",
+                        SERIES_TABLE_NAME + "_p202002",
+                        SERIES_TABLE_NAME + "_p202003")
+                .inOrder();
+        assertThat(mTransactionManager.getNumberOfEntriesInTheTable(SERIES_TABLE_NAME))
+                .isEqualTo(0);
+        assertThat(
+                        mTransactionManager.getNumberOfEntriesInTheTable(
+                                SERIES_TABLE_NAME + "_p202001"))
+                .isEqualTo(3);
+    }
+
+    @Test
+    public void readRecordsByIds_returnsRecordsOfAllPartitions() {
+        List<RecordInternal<?>> records = readRecordsByIds(mUuids);
+
+        assertThat(getUuids(records)).containsExactlyElementsIn(mUuids);
+        assertThat(getBeatsPerMinute(findRecord(records, mUuids.get(0))))
+                .containsExactly(60, 70);
+        assertThat(getBeatsPerMinute(findRecord(records, mUuids.get(1)))).containsExactly(80);
+        assertThat(getBeatsPerMinute(findRecord(records, mUuids.get(2))))
+                .containsExactly(90, 100);
+        assertThat(getBeatsPerMinute(findRecord(records, mUuids.get(3)))).containsExactly(110);
+    }
+
+    @Test
+    public void readRecordsAndPageToken_pagesAcrossPartitionsInOrder() {
+        ReadRecordsRequestUsingFilters<HeartRateRecord> firstPageRequest =
+                new ReadRecordsRequestUsingFilters.Builder<>(HeartRateRecord.class)
+                        .setTimeRangeFilter(getTimeRangeFilter(JANUARY, MARCH.plusSeconds(1)))
+                        .setPageSize(3)
+                        .build();
+        long expectedToken =
+                PageTokenUtil.encode(
+                        PageTokenWrapper.of(
+                                /* isAscending= */ true, MARCH.toEpochMilli(), /* offset= */ 0));
+
+        Pair<List<RecordInternal<?>>, Long> firstPage =
+                mTransactionManager.readRecordsAndPageToken(
+                        getReadTransactionRequest(firstPageRequest.toReadRecordsRequestParcel()));
+
+        assertThat(getUuids(firstPage.first))
+                .containsExactly(mUuids.get(0), mUuids.get(1), mUuids.get(2))
+                .inOrder();
+        assertThat(getBeatsPerMinute(firstPage.first.get(2))).containsExactly(90, 100);
+        assertThat(firstPage.second).isEqualTo(expectedToken);
+
+        ReadRecordsRequestUsingFilters<HeartRateRecord> secondPageRequest =
+                new ReadRecordsRequestUsingFilters.Builder<>(HeartRateRecord.class)
+                        .setTimeRangeFilter(getTimeRangeFilter(JANUARY, MARCH.plusSeconds(1)))
+                        .setPageSize(3)
+                        .setPageToken(firstPage.second)
+                        .build();
+
+        Pair<List<RecordInternal<?>>, Long> secondPage =
+                mTransactionManager.readRecordsAndPageToken(
+                        getReadTransactionRequest(secondPageRequest.toReadRecordsRequestParcel()));
+
+        assertThat(getUuids(secondPage.first)).containsExactly(mUuids.get(3));
+        assertThat(getBeatsPerMinute(secondPage.first.get(0))).containsExactly(110);
+        assertThat(secondPage.second).isEqualTo(DEFAULT_LONG);
+    }
+
+    @Test
+    public void readRecordsAndPageToken_descending_pagesAcrossPartitionsInOrder() {
+        ReadRecordsRequestUsingFilters<HeartRateRecord> request =
+                new ReadRecordsRequestUsingFilters.Builder<>(HeartRateRecord.class)
+                        .setTimeRangeFilter(getTimeRangeFilter(JANUARY, MARCH.plusSeconds(1)))
+                        .setPageSize(2)
+                        .setAscending(false)
+                        .build();
+        long expectedToken =
+                PageTokenUtil.encode(
+                        PageTokenWrapper.of(
+                                /* isAscending= */ false,
+                                END_OF_JANUARY.toEpochMilli(),
+                                /* offset= */ 0));
+
+        Pair<List<RecordInternal<?>>, Long> page =
+                mTransactionManager.readRecordsAndPageToken(
+                        getReadTransactionRequest(request.toReadRecordsRequestParcel()));
+
+        assertThat(getUuids(page.first)).containsExactly(mUuids.get(3), mUuids.get(2)).inOrder();
+        assertThat(page.second).isEqualTo(expectedToken);
+    }
+
+    @Test
+    public void aggregate_noGroupBy_aggregatesSamplesOfAllPartitions() {
+        AggregateRecordsResponse<Long> response =
+                cast(
+                        aggregate(getTimeRangeFilter(JANUARY, MARCH.plusSeconds(1)))
+                                .getAggregateDataResponse());
+
+        assertThat(response.get(BPM_MIN)).isEqualTo(60L);
+        assertThat(response.get(BPM_MAX)).isEqualTo(110L);
+    }
+
+    @Test
+    public void aggregate_timeRangeOfOnePartition_aggregatesSamplesOfThatPartition() {
+        AggregateRecordsResponse<Long> response =
+                cast(
+                        aggregate(getTimeRangeFilter(FEBRUARY, FEBRUARY.plus(Duration.ofDays(1))))
+                                .getAggregateDataResponse());
+
+        assertThat(response.get(BPM_MIN)).isEqualTo(90L);
+        assertThat(response.get(BPM_MAX)).isEqualTo(100L);
+    }
+
+    @Test
+    public void aggregate_groupByDuration_aggregatesSamplesOfEachGroup() {
+        Instant startTime = Instant.parse("2020-01-01T00:00:00Z");
+        Duration groupDuration = Duration.ofDays(28);
+        AggregateDataResponseParcel parcel =
+                aggregate(
+                        new AggregateDataRequestParcel(
+                                createAggregateRecordsRequest(
+                                        getTimeRangeFilter(
+                                                startTime,
+                                                startTime.plus(groupDuration.multipliedBy(3)))),
+                                groupDuration));
+
+        List<AggregateRecordsGroupedByDurationResponse<Long>> groups = new ArrayList<>();
+        for (AggregateRecordsGroupedByDurationResponse<?> group :
+                parcel.getAggregateDataResponseGroupedByDuration()) {
+            groups.add(cast(group));
+        }
+
+        assertThat(groups).hasSize(3);
+        assertThat(groups.get(0).get(BPM_MIN)).isEqualTo(60L);
+        assertThat(groups.get(0).get(BPM_MAX)).isEqualTo(70L);
+        assertThat(groups.get(1).get(BPM_MIN)).isEqualTo(80L);
+        assertThat(groups.get(1).get(BPM_MAX)).isEqualTo(100L);
+        assertThat(groups.get(2).get(BPM_MIN)).isEqualTo(110L);
+        assertThat(groups.get(2).get(BPM_MAX)).isEqualTo(110L);
+    }
+
+    @Test
+    public void aggregate_groupByPeriodInLocalTime_aggregatesSamplesOfEachLocalMonth() {
+        LocalTimeRangeFilter filter =
+                new LocalTimeRangeFilter.Builder()
+                        .setStartTime(LocalDateTime.of(2020, 1, 1, 0, 0))
+                        .setEndTime(LocalDateTime.of(2020, 4, 1, 0, 0))
+                        .build();
+        AggregateDataResponseParcel parcel =
+                aggregate(
+                        new AggregateDataRequestParcel(
+                                createAggregateRecordsRequest(filter), Period.ofMonths(1)));
+
+        List<AggregateRecordsGroupedByPeriodResponse<Long>> groups = new ArrayList<>();
+        for (AggregateRecordsGroupedByPeriodResponse<?> group :
+                parcel.getAggregateDataResponseGroupedByPeriod()) {
+            groups.add(cast(group));
+        }
+
+        // The end of January record is in February in local time.
+        assertThat(groups).hasSize(3);
+        assertThat(groups.get(0).get(BPM_MIN)).isEqualTo(60L);
+        assertThat(groups.get(0).get(BPM_MAX)).isEqualTo(70L);
+        assertThat(groups.get(1).get(BPM_MIN)).isEqualTo(80L);
+        assertThat(groups.get(1).get(BPM_MAX)).isEqualTo(100L);
+        assertThat(groups.get(2).get(BPM_MIN)).isEqualTo(110L);
+        assertThat(groups.get(2).get(BPM_MAX)).isEqualTo(110L);
+    }
+
+    @Test
+    public void updateAll_recordMovedToAnotherMonth_movesSamplesToItsPartition() {
+        Instant newStartTime = Instant.parse("2020-03-20T10:00:00Z");
+        RecordInternal<?> updatedRecord =
+                createHeartRateRecord(newStartTime, /* zoneOffsetSeconds= */ 0, 120)
+                        .setUuid(mUuids.get(0));
+
+        mTransactionManager.updateAll(
+                new UpsertTransactionRequest(
+                        TEST_PACKAGE_NAME,
+                        List.of(updatedRecord),
+                        mContext,
+                        /* isInsertRequest= */ false,
+                        /* skipPackageNameAndLogs= */ false));
+
+        assertThat(
+                        mTransactionManager.getNumberOfEntriesInTheTable(
+                                SERIES_TABLE_NAME + "_p202001"))
+                .isEqualTo(1);
+        assertThat(
+                        mTransactionManager.getNumberOfEntriesInTheTable(
+                                SERIES_TABLE_NAME + "_p202003"))
+                .isEqualTo(2);
+        List<RecordInternal<?>> records = readRecordsByIds(List.of(mUuids.get(0)));
+        assertThat(records).hasSize(1);
+        assertThat(((HeartRateRecordInternal) records.get(0)).getStartTimeInMillis())
+                .isEqualTo(newStartTime.toEpochMilli());
+        assertThat(getBeatsPerMinute(records.get(0))).containsExactly(120);
+        AggregateRecordsResponse<Long> january =
+                cast(
+                        aggregate(
+                                        getTimeRangeFilter(
+                                                Instant.parse("2020-01-01T00:00:00Z"),
+                                                Instant.parse("2020-02-01T00:00:00Z")))
+                                .getAggregateDataResponse());
+        assertThat(january.get(BPM_MIN)).isEqualTo(80L);
+        assertThat(january.get(BPM_MAX)).isEqualTo(80L);
+    }
+
+    @Test
+    public void startAutoDelete_dropsPartitionsOfStaleRecords() {
+        // Records starting before March are stale.
+        int retentionPeriodInDays =
+                (int)
+                        Duration.between(Instant.parse("2020-03-01T00:00:00Z"), Instant.now())
+                                .toDays();
+        AutoDeleteService.setRecordRetentionPeriodInDays(retentionPeriodInDays);
+
+        AutoDeleteService.startAutoDelete(mContext);
+
+        assertThat(getPartitions()).containsExactly(SERIES_TABLE_NAME + "_p202003");
+        assertThat(
+                        mTransactionManager.getNumberOfEntriesInTheTable(
+                                HeartRateRecordHelper.TABLE_NAME))
+                .isEqualTo(1);
+        assertThat(getUuids(readRecordsByIds(mUuids))).containsExactly(mUuids.get(3));
+    }
+
+    private List<String> getPartitions() {
+        List<String> partitions = new ArrayList<>();
+        mTransactionManager.runAsTransaction(
+                db -> partitions.addAll(TablePartitions.getPartitions(db, SERIES_TABLE_NAME)));
+        return partitions;
+    }
+
+    private List<RecordInternal<?>> readRecordsByIds(List<String> uuids) {
+        ReadRecordsRequestUsingIds.Builder<HeartRateRecord> builder =
+                new ReadRecordsRequestUsingIds.Builder<>(HeartRateRecord.class);
+        uuids.forEach(builder::addId);
+        ReadTransactionRequest request =
+                getReadTransactionRequest(builder.build().toReadRecordsRequestParcel());
+        return mTransactionManager.readRecordsByIds(request);
+    }
+
+    private static AggregateDataResponseParcel aggregate(TimeRangeFilter filter) {
+        return aggregate(new AggregateDataRequestParcel(createAggregateRecordsRequest(filter)));
+    }
+
+    private static AggregateDataResponseParcel aggregate(AggregateDataRequestParcel parcel) {
+        return new AggregateTransactionRequest(TEST_PACKAGE_NAME, parcel, /* startDateAccess= */ 0)
+                .getAggregateDataResponseParcel();
+    }
+
+    private static AggregateRecordsRequest<Long> createAggregateRecordsRequest(
+            TimeRangeFilter filter) {
+        return new AggregateRecordsRequest.Builder<Long>(filter)
+                .addAggregationType(BPM_MIN)
+                .addAggregationType(BPM_MAX)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object object) {
+        return (T) object;
+    }
+
+    private static TimeRangeFilter getTimeRangeFilter(Instant startTime, Instant endTime) {
+        return new TimeInstantRangeFilter.Builder()
+                .setStartTime(startTime)
+                .setEndTime(endTime)
+                .build();
+    }
+
+    private static HeartRateRecordInternal findRecord(
+            List<RecordInternal<?>> records, String uuid) {
+        return (HeartRateRecordInternal)
+                records.stream()
+                        .filter(record -> record.getUuid().toString().equals(uuid))
+                        .findFirst()
+                        .orElseThrow();
+    }
+
+    private static List<String> getUuids(List<RecordInternal<?>> records) {
+        return records.stream().map(record -> record.getUuid().toString()).toList();
+    }
+
+    private static List<Integer> getBeatsPerMinute(RecordInternal<?> record) {
+        return ((HeartRateRecordInternal) record)
+                .getSamples().stream().map(HeartRateSample::getBeatsPerMinute).toList();
+    }
+
+    private static HeartRateRecordInternal createHeartRateRecord(
+            Instant startTime, int zoneOffsetSeconds, int... beatsPerMinute) {
+        Set<HeartRateSample> samples = new HashSet<>();
+        for (int i = 0; i < beatsPerMinute.length; i++) {
+            samples.add(
+                    new HeartRateSample(
+                            beatsPerMinute[i], startTime.plusSeconds(i).toEpochMilli()));
+        }
+        HeartRateRecordInternal record = new HeartRateRecordInternal().setSamples(samples);
+        record.setStartTime(startTime.toEpochMilli())
+                .setStartZoneOffset(zoneOffsetSeconds)
+                .setEndTime(startTime.plus(Duration.ofMinutes(10)).toEpochMilli())
+                .setEndZoneOffset(zoneOffsetSeconds);
+        return record;
+    }
+
+    private static void setSeriesTablePartitionsEnabled(boolean enabled) {
+        HealthConnectDeviceConfigManager.getInitialisedInstance()
+                .onPropertiesChanged(
+                        new DeviceConfig.Properties.Builder(DeviceConfig.NAMESPACE_HEALTH_FITNESS)
+                                .setBoolean(ENABLE_SERIES_TABLE_PARTITIONS_FLAG, enabled)
+                                .build());
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.android.server.healthconnect.storage;
 
+import static android.health.connect.Constants.DEFAULT_LONG;
+
+import static com.android.server.healthconnect.storage.datatypehelpers.StepsRecordHelper.STEPS_TABLE_NAME;
 import static com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils.createBloodPressureRecord;
 import static com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils.createStepsRecord;
 import static com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils.getReadTransactionRequest;
@@ -24,6 +27,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.junit.Assert.assertThrows;
 
+import android.database.DatabaseUtils;
 import android.health.connect.ReadRecordsRequestUsingFilters;
 import android.health.connect.ReadRecordsRequestUsingIds;
 import android.health.connect.TimeInstantRangeFilter;
@@ -31,17 +35,26 @@ import android.health.connect.datatypes.BloodPressureRecord;
 import android.health.connect.datatypes.RecordTypeIdentifier;
 import android.health.connect.datatypes.StepsRecord;
 import android.health.connect.internal.datatypes.RecordInternal;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Pair;
 
 import androidx.test.runner.AndroidJUnit4;
 
 import com.android.server.healthconnect.HealthConnectUserContext;
+import com.android.server.healthconnect.storage.datatypehelpers.AccessLogsHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.DatabaseHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.HealthConnectDatabaseTestRule;
+import com.android.server.healthconnect.storage.datatypehelpers.RecordHelper;
 import com.android.server.healthconnect.storage.datatypehelpers.TransactionTestUtils;
+import com.android.server.healthconnect.storage.request.DeleteTableRequest;
+import com.android.server.healthconnect.storage.request.ReadTableRequest;
 import com.android.server.healthconnect.storage.request.ReadTransactionRequest;
 import com.android.server.healthconnect.storage.utils.PageTokenUtil;
 import com.android.server.healthconnect.storage.utils.PageTokenWrapper;
+import com.android.server.healthconnect.storage.utils.RecordHelperProvider;
+import com.android.server.healthconnect.storage.utils.TempUuidsTable;
+import com.android.server.healthconnect.storage.utils.WriteGenerations;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -53,8 +66,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 @RunWith(AndroidJUnit4.class)
 public class TransactionManagerTest {
@@ -79,6 +94,18 @@ public class TransactionManagerTest {
         TransactionManager.clearInstance();
     }
 
+    @Test
+    public void read_cancelled_throwsOperationCanceledException() {
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.cancel();
+
+        assertThrows(
+                OperationCanceledException.class,
+                () ->
+                        mTransactionManager.read(
+                                new ReadTableRequest(STEPS_TABLE_NAME), cancellationSignal));
+    }
+
     @Test
     public void readRecordsById_returnsAllRecords() {
         long timeMillis = 456;
@@ -128,6 +155,62 @@ public class TransactionManagerTest {
         assertThat(records.get(1).getUuid()).isEqualTo(UUID.fromString(uuids.get(1)));
     }
 
+    @Test
+    public void readRecordsById_manyIds_returnsAllRecords() {
+        List<RecordInternal<?>> steps = new ArrayList<>();
+        for (int i = 0; i <= TempUuidsTable.MIN_UUIDS_COUNT; i++) {
+            steps.add(createStepsRecord(i * 10, i * 10 + 5, 100));
+        }
+        List<UUID> uuids =
+                mTransactionTestUtils.insertRecords(TEST_PACKAGE_NAME, steps).stream()
+                        .map(UUID::fromString)
+                        .toList();
+        List<UUID> uuidsToRead = new ArrayList<>(uuids);
+        uuidsToRead.add(UUID.randomUUID());
+
+        ReadTransactionRequest request =
+                getReadTransactionRequest(
+                        ImmutableMap.of(RecordTypeIdentifier.RECORD_TYPE_STEPS, uuidsToRead));
+
+        List<RecordInternal<?>> records = mTransactionManager.readRecordsByIds(request);
+        assertThat(records.stream().map(RecordInternal::getUuid).toList())
+                .containsExactlyElementsIn(uuids);
+    }
+
+    @Test
+    public void deleteByIds_manyIds_deletesAllRecords() {
+        List<RecordInternal<?>> steps = new ArrayList<>();
+        for (int i = 0; i <= TempUuidsTable.MIN_UUIDS_COUNT; i++) {
+            steps.add(createStepsRecord(i * 10, i * 10 + 5, 100));
+        }
+        List<UUID> uuids =
+                mTransactionTestUtils.insertRecords(TEST_PACKAGE_NAME, steps).stream()
+                        .map(UUID::fromString)
+                        .toList();
+        RecordHelper<?> helper =
+                RecordHelperProvider.getInstance()
+                        .getRecordHelper(RecordTypeIdentifier.RECORD_TYPE_STEPS);
+
+        mTransactionManager.deleteWithoutChangeLogs(List.of(helper.getDeleteTableRequest(uuids)));
+
+        ReadTransactionRequest request =
+                getReadTransactionRequest(
+                        ImmutableMap.of(RecordTypeIdentifier.RECORD_TYPE_STEPS, uuids));
+        assertThat(mTransactionManager.readRecordsByIds(request)).isEmpty();
+
+        // The temp table only exists on the connection of the transaction which loaded it.
+        AtomicLong loadedUuidsCount = new AtomicLong();
+        mTransactionManager.runAsTransaction(
+                db -> {
+                    db.execSQL(
+                            "CREATE TEMP TABLE IF NOT EXISTS uuid_filters_table"
+                                    + " (filter_id INTEGER, uuid BLOB)");
+                    loadedUuidsCount.set(
+                            DatabaseUtils.queryNumEntries(db, "temp.uuid_filters_table"));
+                });
+        assertThat(loadedUuidsCount.get()).isEqualTo(0);
+    }
+
     @Test
     public void readRecordsById_readByFilterRequest_throws() {
         ReadRecordsRequestUsingFilters<StepsRecord> request =
@@ -195,4 +278,129 @@ public class TransactionManagerTest {
                         () -> mTransactionManager.readRecordsAndPageToken(readTransactionRequest));
         assertThat(thrown).hasMessageThat().contains("Expect read by filter request");
     }
+
+    @Test
+    public void readRecordsAndPageTokens_returnsResultForEachRequest() {
+        List<String> uuids =
+                mTransactionTestUtils.insertRecords(
+                        TEST_PACKAGE_NAME,
+                        createStepsRecord(400, 500, 100),
+                        createStepsRecord(500, 600, 100),
+                        createBloodPressureRecord(700, 120.0, 80.0));
+
+        ReadRecordsRequestUsingFilters<StepsRecord> stepsRequest =
+                new ReadRecordsRequestUsingFilters.Builder<>(StepsRecord.class)
+                        .setTimeRangeFilter(
+                                new TimeInstantRangeFilter.Builder()
+                                        .setStartTime(Instant.EPOCH)
+                                        .setEndTime(Instant.ofEpochMilli(1000))
+                                        .build())
+                        .setPageSize(1)
+                        .build();
+        ReadRecordsRequestUsingIds<BloodPressureRecord> bloodPressureRequest =
+                new ReadRecordsRequestUsingIds.Builder<>(BloodPressureRecord.class)
+                        .addId(uuids.get(2))
+                        .build();
+        long expectedStepsToken =
+                PageTokenUtil.encode(
+                        PageTokenWrapper.of(
+                                /* isAscending= */ true, /* timeMillis= */ 500, /* offset= */ 0));
+
+        List<Pair<List<RecordInternal<?>>, Long>> results =
+                mTransactionManager.readRecordsAndPageTokens(
+                        List.of(
+                                getReadTransactionRequest(
+                                        stepsRequest.toReadRecordsRequestParcel()),
+                                getReadTransactionRequest(
+                                        bloodPressureRequest.toReadRecordsRequestParcel())));
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).first).hasSize(1);
+        assertThat(results.get(0).first.get(0).getUuid()).isEqualTo(UUID.fromString(uuids.get(0)));
+        assertThat(results.get(0).second).isEqualTo(expectedStepsToken);
+        assertThat(results.get(1).first).hasSize(1);
+        assertThat(results.get(1).first.get(0).getUuid()).isEqualTo(UUID.fromString(uuids.get(2)));
+        assertThat(results.get(1).second).isEqualTo(DEFAULT_LONG);
+    }
+
+    @Test
+    public void readRecordsAndPageTokens_cancelled_throwsOperationCanceledException() {
+        String uuid =
+                mTransactionTestUtils
+                        .insertRecords(TEST_PACKAGE_NAME, createBloodPressureRecord(700, 120, 80))
+                        .get(0);
+        ReadRecordsRequestUsingIds<BloodPressureRecord> request =
+                new ReadRecordsRequestUsingIds.Builder<>(BloodPressureRecord.class)
+                        .addId(uuid)
+                        .build();
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        cancellationSignal.cancel();
+
+        assertThrows(
+                OperationCanceledException.class,
+                () ->
+                        mTransactionManager.readRecordsAndPageTokens(
+                                List.of(
+                                        getReadTransactionRequest(
+                                                request.toReadRecordsRequestParcel())),
+                                cancellationSignal));
+    }
+
+    @Test
+    public void insertAll_duplicateRecord_updatesExistingRecord() {
+        String uuid =
+                mTransactionTestUtils
+                        .insertRecords(TEST_PACKAGE_NAME, createStepsRecord(100, 200, 10))
+                        .get(0);
+
+        List<String> uuids =
+                mTransactionTestUtils.insertRecords(
+                        TEST_PACKAGE_NAME,
+                        createStepsRecord(100, 200, 20),
+                        createStepsRecord(300, 400, 30));
+
+        assertThat(uuids.get(0)).isEqualTo(uuid);
+        assertThat(uuids.get(1)).isNotEqualTo(uuid);
+        assertThat(mTransactionManager.getNumberOfEntriesInTheTable(STEPS_TABLE_NAME))
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void insertAll_recordDeletedSinceInsert_insertsRecord() {
+        mTransactionTestUtils.insertRecords(TEST_PACKAGE_NAME, createStepsRecord(100, 200, 10));
+        mTransactionManager.delete(new DeleteTableRequest(STEPS_TABLE_NAME));
+
+        mTransactionTestUtils.insertRecords(TEST_PACKAGE_NAME, createStepsRecord(100, 200, 20));
+
+        assertThat(mTransactionManager.getNumberOfEntriesInTheTable(STEPS_TABLE_NAME))
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void runAsTransaction_withTableNames_onlyInvalidatesTheseTables() {
+        WriteGenerations writeGenerations = mTransactionManager.getWriteGenerations();
+        long stepsGeneration = writeGenerations.getGeneration(STEPS_TABLE_NAME);
+        long accessLogsGeneration = writeGenerations.getGeneration(AccessLogsHelper.TABLE_NAME);
+
+        mTransactionManager.runAsTransaction(List.of(AccessLogsHelper.TABLE_NAME), db -> {});
+
+        assertThat(writeGenerations.getGeneration(STEPS_TABLE_NAME)).isEqualTo(stepsGeneration);
+        assertThat(writeGenerations.getGeneration(AccessLogsHelper.TABLE_NAME))
+                .isGreaterThan(accessLogsGeneration);
+    }
+
+    @Test
+    public void vacuum_releasesFreePages() {
+        List<RecordInternal<?>> records = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            records.add(createStepsRecord(i * 1000L, i * 1000L + 500, i));
+        }
+        mTransactionTestUtils.insertRecords(TEST_PACKAGE_NAME, records);
+        mTransactionManager.delete(new DeleteTableRequest(STEPS_TABLE_NAME));
+        assertThat(mTransactionManager.getFreePageCount()).isGreaterThan(0);
+
+        mTransactionManager.vacuum();
+
+        assertThat(mTransactionManager.getFreePageCount()).isEqualTo(0);
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage;
+
+import static com.android.server.healthconnect.storage.WalCheckpointScheduler.IDLE_CHECKPOINT_DELAY_MILLIS;
+import static com.android.server.healthconnect.storage.WalCheckpointScheduler.WRITES_PER_PASSIVE_CHECKPOINT;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Pair;
+
+import com.android.dx.mockito.inline.extended.ExtendedMockito;
+import com.android.modules.utils.testing.ExtendedMockitoRule;
+import com.android.server.healthconnect.HealthConnectThreadScheduler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.quality.Strictness;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class WalCheckpointSchedulerTest {
+    private static final String PASSIVE_CHECKPOINT = "PRAGMA wal_checkpoint(PASSIVE)";
+    private static final String TRUNCATE_CHECKPOINT = "PRAGMA wal_checkpoint(TRUNCATE)";
+
+    @Rule
+    public final ExtendedMockitoRule mExtendedMockitoRule =
+            new ExtendedMockitoRule.Builder(this)
+                    .mockStatic(HealthConnectThreadScheduler.class)
+                    .mockStatic(SystemClock.class)
+                    .setStrictness(Strictness.LENIENT)
+                    .build();
+
+    @Mock private SQLiteDatabase mDatabase;
+    @Mock private Cursor mCursor;
+
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private final List<Pair<Runnable, Long>> mDelayedTasks = new ArrayList<>();
+    private long mUptimeMillis = 1000;
+    private WalCheckpointScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        when(mDatabase.isWriteAheadLoggingEnabled()).thenReturn(true);
+        when(mDatabase.rawQuery(any(), isNull())).thenReturn(mCursor);
+        ExtendedMockito.doAnswer(invocation -> mUptimeMillis).when(SystemClock::uptimeMillis);
+        ExtendedMockito.doAnswer(
+                        invocation -> {
+                            mTasks.add(invocation.getArgument(0));
+                            return null;
+                        })
+                .when(() -> HealthConnectThreadScheduler.scheduleInternalTask(any()));
+        ExtendedMockito.doAnswer(
+                        invocation -> {
+                            mDelayedTasks.add(
+                                    new Pair<>(
+                                            invocation.getArgument(0),
+                                            invocation.getArgument(1)));
+                            return null;
+                        })
+                .when(() -> HealthConnectThreadScheduler.scheduleInternalTask(any(), anyLong()));
+        mScheduler = new WalCheckpointScheduler(() -> mDatabase);
+    }
+
+    @Test
+    public void testOnWrite_belowWriteThreshold_noPassiveCheckpoint() {
+        write(WRITES_PER_PASSIVE_CHECKPOINT - 1);
+
+        assertThat(mTasks).isEmpty();
+    }
+
+    @Test
+    public void testOnWrite_writeThresholdReached_runsPassiveCheckpoint() {
+        write(WRITES_PER_PASSIVE_CHECKPOINT);
+
+        assertThat(mTasks).hasSize(1);
+        mTasks.remove(0).run();
+        verify(mDatabase).rawQuery(eq(PASSIVE_CHECKPOINT), isNull());
+        verify(mDatabase, never()).rawQuery(eq(TRUNCATE_CHECKPOINT), isNull());
+    }
+
+    @Test
+    public void testOnWrite_passiveCheckpointPending_doesNotScheduleAnother() {
+        write(WRITES_PER_PASSIVE_CHECKPOINT * 3);
+
+        assertThat(mTasks).hasSize(1);
+
+        // Once it ran, the writes are counted again from zero.
+        mTasks.remove(0).run();
+        write(WRITES_PER_PASSIVE_CHECKPOINT - 1);
+        assertThat(mTasks).isEmpty();
+        write(1);
+        assertThat(mTasks).hasSize(1);
+    }
+
+    @Test
+    public void testOnWrite_idleDelayPassed_runsTruncatingCheckpoint() {
+        write(1);
+
+        assertThat(mDelayedTasks).hasSize(1);
+        assertThat(mDelayedTasks.get(0).second).isEqualTo(IDLE_CHECKPOINT_DELAY_MILLIS);
+        mUptimeMillis += IDLE_CHECKPOINT_DELAY_MILLIS;
+        mDelayedTasks.remove(0).first.run();
+        verify(mDatabase).rawQuery(eq(TRUNCATE_CHECKPOINT), isNull());
+        assertThat(mDelayedTasks).isEmpty();
+    }
+
+    @Test
+    public void testOnWrite_writeDuringIdleDelay_postponesTruncatingCheckpoint() {
+        write(1);
+        mUptimeMillis += IDLE_CHECKPOINT_DELAY_MILLIS / 2;
+        write(1);
+
+        // Only one idle checkpoint is scheduled at a time.
+        assertThat(mDelayedTasks).hasSize(1);
+        mUptimeMillis += IDLE_CHECKPOINT_DELAY_MILLIS / 2;
+        mDelayedTasks.remove(0).first.run();
+        verify(mDatabase, never()).rawQuery(eq(TRUNCATE_CHECKPOINT), isNull());
+        assertThat(mDelayedTasks).hasSize(1);
+        assertThat(mDelayedTasks.get(0).second).isEqualTo(IDLE_CHECKPOINT_DELAY_MILLIS / 2);
+
+        mUptimeMillis += IDLE_CHECKPOINT_DELAY_MILLIS / 2;
+        mDelayedTasks.remove(0).first.run();
+        verify(mDatabase, times(1)).rawQuery(eq(TRUNCATE_CHECKPOINT), isNull());
+
+        // Writes after the checkpoint schedule a new one.
+        write(1);
+        assertThat(mDelayedTasks).hasSize(1);
+    }
+
+    @Test
+    public void testCheckpoint_writeAheadLoggingDisabled_doesNothing() {
+        when(mDatabase.isWriteAheadLoggingEnabled()).thenReturn(false);
+
+        mScheduler.checkpoint(/* truncate= */ true);
+
+        verify(mDatabase, never()).rawQuery(any(), any());
+    }
+
+    private void write(int count) {
+        for (int i = 0; i < count; i++) {
+            mScheduler.onWrite();
+        }
+    }
+}
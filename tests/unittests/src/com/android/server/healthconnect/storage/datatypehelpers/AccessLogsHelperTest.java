@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.datatypehelpers;
+
+import static android.health.connect.accesslog.AccessLog.OperationType.OPERATION_TYPE_READ;
+import static android.health.connect.datatypes.RecordTypeIdentifier.RECORD_TYPE_STEPS;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.health.connect.accesslog.AccessLog;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.healthconnect.HealthConnectUserContext;
+import com.android.server.healthconnect.storage.TransactionManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class AccessLogsHelperTest {
+    private static final String TEST_PACKAGE_NAME = "package.name";
+
+    @Rule public final HealthConnectDatabaseTestRule testRule = new HealthConnectDatabaseTestRule();
+
+    private TransactionManager mTransactionManager;
+    private AccessLogsHelper mAccessLogsHelper;
+
+    @Before
+    public void setup() {
+        HealthConnectUserContext context = testRule.getUserContext();
+        mTransactionManager = TransactionManager.getInstance(context);
+        new TransactionTestUtils(context, mTransactionManager).insertApp(TEST_PACKAGE_NAME);
+        mAccessLogsHelper = AccessLogsHelper.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.clearAllData(mTransactionManager);
+        TransactionManager.clearInstance();
+    }
+
+    @Test
+    public void queryAccessLogs_returnsPendingAccessLogs() {
+        mAccessLogsHelper.addAccessLog(
+                TEST_PACKAGE_NAME, List.of(RECORD_TYPE_STEPS), OPERATION_TYPE_READ);
+        mAccessLogsHelper.addAccessLog(
+                TEST_PACKAGE_NAME, List.of(RECORD_TYPE_STEPS), OPERATION_TYPE_READ);
+
+        List<AccessLog> accessLogs = mAccessLogsHelper.queryAccessLogs();
+
+        assertThat(accessLogs).hasSize(2);
+        assertThat(accessLogs.get(0).getPackageName()).isEqualTo(TEST_PACKAGE_NAME);
+        assertThat(accessLogs.get(0).getOperationType()).isEqualTo(OPERATION_TYPE_READ);
+    }
+
+    @Test
+    public void flushAccessLogs_writesPendingAccessLogsOnce() {
+        mAccessLogsHelper.addAccessLog(
+                TEST_PACKAGE_NAME, List.of(RECORD_TYPE_STEPS), OPERATION_TYPE_READ);
+
+        mAccessLogsHelper.flushAccessLogs();
+        mAccessLogsHelper.flushAccessLogs();
+
+        assertThat(mTransactionManager.getNumberOfEntriesInTheTable(AccessLogsHelper.TABLE_NAME))
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void clearAllData_dropsPendingAccessLogs() {
+        mAccessLogsHelper.addAccessLog(
+                TEST_PACKAGE_NAME, List.of(RECORD_TYPE_STEPS), OPERATION_TYPE_READ);
+
+        DatabaseHelper.clearAllData(mTransactionManager);
+
+        assertThat(mAccessLogsHelper.queryAccessLogs()).isEmpty();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.datatypehelpers;
+
+import static android.health.connect.Constants.DELETE;
+import static android.health.connect.Constants.UPSERT;
+import static android.health.connect.datatypes.RecordTypeIdentifier.RECORD_TYPE_STEPS;
+
+import static com.android.server.healthconnect.storage.datatypehelpers.ChangeLogsHelper.COMPACTION_WINDOW_ROWS;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.health.connect.changelog.ChangeLogTokenRequest;
+import android.health.connect.datatypes.StepsRecord;
+import android.util.Pair;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.healthconnect.HealthConnectUserContext;
+import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.datatypehelpers.ChangeLogsHelper.ChangeLogs;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RunWith(AndroidJUnit4.class)
+public class ChangeLogsHelperTest {
+    private static final String TEST_PACKAGE_NAME = "package.name";
+    private static final UUID UUID_1 = UUID.randomUUID();
+    private static final UUID UUID_2 = UUID.randomUUID();
+
+    @Rule public final HealthConnectDatabaseTestRule testRule = new HealthConnectDatabaseTestRule();
+
+    private TransactionManager mTransactionManager;
+    private ChangeLogsHelper mChangeLogsHelper;
+    private long mAppId;
+
+    @Before
+    public void setup() {
+        HealthConnectUserContext context = testRule.getUserContext();
+        mTransactionManager = TransactionManager.getInstance(context);
+        new TransactionTestUtils(context, mTransactionManager).insertApp(TEST_PACKAGE_NAME);
+        mChangeLogsHelper = ChangeLogsHelper.getInstance();
+        mAppId = AppInfoHelper.getInstance().getAppInfoId(TEST_PACKAGE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.clearAllData(mTransactionManager);
+        TransactionManager.clearInstance();
+    }
+
+    @Test
+    public void compactChangeLogs_keepsLatestChangeOfEachRecord() {
+        getToken();
+        insertChangeLog(UPSERT, List.of(UUID_1));
+        insertChangeLog(UPSERT, List.of(UUID_1, UUID_2));
+        insertChangeLog(UPSERT, List.of(UUID_1));
+        insertChangeLog(DELETE, List.of(UUID_2));
+
+        Pair<Long, Long> uuidCounts = mChangeLogsHelper.compactChangeLogs();
+
+        assertThat(uuidCounts.first).isEqualTo(5);
+        assertThat(uuidCounts.second).isEqualTo(2);
+        Map<Integer, ChangeLogs> changeLogs = mChangeLogsHelper.getChangeLogs(0, Long.MAX_VALUE);
+        assertThat(changeLogs.get(UPSERT).getUUIds()).containsExactly(UUID_1);
+        assertThat(changeLogs.get(DELETE).getUUIds()).containsExactly(UUID_2);
+        assertThat(mTransactionManager.getNumberOfEntriesInTheTable(ChangeLogsHelper.TABLE_NAME))
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void compactChangeLogs_severalWindows_keepsLatestChangeOfEachRecord() {
+        getToken();
+        insertChangeLog(UPSERT, List.of(UUID_2));
+        for (int i = 0; i < COMPACTION_WINDOW_ROWS; i++) {
+            insertChangeLog(UPSERT, List.of(UUID_1));
+        }
+        insertChangeLog(UPSERT, List.of(UUID_2));
+
+        Pair<Long, Long> uuidCounts = mChangeLogsHelper.compactChangeLogs();
+
+        assertThat(uuidCounts.first).isEqualTo(COMPACTION_WINDOW_ROWS + 2);
+        assertThat(uuidCounts.second).isEqualTo(2);
+        assertThat(mTransactionManager.getNumberOfEntriesInTheTable(ChangeLogsHelper.TABLE_NAME))
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void compactChangeLogs_keepsChangeLogsNoTokenReturns() {
+        insertChangeLog(UPSERT, List.of(UUID_1));
+        getToken();
+        insertChangeLog(UPSERT, List.of(UUID_1));
+        insertChangeLog(UPSERT, List.of(UUID_1));
+
+        Pair<Long, Long> uuidCounts = mChangeLogsHelper.compactChangeLogs();
+
+        assertThat(uuidCounts.first).isEqualTo(2);
+        assertThat(uuidCounts.second).isEqualTo(1);
+        assertThat(mTransactionManager.getNumberOfEntriesInTheTable(ChangeLogsHelper.TABLE_NAME))
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void compactChangeLogs_noToken_keepsChangeLogs() {
+        insertChangeLog(UPSERT, List.of(UUID_1));
+        insertChangeLog(UPSERT, List.of(UUID_1));
+
+        Pair<Long, Long> uuidCounts = mChangeLogsHelper.compactChangeLogs();
+
+        assertThat(uuidCounts.first).isEqualTo(0);
+        assertThat(mTransactionManager.getNumberOfEntriesInTheTable(ChangeLogsHelper.TABLE_NAME))
+                .isEqualTo(2);
+    }
+
+    private void getToken() {
+        ChangeLogsRequestHelper.getInstance()
+                .getToken(
+                        TEST_PACKAGE_NAME,
+                        new ChangeLogTokenRequest.Builder()
+                                .addRecordType(StepsRecord.class)
+                                .build());
+    }
+
+    private void insertChangeLog(int operationType, List<UUID> uuids) {
+        mTransactionManager.insertAll(
+                new ChangeLogs(operationType, TEST_PACKAGE_NAME, System.currentTimeMillis())
+                        .addUUIDs(RECORD_TYPE_STEPS, mAppId, uuids)
+                        .getUpsertTableRequests());
+    }
+}
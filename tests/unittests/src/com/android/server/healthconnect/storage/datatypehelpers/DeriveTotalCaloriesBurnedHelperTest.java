@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.datatypehelpers;
+
+import static com.android.server.healthconnect.storage.datatypehelpers.IntervalRecordHelper.START_TIME_COLUMN_NAME;
+import static com.android.server.healthconnect.storage.datatypehelpers.TotalCaloriesBurnedRecordHelper.TOTAL_CALORIES_BURNED_RECORD_TABLE_NAME;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.Cursor;
+import android.health.connect.internal.datatypes.ActiveCaloriesBurnedRecordInternal;
+import android.health.connect.internal.datatypes.BasalMetabolicRateRecordInternal;
+import android.health.connect.internal.datatypes.RecordInternal;
+import android.health.connect.internal.datatypes.TotalCaloriesBurnedRecordInternal;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.healthconnect.HealthConnectUserContext;
+import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.request.ReadTableRequest;
+import com.android.server.healthconnect.storage.utils.OrderByClause;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class DeriveTotalCaloriesBurnedHelperTest {
+    private static final String TEST_PACKAGE_NAME = "package.name";
+    private static final String OTHER_PACKAGE_NAME = "other.package.name";
+    private static final String ENERGY_COLUMN_NAME = "energy";
+    private static final long START_TIME = Instant.parse("2023-05-01T00:00:00Z").toEpochMilli();
+    private static final long MINUTE = Duration.ofMinutes(1).toMillis();
+    // Calories burned in 30 minutes at a basal metabolic rate of 100 watts.
+    private static final double BASAL_CALORIES_PER_HALF_HOUR = 43000;
+
+    @Rule public final HealthConnectDatabaseTestRule testRule = new HealthConnectDatabaseTestRule();
+
+    private TransactionTestUtils mTransactionTestUtils;
+    private TransactionManager mTransactionManager;
+
+    @Before
+    public void setup() {
+        HealthConnectUserContext context = testRule.getUserContext();
+        mTransactionManager = TransactionManager.getInstance(context);
+        mTransactionTestUtils = new TransactionTestUtils(context, mTransactionManager);
+        mTransactionTestUtils.insertApp(TEST_PACKAGE_NAME);
+        mTransactionTestUtils.insertApp(OTHER_PACKAGE_NAME);
+        mTransactionTestUtils.insertRecords(
+                TEST_PACKAGE_NAME,
+                new BasalMetabolicRateRecordInternal()
+                        .setBasalMetabolicRate(/* watts */ 100)
+                        .setTime(START_TIME));
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.clearAllData(mTransactionManager);
+        TransactionManager.clearInstance();
+    }
+
+    @Test
+    public void testGetTotalCaloriesBurned_derivesTimeWithoutTotal() {
+        mTransactionTestUtils.insertRecords(
+                TEST_PACKAGE_NAME,
+                List.of(
+                        createTotalCaloriesBurnedRecord(30, 90, 6000),
+                        createActiveCaloriesBurnedRecord(120, 180, 3000)));
+
+        double[] totals =
+                getTotalCaloriesBurned(
+                        List.of(TEST_PACKAGE_NAME), /* ignoreAppsWithoutPriority= */ true, 4);
+
+        assertThat(totals).hasLength(4);
+        assertThat(totals[0]).isWithin(0.001).of(3000 + BASAL_CALORIES_PER_HALF_HOUR);
+        assertThat(totals[1]).isWithin(0.001).of(3000 + BASAL_CALORIES_PER_HALF_HOUR);
+        assertThat(totals[2]).isWithin(0.001).of(3000 + 2 * BASAL_CALORIES_PER_HALF_HOUR);
+        assertThat(totals[3]).isWithin(0.001).of(2 * BASAL_CALORIES_PER_HALF_HOUR);
+    }
+
+    @Test
+    public void testGetTotalCaloriesBurned_overlappingTotals_takesHighestPriority() {
+        mTransactionTestUtils.insertRecords(
+                OTHER_PACKAGE_NAME, List.of(createTotalCaloriesBurnedRecord(0, 90, 90000)));
+        mTransactionTestUtils.insertRecords(
+                TEST_PACKAGE_NAME, List.of(createTotalCaloriesBurnedRecord(30, 60, 3000)));
+
+        double[] totals =
+                getTotalCaloriesBurned(
+                        List.of(TEST_PACKAGE_NAME, OTHER_PACKAGE_NAME),
+                        /* ignoreAppsWithoutPriority= */ true,
+                        2);
+
+        assertThat(totals[0]).isWithin(0.001).of(30000 + 3000);
+        assertThat(totals[1]).isWithin(0.001).of(30000 + BASAL_CALORIES_PER_HALF_HOUR);
+    }
+
+    @Test
+    public void testGetTotalCaloriesBurned_appWithoutPriority() {
+        mTransactionTestUtils.insertRecords(
+                OTHER_PACKAGE_NAME, List.of(createTotalCaloriesBurnedRecord(0, 60, 6000)));
+
+        assertThat(
+                        getTotalCaloriesBurned(
+                                List.of(TEST_PACKAGE_NAME),
+                                /* ignoreAppsWithoutPriority= */ true,
+                                1)[0])
+                .isWithin(0.001)
+                .of(2 * BASAL_CALORIES_PER_HALF_HOUR);
+        assertThat(
+                        getTotalCaloriesBurned(
+                                List.of(TEST_PACKAGE_NAME),
+                                /* ignoreAppsWithoutPriority= */ false,
+                                1)[0])
+                .isWithin(0.001)
+                .of(6000);
+    }
+
+    private double[] getTotalCaloriesBurned(
+            List<String> priorityPackages, boolean ignoreAppsWithoutPriority, int hours) {
+        List<Long> groupSplits = new ArrayList<>();
+        for (int hour = 0; hour <= hours; hour++) {
+            groupSplits.add(START_TIME + hour * 60 * MINUTE);
+        }
+        List<Long> priorityList =
+                priorityPackages.stream().map(AppInfoHelper.getInstance()::getAppInfoId).toList();
+        DeriveTotalCaloriesBurnedHelper helper =
+                new DeriveTotalCaloriesBurnedHelper(
+                        groupSplits,
+                        priorityList,
+                        ignoreAppsWithoutPriority,
+                        /* useLocalTime= */ false);
+
+        try (Cursor cursor =
+                mTransactionManager.read(
+                        new ReadTableRequest(TOTAL_CALORIES_BURNED_RECORD_TABLE_NAME)
+                                .setOrderBy(
+                                        new OrderByClause()
+                                                .addOrderByClause(START_TIME_COLUMN_NAME, true)))) {
+            return helper.getTotalCaloriesBurned(cursor, ENERGY_COLUMN_NAME);
+        }
+    }
+
+    private static RecordInternal<?> createTotalCaloriesBurnedRecord(
+            int startMinute, int endMinute, double energy) {
+        return new TotalCaloriesBurnedRecordInternal()
+                .setEnergy(energy)
+                .setStartTime(START_TIME + startMinute * MINUTE)
+                .setEndTime(START_TIME + endMinute * MINUTE);
+    }
+
+    private static RecordInternal<?> createActiveCaloriesBurnedRecord(
+            int startMinute, int endMinute, double energy) {
+        return new ActiveCaloriesBurnedRecordInternal()
+                .setEnergy(energy)
+                .setStartTime(START_TIME + startMinute * MINUTE)
+                .setEndTime(START_TIME + endMinute * MINUTE);
+    }
+}
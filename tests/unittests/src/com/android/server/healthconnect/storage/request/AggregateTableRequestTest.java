@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.request;
+
+import static com.android.server.healthconnect.storage.utils.WhereClauses.LogicalOperator.AND;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.health.connect.LocalTimeRangeFilter;
+import android.health.connect.TimeInstantRangeFilter;
+import android.health.connect.TimeRangeFilterHelper;
+import android.health.connect.datatypes.WeightRecord;
+import android.util.ArrayMap;
+
+import com.android.server.healthconnect.storage.datatypehelpers.WeightRecordHelper;
+import com.android.server.healthconnect.storage.utils.WhereClauses;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.util.List;
+import java.util.Map;
+
+public class AggregateTableRequestTest {
+    private static final String TABLE_NAME = "weight_record_table";
+    private static final String TIME_COLUMN_NAME = "time";
+
+    @Test
+    public void testGroupByDuration_computesGroupArithmetically() {
+        AggregateTableRequest request = createRequest();
+        long hourMillis = Duration.ofHours(1).toMillis();
+        request.setGroupBy(
+                TIME_COLUMN_NAME,
+                /* period= */ null,
+                Duration.ofHours(1),
+                new TimeInstantRangeFilter(
+                        Instant.ofEpochMilli(1000),
+                        Instant.ofEpochMilli(1000 + 100 * hourMillis + 5)));
+
+        String command = request.getAggregationCommand();
+
+        assertThat(request.getGroupSplitIntervals()).hasSize(101);
+        assertThat(command)
+                .contains(
+                        "CASE WHEN time >= 1000 AND time < "
+                                + (1000 + 100 * hourMillis + 5)
+                                + " THEN (time - 1000) / "
+                                + hourMillis
+                                + " END");
+        assertThat(command).doesNotContain("time < " + (1000 + hourMillis) + " ");
+    }
+
+    @Test
+    public void testGroupByDays_computesGroupArithmetically() {
+        AggregateTableRequest request = createRequest();
+        LocalDateTime start = LocalDateTime.of(2023, 3, 1, 0, 0);
+        request.setGroupBy(
+                TIME_COLUMN_NAME,
+                Period.ofDays(1),
+                /* duration= */ null,
+                new LocalTimeRangeFilter.Builder()
+                        .setStartTime(start)
+                        .setEndTime(start.plusDays(60))
+                        .build());
+
+        assertThat(request.getAggregationCommand())
+                .contains(
+                        "THEN (time - "
+                                + TimeRangeFilterHelper.getMillisOfLocalTime(start)
+                                + ") / "
+                                + Duration.ofDays(1).toMillis());
+    }
+
+    @Test
+    public void testGroupByMonths_searchesGroupInSplits() {
+        AggregateTableRequest request = createRequest();
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        request.setGroupBy(
+                TIME_COLUMN_NAME,
+                Period.ofMonths(1),
+                /* duration= */ null,
+                new LocalTimeRangeFilter.Builder()
+                        .setStartTime(start)
+                        .setEndTime(start.plusYears(1))
+                        .build());
+
+        String command = request.getAggregationCommand();
+
+        assertThat(request.getGroupSplitIntervals()).hasSize(12);
+        // The search starts by comparing with the split in the middle, July.
+        assertThat(command)
+                .contains(
+                        " THEN CASE WHEN time < "
+                                + TimeRangeFilterHelper.getMillisOfLocalTime(start.plusMonths(6))
+                                + " THEN ");
+        // One comparison per split between two groups.
+        assertThat(command.split("CASE WHEN time < ", -1)).hasLength(12);
+    }
+
+    @Test
+    public void testGroupByDuration_query_returnsRowsGroups() {
+        AggregateTableRequest request = createRequest();
+        long hourMillis = Duration.ofHours(1).toMillis();
+        long start = 1000;
+        request.setGroupBy(
+                TIME_COLUMN_NAME,
+                /* period= */ null,
+                Duration.ofHours(1),
+                new TimeInstantRangeFilter(
+                        Instant.ofEpochMilli(start),
+                        Instant.ofEpochMilli(start + 3 * hourMillis + 5)));
+
+        Map<Long, Double> maxWeightPerGroup =
+                queryMaxWeightPerGroup(
+                        request,
+                        Map.of(
+                                start, 1.0,
+                                start + hourMillis - 1, 2.0,
+                                start + hourMillis, 3.0,
+                                start + 3 * hourMillis + 4, 4.0));
+
+        assertThat(maxWeightPerGroup).containsExactly(0L, 2.0, 1L, 3.0, 3L, 4.0);
+    }
+
+    @Test
+    public void testGroupByMonths_query_returnsRowsGroups() {
+        AggregateTableRequest request = createRequest();
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        request.setGroupBy(
+                TIME_COLUMN_NAME,
+                Period.ofMonths(1),
+                /* duration= */ null,
+                new LocalTimeRangeFilter.Builder()
+                        .setStartTime(start)
+                        .setEndTime(start.plusYears(1))
+                        .build());
+
+        Map<Long, Double> maxWeightPerGroup =
+                queryMaxWeightPerGroup(
+                        request,
+                        Map.of(
+                                getMillis(start), 1.0,
+                                getMillis(start.plusMonths(2)) - 1, 2.0,
+                                getMillis(start.plusMonths(2)), 3.0,
+                                getMillis(start.plusMonths(6).plusDays(15)), 4.0,
+                                getMillis(start.plusYears(1)) - 1, 5.0));
+
+        assertThat(maxWeightPerGroup).containsExactly(0L, 1.0, 1L, 2.0, 2L, 3.0, 6L, 4.0, 11L, 5.0);
+    }
+
+    /** Runs the aggregation of {@code request} on a table with {@code weightsByTime}. */
+    private static Map<Long, Double> queryMaxWeightPerGroup(
+            AggregateTableRequest request, Map<Long, Double> weightsByTime) {
+        Map<Long, Double> maxWeightPerGroup = new ArrayMap<>();
+        try (SQLiteDatabase db = SQLiteDatabase.create(/* factory= */ null)) {
+            db.execSQL(
+                    "CREATE TABLE "
+                            + TABLE_NAME
+                            + " (weight REAL, "
+                            + TIME_COLUMN_NAME
+                            + " INTEGER, zone_offset INTEGER)");
+            weightsByTime.forEach(
+                    (time, weight) -> {
+                        ContentValues values = new ContentValues();
+                        values.put("weight", weight);
+                        values.put(TIME_COLUMN_NAME, time);
+                        values.put("zone_offset", 0);
+                        db.insertOrThrow(TABLE_NAME, null, values);
+                    });
+            try (Cursor cursor = db.rawQuery(request.getAggregationCommand(), null)) {
+                while (cursor.moveToNext()) {
+                    maxWeightPerGroup.put(
+                            cursor.getLong(cursor.getColumnIndexOrThrow("category")),
+                            cursor.getDouble(cursor.getColumnIndexOrThrow("weight")));
+                }
+            }
+        }
+        return maxWeightPerGroup;
+    }
+
+    private static long getMillis(LocalDateTime localDateTime) {
+        return TimeRangeFilterHelper.getMillisOfLocalTime(localDateTime);
+    }
+
+    private static AggregateTableRequest createRequest() {
+        AggregateParams params =
+                new AggregateParams(TABLE_NAME, List.of("weight"))
+                        .setTimeColumnName(TIME_COLUMN_NAME)
+                        .setOffsetColumnToFetch("zone_offset");
+        return new AggregateTableRequest(
+                params,
+                WeightRecord.WEIGHT_MAX,
+                new WeightRecordHelper(),
+                new WhereClauses(AND),
+                /* useLocalTime= */ false);
+    }
+}
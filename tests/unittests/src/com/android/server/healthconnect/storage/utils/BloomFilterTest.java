@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+@RunWith(AndroidJUnit4.class)
+public class BloomFilterTest {
+    @Test
+    public void mightContain_addedKeys_returnsTrue() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (long i = 0; i < 1000; i++) {
+            filter.add(getKey(i));
+        }
+
+        for (long i = 0; i < 1000; i++) {
+            assertThat(filter.mightContain(getKey(i))).isTrue();
+        }
+    }
+
+    @Test
+    public void mightContain_otherKeys_falsePositiveRateBounded() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (long i = 0; i < 1000; i++) {
+            filter.add(getKey(i));
+        }
+
+        int falsePositives = 0;
+        for (long i = 1000; i < 11000; i++) {
+            if (filter.mightContain(getKey(i))) {
+                falsePositives++;
+            }
+        }
+        // 1% of the keys, with a margin for the variance.
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @Test
+    public void isFull_moreKeysThanCapacity_returnsTrue() {
+        BloomFilter filter = new BloomFilter(2, 0.01);
+        filter.add(getKey(1));
+        filter.add(getKey(2));
+        assertThat(filter.isFull()).isFalse();
+
+        filter.add(getKey(3));
+        assertThat(filter.isFull()).isTrue();
+    }
+
+    @Test
+    public void constructor_invalidArguments_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 1));
+    }
+
+    private static byte[] getKey(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+}
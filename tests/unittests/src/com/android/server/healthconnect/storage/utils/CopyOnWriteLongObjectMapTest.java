@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class CopyOnWriteLongObjectMapTest {
+    @Test
+    public void emptyMap_returnsNull() {
+        CopyOnWriteLongObjectMap<String> map = new CopyOnWriteLongObjectMap<>();
+
+        assertThat(map.size()).isEqualTo(0);
+        assertThat(map.get(1)).isNull();
+        assertThat(map.containsKey(1)).isFalse();
+        assertThat(map.getOrDefault(1, "default")).isEqualTo("default");
+    }
+
+    @Test
+    public void put_growsAndKeepsAllEntries() {
+        CopyOnWriteLongObjectMap<String> map = new CopyOnWriteLongObjectMap<>();
+        for (long key = -50; key < 1000; key++) {
+            map.put(key, "value" + key);
+        }
+
+        assertThat(map.size()).isEqualTo(1050);
+        for (long key = -50; key < 1000; key++) {
+            assertThat(map.get(key)).isEqualTo("value" + key);
+        }
+        assertThat(map.get(1000)).isNull();
+    }
+
+    @Test
+    public void put_existingKey_replacesValue() {
+        CopyOnWriteLongObjectMap<String> map = new CopyOnWriteLongObjectMap<>();
+        map.put(Long.MAX_VALUE, "first");
+        map.put(Long.MAX_VALUE, "second");
+
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(map.get(Long.MAX_VALUE)).isEqualTo("second");
+    }
+
+    @Test
+    public void put_nullValue_throws() {
+        CopyOnWriteLongObjectMap<String> map = new CopyOnWriteLongObjectMap<>();
+
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+    }
+
+    @Test
+    public void builder_buildsMapWithAllEntries() {
+        CopyOnWriteLongObjectMap.Builder<String> builder =
+                new CopyOnWriteLongObjectMap.Builder<>(/* expectedSize= */ 2);
+        for (long key = 0; key < 100; key++) {
+            builder.put(key * 1024, "value" + key);
+        }
+        CopyOnWriteLongObjectMap<String> map = builder.build();
+
+        assertThat(map.size()).isEqualTo(100);
+        for (long key = 0; key < 100; key++) {
+            assertThat(map.get(key * 1024)).isEqualTo("value" + key);
+        }
+    }
+
+    @Test
+    public void builder_changesAfterBuild_notVisibleInMap() {
+        CopyOnWriteLongObjectMap.Builder<String> builder =
+                new CopyOnWriteLongObjectMap.Builder<>(/* expectedSize= */ 1);
+        builder.put(1, "one");
+        CopyOnWriteLongObjectMap<String> map = builder.build();
+        builder.put(2, "two");
+
+        assertThat(map.containsKey(2)).isFalse();
+        assertThat(map.size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class GenerationLruCacheTest {
+    @Test
+    public void get_sameGenerations_returnsValue() {
+        GenerationLruCache<String, String> cache = new GenerationLruCache<>(2);
+        long[] generations = {1, 2};
+        cache.put("key", generations, "value");
+        // Changing the array after the put doesn't change the cached generations.
+        generations[0] = 5;
+
+        assertThat(cache.get("key", new long[] {1, 2})).isEqualTo("value");
+        assertThat(cache.get("other", new long[] {1, 2})).isNull();
+    }
+
+    @Test
+    public void get_otherGenerations_removesValue() {
+        GenerationLruCache<String, String> cache = new GenerationLruCache<>(2);
+        cache.put("key", new long[] {1, 2}, "value");
+
+        assertThat(cache.get("key", new long[] {1, 3})).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.get("key", new long[] {1, 2})).isNull();
+    }
+
+    @Test
+    public void put_full_evictsLeastRecentlyUsed() {
+        GenerationLruCache<String, String> cache = new GenerationLruCache<>(2);
+        long[] generations = {0};
+        cache.put("first", generations, "1");
+        cache.put("second", generations, "2");
+        cache.get("first", generations);
+        cache.put("third", generations, "3");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("first", generations)).isEqualTo("1");
+        assertThat(cache.get("second", generations)).isNull();
+        assertThat(cache.get("third", generations)).isEqualTo("3");
+    }
+
+    @Test
+    public void clear_removesAllValues() {
+        GenerationLruCache<String, String> cache = new GenerationLruCache<>(2);
+        cache.put("key", new long[] {0}, "value");
+        cache.clear();
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.get("key", new long[] {0})).isNull();
+    }
+
+    @Test
+    public void invalidSize_throws() {
+        assertThrows(IllegalArgumentException.class, () -> new GenerationLruCache<>(0));
+    }
+
+    @Test
+    public void writeGenerations_tableWritten_onlyChangesThatTable() {
+        WriteGenerations writeGenerations = new WriteGenerations();
+        long first = writeGenerations.getGeneration("first");
+        long second = writeGenerations.getGeneration("second");
+
+        writeGenerations.onTableWritten("first");
+
+        assertThat(writeGenerations.getGeneration("first")).isNotEqualTo(first);
+        assertThat(writeGenerations.getGeneration("second")).isEqualTo(second);
+    }
+
+    @Test
+    public void writeGenerations_allTablesWritten_changesAllTables() {
+        WriteGenerations writeGenerations = new WriteGenerations();
+        writeGenerations.onTableWritten("first");
+        long first = writeGenerations.getGeneration("first");
+        long second = writeGenerations.getGeneration("second");
+
+        writeGenerations.onAllTablesWritten();
+
+        assertThat(writeGenerations.getGeneration("first")).isNotEqualTo(first);
+        assertThat(writeGenerations.getGeneration("second")).isNotEqualTo(second);
+    }
+}
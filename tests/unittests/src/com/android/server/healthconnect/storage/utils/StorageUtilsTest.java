@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import static com.android.server.healthconnect.storage.utils.RecordTypeForUuidMappings.getRecordTypeIdForUuid;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.health.connect.internal.datatypes.RecordInternal;
+import android.health.connect.internal.datatypes.StepsRecordInternal;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+@RunWith(AndroidJUnit4.class)
+public class StorageUtilsTest {
+    private static final String TEST_PACKAGE_NAME = "package.name";
+
+    @Test
+    public void getHexString_bytes_returnsBlobLiteral() {
+        byte[] bytes = new byte[] {0x00, 0x0f, (byte) 0xab, 0x7f, (byte) 0x80, (byte) 0xff};
+
+        assertThat(StorageUtils.getHexString(bytes)).isEqualTo("x'000fab7f80ff'");
+        assertThat(StorageUtils.getHexString((byte[]) null)).isEmpty();
+    }
+
+    @Test
+    public void getHexString_uuid_matchesHexStringOfBytes() {
+        UUID uuid = UUID.fromString("0123cdef-89ab-4567-80ff-fedcba987654");
+
+        assertThat(StorageUtils.getHexString(uuid))
+                .isEqualTo("x'0123cdef89ab456780fffedcba987654'");
+        for (int i = 0; i < 100; i++) {
+            UUID randomUuid = UUID.randomUUID();
+            assertThat(StorageUtils.getHexString(randomUuid))
+                    .isEqualTo(
+                            StorageUtils.getHexString(StorageUtils.convertUUIDToBytes(randomUuid)));
+        }
+    }
+
+    @Test
+    public void getListOfHexString_returnsHexStringsInOrder() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        assertThat(StorageUtils.getListOfHexString(List.of(first, second)))
+                .containsExactly(
+                        StorageUtils.getHexString(first), StorageUtils.getHexString(second))
+                .inOrder();
+    }
+
+    @Test
+    public void addNameBasedUUIDTo_clientRecordId_matchesNameBasedUuid() {
+        RecordInternal<?> record =
+                new StepsRecordInternal().setCount(10).setClientRecordId("client.id");
+        record.setPackageName(TEST_PACKAGE_NAME);
+
+        StorageUtils.addNameBasedUUIDTo(record);
+
+        byte[] packageNameBytes = TEST_PACKAGE_NAME.getBytes();
+        byte[] clientRecordIdBytes = "client.id".getBytes();
+        byte[] name =
+                ByteBuffer.allocate(
+                                packageNameBytes.length
+                                        + Integer.BYTES
+                                        + clientRecordIdBytes.length)
+                        .put(packageNameBytes)
+                        .putInt(getRecordTypeIdForUuid(record.getRecordType()))
+                        .put(clientRecordIdBytes)
+                        .array();
+        assertThat(record.getUuid()).isEqualTo(UUID.nameUUIDFromBytes(name));
+    }
+}
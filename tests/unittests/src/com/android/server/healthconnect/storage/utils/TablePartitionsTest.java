@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.healthconnect.storage.utils;
+
+import static com.android.server.healthconnect.storage.utils.StorageUtils.INTEGER;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.util.Pair;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.server.healthconnect.storage.TransactionManager;
+import com.android.server.healthconnect.storage.datatypehelpers.HealthConnectDatabaseTestRule;
+import com.android.server.healthconnect.storage.request.CreateTableRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class TablePartitionsTest {
+    private static final String TABLE_NAME = "test_table";
+    private static final long JANUARY_2024 = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    private static final long FEBRUARY_2024 = Instant.parse("2024-02-01T00:00:00Z").toEpochMilli();
+    private static final long MARCH_2024 = Instant.parse("2024-03-01T00:00:00Z").toEpochMilli();
+
+    @Rule public final HealthConnectDatabaseTestRule testRule = new HealthConnectDatabaseTestRule();
+
+    private TransactionManager mTransactionManager;
+
+    @Before
+    public void setup() {
+        mTransactionManager = TransactionManager.getInstance(testRule.getUserContext());
+    }
+
+    @After
+    public void tearDown() {
+        TransactionManager.clearInstance();
+    }
+
+    @Test
+    public void getPartitionName_returnsMonthOfStartTime() {
+        assertThat(TablePartitions.getPartitionName(TABLE_NAME, JANUARY_2024))
+                .isEqualTo("test_table_p202401");
+        assertThat(TablePartitions.getPartitionName(TABLE_NAME, FEBRUARY_2024 - 1))
+                .isEqualTo("test_table_p202401");
+        assertThat(TablePartitions.getPartitionName(TABLE_NAME, FEBRUARY_2024))
+                .isEqualTo("test_table_p202402");
+    }
+
+    @Test
+    public void getStartAndEndTime_returnBoundsOfMonth() {
+        assertThat(TablePartitions.getStartTime("test_table_p202402")).isEqualTo(FEBRUARY_2024);
+        assertThat(TablePartitions.getEndTime("test_table_p202402")).isEqualTo(MARCH_2024);
+    }
+
+    @Test
+    public void shouldPartition_shortRecord_returnsTrue() {
+        assertThat(
+                        TablePartitions.shouldPartition(
+                                JANUARY_2024,
+                                JANUARY_2024 + TablePartitions.MAX_RECORD_DURATION.toMillis()))
+                .isTrue();
+    }
+
+    @Test
+    public void shouldPartition_longRecord_returnsFalse() {
+        assertThat(
+                        TablePartitions.shouldPartition(
+                                JANUARY_2024,
+                                JANUARY_2024
+                                        + TablePartitions.MAX_RECORD_DURATION.toMillis()
+                                        + 1))
+                .isFalse();
+    }
+
+    @Test
+    public void shouldPartition_yearWithOtherNameLength_returnsFalse() {
+        long startTime = Instant.parse("0999-12-31T00:00:00Z").toEpochMilli();
+
+        assertThat(TablePartitions.shouldPartition(startTime, startTime + 1)).isFalse();
+    }
+
+    @Test
+    public void shouldPartition_beforeEpoch_returnsFalse() {
+        assertThat(TablePartitions.shouldPartition(-1, 0)).isFalse();
+        assertThat(TablePartitions.shouldPartition(0, 1)).isTrue();
+    }
+
+    @Test
+    public void getMinStartTime_widensByMargins() {
+        long day = Duration.ofDays(1).toMillis();
+
+        assertThat(TablePartitions.getMinStartTime(MARCH_2024, false, false)).isEqualTo(MARCH_2024);
+        assertThat(TablePartitions.getMinStartTime(MARCH_2024, false, true))
+                .isEqualTo(MARCH_2024 - day);
+        assertThat(TablePartitions.getMinStartTime(MARCH_2024, true, true))
+                .isEqualTo(MARCH_2024 - 2 * day);
+        assertThat(TablePartitions.getMinStartTime(Long.MIN_VALUE + 1, true, true))
+                .isEqualTo(Long.MIN_VALUE);
+    }
+
+    @Test
+    public void getMaxStartTime_widensByMargins() {
+        long day = Duration.ofDays(1).toMillis();
+
+        assertThat(TablePartitions.getMaxStartTime(MARCH_2024, false)).isEqualTo(MARCH_2024);
+        assertThat(TablePartitions.getMaxStartTime(MARCH_2024, true)).isEqualTo(MARCH_2024 + day);
+        assertThat(TablePartitions.getMaxStartTime(Long.MAX_VALUE - 1, true))
+                .isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void getPartitions_returnsPartitionsInRange() {
+        mTransactionManager.runAsTransaction(
+                db -> {
+                    TablePartitions.createIfMissing(db, getCreateTableRequest(TABLE_NAME));
+                    TablePartitions.createIfMissing(db, getPartitionCreateRequest(FEBRUARY_2024));
+                    TablePartitions.createIfMissing(db, getPartitionCreateRequest(JANUARY_2024));
+                });
+
+        mTransactionManager.runAsTransaction(
+                db -> {
+                    assertThat(TablePartitions.getPartitions(db, TABLE_NAME))
+                            .containsExactly("test_table_p202401", "test_table_p202402")
+                            .inOrder();
+                    assertThat(
+                                    TablePartitions.getPartitions(
+                                            db, TABLE_NAME, FEBRUARY_2024, MARCH_2024))
+                            .containsExactly("test_table_p202402");
+                    assertThat(
+                                    TablePartitions.getPartitions(
+                                            db, TABLE_NAME, JANUARY_2024, FEBRUARY_2024))
+                            .containsExactly("test_table_p202401");
+                    assertThat(TablePartitions.getPartitions(db, "test")).isEmpty();
+                });
+    }
+
+    @Test
+    public void createIfMissing_existingTable_doesNothing() {
+        mTransactionManager.runAsTransaction(
+                db -> {
+                    TablePartitions.createIfMissing(db, getPartitionCreateRequest(JANUARY_2024));
+                    TablePartitions.createIfMissing(db, getPartitionCreateRequest(JANUARY_2024));
+
+                    assertThat(TablePartitions.getPartitions(db, TABLE_NAME))
+                            .containsExactly("test_table_p202401");
+                });
+    }
+
+    private static CreateTableRequest getPartitionCreateRequest(long startTime) {
+        return getCreateTableRequest(TablePartitions.getPartitionName(TABLE_NAME, startTime));
+    }
+
+    private static CreateTableRequest getCreateTableRequest(String tableName) {
+        return new CreateTableRequest(tableName, List.of(new Pair<>("value", INTEGER)));
+    }
+}